@@ -17,6 +17,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.osgi.framework.BundleActivator;
@@ -44,6 +45,8 @@ public class Activator implements BundleActivator {
 	}
 
 	public void stop(BundleContext aContext) throws Exception {
+		// save what the repositories in write-behind mode still hold, their flush jobs do not survive the shutdown
+		SimpleArtifactRepository.flushAll(null);
 		Activator.context = null;
 		Activator.instance = null;
 		this.locationCache = null;
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
+
+/**
+ * A cache of downloaded artifacts shared by all the agents and bundle pools of a machine.
+ * Entries are addressed by the digest of their downloaded bytes as recorded in the
+ * {@link IArtifactDescriptor#DOWNLOAD_MD5} property, so the same bytes are only fetched
+ * once no matter which repository or mirror they come from. Entries are only added once
+ * their digest has been checked. The least recently used entries are removed when the
+ * cache grows past its maximum size.
+ * <p>
+ * The cache is disabled unless the {@link #PROP_LOCATION} property is set, or a cache is
+ * registered as an agent service under {@link #SERVICE_NAME}.
+ * </p>
+ */
+public class ArtifactCache {
+	public static final String SERVICE_NAME = ArtifactCache.class.getName();
+
+	/**
+	 * Property holding the directory of the shared cache.
+	 */
+	public static final String PROP_LOCATION = "eclipse.p2.artifact.cache"; //$NON-NLS-1$
+
+	/**
+	 * Property holding the maximum size of the shared cache in bytes.
+	 */
+	public static final String PROP_MAX_SIZE = "eclipse.p2.artifact.cache.maxSize"; //$NON-NLS-1$
+
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final String MD5 = "md5"; //$NON-NLS-1$
+	private static final String TEMP_PREFIX = "tmp"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".part"; //$NON-NLS-1$
+
+	// caches are shared by everyone using the same directory in this process
+	private static final Map<File, ArtifactCache> caches = new HashMap<File, ArtifactCache>();
+	private static boolean defaultInitialized = false;
+	private static ArtifactCache defaultCache;
+
+	private final File root;
+	private final long maxSize;
+	// the size of the entries, -1 until the directory has been scanned. Guarded by this.
+	private long size = -1;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * A stream copying everything written to it to a destination while recording it in the
+	 * cache. The recorded bytes are only added to the cache when {@link #commit(IStatus)} is
+	 * called with a successful status and their digest is the expected one.
+	 */
+	public class CacheOutputStream extends OutputStream implements IStateful {
+		private final OutputStream destination;
+		private final String digest;
+		private final File temp;
+		private final OutputStream output;
+		private final MessageDigest md5;
+		private long length = 0;
+		private boolean failed = false;
+
+		CacheOutputStream(OutputStream destination, String digest, File temp, MessageDigest md5) throws FileNotFoundException {
+			this.destination = destination;
+			this.digest = digest;
+			this.temp = temp;
+			this.md5 = md5;
+			this.output = new BufferedOutputStream(new FileOutputStream(temp));
+		}
+
+		public void write(int b) throws IOException {
+			destination.write(b);
+			record(new byte[] {(byte) b}, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			destination.write(b, off, len);
+			record(b, off, len);
+		}
+
+		private void record(byte[] b, int off, int len) {
+			if (failed)
+				return;
+			// a failure to record must never break the download itself
+			try {
+				output.write(b, off, len);
+				md5.update(b, off, len);
+				length += len;
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		public void flush() throws IOException {
+			destination.flush();
+		}
+
+		/**
+		 * Closes the recording. The destination is left open.
+		 */
+		public void close() {
+			try {
+				output.close();
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		public IStatus getStatus() {
+			return destination instanceof IStateful ? ((IStateful) destination).getStatus() : Status.OK_STATUS;
+		}
+
+		public void setStatus(IStatus status) {
+			if (destination instanceof IStateful)
+				((IStateful) destination).setStatus(status);
+		}
+
+		/**
+		 * Adds the recorded bytes to the cache if the download was successful, and discards
+		 * them otherwise.
+		 * @param status the status of the download
+		 */
+		public void commit(IStatus status) {
+			close();
+			if (!failed && status.isOK() && digest.equals(toHex(md5.digest())))
+				add(digest, temp, length);
+			else
+				temp.delete();
+		}
+	}
+
+	/**
+	 * Returns the cache to be used by the given agent, or <code>null</code> if artifacts
+	 * are not cached.
+	 */
+	public static ArtifactCache getCache(IProvisioningAgent agent) {
+		ArtifactCache cache = agent == null ? null : (ArtifactCache) agent.getService(SERVICE_NAME);
+		return cache != null ? cache : getDefault();
+	}
+
+	private static synchronized ArtifactCache getDefault() {
+		if (defaultInitialized)
+			return defaultCache;
+		BundleContext context = Activator.getContext();
+		if (context == null)
+			return null;
+		defaultInitialized = true;
+		String location = context.getProperty(PROP_LOCATION);
+		if (location == null || location.length() == 0)
+			return null;
+		long max = DEFAULT_MAX_SIZE;
+		String value = context.getProperty(PROP_MAX_SIZE);
+		if (value != null) {
+			try {
+				max = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Invalid artifact cache size: " + value, e)); //$NON-NLS-1$
+			}
+		}
+		defaultCache = getCache(new File(location), max);
+		return defaultCache;
+	}
+
+	/**
+	 * Returns the cache stored in the given directory. The cache is shared by all the callers
+	 * in this process, so the maximum size is the one given by the first caller; a different
+	 * size given later is logged and ignored.
+	 * @param root the directory of the cache
+	 * @param maxSize the size in bytes past which entries are evicted
+	 */
+	public static ArtifactCache getCache(File root, long maxSize) {
+		File key = root.getAbsoluteFile();
+		synchronized (caches) {
+			ArtifactCache cache = caches.get(key);
+			if (cache == null) {
+				cache = new ArtifactCache(key, maxSize);
+				caches.put(key, cache);
+			} else if (cache.maxSize != maxSize) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "The artifact cache " + key + " is already used with a maximum size of " + cache.maxSize + " bytes, ignoring the size " + maxSize)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the size in bytes past which entries are evicted.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	private ArtifactCache(File root, long maxSize) {
+		this.root = root;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the digest addressing the downloaded bytes of the given descriptor, or
+	 * <code>null</code> if the descriptor does not have a usable digest.
+	 */
+	private static String getDigest(IArtifactDescriptor descriptor) {
+		String digest = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
+		if (digest == null || digest.length() != 32)
+			return null;
+		digest = digest.toLowerCase();
+		for (int i = 0; i < digest.length(); i++) {
+			if (Character.digit(digest.charAt(i), 16) < 0)
+				return null;
+		}
+		return digest;
+	}
+
+	private File getFile(String digest) {
+		return new File(new File(new File(root, MD5), digest.substring(0, 2)), digest);
+	}
+
+	/**
+	 * Copies the downloaded bytes of the given descriptor from the cache.
+	 * @param descriptor the descriptor of the artifact
+	 * @param destination the stream receiving the bytes, which is left open
+	 * @param monitor the progress monitor
+	 * @return the status of the copy, or <code>null</code> if the cache does not contain the bytes.
+	 * If the entry cannot be read to the end, it is removed and the status is an error with the
+	 * {@link IArtifactRepository#CODE_RETRY} code, telling the caller to start over with a fresh
+	 * destination and download the artifact.
+	 */
+	public IStatus copyTo(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+		String digest = getDigest(descriptor);
+		if (digest == null)
+			return null;
+		File file = getFile(digest);
+		InputStream input;
+		try {
+			input = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		// mark the entry as recently used
+		file.setLastModified(System.currentTimeMillis());
+		long start = System.currentTimeMillis();
+		long length = 0;
+		boolean writing = false;
+		try {
+			byte[] buffer = new byte[16 * 1024];
+			int read;
+			try {
+				while ((read = input.read(buffer)) != -1) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					writing = true;
+					destination.write(buffer, 0, read);
+					writing = false;
+					length += read;
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			if (writing)
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.error_copying_local_file, file.getAbsolutePath()), e);
+			// the entry is broken, part of it may already be in the destination
+			remove(file);
+			return new Status(IStatus.ERROR, Activator.ID, IArtifactRepository.CODE_RETRY, NLS.bind(Messages.error_copying_local_file, file.getAbsolutePath()), e);
+		}
+		hits.incrementAndGet();
+		DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+		status.setFileSize(length);
+		status.setLastModified(file.lastModified());
+		status.setTransferRate(length / Math.max(System.currentTimeMillis() - start, 1) * 1000);
+		return status;
+	}
+
+	/**
+	 * Returns a stream that writes to the given destination and records the downloaded bytes
+	 * of the given descriptor in the cache. The caller must call
+	 * {@link CacheOutputStream#commit(IStatus)} once the download is over.
+	 * @return the recording stream, or <code>null</code> if the artifact cannot be cached
+	 */
+	public CacheOutputStream record(IArtifactDescriptor descriptor, OutputStream destination) {
+		String digest = getDigest(descriptor);
+		if (digest == null)
+			return null;
+		misses.incrementAndGet();
+		try {
+			MessageDigest md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+			root.mkdirs();
+			return new CacheOutputStream(destination, digest, File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, root), md5);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to write to the artifact cache " + root, e)); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private void add(String digest, File temp, long length) {
+		File file = getFile(digest);
+		file.getParentFile().mkdirs();
+		if (!temp.renameTo(file)) {
+			// most likely someone else added it in the meantime
+			temp.delete();
+			return;
+		}
+		synchronized (this) {
+			if (size >= 0)
+				size += length;
+			if (size < 0 || size > maxSize)
+				evict();
+		}
+	}
+
+	private void remove(File file) {
+		long length = file.length();
+		if (!file.delete())
+			return;
+		evictions.incrementAndGet();
+		synchronized (this) {
+			if (size >= 0)
+				size -= length;
+		}
+	}
+
+	/*
+	 * Removes the least recently used entries until the cache fits in its maximum size.
+	 * Other processes may share the directory, so the size is recomputed from the disk.
+	 * Must be called while holding the lock.
+	 */
+	private void evict() {
+		List<File> entries = new ArrayList<File>();
+		File[] folders = new File(root, MD5).listFiles();
+		if (folders != null) {
+			for (int i = 0; i < folders.length; i++) {
+				File[] files = folders[i].listFiles();
+				if (files != null)
+					entries.addAll(Arrays.asList(files));
+			}
+		}
+		final Map<File, Long> lastModified = new HashMap<File, Long>();
+		size = 0;
+		for (File entry : entries) {
+			lastModified.put(entry, new Long(entry.lastModified()));
+			size += entry.length();
+		}
+		if (size <= maxSize)
+			return;
+		Collections.sort(entries, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return lastModified.get(f1).compareTo(lastModified.get(f2));
+			}
+		});
+		for (Iterator<File> iterator = entries.iterator(); size > maxSize && iterator.hasNext();) {
+			File entry = iterator.next();
+			long length = entry.length();
+			if (entry.delete()) {
+				size -= length;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of artifacts copied from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of cacheable artifacts that had to be downloaded.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of entries removed to keep the cache under its maximum size, or
+	 * because they could not be read.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	static String toHex(byte[] digest) {
+		StringBuffer buf = new StringBuffer(digest.length * 2);
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				buf.append('0');
+			buf.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return buf.toString();
+	}
+
+	public String toString() {
+		return "ArtifactCache[" + root + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
@@ -16,6 +16,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
@@ -57,6 +58,21 @@ public class ArtifactRepositoryManager extends AbstractRepositoryManager<IArtifa
 		return (IArtifactRepository) basicGetRepository(location);
 	}
 
+	public boolean removeRepository(URI toRemove) {
+		// save what a repository in write-behind mode still holds before it is forgotten
+		if (toRemove != null) {
+			IArtifactRepository repository = getRepository(toRemove);
+			if (repository instanceof SimpleArtifactRepository)
+				((SimpleArtifactRepository) repository).flush();
+		}
+		return super.removeRepository(toRemove);
+	}
+
+	public void stop() {
+		SimpleArtifactRepository.flushAll(getAgent());
+		super.stop();
+	}
+
 	protected IRepository<IArtifactKey> factoryCreate(URI location, String name, String type, Map<String, String> properties, IExtension extension) throws ProvisionException {
 		ArtifactRepositoryFactory factory = (ArtifactRepositoryFactory) createExecutableExtension(extension, EL_FACTORY);
 		if (factory == null)
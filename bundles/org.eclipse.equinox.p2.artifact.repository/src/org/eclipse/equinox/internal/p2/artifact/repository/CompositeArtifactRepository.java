@@ -21,6 +21,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -89,11 +90,30 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 	CompositeArtifactRepository(IArtifactRepositoryManager manager, CompositeRepositoryState state, IProgressMonitor monitor) throws ProvisionException {
 		super(manager.getAgent(), state.getName(), state.getType(), state.getVersion(), state.getLocation(), state.getDescription(), state.getProvider(), state.getProperties());
 		this.manager = manager;
-		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
 		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<URI>();
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
-		for (URI child : state.getChildren())
-			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
+		List<URI> absolutes = new ArrayList<URI>();
+		for (URI child : state.getChildren()) {
+			URI absolute = URIUtil.makeAbsolute(child, getLocation());
+			if (childrenURIs.contains(child) || childrenURIs.contains(absolute))
+				continue;
+			childrenURIs.add(child);
+			absolutes.add(absolute);
+		}
+		int threads = CompositeChildLoader.getLoadingThreads(state.getProperties());
+		CompositeChildLoader.Result<IArtifactKey>[] results = getLoader().load(absolutes.toArray(new URI[absolutes.size()]), threads, failOnChildFailure, monitor);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null)
+				continue;
+			if (results[i].failure != null && failOnChildFailure) {
+				// children loaded after the failed one must be cleaned up as well
+				for (int j = i + 1; j < results.length; j++) {
+					if (results[j] != null && results[j].failure == null && !results[j].known)
+						repositoriesToBeRemovedOnFailure.add(results[j].location);
+				}
+			}
+			childLoaded(results[i], failOnChildFailure, repositoriesToBeRemovedOnFailure);
+		}
 	}
 
 	/**
@@ -167,20 +187,26 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		childrenURIs.add(childURI);
 		if (save)
 			save();
-		try {
-			boolean currentLoaded = getManager().contains(absolute);
-			IArtifactRepository repo = load(childURI, sub);
-			if (!currentLoaded && propagateException)
-				repositoriesToBeRemovedOnFailure.add(absolute);
-			loadedRepos.add(new ChildInfo(repo));
-		} catch (ProvisionException e) {
-			//repository failed to load. fall through
-			LogHelper.log(e);
-			if (propagateException) {
-				removeFromRepoManager(repositoriesToBeRemovedOnFailure);
-				String msg = NLS.bind(Messages.io_failedRead, getLocation());
-				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, e));
-			}
+		childLoaded(getLoader().load(absolute, sub), propagateException, repositoriesToBeRemovedOnFailure);
+	}
+
+	private CompositeChildLoader<IArtifactKey> getLoader() {
+		return new CompositeChildLoader<IArtifactKey>(getManager(), getLocation());
+	}
+
+	private void childLoaded(CompositeChildLoader.Result<IArtifactKey> result, boolean propagateException, List<URI> repositoriesToBeRemovedOnFailure) throws ProvisionException {
+		if (result.failure == null) {
+			if (!result.known && propagateException)
+				repositoriesToBeRemovedOnFailure.add(result.location);
+			loadedRepos.add(new ChildInfo((IArtifactRepository) result.repository));
+			return;
+		}
+		//repository failed to load. fall through
+		LogHelper.log(result.failure);
+		if (propagateException) {
+			removeFromRepoManager(repositoriesToBeRemovedOnFailure);
+			String msg = NLS.bind(Messages.io_failedRead, getLocation());
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, result.failure));
 		}
 	}
 
@@ -467,20 +493,6 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		}
 	}
 
-	private IArtifactRepository load(URI repoURI, IProgressMonitor monitor) throws ProvisionException {
-		// make sure we are dealing with an absolute location
-		repoURI = URIUtil.makeAbsolute(repoURI, getLocation());
-		boolean loaded = getManager().contains(repoURI);
-		IArtifactRepository repo = getManager().loadRepository(repoURI, monitor);
-		if (!loaded) {
-			//set enabled to false so repositories do not get polled twice
-			getManager().setEnabled(repoURI, false);
-			//set repository to system to hide from users
-			getManager().setRepositoryProperty(repoURI, IRepository.PROP_SYSTEM, String.valueOf(true));
-		}
-		return repo;
-	}
-
 	//	/**
 	//	 * A method to check if the content of a repository is consistent with the other children by
 	//	 * comparing content using the artifactComparator specified by the comparatorID
@@ -37,6 +37,7 @@ public class Messages extends NLS {
 	public static String sar_downloading;
 	public static String sar_downloadJobName;
 	public static String sar_failedMkdir;
+	public static String sar_flushJobName;
 	public static String sar_reportStatus;
 
 	public static String mirror_alreadyExists;
@@ -64,6 +65,8 @@ public class Messages extends NLS {
 
 	public static String error_copying_local_file;
 
+	public static String error_resuming_download;
+
 	static {
 		// initialize resource bundles
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -285,7 +285,13 @@ public class MirrorRequest extends ArtifactRequest {
 		Throwable priorException = null;
 		// Do the actual transfer
 		try {
-			status = getArtifact(sourceDescriptor, destination, monitor);
+			ArtifactCache cache = isCacheable(sourceDescriptor) ? ArtifactCache.getCache(source.getProvisioningAgent()) : null;
+			// a broken cache entry is removed and reported with CODE_RETRY, the destination is
+			// then discarded below and the next attempt downloads the artifact
+			if (cache != null)
+				status = cache.copyTo(sourceDescriptor, destination, monitor);
+			if (status == null)
+				status = getArtifact(sourceDescriptor, destination, monitor);
 			if (destination instanceof IStateful && status != null && !status.isOK()) {
 				IStatus destStatus = ((IStateful) destination).getStatus();
 				IStatus root = extractRootCause(status);
@@ -319,6 +325,15 @@ public class MirrorRequest extends ArtifactRequest {
 		return getSourceRepository().getArtifact(sourceDescriptor, destination, monitor);
 	}
 
+	/**
+	 * Returns whether the artifact can be taken from the shared {@link ArtifactCache} instead of
+	 * the source repository. The cache holds downloaded bytes, so this is only the case when the
+	 * source descriptor does not need any processing.
+	 */
+	protected boolean isCacheable(IArtifactDescriptor sourceDescriptor) {
+		return sourceDescriptor.getProcessingSteps().length == 0;
+	}
+
 	/**
 	 * Extract the root cause. The root cause is the first severe non-MultiStatus status 
 	 * containing an exception when searching depth first otherwise null.
@@ -83,4 +83,9 @@ public class RawMirrorRequest extends MirrorRequest {
 			destination = handler.link(new ProcessingStep[] {new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5))}, destination, monitor);
 		return getSourceRepository().getRawArtifact(descriptor, destination, monitor);
 	}
+
+	protected boolean isCacheable(IArtifactDescriptor sourceDescriptor) {
+		// raw artifacts are exactly the downloaded bytes
+		return true;
+	}
 }
@@ -13,11 +13,23 @@ package org.eclipse.equinox.internal.p2.artifact.repository.simple;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Dictionary;
-import java.util.Hashtable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.eclipse.core.runtime.URIUtil;
 import org.osgi.framework.*;
 
+/**
+ * Maps artifacts to their location in a repository using the repository's mapping rules.
+ * <p>
+ * The rules are compiled when the mapper is initialized. Filters that only test attributes
+ * for equality are matched without going through the LDAP filter, the rules are grouped by
+ * the classifier they apply to, and the output templates are split into literal text and
+ * variables. The locations computed are remembered, so a mapper must be initialized again,
+ * or replaced, when the rules change.
+ * </p>
+ */
 public class Mapper {
 	private Filter[] filters;
 	private String[] outputStrings;
@@ -28,9 +40,32 @@ public class Mapper {
 	private static final String ID = "id"; //$NON-NLS-1$
 	private static final String VERSION = "version"; //$NON-NLS-1$
 
+	// the variables of the output templates, in the order of the map(...) arguments
+	private static final String[] VARIABLES = {REPOURL, CLASSIFIER, ID, VERSION, FORMAT};
+	private static final int VAR_REPOURL = 0;
+	private static final int VAR_CLASSIFIER = 1;
+	private static final int VAR_UNKNOWN = -1;
+
+	// an equality test like (classifier=osgi.bundle), or a conjunction of them
+	private static final Pattern SIMPLE_TEST = Pattern.compile("\\(\\s*([A-Za-z]+)\\s*=([^()*\\\\\\s]+)\\)"); //$NON-NLS-1$
+	private static final Pattern SIMPLE_FILTER = Pattern.compile("\\(\\s*&(\\s*" + SIMPLE_TEST.pattern() + ")+\\s*\\)|" + SIMPLE_TEST.pattern()); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * The number of locations remembered before the cache is emptied.
+	 */
+	private static final int MAX_CACHED_LOCATIONS = 100000;
+
+	private Rule[] rules;
+	private Map<String, Rule[]> rulesByClassifier;
+	private Rule[] otherRules;
+	private volatile LocationCache cache;
+
 	public Mapper() {
 		filters = new Filter[0];
 		outputStrings = new String[0];
+		rules = new Rule[0];
+		rulesByClassifier = Collections.emptyMap();
+		otherRules = rules;
 	}
 
 	/**
@@ -40,83 +75,118 @@ public class Mapper {
 	public void initialize(BundleContext ctx, String[][] mappingRules) {
 		filters = new Filter[mappingRules.length];
 		outputStrings = new String[mappingRules.length];
+		List<Rule> compiled = new ArrayList<Rule>(mappingRules.length);
 		for (int i = 0; i < mappingRules.length; i++) {
 			try {
 				filters[i] = ctx.createFilter(mappingRules[i][0]);
 				outputStrings[i] = mappingRules[i][1];
+				compiled.add(new Rule(mappingRules[i][0], filters[i], outputStrings[i]));
 			} catch (InvalidSyntaxException e) {
 				//TODO Neeed to process this
 				e.printStackTrace();
 			}
 		}
-	}
-
-	public URI map(URI repositoryLocation, String classifier, String id, String version, String format) {
-		String locationString = URIUtil.toUnencodedString(repositoryLocation);
-		Dictionary<String, Object> values = new Hashtable<String, Object>(5);
-		if (repositoryLocation != null)
-			values.put(REPOURL, locationString);
+		rules = compiled.toArray(new Rule[compiled.size()]);
 
-		if (classifier != null)
-			values.put(CLASSIFIER, classifier);
+		// group the rules by the classifier they require, keeping their order
+		Set<String> classifiers = new HashSet<String>();
+		for (Rule rule : rules) {
+			if (rule.classifier != null)
+				classifiers.add(rule.classifier);
+		}
+		rulesByClassifier = new HashMap<String, Rule[]>(classifiers.size());
+		for (String classifier : classifiers)
+			rulesByClassifier.put(classifier, selectRules(classifier));
+		otherRules = selectRules(null);
+		cache = null;
+	}
 
-		if (id != null)
-			values.put(ID, id);
+	private Rule[] selectRules(String classifier) {
+		List<Rule> result = new ArrayList<Rule>(rules.length);
+		for (Rule rule : rules) {
+			if (rule.classifier == null || rule.classifier.equals(classifier))
+				result.add(rule);
+		}
+		return result.toArray(new Rule[result.size()]);
+	}
 
-		if (version != null)
-			values.put(VERSION, version);
+	public URI map(URI repositoryLocation, String classifier, String id, String version, String format) {
+		LocationCache currentCache = cache;
+		if (currentCache == null || !currentCache.isFor(repositoryLocation)) {
+			currentCache = new LocationCache(repositoryLocation);
+			cache = currentCache;
+		}
+		String key = toKey(classifier, id, version, format);
+		URI result = currentCache.locations.get(key);
+		if (result != null)
+			return result;
 
-		if (format != null)
-			values.put(FORMAT, format);
+		result = doMap(currentCache.locationString, classifier, id, version, format);
+		if (result != null) {
+			if (currentCache.locations.size() >= MAX_CACHED_LOCATIONS)
+				currentCache.locations.clear();
+			currentCache.locations.put(key, result);
+		}
+		return result;
+	}
 
-		for (int i = 0; i < filters.length; i++) {
-			if (filters[i].match(values))
-				return doReplacement(outputStrings[i], locationString, classifier, id, version, format);
+	private URI doMap(String locationString, String classifier, String id, String version, String format) {
+		String[] values = new String[] {locationString, classifier, id, version, format};
+		Dictionary<String, Object> dictionary = null;
+		Rule[] candidates = classifier == null ? otherRules : rulesByClassifier.get(classifier);
+		if (candidates == null)
+			candidates = otherRules;
+		for (Rule rule : candidates) {
+			boolean matches;
+			if (rule.tests != null) {
+				matches = rule.matches(values);
+			} else {
+				if (dictionary == null)
+					dictionary = toDictionary(values);
+				matches = rule.filter.match(dictionary);
+			}
+			if (matches)
+				return rule.replace(values);
 		}
 		return null;
 	}
 
-	private URI doReplacement(String pattern, String repoLocation, String classifier, String id, String version, String format) {
-		try {
-			// currently our mapping rules assume the repo URL is not "/" terminated. 
-			// This may be the case for repoURLs in the root of a URL space e.g. root of a jar file or file:/c:/
-			if (repoLocation.endsWith("/")) //$NON-NLS-1$
-				repoLocation = repoLocation.substring(0, repoLocation.length() - 1);
-
-			StringBuffer output = new StringBuffer(pattern);
-			int index = 0;
-			while (index < output.length()) {
-				int beginning = output.indexOf("${", index); //$NON-NLS-1$
-				if (beginning == -1)
-					return URIUtil.fromString(output.toString());
+	/*
+	 * Returns the key of the location of an artifact in the cache. A missing value is
+	 * kept apart from any string, including "null".
+	 */
+	private static String toKey(String classifier, String id, String version, String format) {
+		StringBuffer key = new StringBuffer(64);
+		appendKeyPart(key, classifier);
+		appendKeyPart(key, id);
+		appendKeyPart(key, version);
+		appendKeyPart(key, format);
+		return key.toString();
+	}
 
-				int end = output.indexOf("}", beginning); //$NON-NLS-1$
-				if (end == -1)
-					return URIUtil.fromString(pattern);
+	private static void appendKeyPart(StringBuffer key, String value) {
+		if (value == null)
+			key.append('-');
+		else
+			key.append('+').append(value);
+		key.append('\u0000');
+	}
 
-				String varName = output.substring(beginning + 2, end);
-				String varValue = null;
-				if (varName.equalsIgnoreCase(CLASSIFIER)) {
-					varValue = classifier;
-				} else if (varName.equalsIgnoreCase(ID)) {
-					varValue = id;
-				} else if (varName.equalsIgnoreCase(VERSION)) {
-					varValue = version;
-				} else if (varName.equalsIgnoreCase(REPOURL)) {
-					varValue = repoLocation;
-				} else if (varName.equalsIgnoreCase(FORMAT)) {
-					varValue = format;
-				}
-				if (varValue == null)
-					varValue = ""; //$NON-NLS-1$
+	private static Dictionary<String, Object> toDictionary(String[] values) {
+		Dictionary<String, Object> dictionary = new Hashtable<String, Object>(5);
+		for (int i = 0; i < VARIABLES.length; i++) {
+			if (values[i] != null)
+				dictionary.put(VARIABLES[i], values[i]);
+		}
+		return dictionary;
+	}
 
-				output.replace(beginning, end + 1, varValue);
-				index = beginning + varValue.length();
-			}
-			return URIUtil.fromString(output.toString());
-		} catch (URISyntaxException e) {
-			return null;
+	static int getVariable(String name) {
+		for (int i = 0; i < VARIABLES.length; i++) {
+			if (VARIABLES[i].equalsIgnoreCase(name))
+				return i;
 		}
+		return VAR_UNKNOWN;
 	}
 
 	public String toString() {
@@ -135,4 +205,131 @@ public class Mapper {
 		}
 		return result;
 	}
+
+	/*
+	 * The locations computed for one repository location.
+	 */
+	private static final class LocationCache {
+		final URI repositoryLocation;
+		final String locationString;
+		final Map<String, URI> locations = new ConcurrentHashMap<String, URI>();
+
+		LocationCache(URI repositoryLocation) {
+			this.repositoryLocation = repositoryLocation;
+			this.locationString = repositoryLocation == null ? null : URIUtil.toUnencodedString(repositoryLocation);
+		}
+
+		boolean isFor(URI location) {
+			return repositoryLocation == null ? location == null : repositoryLocation.equals(location);
+		}
+	}
+
+	/*
+	 * A compiled mapping rule.
+	 */
+	private static final class Rule {
+		final Filter filter;
+		final String pattern;
+		// the variables tested by a simple filter and the values they must have, or null
+		int[] tests;
+		String[] testValues;
+		// the classifier required by a simple filter, or null
+		String classifier;
+		// the output template is parts[0] + variable[0] + parts[1] + ... + parts[n]
+		String[] parts;
+		int[] variables;
+
+		Rule(String filterString, Filter filter, String pattern) {
+			this.filter = filter;
+			this.pattern = pattern;
+			compileFilter(filterString);
+			compileTemplate(pattern);
+		}
+
+		private void compileFilter(String filterString) {
+			String trimmed = filterString.trim();
+			if (!SIMPLE_FILTER.matcher(trimmed).matches())
+				return;
+			List<Integer> variableList = new ArrayList<Integer>();
+			List<String> valueList = new ArrayList<String>();
+			Matcher matcher = SIMPLE_TEST.matcher(trimmed);
+			while (matcher.find()) {
+				int variable = getVariable(matcher.group(1));
+				// an attribute we do not know is never set, leave it to the filter
+				if (variable == VAR_UNKNOWN)
+					return;
+				variableList.add(new Integer(variable));
+				valueList.add(matcher.group(2));
+			}
+			tests = new int[variableList.size()];
+			for (int i = 0; i < tests.length; i++) {
+				tests[i] = variableList.get(i).intValue();
+				if (tests[i] == VAR_CLASSIFIER) {
+					if (classifier != null && !classifier.equals(valueList.get(i))) {
+						// never matches, leave it to the filter
+						tests = null;
+						classifier = null;
+						return;
+					}
+					classifier = valueList.get(i);
+				}
+			}
+			testValues = valueList.toArray(new String[valueList.size()]);
+		}
+
+		private void compileTemplate(String template) {
+			List<String> partList = new ArrayList<String>();
+			List<Integer> variableList = new ArrayList<Integer>();
+			int index = 0;
+			while (true) {
+				int beginning = template.indexOf("${", index); //$NON-NLS-1$
+				if (beginning == -1)
+					break;
+				int end = template.indexOf('}', beginning);
+				if (end == -1) {
+					// an unterminated variable, the location is the template itself
+					parts = null;
+					return;
+				}
+				partList.add(template.substring(index, beginning));
+				variableList.add(new Integer(getVariable(template.substring(beginning + 2, end))));
+				index = end + 1;
+			}
+			partList.add(template.substring(index));
+			parts = partList.toArray(new String[partList.size()]);
+			variables = new int[variableList.size()];
+			for (int i = 0; i < variables.length; i++)
+				variables[i] = variableList.get(i).intValue();
+		}
+
+		boolean matches(String[] values) {
+			for (int i = 0; i < tests.length; i++) {
+				if (!testValues[i].equals(values[tests[i]]))
+					return false;
+			}
+			return true;
+		}
+
+		URI replace(String[] values) {
+			try {
+				if (parts == null)
+					return URIUtil.fromString(pattern);
+				StringBuffer output = new StringBuffer(pattern.length() + 64);
+				for (int i = 0; i < variables.length; i++) {
+					output.append(parts[i]);
+					String value = variables[i] == VAR_UNKNOWN ? null : values[variables[i]];
+					// currently our mapping rules assume the repo URL is not "/" terminated.
+					// This may be the case for repoURLs in the root of a URL space e.g. root of a jar file or file:/c:/
+					if (variables[i] == VAR_REPOURL && value != null && value.endsWith("/")) //$NON-NLS-1$
+						value = value.substring(0, value.length() - 1);
+					if (value != null)
+						output.append(value);
+				}
+				output.append(parts[variables.length]);
+				return URIUtil.fromString(output.toString());
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+	}
 }
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository.simple;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
+import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
+
+/**
+ * A journal of the bytes received so far for a large remote artifact. The journal is kept
+ * in a <code>.part</code> file when a download fails or is canceled, so that the next attempt,
+ * from any mirror and even from another session, only asks the transport for the remaining
+ * bytes. The journaled bytes are replayed to the destination before the download resumes.
+ */
+public class PartialDownload {
+	/**
+	 * Property holding the download size in bytes from which artifacts are journaled. A negative
+	 * value disables journaling.
+	 */
+	public static final String PROP_THRESHOLD = "eclipse.p2.download.resume.threshold"; //$NON-NLS-1$
+
+	public static final long DEFAULT_THRESHOLD = 8 * 1024 * 1024;
+
+	private static final long THRESHOLD = getThreshold();
+	private static final String PART_FOLDER = "downloads/"; //$NON-NLS-1$
+	private static final String PART_EXTENSION = ".part"; //$NON-NLS-1$
+
+	private final File file;
+	private final long size;
+	private OutputStream journal;
+	private long received = 0;
+	private boolean failed = false;
+
+	private class JournalOutputStream extends OutputStream implements IStateful {
+		private final OutputStream destination;
+
+		JournalOutputStream(OutputStream destination) {
+			this.destination = destination;
+		}
+
+		public void write(int b) throws IOException {
+			destination.write(b);
+			record(new byte[] {(byte) b}, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			destination.write(b, off, len);
+			record(b, off, len);
+		}
+
+		public void flush() throws IOException {
+			destination.flush();
+		}
+
+		public void close() {
+			// the destination belongs to the caller
+		}
+
+		public IStatus getStatus() {
+			return destination instanceof IStateful ? ((IStateful) destination).getStatus() : Status.OK_STATUS;
+		}
+
+		public void setStatus(IStatus status) {
+			if (destination instanceof IStateful)
+				((IStateful) destination).setStatus(status);
+		}
+	}
+
+	private static long getThreshold() {
+		// the bundle may already be stopped, or not started, when this class is first used
+		BundleContext context = Activator.getContext();
+		String value = context == null ? null : context.getProperty(PROP_THRESHOLD);
+		if (value == null)
+			return DEFAULT_THRESHOLD;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return DEFAULT_THRESHOLD;
+		}
+	}
+
+	/**
+	 * Returns the journal of the given artifact, or <code>null</code> if the artifact is not
+	 * worth journaling.
+	 */
+	static PartialDownload open(IProvisioningAgent agent, IArtifactDescriptor descriptor) {
+		if (THRESHOLD < 0)
+			return null;
+		String value = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+		long size;
+		try {
+			size = value == null ? -1 : Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (size <= 0 || size < THRESHOLD)
+			return null;
+		IAgentLocation location = (IAgentLocation) agent.getService(IAgentLocation.SERVICE_NAME);
+		if (location == null)
+			return null;
+		// the same bytes may come from any mirror, so the journal is named after the artifact
+		String name = descriptor.getArtifactKey().toExternalForm() + '|' + size + '|' + descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
+		File folder = URIUtil.toFile(URIUtil.append(location.getDataArea(Activator.ID), PART_FOLDER));
+		if (folder == null)
+			return null;
+		return new PartialDownload(new File(folder, digest(name) + PART_EXTENSION), size);
+	}
+
+	private static String digest(String name) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(name.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+			StringBuffer buf = new StringBuffer(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				if ((digest[i] & 0xFF) < 0x10)
+					buf.append('0');
+				buf.append(Integer.toHexString(digest[i] & 0xFF));
+			}
+			return buf.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(name.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(name.hashCode());
+		}
+	}
+
+	/**
+	 * Creates a journal kept in the given file.
+	 * @param file the journal file
+	 * @param size the expected size of the artifact
+	 */
+	public PartialDownload(File file, long size) {
+		this.file = file;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of bytes already journaled, which is where the download resumes.
+	 */
+	public long getLength() {
+		long length = file.length();
+		if (length >= size) {
+			// either complete but never acknowledged, or not what we expect
+			file.delete();
+			return 0;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the journaled bytes to the given destination.
+	 * @return the status of the copy
+	 */
+	public IStatus replay(OutputStream destination) {
+		try {
+			InputStream input = new BufferedInputStream(new FileInputStream(file));
+			try {
+				byte[] buffer = new byte[16 * 1024];
+				int read;
+				while ((read = input.read(buffer)) != -1)
+					destination.write(buffer, 0, read);
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			discard();
+			return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.error_copying_local_file, file.getAbsolutePath()), e);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Returns a stream that writes to the given destination and appends to the journal.
+	 */
+	public OutputStream journal(OutputStream destination) {
+		try {
+			file.getParentFile().mkdirs();
+			journal = new BufferedOutputStream(new FileOutputStream(file, true));
+		} catch (IOException e) {
+			// the download goes on without a journal
+			failed = true;
+		}
+		received = 0;
+		return new JournalOutputStream(destination);
+	}
+
+	/**
+	 * Returns the number of bytes written to the stream returned by the last call to
+	 * {@link #journal(OutputStream)}.
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Returns the expected size of the artifact.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	void record(byte[] b, int off, int len) {
+		received += len;
+		if (failed || journal == null)
+			return;
+		try {
+			journal.write(b, off, len);
+		} catch (IOException e) {
+			failed = true;
+		}
+	}
+
+	/**
+	 * Closes the journal once a download attempt is over. The journal is deleted if the
+	 * download succeeded, and kept for the next attempt otherwise.
+	 * @param status the status of the attempt
+	 */
+	public void finish(IStatus status) {
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				failed = true;
+			}
+			journal = null;
+		}
+		if (status.isOK() || failed)
+			discard();
+	}
+
+	/**
+	 * Deletes the journal, so that the next attempt starts from the beginning.
+	 */
+	public void discard() {
+		file.delete();
+	}
+}
@@ -20,6 +20,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
@@ -72,6 +73,27 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	public static final String PROP_FORCE_THREADING = "eclipse.p2.force.threading"; //$NON-NLS-1$
 
+	/**
+	 * The key for a boolean property controlling whether repositories save their descriptors
+	 * in write-behind mode by default, see {@link #setWriteBehind(boolean)}.
+	 */
+	public static final String PROP_WRITE_BEHIND = "eclipse.p2.artifacts.writeBehind"; //$NON-NLS-1$
+
+	/**
+	 * The key for an integer property controlling how many descriptor changes are
+	 * made in write-behind mode before the repository is saved.
+	 */
+	public static final String PROP_WRITE_BEHIND_CHANGES = "eclipse.p2.artifacts.writeBehind.changes"; //$NON-NLS-1$
+
+	/**
+	 * The key for an integer property controlling how many milliseconds pass between
+	 * the first unsaved descriptor change in write-behind mode and the save of the repository.
+	 */
+	public static final String PROP_WRITE_BEHIND_DELAY = "eclipse.p2.artifacts.writeBehind.delay"; //$NON-NLS-1$
+
+	private static final int WRITE_BEHIND_CHANGES = getIntProperty(PROP_WRITE_BEHIND_CHANGES, 1000);
+	private static final int WRITE_BEHIND_DELAY = getIntProperty(PROP_WRITE_BEHIND_DELAY, 5000);
+
 	/**
 	 * Location of the repository lock
 	 */
@@ -85,14 +107,14 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	/**
 	 * Does this instance of the repository currently hold a lock
 	 */
-	private boolean holdsLock = false;
+	private volatile boolean holdsLock = false;
 	/**
 	 * Does this instance of the repository can be locked.
 	 * It will be initialized when initializing the location for repository
 	 */
-	private Boolean canLock = null;
+	private volatile Boolean canLock = null;
 
-	private long cacheTimestamp = 0l;
+	private volatile long cacheTimestamp = 0l;
 
 	public class ArtifactOutputStream extends OutputStream implements IStateful {
 		private boolean closed;
@@ -235,26 +257,54 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	static final private Integer REPOSITORY_VERSION = new Integer(1);
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String TEMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final String OLD_EXTENSION = ".old"; //$NON-NLS-1$
 	protected Set<SimpleArtifactDescriptor> artifactDescriptors = new HashSet<SimpleArtifactDescriptor>();
 	/**
 	 * Map<IArtifactKey,List<IArtifactDescriptor>> containing the index of artifacts in the repository.
+	 * The map is read without holding the repository monitor. Writers hold the monitor and replace
+	 * the descriptor list of a key instead of changing it, so the lists are never modified once
+	 * they are in the map.
 	 */
-	private Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new HashMap<IArtifactKey, List<IArtifactDescriptor>>();
-	private transient BlobStore blobStore;
-	transient private Mapper mapper = new Mapper();
+	private volatile Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new ConcurrentHashMap<IArtifactKey, List<IArtifactDescriptor>>();
+	private transient volatile BlobStore blobStore;
+	transient private volatile Mapper mapper = new Mapper();
 	private KeyIndex keyIndex;
-	private boolean snapshotNeeded = false;
 
 	static final private String PUBLISH_PACK_FILES_AS_SIBLINGS = "publishPackFilesAsSiblings"; //$NON-NLS-1$
 
 	private static final int DEFAULT_MAX_THREADS = 4;
 
-	protected String[][] mappingRules = DEFAULT_MAPPING_RULES;
+	protected volatile String[][] mappingRules = DEFAULT_MAPPING_RULES;
 
 	private MirrorSelector mirrors;
 
 	private boolean disableSave = false;
 
+	private boolean writeBehind = Boolean.valueOf(Activator.getContext().getProperty(PROP_WRITE_BEHIND)).booleanValue();
+	private int writeBehindChanges = WRITE_BEHIND_CHANGES;
+	private long writeBehindDelay = WRITE_BEHIND_DELAY;
+	// the number of descriptor changes not saved yet in write-behind mode
+	private int unsavedChanges = 0;
+	private Job flushJob;
+
+	/**
+	 * The repositories with descriptor changes not saved yet in write-behind mode. Repositories are
+	 * equal when their locations are, so the instances are kept by identity.
+	 */
+	private static final Map<SimpleArtifactRepository, Boolean> unflushedRepositories = new IdentityHashMap<SimpleArtifactRepository, Boolean>();
+
+	private static int getIntProperty(String key, int defaultValue) {
+		try {
+			String value = Activator.getContext().getProperty(key);
+			if (value != null)
+				return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			// use the default
+		}
+		return defaultValue;
+	}
+
 	static void delete(File toDelete) {
 		if (toDelete.isDirectory()) {
 			File[] children = toDelete.listFiles();
@@ -292,41 +342,58 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private synchronized void mapDescriptor(IArtifactDescriptor descriptor) {
 		IArtifactKey key = descriptor.getArtifactKey();
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-		}
 		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
 		if (descriptors == null) {
-			descriptors = new ArrayList<IArtifactDescriptor>();
-			artifactMap.put(key, descriptors);
+			artifactMap.put(key, Collections.singletonList(descriptor));
+		} else {
+			List<IArtifactDescriptor> newDescriptors = new ArrayList<IArtifactDescriptor>(descriptors.size() + 1);
+			newDescriptors.addAll(descriptors);
+			newDescriptors.add(descriptor);
+			artifactMap.put(key, Collections.unmodifiableList(newDescriptors));
 		}
-		descriptors.add(descriptor);
 		keyIndex = null;
 	}
 
 	private synchronized void unmapDescriptor(IArtifactDescriptor descriptor) {
 		IArtifactKey key = descriptor.getArtifactKey();
 		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
-		if (descriptors == null)
+		if (descriptors == null || !descriptors.contains(descriptor))
 			return;
 
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-			descriptors = artifactMap.get(key);
-		}
-		descriptors.remove(descriptor);
-		if (descriptors.isEmpty())
+		if (descriptors.size() == 1) {
 			artifactMap.remove(key);
+		} else {
+			List<IArtifactDescriptor> newDescriptors = new ArrayList<IArtifactDescriptor>(descriptors);
+			newDescriptors.remove(descriptor);
+			artifactMap.put(key, Collections.unmodifiableList(newDescriptors));
+		}
 		keyIndex = null;
 	}
 
-	private void cloneAritfactMap() {
-		HashMap<IArtifactKey, List<IArtifactDescriptor>> clone = new HashMap<IArtifactKey, List<IArtifactDescriptor>>(artifactMap.size());
-		for (Entry<IArtifactKey, List<IArtifactDescriptor>> entry : artifactMap.entrySet())
-			clone.put(entry.getKey(), new ArrayList<IArtifactDescriptor>(entry.getValue()));
-		artifactMap = clone;
+	private List<IArtifactDescriptor> getDescriptorList(IArtifactKey key) {
+		// the concurrent map does not accept null keys
+		return key == null ? null : artifactMap.get(key);
+	}
+
+	/**
+	 * Reloads the repository if the file on disk changed since it was last read. Unlike
+	 * {@link #load(IProgressMonitor)}, this only takes the repository monitor when there is
+	 * something to reload, so lookups running at the same time do not wait for each other.
+	 */
+	private void loadIfModified() {
+		if (holdsLock() || !URIUtil.isFileURI(getLocation()))
+			return;
+		try {
+			File localFile = new SimpleArtifactRepositoryFactory().getLocalFile(getLocation(), new NullProgressMonitor());
+			if (localFile.lastModified() <= cacheTimestamp)
+				return;
+		} catch (Exception e) {
+			// doLoad would not load it either
+			return;
+		}
+		synchronized (this) {
+			load(new NullProgressMonitor());
+		}
 	}
 
 	public SimpleArtifactRepository(IProvisioningAgent agent, String repositoryName, URI location, Map<String, String> properties) {
@@ -377,7 +444,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			SimpleArtifactDescriptor internalDescriptor = createInternalDescriptor(toAdd);
 			artifactDescriptors.add(internalDescriptor);
 			mapDescriptor(internalDescriptor);
-			save();
+			descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -425,14 +492,14 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				artifactDescriptors.add(internalDescriptor);
 				mapDescriptor(internalDescriptor);
 			}
-			save();
+			descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
 		}
 	}
 
-	private synchronized OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+	private OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		ArrayList<ProcessingStep> steps = new ArrayList<ProcessingStep>();
 		steps.add(new SignatureVerifier());
 		if (MD5_ARTIFACT_CHECK_ENABLED && descriptor.getProperty(IArtifactDescriptor.ARTIFACT_MD5) != null)
@@ -482,19 +549,19 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return buffer.toString();
 	}
 
-	public synchronized boolean contains(IArtifactDescriptor descriptor) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
+	public boolean contains(IArtifactDescriptor descriptor) {
+		loadIfModified();
+		// equal descriptors have the same key, so only the descriptors of the key need to be checked
+		List<IArtifactDescriptor> descriptors = getDescriptorList(descriptor.getArtifactKey());
+		if (descriptors == null)
+			return false;
 		SimpleArtifactDescriptor simpleDescriptor = createInternalDescriptor(descriptor);
-		return artifactDescriptors.contains(simpleDescriptor);
+		return descriptors.contains(simpleDescriptor);
 	}
 
-	public synchronized boolean contains(IArtifactKey key) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
-		return artifactMap.containsKey(key);
+	public boolean contains(IArtifactKey key) {
+		loadIfModified();
+		return getDescriptorList(key) != null;
 	}
 
 	public synchronized URI createLocation(ArtifactDescriptor descriptor) {
@@ -587,8 +654,17 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		URI baseLocation = getLocation(descriptor);
 		if (baseLocation == null)
 			return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.no_location, descriptor));
+		// remote artifacts may already have been downloaded by another repository or agent
+		ArtifactCache cache = isLocal() ? null : ArtifactCache.getCache(getProvisioningAgent());
+		if (cache != null) {
+			IStatus cached = cache.copyTo(descriptor, destination, monitor);
+			// a broken entry is removed and reported with CODE_RETRY, so the caller starts over
+			// with a fresh destination and downloads the artifact
+			if (cached != null)
+				return reportStatus(descriptor, destination, cached);
+		}
 		URI mirrorLocation = getMirror(baseLocation, monitor);
-		IStatus status = downloadArtifact(descriptor, mirrorLocation, destination, monitor);
+		IStatus status = downloadArtifact(descriptor, mirrorLocation, destination, cache, monitor);
 		IStatus result = reportStatus(descriptor, destination, status);
 		// if the original download went reasonably but the reportStatus found some issues
 		// (e..g, in the processing steps/validators) then mark the mirror as bad and return
@@ -660,13 +736,22 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return status;
 	}
 
-	private IStatus downloadArtifact(IArtifactDescriptor descriptor, URI mirrorLocation, OutputStream destination, IProgressMonitor monitor) {
+	private IStatus downloadArtifact(IArtifactDescriptor descriptor, URI mirrorLocation, OutputStream destination, ArtifactCache cache, IProgressMonitor monitor) {
 		//Bug 340352: transport has performance overhead of 100ms and more, bypass it for local copies
 		IStatus result = Status.OK_STATUS;
 		if (mirrorLocation.getScheme().equals(SimpleArtifactRepositoryFactory.PROTOCOL_FILE))
 			result = copyFileToStream(new File(mirrorLocation), destination, monitor);
-		else
-			result = getTransport().download(mirrorLocation, destination, monitor);
+		else {
+			ArtifactCache.CacheOutputStream recorder = cache == null ? null : cache.record(descriptor, destination);
+			OutputStream target = recorder == null ? destination : recorder;
+			PartialDownload partial = PartialDownload.open(getProvisioningAgent(), descriptor);
+			if (partial == null)
+				result = getTransport().download(mirrorLocation, target, monitor);
+			else
+				result = resumeDownload(partial, mirrorLocation, target, monitor);
+			if (recorder != null)
+				recorder.commit(result);
+		}
 		if (mirrors != null)
 			mirrors.reportResult(mirrorLocation.toString(), result);
 		if (result.isOK() || result.getSeverity() == IStatus.CANCEL)
@@ -682,6 +767,38 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Downloads an artifact, starting after the bytes journaled by a previous attempt if any.
+	 */
+	private IStatus resumeDownload(PartialDownload partial, URI mirrorLocation, OutputStream destination, IProgressMonitor monitor) {
+		long start = partial.getLength();
+		if (start > 0) {
+			IStatus replayed = partial.replay(destination);
+			if (!replayed.isOK())
+				return replayed;
+		}
+		IStatus result = null;
+		try {
+			result = getTransport().download(mirrorLocation, partial.journal(destination), start > 0 ? start : -1, monitor);
+		} finally {
+			// the transport throws when canceled, keep what was received in that case
+			partial.finish(result == null ? Status.CANCEL_STATUS : result);
+		}
+		if (start > 0) {
+			// a server ignoring the range sends the whole artifact again, which corrupts the destination
+			long expected = partial.getSize() - start;
+			long received = partial.getReceived();
+			if (received > expected || (result.isOK() && received != expected)) {
+				partial.discard();
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.error_resuming_download, new Object[] {mirrorLocation, Long.toString(received), Long.toString(expected)}));
+			}
+			// the server may not support ranges, start over next time
+			if (result.getSeverity() == IStatus.ERROR)
+				partial.discard();
+		}
+		return result;
+	}
+
 	/**
 	 * Returns an equivalent mirror location for the given artifact location.
 	 * @param baseLocation The location of the artifact in this repository
@@ -724,20 +841,15 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	public IStatus getRawArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
+		loadIfModified();
 		if (monitor.isCanceled())
 			return Status.CANCEL_STATUS;
 		return downloadArtifact(descriptor, destination, monitor);
 	}
 
-	public synchronized IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
-
-		List<IArtifactDescriptor> result = artifactMap.get(key);
+	public IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
+		loadIfModified();
+		List<IArtifactDescriptor> result = getDescriptorList(key);
 		if (result == null)
 			return new IArtifactDescriptor[0];
 
@@ -759,9 +871,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	public IStatus getArtifacts(IArtifactRequest[] requests, IProgressMonitor monitor) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
+		loadIfModified();
 		if (monitor.isCanceled())
 			return Status.CANCEL_STATUS;
 
@@ -811,11 +921,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			return overallStatus;
 	}
 
-	public synchronized IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
-		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
+	public IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
+		loadIfModified();
+		List<IArtifactDescriptor> descriptors = getDescriptorList(key);
 		if (descriptors == null)
 			return null;
 
@@ -852,7 +960,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return mapper.map(getLocation(), key.getClassifier(), key.getId(), key.getVersion().toString(), descriptor.getProperty(IArtifactDescriptor.FORMAT));
 	}
 
-	public synchronized URI getLocation(IArtifactDescriptor descriptor) {
+	public URI getLocation(IArtifactDescriptor descriptor) {
 		// if the artifact has a uuid then use it
 		String uuid = descriptor.getProperty(ARTIFACT_UUID);
 		if (uuid != null)
@@ -993,10 +1101,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, msg, e));
 	}
 
-	public synchronized String[][] getRules() {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
+	public String[][] getRules() {
+		loadIfModified();
 		return mappingRules;
 	}
 
@@ -1031,8 +1137,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	private synchronized void initializeMapper() {
-		mapper = new Mapper();
-		mapper.initialize(Activator.getContext(), mappingRules);
+		Mapper newMapper = new Mapper();
+		newMapper.initialize(Activator.getContext(), mappingRules);
+		mapper = newMapper;
 	}
 
 	private boolean isFolderBased(IArtifactDescriptor descriptor) {
@@ -1083,7 +1190,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			for (int i = 0; i < toRemove.length; i++)
 				changed |= doRemoveArtifact(toRemove[i]);
 			if (changed)
-				save();
+				descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1100,7 +1207,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			}
 
 			if (doRemoveArtifact(descriptor))
-				save();
+				descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1120,7 +1227,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			for (IArtifactDescriptor descriptor : descriptors)
 				changed |= doRemoveArtifact(descriptor);
 			if (changed)
-				save();
+				descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1143,7 +1250,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 					changed |= doRemoveArtifact(descriptor);
 			}
 			if (changed)
-				save();
+				descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1164,7 +1271,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			for (int i = 0; i < toRemove.length; i++)
 				changed |= doRemoveArtifact(toRemove[i]);
 			if (changed)
-				save();
+				descriptorsChanged();
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1222,39 +1329,54 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	private void save(boolean compress) {
 		assertModifiable();
 		OutputStream os = null;
+		File tempFile = null;
 		try {
 			try {
-				URI actualLocation = getActualLocation(getLocation(), false);
-				File artifactsFile = URIUtil.toFile(actualLocation);
+				File artifactsFile = URIUtil.toFile(getActualLocation(getLocation(), false));
 				File jarFile = URIUtil.toFile(getActualLocation(getLocation(), true));
+				File targetFile = compress ? jarFile : artifactsFile;
+				if (!targetFile.exists()) {
+					// create parent folders
+					mkdirs(targetFile.getParentFile());
+				}
+				// write next to the index and rename, so a crash never leaves a truncated index behind
+				tempFile = new File(targetFile.getParentFile(), targetFile.getName() + TEMP_EXTENSION);
 				if (!compress) {
-					if (jarFile.exists()) {
-						jarFile.delete();
-					}
-					if (!artifactsFile.exists()) {
-						// create parent folders
-						mkdirs(artifactsFile.getParentFile());
-					}
-					os = new FileOutputStream(artifactsFile);
+					os = new FileOutputStream(tempFile);
 				} else {
-					if (artifactsFile.exists()) {
-						artifactsFile.delete();
-					}
-					if (!jarFile.exists()) {
-						mkdirs(jarFile.getParentFile());
-						jarFile.createNewFile();
-					}
-					os = new JarOutputStream(new FileOutputStream(jarFile));
+					os = new JarOutputStream(new FileOutputStream(tempFile));
 					((JarOutputStream) os).putNextEntry(new JarEntry(new Path(artifactsFile.getAbsolutePath()).lastSegment()));
 				}
 				super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
 				new SimpleArtifactRepositoryIO(getProvisioningAgent()).write(this, os);
+				os.close();
+				os = null;
+				if (!tempFile.renameTo(targetFile)) {
+					// renaming over an existing file fails on some platforms, move the old index out of
+					// the way first and keep it until the new one is in place, see restoreInterruptedSave
+					File oldFile = new File(targetFile.getParentFile(), targetFile.getName() + OLD_EXTENSION);
+					oldFile.delete();
+					if (!targetFile.renameTo(oldFile))
+						throw new IOException("Unable to rename " + targetFile + " to " + oldFile); //$NON-NLS-1$ //$NON-NLS-2$
+					if (!tempFile.renameTo(targetFile)) {
+						oldFile.renameTo(targetFile);
+						throw new IOException("Unable to rename " + tempFile + " to " + targetFile); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+					oldFile.delete();
+				}
+				tempFile = null;
+				File otherFile = compress ? artifactsFile : jarFile;
+				if (otherFile.exists())
+					otherFile.delete();
+				setUnsavedChanges(0);
 			} catch (IOException e) {
 				// TODO proper exception handling
 				e.printStackTrace();
 			} finally {
 				if (os != null)
 					os.close();
+				if (tempFile != null)
+					tempFile.delete();
 				updateTimestamp();
 			}
 		} catch (IOException e) {
@@ -1262,6 +1384,138 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		}
 	}
 
+	/*
+	 * Saves the repository after its descriptors changed. In write-behind mode the changes are only
+	 * counted, the repository is saved once enough of them accumulated or when the flush job runs.
+	 * The flush job is scheduled again when it is not pending, as it may have given up on the lock.
+	 * Must be called while holding the repository monitor.
+	 */
+	private void descriptorsChanged() {
+		if (!writeBehind || disableSave) {
+			save();
+			return;
+		}
+		setUnsavedChanges(unsavedChanges + 1);
+		if (unsavedChanges >= writeBehindChanges)
+			save();
+		else if (getFlushJob().getState() == Job.NONE)
+			getFlushJob().schedule(writeBehindDelay);
+	}
+
+	private void setUnsavedChanges(int changes) {
+		if ((unsavedChanges == 0) != (changes == 0)) {
+			synchronized (unflushedRepositories) {
+				if (changes == 0)
+					unflushedRepositories.remove(this);
+				else
+					unflushedRepositories.put(this, Boolean.TRUE);
+			}
+		}
+		unsavedChanges = changes;
+	}
+
+	/**
+	 * Saves the descriptor changes not saved yet by the repositories in write-behind mode.
+	 * @param agent the agent of the repositories to save, or <code>null</code> for all repositories
+	 */
+	public static void flushAll(IProvisioningAgent agent) {
+		SimpleArtifactRepository[] repositories;
+		synchronized (unflushedRepositories) {
+			repositories = unflushedRepositories.keySet().toArray(new SimpleArtifactRepository[unflushedRepositories.size()]);
+		}
+		for (int i = 0; i < repositories.length; i++) {
+			if (agent == null || repositories[i].getProvisioningAgent() == agent)
+				repositories[i].flush();
+		}
+	}
+
+	/**
+	 * Puts back the index of a local repository when the process stopped while a save was
+	 * replacing it, see {@link #save(boolean)}. The new index is complete once the old one has
+	 * been moved out of the way.
+	 * @param location the location of the repository
+	 */
+	static void restoreInterruptedSave(URI location) {
+		File[] indexFiles = new File[] {URIUtil.toFile(getActualLocation(location, true)), URIUtil.toFile(getActualLocation(location, false))};
+		for (int i = 0; i < indexFiles.length; i++) {
+			File indexFile = indexFiles[i];
+			if (indexFile == null || indexFile.exists())
+				continue;
+			File oldFile = new File(indexFile.getParentFile(), indexFile.getName() + OLD_EXTENSION);
+			if (!oldFile.exists())
+				continue;
+			File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + TEMP_EXTENSION);
+			if (tempFile.renameTo(indexFile))
+				oldFile.delete();
+			else
+				oldFile.renameTo(indexFile);
+		}
+	}
+
+	private synchronized Job getFlushJob() {
+		if (flushJob == null) {
+			flushJob = new Job(Messages.sar_flushJobName) {
+				protected IStatus run(IProgressMonitor monitor) {
+					flush();
+					return Status.OK_STATUS;
+				}
+			};
+			flushJob.setSystem(true);
+		}
+		return flushJob;
+	}
+
+	/**
+	 * Sets whether descriptor changes are written behind. Adding or removing descriptors then
+	 * no longer saves the repository each time; it is saved once {@link #PROP_WRITE_BEHIND_CHANGES}
+	 * changes accumulated, {@link #PROP_WRITE_BEHIND_DELAY} milliseconds after the first unsaved
+	 * change, or when {@link #flush()} is called. While changes are unsaved, this instance does
+	 * not reload the repository from disk.
+	 * @param writeBehind <code>true</code> to write descriptor changes behind, <code>false</code>
+	 * to save the repository on each change
+	 */
+	public synchronized void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+		if (!writeBehind)
+			flush();
+	}
+
+	/**
+	 * Sets when descriptor changes written behind are saved, overriding the values of
+	 * {@link #PROP_WRITE_BEHIND_CHANGES} and {@link #PROP_WRITE_BEHIND_DELAY} for this repository.
+	 * @param changes the number of changes after which the repository is saved
+	 * @param delay the number of milliseconds between the first unsaved change and the save
+	 */
+	public synchronized void setWriteBehindLimits(int changes, long delay) {
+		writeBehindChanges = Math.max(1, changes);
+		writeBehindDelay = Math.max(0, delay);
+	}
+
+	/**
+	 * Saves the descriptor changes not saved yet in write-behind mode. When the repository
+	 * cannot be locked, the changes are kept and saved later by the flush job.
+	 */
+	public synchronized void flush() {
+		if (unsavedChanges == 0)
+			return;
+		boolean lockAcquired = false;
+		try {
+			if (canLock()) {
+				// the unsaved changes are newer than what is on disk, do not load it
+				lockAcquired = lockAndLoad(true, new NullProgressMonitor());
+				if (!lockAcquired) {
+					// keep the changes and try again later
+					getFlushJob().schedule(writeBehindDelay);
+					return;
+				}
+			}
+			save();
+		} finally {
+			if (lockAcquired)
+				unlock();
+		}
+	}
+
 	private String doSetProperty(String key, String newValue, IProgressMonitor monitor, boolean save) {
 		String oldValue = super.setProperty(key, newValue, new NullProgressMonitor());
 		if (oldValue == newValue || (oldValue != null && oldValue.equals(newValue)))
@@ -1298,6 +1552,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	public synchronized void setRules(String[][] rules) {
 		mappingRules = rules;
+		// the mapper remembers the locations it computed with the old rules
+		initializeMapper();
 	}
 
 	public String toString() {
@@ -1307,11 +1563,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	public IQueryable<IArtifactDescriptor> descriptorQueryable() {
 		return new IQueryable<IArtifactDescriptor>() {
 			public IQueryResult<IArtifactDescriptor> query(IQuery<IArtifactDescriptor> query, IProgressMonitor monitor) {
-				synchronized (SimpleArtifactRepository.this) {
-					snapshotNeeded = true;
-					Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
-					return query.perform(new CompoundIterator<IArtifactDescriptor>(descs.iterator()));
-				}
+				Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
+				return query.perform(new CompoundIterator<IArtifactDescriptor>(descs.iterator()));
 			}
 		};
 	}
@@ -1320,11 +1573,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return IndexProvider.query(this, query, monitor);
 	}
 
-	public synchronized Iterator<IArtifactKey> everything() {
-		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
-			load(new NullProgressMonitor());
-		}
-		snapshotNeeded = true;
+	public Iterator<IArtifactKey> everything() {
+		loadIfModified();
 		return artifactMap.keySet().iterator();
 	}
 
@@ -1371,7 +1621,6 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			load(new NullProgressMonitor());
 		}
 		if (ArtifactKey.MEMBER_ID.equals(memberName)) {
-			snapshotNeeded = true;
 			if (keyIndex == null)
 				keyIndex = new KeyIndex(artifactMap.keySet());
 			return keyIndex;
@@ -1529,6 +1778,11 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 * @param monitor
 	 */
 	private void doLoad(IProgressMonitor monitor) {
+		// in write-behind mode the unsaved changes of this instance are newer than what is on disk
+		if (unsavedChanges > 0) {
+			monitor.done();
+			return;
+		}
 
 		SimpleArtifactRepositoryFactory repositoryFactory = new SimpleArtifactRepositoryFactory();
 		IArtifactRepository repositoryOnDisk = null;
@@ -47,6 +47,7 @@ public class SimpleArtifactRepositoryFactory extends ArtifactRepositoryFactory {
 		URI xmlLocation = SimpleArtifactRepository.getActualLocation(location, false);
 		// If the repository is local, we can return the repository file directly
 		if (PROTOCOL_FILE.equals(xmlLocation.getScheme())) {
+			SimpleArtifactRepository.restoreInterruptedSave(location);
 			//look for a compressed local file
 			localFile = URIUtil.toFile(jarLocation);
 			if (localFile.exists())
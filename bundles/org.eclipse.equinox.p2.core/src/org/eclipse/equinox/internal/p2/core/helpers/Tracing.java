@@ -24,6 +24,7 @@ public class Tracing {
 	public static boolean DEBUG = false;
 
 	//debug constants
+	public static boolean DEBUG_BACKUP_STORE = false;
 	public static boolean DEBUG_GENERATOR_PARSING = false;
 	public static boolean DEBUG_INSTALL_REGISTRY = false;
 	public static boolean DEBUG_METADATA_PARSING = false;
@@ -46,6 +47,7 @@ public class Tracing {
 			DEBUG = options.getBooleanOption(Activator.ID + "/debug", false); //$NON-NLS-1$
 			if (DEBUG) {
 				DEBUG_EVENTS_CLIENT = options.getBooleanOption(Activator.ID + "/events/client", false); //$NON-NLS-1$
+				DEBUG_BACKUP_STORE = options.getBooleanOption(Activator.ID + "/engine/backupstore", false); //$NON-NLS-1$
 				DEBUG_GENERATOR_PARSING = options.getBooleanOption(Activator.ID + "/generator/parsing", false); //$NON-NLS-1$
 				DEBUG_INSTALL_REGISTRY = options.getBooleanOption(Activator.ID + "/engine/installregistry", false); //$NON-NLS-1$
 				DEBUG_METADATA_PARSING = options.getBooleanOption(Activator.ID + "/metadata/parsing", false); //$NON-NLS-1$
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * An object pool backed by weak references that may be used by several threads at the
+ * same time.  Objects stored in this pool will be garbage collected once all strong
+ * references to the objects are broken.
+ * <p>
+ * The pool is split into segments that are locked independently, so threads adding
+ * objects that fall in different segments do not wait for each other.  Unlike
+ * {@link WeakPool}, each pooled object costs a single weak reference.
+ * </p><p>
+ * The pool keeps count of the objects added to it and of how many of them were replaced
+ * by an equal object already in the pool.
+ * </p>
+ * @since 2.4
+ */
+public class ConcurrentPool<T> implements IPool<T> {
+	private static final int DEFAULT_SEGMENTS = 16;
+	private static final int MAX_SEGMENTS = 1 << 16;
+
+	private final Segment<T>[] segments;
+	private final int segmentShift;
+
+	/**
+	 * Creates a pool with the default number of segments.
+	 */
+	public ConcurrentPool() {
+		this(DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * Creates a pool with at least the given number of segments.
+	 * @param concurrencyLevel the expected number of threads adding objects at the same time
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentPool(int concurrencyLevel) {
+		int bits = 0;
+		while ((1 << bits) < concurrencyLevel && (1 << bits) < MAX_SEGMENTS)
+			bits++;
+		segments = new Segment[1 << bits];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment<T>();
+		// the segment is chosen from the high bits, the table index within it from the low bits
+		segmentShift = 32 - bits;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.equinox.p2.core.IPool#add(T)
+	 */
+	public T add(T newObject) {
+		if (newObject == null) {
+			return null;
+		}
+		int hash = spread(newObject.hashCode());
+		return segmentFor(hash).add(newObject, hash);
+	}
+
+	private Segment<T> segmentFor(int hash) {
+		return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+	}
+
+	private static int spread(int hash) {
+		// the same supplemental hash as java.util.HashMap, to cope with poor hash codes
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return hash ^ (hash >>> 7) ^ (hash >>> 4);
+	}
+
+	/**
+	 * Returns the number of objects currently held by this pool.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < segments.length; i++)
+			size += segments[i].size();
+		return size;
+	}
+
+	/**
+	 * Returns the number of non-<code>null</code> objects added to this pool.
+	 */
+	public long getAddCount() {
+		long count = 0;
+		for (int i = 0; i < segments.length; i++)
+			count += segments[i].getAddCount();
+		return count;
+	}
+
+	/**
+	 * Returns the number of objects added to this pool for which an equal object
+	 * already in the pool was returned.
+	 */
+	public long getSharedCount() {
+		long count = 0;
+		for (int i = 0; i < segments.length; i++)
+			count += segments[i].getSharedCount();
+		return count;
+	}
+
+	/**
+	 * Returns the fraction of the added objects that were replaced by a shared object,
+	 * between 0 and 1.
+	 */
+	public double getSharingRatio() {
+		long added = getAddCount();
+		return added == 0 ? 0 : (double) getSharedCount() / added;
+	}
+
+	public String toString() {
+		return "ConcurrentPool(size=" + size() + ", added=" + getAddCount() + ", shared=" + getSharedCount() + ')'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/*
+	 * The pooled object is only referenced by its entry, which is itself the weak reference.
+	 */
+	private static final class Entry<T> extends WeakReference<T> {
+		final int hash;
+		Entry<T> next;
+
+		Entry(T referent, int hash, ReferenceQueue<T> queue, Entry<T> next) {
+			super(referent, queue);
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	private static final class Segment<T> {
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final ReferenceQueue<T> queue = new ReferenceQueue<T>();
+		private Entry<T>[] table = newTable(INITIAL_CAPACITY);
+		private int count;
+		private long added;
+		private long shared;
+
+		@SuppressWarnings("unchecked")
+		private static <T> Entry<T>[] newTable(int capacity) {
+			return new Entry[capacity];
+		}
+
+		synchronized T add(T object, int hash) {
+			expungeCollected();
+			added++;
+			int index = hash & (table.length - 1);
+			for (Entry<T> entry = table[index]; entry != null; entry = entry.next) {
+				if (entry.hash == hash) {
+					T existing = entry.get();
+					if (existing != null && existing.equals(object)) {
+						shared++;
+						return existing;
+					}
+				}
+			}
+			if (count >= table.length - (table.length >>> 2)) {
+				resize();
+				index = hash & (table.length - 1);
+			}
+			table[index] = new Entry<T>(object, hash, queue, table[index]);
+			count++;
+			return object;
+		}
+
+		synchronized int size() {
+			expungeCollected();
+			return count;
+		}
+
+		synchronized long getAddCount() {
+			return added;
+		}
+
+		synchronized long getSharedCount() {
+			return shared;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void expungeCollected() {
+			Entry<T> collected;
+			while ((collected = (Entry<T>) queue.poll()) != null) {
+				int index = collected.hash & (table.length - 1);
+				Entry<T> previous = null;
+				for (Entry<T> entry = table[index]; entry != null; entry = entry.next) {
+					if (entry == collected) {
+						if (previous == null)
+							table[index] = entry.next;
+						else
+							previous.next = entry.next;
+						count--;
+						break;
+					}
+					previous = entry;
+				}
+			}
+		}
+
+		private void resize() {
+			Entry<T>[] newTable = newTable(table.length * 2);
+			for (int i = 0; i < table.length; i++) {
+				Entry<T> entry = table[i];
+				while (entry != null) {
+					Entry<T> next = entry.next;
+					if (entry.get() == null) {
+						// left for expungeCollected, which no longer finds it in the table
+						entry.next = null;
+						count--;
+					} else {
+						int index = entry.hash & (newTable.length - 1);
+						entry.next = newTable[index];
+						newTable[index] = entry;
+					}
+					entry = next;
+				}
+			}
+			table = newTable;
+		}
+	}
+}
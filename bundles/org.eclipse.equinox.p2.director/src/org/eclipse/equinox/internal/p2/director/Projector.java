@@ -82,6 +82,13 @@ public class Projector {
 	private boolean emptyBecauseFiltered;
 	private boolean userDefinedFunction;
 
+	//Incremental encoding
+	private Map<String, String> contextProperties;
+	private EncodingState previousEncoding;
+	private Map<IInstallableUnit, EncodedIU> encodedIUs; //null when the encoding is not being recorded
+	private Map<IInstallableUnit, IInstallableUnit> encodedUnits;
+	private EncodedIU recording; //The IU currently being recorded, if any
+
 	static class AbstractVariable {
 		//		private String name;
 
@@ -99,6 +106,75 @@ public class Projector {
 		}
 	}
 
+	/**
+	 * A constraint handed to the dependency helper while encoding an IU.
+	 */
+	static final class Constraint {
+		static final int IMPLIES = 0;
+		static final int IMPLIES_NOT = 1;
+		static final int FALSE = 2;
+
+		final int kind;
+		final Object[] left;
+		final Object[] right;
+		final Explanation explanation;
+
+		Constraint(int kind, Object[] left, Object[] right, Explanation explanation) {
+			this.kind = kind;
+			this.left = left;
+			this.right = right;
+			this.explanation = explanation;
+		}
+	}
+
+	/**
+	 * Everything that {@link Projector#processIU(IInstallableUnit, boolean)} produced for one IU. 
+	 * It can be replayed into a new solver as long as none of the requirements that were looked up
+	 * while encoding the IU would now return different matches.
+	 */
+	static final class EncodedIU {
+		final IInstallableUnit iu;
+		final List<Constraint> constraints = new ArrayList<Constraint>();
+		final List<IRequirement> queriedRequirements = new ArrayList<IRequirement>();
+		final List<List<IInstallableUnit>> queriedMatches = new ArrayList<List<IInstallableUnit>>();
+		final List<Object[]> nonGreedyProviders = new ArrayList<Object[]>();
+		final List<Object[]> hostMatches = new ArrayList<Object[]>();
+		final List<IStatus> warnings = new ArrayList<IStatus>();
+		List<AbstractVariable> abstractVariables;
+		List<AbstractVariable> optionalAbstractRequirements;
+
+		EncodedIU(IInstallableUnit iu) {
+			this.iu = iu;
+		}
+	}
+
+	/**
+	 * The encoding of a problem, kept by the planner so that a later request against the
+	 * same profile only needs to encode the IUs affected by the change.
+	 * @see Projector#setPreviousEncoding(EncodingState)
+	 */
+	public static final class EncodingState {
+		final Map<String, String> contextProperties;
+		final boolean considerMetaRequirements;
+		final Set<IInstallableUnit> nonGreedyIUs;
+		final Map<IInstallableUnit, IInstallableUnit> units;
+		final Map<IInstallableUnit, EncodedIU> encodedIUs;
+		final Map<IInstallableUnit, AbstractVariable> nonGreedyVariables;
+
+		EncodingState(Map<String, String> contextProperties, boolean considerMetaRequirements, Set<IInstallableUnit> nonGreedyIUs, Map<IInstallableUnit, IInstallableUnit> units, Map<IInstallableUnit, EncodedIU> encodedIUs, Map<IInstallableUnit, AbstractVariable> nonGreedyVariables) {
+			this.contextProperties = contextProperties;
+			this.considerMetaRequirements = considerMetaRequirements;
+			this.nonGreedyIUs = nonGreedyIUs;
+			this.units = units;
+			this.encodedIUs = encodedIUs;
+			this.nonGreedyVariables = nonGreedyVariables;
+		}
+
+		boolean isCompatible(Map<String, String> context, boolean metaRequirements, Set<IInstallableUnit> nonGreedy) {
+			return considerMetaRequirements == metaRequirements && contextProperties.equals(context) && nonGreedyIUs.equals(nonGreedy);
+		}
+	}
+
 	/**
 	 * Job for computing SAT failure explanation in the background.
 	 */
@@ -160,6 +236,7 @@ public class Projector {
 		picker = q;
 		slice = new HashMap<String, Map<Version, IInstallableUnit>>();
 		selectionContext = InstallableUnit.contextIU(context);
+		contextProperties = context == null ? Collections.<String, String> emptyMap() : new HashMap<String, String>(context);
 		abstractVariables = new ArrayList<AbstractVariable>();
 		allOptionalAbstractRequirements = new ArrayList<AbstractVariable>();
 		result = new MultiStatus(DirectorActivator.PI_DIRECTOR, IStatus.OK, Messages.Planner_Problems_resolving_plan, null);
@@ -224,6 +301,7 @@ public class Projector {
 			}
 			List<IInstallableUnit> iusToOrder = new ArrayList<IInstallableUnit>(queryResult.toSet());
 			Collections.sort(iusToOrder);
+			Map<IInstallableUnit, EncodedIU> reusableIUs = computeReusableEncodings(iusToOrder, entryPointIU);
 			for (Iterator<IInstallableUnit> iusToEncode = iusToOrder.iterator(); iusToEncode.hasNext();) {
 				if (monitor.isCanceled()) {
 					result.merge(Status.CANCEL_STATUS);
@@ -231,9 +309,17 @@ public class Projector {
 				}
 				IInstallableUnit iuToEncode = iusToEncode.next();
 				if (iuToEncode != entryPointIU) {
-					processIU(iuToEncode, false);
+					EncodedIU encoded = reusableIUs.get(iuToEncode);
+					if (encoded != null)
+						replayIU(encoded);
+					else if (encodedIUs != null)
+						recordIU(iuToEncode);
+					else
+						processIU(iuToEncode, false);
 				}
 			}
+			if (DEBUG && encodedIUs != null)
+				Tracing.debug("Reused the encoding of " + reusableIUs.size() + " out of " + iusToOrder.size() + " IUs"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			createMustHave(entryPointIU, alreadyExistingRoots);
 
 			createConstraintsForSingleton();
@@ -255,12 +341,146 @@ public class Projector {
 		}
 	}
 
+	/**
+	 * Enables the recording of the encoding so that it can be reused by a subsequent projection, 
+	 * and provides the encoding recorded by a previous projection of the same profile, if any.
+	 * Must be called before {@link #encode(IInstallableUnit, IInstallableUnit[], IQueryable, Collection, IProgressMonitor)}.
+	 * @param previous the encoding returned by {@link #getEncodingState()} of a previous projection, or <code>null</code>
+	 */
+	public void setPreviousEncoding(EncodingState previous) {
+		encodedIUs = new HashMap<IInstallableUnit, EncodedIU>();
+		previousEncoding = previous;
+	}
+
+	/**
+	 * Returns the recorded encoding of this projection, or <code>null</code> if it was not recorded
+	 * or the encoding failed.
+	 */
+	public EncodingState getEncodingState() {
+		if (encodedIUs == null || encodedUnits == null || result.getSeverity() == IStatus.ERROR)
+			return null;
+		return new EncodingState(contextProperties, considerMetaRequirements, nonGreedyIUs, encodedUnits, encodedIUs, nonGreedyVariables);
+	}
+
+	//Determine which IUs of the previous encoding are not affected by the differences between the previous and current IUs 
+	private Map<IInstallableUnit, EncodedIU> computeReusableEncodings(List<IInstallableUnit> ius, IInstallableUnit entryPointIU) {
+		if (encodedIUs == null)
+			return Collections.<IInstallableUnit, EncodedIU> emptyMap();
+		encodedUnits = new HashMap<IInstallableUnit, IInstallableUnit>(ius.size());
+		for (IInstallableUnit iu : ius) {
+			if (iu != entryPointIU)
+				encodedUnits.put(iu, iu);
+		}
+		EncodingState previous = previousEncoding;
+		previousEncoding = null;
+		if (previous == null || !previous.isCompatible(contextProperties, considerMetaRequirements, nonGreedyIUs))
+			return Collections.<IInstallableUnit, EncodedIU> emptyMap();
+
+		Set<IInstallableUnit> added = new HashSet<IInstallableUnit>();
+		Set<IInstallableUnit> removed = new HashSet<IInstallableUnit>();
+		for (IInstallableUnit iu : encodedUnits.keySet()) {
+			IInstallableUnit previousIU = previous.units.get(iu);
+			if (previousIU != iu) {
+				//A different instance with the same id and version is treated as a replacement
+				added.add(iu);
+				if (previousIU != null)
+					removed.add(previousIU);
+			}
+		}
+		for (IInstallableUnit iu : previous.units.keySet()) {
+			if (!encodedUnits.containsKey(iu))
+				removed.add(iu);
+		}
+		if (added.size() + removed.size() > encodedUnits.size() / 2)
+			return Collections.<IInstallableUnit, EncodedIU> emptyMap();
+		for (IInstallableUnit iu : added) {
+			if (iu instanceof IInstallableUnitPatch)
+				return Collections.<IInstallableUnit, EncodedIU> emptyMap();
+		}
+		for (IInstallableUnit iu : removed) {
+			if (iu instanceof IInstallableUnitPatch)
+				return Collections.<IInstallableUnit, EncodedIU> emptyMap();
+		}
+
+		nonGreedyVariables = previous.nonGreedyVariables;
+		Map<IInstallableUnit, EncodedIU> reusable = new HashMap<IInstallableUnit, EncodedIU>();
+		for (EncodedIU encoded : previous.encodedIUs.values()) {
+			if (encodedUnits.get(encoded.iu) == encoded.iu && isStillValid(encoded, added, removed))
+				reusable.put(encoded.iu, encoded);
+		}
+		return reusable;
+	}
+
+	private boolean isStillValid(EncodedIU encoded, Set<IInstallableUnit> added, Set<IInstallableUnit> removed) {
+		for (int i = 0; i < encoded.queriedRequirements.size(); i++) {
+			for (IInstallableUnit match : encoded.queriedMatches.get(i)) {
+				if (removed.contains(match))
+					return false;
+			}
+			IRequirement req = encoded.queriedRequirements.get(i);
+			for (IInstallableUnit candidate : added) {
+				if (req.isMatch(candidate) && isApplicable(candidate))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private void recordIU(IInstallableUnit iu) throws ContradictionException {
+		EncodedIU encoded = new EncodedIU(iu);
+		int abstractCount = abstractVariables.size();
+		int optionalCount = allOptionalAbstractRequirements.size();
+		recording = encoded;
+		try {
+			processIU(iu, false);
+		} finally {
+			recording = null;
+		}
+		encoded.abstractVariables = new ArrayList<AbstractVariable>(abstractVariables.subList(abstractCount, abstractVariables.size()));
+		encoded.optionalAbstractRequirements = new ArrayList<AbstractVariable>(allOptionalAbstractRequirements.subList(optionalCount, allOptionalAbstractRequirements.size()));
+		encodedIUs.put(iu, encoded);
+	}
+
+	private void replayIU(EncodedIU encoded) throws ContradictionException {
+		addToSlice(encoded.iu.unresolved());
+		for (Constraint constraint : encoded.constraints) {
+			switch (constraint.kind) {
+				case Constraint.IMPLIES :
+					dependencyHelper.implication(constraint.left).implies(constraint.right).named(constraint.explanation);
+					break;
+				case Constraint.IMPLIES_NOT :
+					dependencyHelper.implication(constraint.left).impliesNot(constraint.right[0]).named(constraint.explanation);
+					break;
+				default :
+					dependencyHelper.setFalse(constraint.left[0], constraint.explanation);
+			}
+		}
+		abstractVariables.addAll(encoded.abstractVariables);
+		allOptionalAbstractRequirements.addAll(encoded.optionalAbstractRequirements);
+		for (Object[] provider : encoded.nonGreedyProviders)
+			addNonGreedyProvider((AbstractVariable) provider[0], provider[1]);
+		for (Object[] hostMatch : encoded.hostMatches) {
+			@SuppressWarnings("unchecked")
+			List<IInstallableUnit> matches = (List<IInstallableUnit>) hostMatch[1];
+			rememberHostMatches((IInstallableUnitFragment) hostMatch[0], matches);
+		}
+		for (IStatus warning : encoded.warnings)
+			result.add(warning);
+		encodedIUs.put(encoded.iu, encoded);
+	}
+
+	private void setFalse(Object var, Explanation explanation) throws ContradictionException {
+		dependencyHelper.setFalse(var, explanation);
+		if (recording != null)
+			recording.constraints.add(new Constraint(Constraint.FALSE, new Object[] {var}, null, explanation));
+	}
+
 	private void createConstraintsForNonGreedy() throws ContradictionException {
 		for (IInstallableUnit iu : nonGreedyIUs) {
 			AbstractVariable var = getNonGreedyVariable(iu);
 			List<Object> providers = nonGreedyProvider.get(var);
 			if (providers == null || providers.size() == 0) {
-				dependencyHelper.setFalse(var, new Explanation.MissingGreedyIU(iu));
+				setFalse(var, new Explanation.MissingGreedyIU(iu));
 			} else {
 				createImplication(var, providers, Explanation.OPTIONAL_REQUIREMENT);//FIXME
 			}
@@ -319,7 +539,7 @@ public class Projector {
 		if (DEBUG) {
 			Tracing.debug(iu + "=0"); //$NON-NLS-1$
 		}
-		dependencyHelper.setFalse(iu, new Explanation.MissingIU(iu, req, iu == this.entryPoint));
+		setFalse(iu, new Explanation.MissingIU(iu, req, iu == this.entryPoint));
 	}
 
 	// Check whether the requirement is applicable
@@ -379,7 +599,7 @@ public class Projector {
 		if (req.getMin() > 0) {
 			if (matches.isEmpty()) {
 				if (iu == entryPoint && emptyBecauseFiltered) {
-					dependencyHelper.setFalse(iu, new NotInstallableRoot(req));
+					setFalse(iu, new NotInstallableRoot(req));
 				} else {
 					missingRequirement(iu, req);
 				}
@@ -442,6 +662,8 @@ public class Projector {
 	}
 
 	private void addNonGreedyProvider(AbstractVariable nonGreedyVariable, Object o) {
+		if (recording != null)
+			recording.nonGreedyProviders.add(new Object[] {nonGreedyVariable, o});
 		List<Object> providers = nonGreedyProvider.get(nonGreedyVariable);
 		if (providers == null) {
 			providers = new ArrayList<Object>();
@@ -460,12 +682,7 @@ public class Projector {
 
 	public void processIU(IInstallableUnit iu, boolean isRootIU) throws ContradictionException {
 		iu = iu.unresolved();
-		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
-		if (iuSlice == null) {
-			iuSlice = new HashMap<Version, IInstallableUnit>();
-			slice.put(iu.getId(), iuSlice);
-		}
-		iuSlice.put(iu.getVersion(), iu);
+		addToSlice(iu);
 		if (!isApplicable(iu)) {
 			createNegation(iu, null);
 			return;
@@ -482,6 +699,15 @@ public class Projector {
 		}
 	}
 
+	private void addToSlice(IInstallableUnit iu) {
+		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
+		if (iuSlice == null) {
+			iuSlice = new HashMap<Version, IInstallableUnit>();
+			slice.put(iu.getId(), iuSlice);
+		}
+		iuSlice.put(iu.getVersion(), iu);
+	}
+
 	private Collection<IRequirement> getRequiredCapabilities(IInstallableUnit iu) {
 		boolean isFragment = iu instanceof IInstallableUnitFragment;
 		//Short-circuit for the case of an IInstallableUnit 
@@ -815,7 +1041,10 @@ public class Projector {
 	}
 
 	private void missingRequirement(IInstallableUnit iu, IRequirement req) throws ContradictionException {
-		result.add(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, NLS.bind(Messages.Planner_Unsatisfied_dependency, iu, req)));
+		IStatus warning = new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, NLS.bind(Messages.Planner_Unsatisfied_dependency, iu, req));
+		if (recording != null)
+			recording.warnings.add(warning);
+		result.add(warning);
 		createNegation(iu, req);
 	}
 
@@ -833,6 +1062,10 @@ public class Projector {
 			}
 		}
 		emptyBecauseFiltered = !matches.isEmpty() && target.isEmpty();
+		if (recording != null) {
+			recording.queriedRequirements.add(req);
+			recording.queriedMatches.add(new ArrayList<IInstallableUnit>(target));
+		}
 		return target;
 	}
 
@@ -883,22 +1116,31 @@ public class Projector {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		for (Object r : right)
+		for (Object r : right) {
 			dependencyHelper.implication(new Object[] {left}).impliesNot(r).named(name);
+			if (recording != null)
+				recording.constraints.add(new Constraint(Constraint.IMPLIES_NOT, new Object[] {left}, new Object[] {r}, name));
+		}
 	}
 
 	private void createImplication(Object left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(new Object[] {left}).implies(right.toArray()).named(name);
+		createImplication(new Object[] {left}, right.toArray(), name);
 	}
 
 	private void createImplication(Object[] left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + Arrays.asList(left) + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(left).implies(right.toArray()).named(name);
+		createImplication(left, right.toArray(), name);
+	}
+
+	private void createImplication(Object[] left, Object[] right, Explanation name) throws ContradictionException {
+		dependencyHelper.implication(left).implies(right).named(name);
+		if (recording != null)
+			recording.constraints.add(new Constraint(Constraint.IMPLIES, left, right, name));
 	}
 
 	//Return IUPatches that are applicable for the given iu
@@ -1090,6 +1332,8 @@ public class Projector {
 	}
 
 	private void rememberHostMatches(IInstallableUnitFragment fragment, List<IInstallableUnit> matches) {
+		if (recording != null)
+			recording.hostMatches.add(new Object[] {fragment, new ArrayList<IInstallableUnit>(matches)});
 		Set<IInstallableUnit> existingMatches = fragments.get(fragment);
 		if (existingMatches == null) {
 			existingMatches = new HashSet<IInstallableUnit>();
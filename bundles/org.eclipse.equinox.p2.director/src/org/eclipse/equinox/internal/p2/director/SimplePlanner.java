@@ -43,6 +43,13 @@ public class SimplePlanner implements IPlanner {
 	private static final String ID_IU_FOR_ACTIONS = "org.eclipse.equinox.p2.engine.actions.root"; //$NON-NLS-1$
 	private static final String EXPLANATION = "org.eclipse.equinox.p2.director.explain"; //$NON-NLS-1$
 	private static final String CONSIDER_METAREQUIREMENTS = "org.eclipse.equinox.p2.planner.resolveMetaRequirements"; //$NON-NLS-1$
+	/**
+	 * Provisioning context property that, when set to <code>true</code>, keeps the encoding of the problem
+	 * computed for a profile so that the next request against the same profile only re-encodes the IUs 
+	 * affected by the difference between the two problems.
+	 */
+	public static final String INCREMENTAL = "org.eclipse.equinox.p2.planner.incremental"; //$NON-NLS-1$
+	private static final int MAX_CACHED_ENCODINGS = 4;
 
 	static final int UNSATISFIABLE = 1; //status code indicating that the problem is not satisfiable
 
@@ -50,6 +57,15 @@ public class SimplePlanner implements IPlanner {
 	private final IProfileRegistry profileRegistry;
 	private final IEngine engine;
 
+	//The encodings kept for incremental planning, by profile id
+	private final Map<String, Projector.EncodingState> encodings = new LinkedHashMap<String, Projector.EncodingState>(MAX_CACHED_ENCODINGS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Projector.EncodingState> eldest) {
+			return size() > MAX_CACHED_ENCODINGS;
+		}
+	};
+
 	private IProvisioningPlan generateProvisioningPlan(Collection<IInstallableUnit> fromState, Collection<IInstallableUnit> toState, ProfileChangeRequest changeRequest, IProvisioningPlan installerPlan, ProvisioningContext context) {
 		IProvisioningPlan plan = engine.createPlan(changeRequest.getProfile(), context);
 		plan.setFuturePlan(new CollectionResult<IInstallableUnit>(toState));
@@ -339,7 +355,12 @@ public class SimplePlanner implements IPlanner {
 			slice = new CompoundQueryable<IInstallableUnit>(queryables);
 			Projector projector = new Projector(slice, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
 			projector.setUserDefined(profileChangeRequest.getPropertiesToAdd().containsKey("_internal_user_defined_"));
+			boolean incremental = context != null && Boolean.TRUE.toString().equalsIgnoreCase(context.getProperty(INCREMENTAL));
+			if (incremental)
+				projector.setPreviousEncoding(takeEncoding(profile.getProfileId()));
 			projector.encode((IInstallableUnit) updatedPlan[0], (IInstallableUnit[]) updatedPlan[1], profile, profileChangeRequest.getAdditions(), sub.newChild(ExpandWork / 4));
+			if (incremental)
+				keepEncoding(profile.getProfileId(), projector.getEncodingState());
 			IStatus s = projector.invokeSolver(sub.newChild(ExpandWork / 4));
 			if (s.getSeverity() == IStatus.CANCEL) {
 				IProvisioningPlan plan = engine.createPlan(profile, context);
@@ -378,6 +399,21 @@ public class SimplePlanner implements IPlanner {
 		}
 	}
 
+	//The encoding is removed while in use so that concurrent requests against the same profile do not share it
+	private Projector.EncodingState takeEncoding(String profileId) {
+		synchronized (encodings) {
+			return encodings.remove(profileId);
+		}
+	}
+
+	private void keepEncoding(String profileId, Projector.EncodingState encoding) {
+		if (encoding == null)
+			return;
+		synchronized (encodings) {
+			encodings.put(profileId, encoding);
+		}
+	}
+
 	public IProvisioningPlan getProvisioningPlan(IProfileChangeRequest request, ProvisioningContext context, IProgressMonitor monitor) {
 		ProfileChangeRequest pcr = (ProfileChangeRequest) request;
 		SubMonitor sub = SubMonitor.convert(monitor, ExpandWork);
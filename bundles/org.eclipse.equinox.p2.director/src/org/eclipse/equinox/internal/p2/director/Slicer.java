@@ -12,6 +12,7 @@
 package org.eclipse.equinox.internal.p2.director;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
@@ -23,6 +24,11 @@ import org.eclipse.equinox.p2.query.*;
 import org.eclipse.osgi.util.NLS;
 
 public class Slicer {
+	/**
+	 * The name of a Java system property specifying the number of threads used to expand
+	 * the requirements of the IUs being sliced. The default of 1 slices on the calling thread.
+	 */
+	private static final String PROP_SLICER_THREADS = "eclipse.p2.slicer.threads"; //$NON-NLS-1$
 	private static boolean DEBUG = false;
 	private final IQueryable<IInstallableUnit> possibilites;
 	private final boolean considerMetaRequirements;
@@ -33,6 +39,21 @@ public class Slicer {
 	private LinkedList<IInstallableUnit> toProcess;
 	private Set<IInstallableUnit> considered; //IUs to add to the slice
 	private Set<IInstallableUnit> nonGreedyIUs = new HashSet<IInstallableUnit>(); //IUs that are brought in by non greedy dependencies
+	private int parallelism = getDefaultParallelism();
+
+	/**
+	 * The outcome of expanding the requirements of one IU, computed on a worker thread
+	 * and merged into the slice on the slicing thread.
+	 */
+	private static final class Expansion {
+		final IInstallableUnit iu;
+		final List<IInstallableUnit> matches = new ArrayList<IInstallableUnit>();
+		final List<IStatus> warnings = new ArrayList<IStatus>();
+
+		Expansion(IInstallableUnit iu) {
+			this.iu = iu;
+		}
+	}
 
 	public Slicer(IQueryable<IInstallableUnit> input, Map<String, String> context, boolean considerMetaRequirements) {
 		this(input, InstallableUnit.contextIU(context), considerMetaRequirements);
@@ -46,6 +67,32 @@ public class Slicer {
 		result = new MultiStatus(DirectorActivator.PI_DIRECTOR, IStatus.OK, Messages.Planner_Problems_resolving_plan, null);
 	}
 
+	private static int getDefaultParallelism() {
+		String threads = null;
+		try {
+			threads = DirectorActivator.context.getProperty(PROP_SLICER_THREADS);
+			if (threads != null)
+				return Math.max(1, Integer.parseInt(threads));
+		} catch (Exception e) {
+			// intentionally catch all errors (npe, number format, etc) and fall back to slicing on the calling thread
+			if (threads != null)
+				LogHelper.log(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, "Ignoring user-specified '" + PROP_SLICER_THREADS + "' value of: " + threads, e)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return 1;
+	}
+
+	/**
+	 * Sets the number of threads used to expand the requirements of the IUs being sliced.
+	 * When greater than 1, the IUs discovered at each step of the traversal have their requirements
+	 * expanded concurrently and the results are merged in the order in which the IUs were discovered,
+	 * so the resulting slice does not depend on thread scheduling. The queryable given to this slicer
+	 * must then support concurrent queries.
+	 * @param parallelism the number of threads, 1 to slice on the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
 	public IQueryable<IInstallableUnit> slice(IInstallableUnit[] ius, IProgressMonitor monitor) {
 		try {
 			long start = 0;
@@ -57,12 +104,16 @@ public class Slicer {
 			validateInput(ius);
 			considered = new HashSet<IInstallableUnit>(Arrays.asList(ius));
 			toProcess = new LinkedList<IInstallableUnit>(considered);
-			while (!toProcess.isEmpty()) {
-				if (monitor.isCanceled()) {
-					result.merge(Status.CANCEL_STATUS);
-					throw new OperationCanceledException();
+			if (parallelism > 1) {
+				sliceInParallel(monitor);
+			} else {
+				while (!toProcess.isEmpty()) {
+					if (monitor.isCanceled()) {
+						result.merge(Status.CANCEL_STATUS);
+						throw new OperationCanceledException();
+					}
+					processIU(toProcess.removeFirst());
 				}
-				processIU(toProcess.removeFirst());
 			}
 			computeNonGreedyIUs();
 			if (DEBUG) {
@@ -79,6 +130,76 @@ public class Slicer {
 		return new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
 	}
 
+	//Expand the IUs to process one generation at a time, the expansions of a generation being computed concurrently
+	private void sliceInParallel(IProgressMonitor monitor) {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			while (!toProcess.isEmpty()) {
+				List<Future<Expansion>> generation = new ArrayList<Future<Expansion>>(toProcess.size());
+				for (final IInstallableUnit iu : toProcess) {
+					generation.add(executor.submit(new Callable<Expansion>() {
+						public Expansion call() {
+							return expand(iu);
+						}
+					}));
+				}
+				toProcess.clear();
+				for (Future<Expansion> future : generation) {
+					if (monitor.isCanceled()) {
+						result.merge(Status.CANCEL_STATUS);
+						throw new OperationCanceledException();
+					}
+					Expansion expansion = getExpansion(future);
+					addToSlice(expansion.iu);
+					for (IStatus warning : expansion.warnings)
+						result.add(warning);
+					for (IInstallableUnit match : expansion.matches)
+						consider(match);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Expansion getExpansion(Future<Expansion> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause.getMessage());
+		}
+	}
+
+	//The thread safe counterpart of processIU, it does not modify the state of the slicer
+	private Expansion expand(IInstallableUnit iu) {
+		Expansion expansion = new Expansion(iu.unresolved());
+		if (!isApplicable(expansion.iu))
+			return expansion;
+		for (IRequirement req : getRequirements(expansion.iu)) {
+			if (!isApplicable(req) || !isGreedy(req) || req.getMax() == 0)
+				continue;
+			int validMatches = 0;
+			for (Iterator<IInstallableUnit> iterator = possibilites.query(QueryUtil.createMatchQuery(req.getMatches()), null).iterator(); iterator.hasNext();) {
+				IInstallableUnit match = iterator.next();
+				if (!isApplicable(match))
+					continue;
+				validMatches++;
+				expansion.matches.add(match);
+			}
+			if (validMatches == 0 && req.getMin() != 0)
+				expansion.warnings.add(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, NLS.bind(Messages.Planner_Unsatisfied_dependency, expansion.iu, req)));
+		}
+		return expansion;
+	}
+
 	private void computeNonGreedyIUs() {
 		IQueryable<IInstallableUnit> queryable = new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
 		Iterator<IInstallableUnit> it = queryable.query(QueryUtil.ALL_UNITS, new NullProgressMonitor()).iterator();
@@ -121,13 +242,7 @@ public class Slicer {
 	protected void processIU(IInstallableUnit iu) {
 		iu = iu.unresolved();
 
-		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
-		if (iuSlice == null) {
-
-			iuSlice = new HashMap<Version, IInstallableUnit>();
-			slice.put(iu.getId(), iuSlice);
-		}
-		iuSlice.put(iu.getVersion(), iu);
+		addToSlice(iu);
 		if (!isApplicable(iu)) {
 			return;
 		}
@@ -147,6 +262,15 @@ public class Slicer {
 		}
 	}
 
+	private void addToSlice(IInstallableUnit iu) {
+		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
+		if (iuSlice == null) {
+			iuSlice = new HashMap<Version, IInstallableUnit>();
+			slice.put(iu.getId(), iuSlice);
+		}
+		iuSlice.put(iu.getVersion(), iu);
+	}
+
 	protected boolean isGreedy(IRequirement req) {
 		return req.isGreedy();
 	}
@@ -207,7 +331,7 @@ public class Slicer {
 			toProcess.addLast(match);
 	}
 
-	Set<IInstallableUnit> getNonGreedyIUs() {
+	public Set<IInstallableUnit> getNonGreedyIUs() {
 		return nonGreedyIUs;
 	}
 }
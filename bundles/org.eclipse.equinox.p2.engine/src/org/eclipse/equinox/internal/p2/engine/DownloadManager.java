@@ -23,6 +23,21 @@ import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
 
 public class DownloadManager {
+	/**
+	 * Property holding the number of artifacts that may be downloaded at the same time across
+	 * all repositories. The property is looked up in the provisioning context and then in the
+	 * system properties. When it is greater than one, requests are spread over the repositories
+	 * by a {@link DownloadScheduler}; otherwise repositories are used one after the other.
+	 */
+	public static final String PROP_DOWNLOAD_THREADS = "eclipse.p2.download.threads"; //$NON-NLS-1$
+
+	/**
+	 * Property holding the number of artifacts that may be downloaded at the same time from a
+	 * single host when downloads are scheduled across repositories.
+	 */
+	public static final String PROP_DOWNLOAD_THREADS_PER_HOST = "eclipse.p2.download.threads.perHost"; //$NON-NLS-1$
+	private static final int DEFAULT_DOWNLOAD_THREADS_PER_HOST = 4;
+
 	private ProvisioningContext provContext = null;
 	ArrayList<IArtifactRequest> requestsToProcess = new ArrayList<IArtifactRequest>();
 	private IProvisioningAgent agent = null;
@@ -97,7 +112,11 @@ public class DownloadManager {
 			// gets unsorted when we convert the queryable into an array so we must re-sort it.
 			// See https://bugs.eclipse.org/335153.
 			Arrays.sort(repositories, LOCAL_FIRST_COMPARATOR);
-			fetch(repositories, subMonitor.newChild(500));
+			int threads = getIntProperty(PROP_DOWNLOAD_THREADS, 1);
+			if (threads > 1)
+				schedule(repositories, threads, subMonitor.newChild(500));
+			else
+				fetch(repositories, subMonitor.newChild(500));
 			return overallStatus(monitor);
 		} finally {
 			subMonitor.done();
@@ -118,6 +137,26 @@ public class DownloadManager {
 		}
 	}
 
+	private void schedule(IArtifactRepository[] repositories, int threads, IProgressMonitor monitor) {
+		filterUnfetched();
+		DownloadScheduler scheduler = new DownloadScheduler(agent, provContext, threads, getIntProperty(PROP_DOWNLOAD_THREADS_PER_HOST, DEFAULT_DOWNLOAD_THREADS_PER_HOST));
+		if (scheduler.download(requestsToProcess, repositories, monitor))
+			filterUnfetched();
+	}
+
+	private int getIntProperty(String key, int defaultValue) {
+		String value = provContext.getProperty(key);
+		if (value == null && EngineActivator.getContext() != null)
+			value = EngineActivator.getContext().getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	private void publishDownloadEvent(CollectEvent event) {
 		IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
 		if (bus != null)
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+
+/**
+ * Downloads artifact requests from several repositories at the same time. Each request is
+ * assigned up front to a repository that contains its artifact, preferring local repositories
+ * and otherwise the least loaded remote one. The requests assigned to a repository are then
+ * performed in groups, one group per connection, under a global and a per host connection
+ * budget. A request that fails is handed to the next repository containing its artifact.
+ */
+class DownloadScheduler {
+	private static final String FILE_PROTOCOL = "file"; //$NON-NLS-1$
+
+	private static class Assignment {
+		final IArtifactRequest request;
+		final List<IArtifactRepository> candidates;
+		int current = 0;
+
+		Assignment(IArtifactRequest request, List<IArtifactRepository> candidates) {
+			this.request = request;
+			this.candidates = candidates;
+		}
+
+		IArtifactRepository getRepository() {
+			return candidates.get(current);
+		}
+	}
+
+	private final IProvisioningAgent agent;
+	private final ProvisioningContext context;
+	private final int maxConnections;
+	private final int maxConnectionsPerHost;
+
+	// all the fields below are guarded by this
+	private final LinkedList<Assignment> pending = new LinkedList<Assignment>();
+	private final Map<String, Integer> connections = new HashMap<String, Integer>();
+	private int active = 0;
+	private int completed = 0;
+	private boolean canceled = false;
+
+	DownloadScheduler(IProvisioningAgent agent, ProvisioningContext context, int maxConnections, int maxConnectionsPerHost) {
+		this.agent = agent;
+		this.context = context;
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Performs the given requests against the given repositories.
+	 * @param requests the requests to perform
+	 * @param repositories the repositories, in order of preference
+	 * @param monitor the progress monitor
+	 * @return <code>false</code> if the download was canceled
+	 */
+	boolean download(List<IArtifactRequest> requests, IArtifactRepository[] repositories, IProgressMonitor monitor) {
+		assign(requests, repositories);
+		final SubMonitor sub = SubMonitor.convert(monitor, pending.size());
+		// Requests report their progress when they complete, they only look for cancelation
+		final IProgressMonitor requestMonitor = new NullProgressMonitor() {
+			public boolean isCanceled() {
+				return sub.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(maxConnections, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Artifact download"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			synchronized (this) {
+				int reported = 0;
+				while (!pending.isEmpty() || active > 0) {
+					if (sub.isCanceled())
+						canceled = true;
+					final List<Assignment> next = canceled ? null : nextGroup();
+					if (next != null) {
+						executor.execute(new Runnable() {
+							public void run() {
+								perform(next, requestMonitor);
+							}
+						});
+						continue;
+					}
+					if (canceled && active == 0)
+						break;
+					try {
+						// wake up regularly to notice cancelation
+						wait(500);
+					} catch (InterruptedException e) {
+						// keep going
+					}
+					sub.worked(completed - reported);
+					reported = completed;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return !canceled;
+	}
+
+	private void assign(List<IArtifactRequest> requests, IArtifactRepository[] repositories) {
+		Map<IArtifactRepository, Integer> load = new HashMap<IArtifactRepository, Integer>();
+		for (IArtifactRequest request : requests) {
+			List<IArtifactRepository> candidates = new ArrayList<IArtifactRepository>(repositories.length);
+			for (int i = 0; i < repositories.length; i++) {
+				if (repositories[i].contains(request.getArtifactKey()))
+					candidates.add(repositories[i]);
+			}
+			if (candidates.isEmpty())
+				continue;
+			// a local repository always wins, otherwise spread the requests over the remote repositories
+			int best = 0;
+			if (!isLocal(candidates.get(0))) {
+				for (int i = 1; i < candidates.size(); i++) {
+					if (getLoad(load, candidates.get(i)) < getLoad(load, candidates.get(best)))
+						best = i;
+				}
+				if (best != 0)
+					candidates.add(0, candidates.remove(best));
+			}
+			load.put(candidates.get(0), new Integer(getLoad(load, candidates.get(0)) + 1));
+			pending.add(new Assignment(request, candidates));
+		}
+	}
+
+	private static int getLoad(Map<IArtifactRepository, Integer> load, IArtifactRepository repository) {
+		Integer value = load.get(repository);
+		return value == null ? 0 : value.intValue();
+	}
+
+	private static boolean isLocal(IArtifactRepository repository) {
+		return FILE_PROTOCOL.equals(repository.getLocation().getScheme());
+	}
+
+	private static String getHost(IArtifactRepository repository) {
+		URI location = repository.getLocation();
+		String authority = location.getAuthority();
+		return authority == null ? location.getScheme() : location.getScheme() + "://" + authority; //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the pending assignments of the first repository that fits in the connection budget,
+	 * marking its connection as used. The assignments of the repository are shared among the
+	 * connections it may still open. Must be called while holding the lock.
+	 */
+	private List<Assignment> nextGroup() {
+		if (active >= maxConnections)
+			return null;
+		for (Assignment assignment : pending) {
+			IArtifactRepository repository = assignment.getRepository();
+			String host = getHost(repository);
+			Integer count = connections.get(host);
+			int used = count == null ? 0 : count.intValue();
+			if (used < maxConnectionsPerHost) {
+				int waiting = 0;
+				for (Assignment other : pending) {
+					if (other.getRepository() == repository)
+						waiting++;
+				}
+				int free = Math.min(maxConnectionsPerHost - used, maxConnections - active);
+				int size = (waiting + free - 1) / free;
+				List<Assignment> group = new ArrayList<Assignment>(size);
+				for (Iterator<Assignment> iterator = pending.iterator(); iterator.hasNext() && group.size() < size;) {
+					Assignment other = iterator.next();
+					if (other.getRepository() == repository) {
+						iterator.remove();
+						group.add(other);
+					}
+				}
+				connections.put(host, new Integer(used + 1));
+				active++;
+				return group;
+			}
+		}
+		return null;
+	}
+
+	void perform(List<Assignment> group, IProgressMonitor monitor) {
+		IArtifactRepository repository = group.get(0).getRepository();
+		IArtifactRequest[] requests = new IArtifactRequest[group.size()];
+		for (int i = 0; i < requests.length; i++)
+			requests[i] = group.get(i).request;
+		IStatus status;
+		publishEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_START, repository, context, requests));
+		try {
+			status = repository.getArtifacts(requests, monitor);
+		} catch (RuntimeException e) {
+			status = new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+		} finally {
+			publishEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_END, repository, context, requests));
+		}
+		finished(group, getHost(repository), status);
+	}
+
+	private synchronized void finished(List<Assignment> group, String host, IStatus status) {
+		active--;
+		connections.put(host, new Integer(connections.get(host).intValue() - 1));
+		if (status.getSeverity() == IStatus.CANCEL) {
+			canceled = true;
+		} else {
+			for (Assignment assignment : group) {
+				IStatus result = assignment.request.getResult();
+				if ((result == null || !result.isOK()) && assignment.current + 1 < assignment.candidates.size()) {
+					// give the request to the next repository right away
+					assignment.current++;
+					pending.addFirst(assignment);
+				} else {
+					completed++;
+				}
+			}
+		}
+		notifyAll();
+	}
+
+	private void publishEvent(CollectEvent event) {
+		IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
+		if (bus != null)
+			bus.publishEvent(event);
+	}
+}
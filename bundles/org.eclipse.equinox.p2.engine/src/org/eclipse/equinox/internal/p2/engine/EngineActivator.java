@@ -47,6 +47,24 @@ public class EngineActivator implements BundleActivator {
 	 */
 	public static final String PROFILE_FORMAT_UNCOMPRESSED = "uncompressed"; //$NON-NLS-1$
 
+	/**
+	 * System property enabling the profile journal. When set to "true", the profile registry
+	 * appends the changes made by a commit to a journal instead of writing the whole profile.
+	 */
+	public static final String PROP_PROFILE_JOURNAL = "eclipse.p2.profile.journal"; //$NON-NLS-1$
+
+	/**
+	 * System property holding the number of journaled commits after which the profile
+	 * registry writes the whole profile again.
+	 */
+	public static final String PROP_PROFILE_CHECKPOINT_INTERVAL = "eclipse.p2.profile.checkpointInterval"; //$NON-NLS-1$
+
+	/**
+	 * System property controlling the binary profile files. Unless set to "false", the profile
+	 * registry keeps a binary copy of each profile file and reads it instead of the XML.
+	 */
+	public static final String PROP_PROFILE_BINARY = "eclipse.p2.profile.binary"; //$NON-NLS-1$
+
 	/**
 	 * System property specifying how the engine should handle unsigned artifacts.
 	 * If this property is undefined, the default value is assumed to be "prompt".
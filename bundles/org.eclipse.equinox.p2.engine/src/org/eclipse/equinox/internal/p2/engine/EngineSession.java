@@ -343,6 +343,40 @@ public class EngineSession {
 			debugActionExecute(action, parameters);
 	}
 
+	/**
+	 * Records the start of an operand whose actions run at the same time as the actions of
+	 * other operands of the current phase.
+	 * @return the record to pass to {@link #recordActionExecute(Object, ProvisioningAction, Map)}
+	 */
+	synchronized Object recordConcurrentOperandStart(Operand operand) {
+		if (operand == null)
+			throw new IllegalArgumentException(Messages.null_operand);
+
+		ActionsRecord record = new ActionsRecord(operand);
+		currentActionRecords.add(record);
+
+		if (DebugHelper.DEBUG_ENGINE_SESSION)
+			debugOperandStart(operand);
+		return record;
+	}
+
+	/**
+	 * Records the execution of an action of an operand started with {@link #recordConcurrentOperandStart(Operand)}.
+	 */
+	synchronized void recordActionExecute(Object record, ProvisioningAction action, Map<String, Object> parameters) {
+		if (action == null)
+			throw new IllegalArgumentException(Messages.null_action);
+
+		((ActionsRecord) record).actions.add(action);
+
+		Touchpoint touchpoint = action.getTouchpoint();
+		if (touchpoint != null)
+			touchpoints.add(touchpoint);
+
+		if (DebugHelper.DEBUG_ENGINE_SESSION)
+			debugActionExecute(action, parameters);
+	}
+
 	public void recordActionUndo(ProvisioningAction action, Map<String, Object> parameters) {
 		if (DebugHelper.DEBUG_ENGINE_SESSION)
 			debugActionUndo(action, parameters);
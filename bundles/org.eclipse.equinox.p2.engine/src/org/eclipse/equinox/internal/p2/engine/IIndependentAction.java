@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.util.Map;
+
+/**
+ * Marks a provisioning action whose effects do not depend on the actions of other
+ * operands of the same phase, and which may therefore run at the same time as them.
+ * Such an action must only change state that belongs to its operand, or guard any
+ * shared state itself.  An action writing files tells where through {@link #getTargets(Map)},
+ * so that operands writing to the same locations are still performed one after the other,
+ * in their order.
+ * <p>
+ * An operand is only performed concurrently when all its actions are independent and
+ * the {@link Phase#PROP_PHASE_THREADS} property is greater than one.
+ * </p>
+ */
+public interface IIndependentAction {
+	/**
+	 * Returns the files or directories the action writes to when executed with the given
+	 * parameters. The files below a returned directory are also written to.
+	 * @param parameters the parameters the action will be executed with
+	 * @return the locations written to, an empty array if the action writes no files, or
+	 * <code>null</code> if the locations are not known before the action is executed
+	 */
+	public String[] getTargets(Map<String, Object> parameters);
+}
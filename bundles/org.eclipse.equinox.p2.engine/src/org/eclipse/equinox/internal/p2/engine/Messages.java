@@ -104,6 +104,7 @@ public class Messages extends NLS {
 
 	public static String SimpleProfileRegistry_Bad_profile_location;
 	public static String SimpleProfileRegistry_CannotRemoveCurrentSnapshot;
+	public static String SimpleProfileRegistry_Compacting_profile;
 	public static String SimpleProfileRegistry_Parser_Error_Parsing_Registry;
 	public static String SimpleProfileRegistry_Parser_Has_Incompatible_Version;
 	public static String SimpleProfileRegistry_Profile_in_use;
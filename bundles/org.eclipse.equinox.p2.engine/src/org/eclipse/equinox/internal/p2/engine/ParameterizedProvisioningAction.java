@@ -47,14 +47,35 @@ public class ParameterizedProvisioningAction extends ProvisioningAction {
 		Map<String, Object> result = new HashMap<String, Object>(parameters);
 		for (Entry<String, String> entry : actionParameters.entrySet()) {
 			String name = entry.getKey();
-			Object value = processVariables(entry.getValue(), parameters, false);
+			Object value = processVariables(entry.getValue(), parameters, false, actualParameters);
 			result.put(name, value);
 		}
 		return Collections.unmodifiableMap(result);
 	}
 
+	/**
+	 * Returns the parameters the action would be executed with, without remembering the values
+	 * the variables resolve to. Returns <code>null</code> if the parameters depend on the result of
+	 * a previous action, or cannot be resolved.
+	 */
+	Map<String, Object> previewActionParameters(Map<String, Object> parameters) {
+		String lastResult = "${" + Phase.LAST_RESULT_PUBLIC_NAME + '}'; //$NON-NLS-1$
+		Map<String, Object> result = new HashMap<String, Object>(parameters);
+		Map<String, Object> used = new HashMap<String, Object>(actualParameters);
+		try {
+			for (Entry<String, String> entry : actionParameters.entrySet()) {
+				if (entry.getValue().indexOf(lastResult) != -1)
+					return null;
+				result.put(entry.getKey(), processVariables(entry.getValue(), parameters, false, used));
+			}
+		} catch (RuntimeException e) {
+			return null;
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
 	//allowInfixReplacement triggers the replacement of the variables found in the middle of a string (e.g. abc${var}def) 
-	private Object processVariables(String parameterValue, Map<String, Object> parameters, boolean allowInfixReplacement) {
+	private Object processVariables(String parameterValue, Map<String, Object> parameters, boolean allowInfixReplacement, Map<String, Object> used) {
 		int variableBeginIndex = parameterValue.indexOf("${"); //$NON-NLS-1$
 		if (variableBeginIndex == -1)
 			return parameterValue;
@@ -70,9 +91,9 @@ public class ParameterizedProvisioningAction extends ProvisioningAction {
 		if (Phase.LAST_RESULT_PUBLIC_NAME.equals(variableName)) {
 			variableName = Phase.LAST_RESULT_INTERNAL_NAME;
 		}
-		Object valueUsed = actualParameters.get(variableName);
+		Object valueUsed = used.get(variableName);
 		Object value = valueUsed == null ? parameters.get(variableName) : valueUsed;
-		actualParameters.put(variableName, value);
+		used.put(variableName, value);
 
 		if (value instanceof Value) {
 			if (allowInfixReplacement == false && variableBeginIndex == 0 && variableEndIndex == parameterValue.length() - 1) {
@@ -98,7 +119,7 @@ public class ParameterizedProvisioningAction extends ProvisioningAction {
 		}
 
 		String variableValue = value == null ? "" : value.toString(); //$NON-NLS-1$			//TODO This is where we replace the values
-		String postVariable = (String) processVariables(parameterValue.substring(variableEndIndex + 1), parameters, true);
+		String postVariable = (String) processVariables(parameterValue.substring(variableEndIndex + 1), parameters, true, used);
 		return preVariable + variableValue + postVariable;
 	}
 
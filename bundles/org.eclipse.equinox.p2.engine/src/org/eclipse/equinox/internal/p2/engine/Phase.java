@@ -11,7 +11,9 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.engine;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
@@ -22,6 +24,19 @@ import org.eclipse.equinox.p2.engine.spi.Touchpoint;
 import org.eclipse.osgi.util.NLS;
 
 public abstract class Phase {
+	/**
+	 * Property holding the number of operands of a phase that may be performed at the same time.
+	 * Only operands whose actions are all {@link IIndependentAction independent} are performed
+	 * concurrently, the others are performed alone.
+	 */
+	public static final String PROP_PHASE_THREADS = "eclipse.p2.engine.phase.threads"; //$NON-NLS-1$
+	/**
+	 * Operand parameter set to <code>"true"</code> when the actions of the operand run at the
+	 * same time as the actions of other operands. Touchpoints may then defer the changes to
+	 * shared state until the operand is completed, which happens in the order of the operands.
+	 */
+	public static final String PARM_CONCURRENT = "concurrent"; //$NON-NLS-1$
+
 	protected static final String PARM_OPERAND = "operand"; //$NON-NLS-1$
 	protected static final String PARM_PHASE_ID = "phaseId"; //$NON-NLS-1$
 	protected static final String PARM_PROFILE = "profile"; //$NON-NLS-1$
@@ -119,99 +134,474 @@ public abstract class Phase {
 	}
 
 	private void mainPerform(MultiStatus status, EngineSession session, Operand[] operands, SubMonitor subMonitor) {
+		int threads = getPhaseThreads(session);
+		if (threads > 1) {
+			mainPerformConcurrently(status, session, operands, subMonitor, threads);
+			return;
+		}
 		IProfile profile = session.getProfile();
 		subMonitor.beginTask(null, operands.length);
 		for (int i = 0; i < operands.length; i++) {
 			subMonitor.setWorkRemaining(operands.length - i);
 			if (subMonitor.isCanceled())
 				throw new OperationCanceledException();
-			while (isPaused) {
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					mergeStatus(status, new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.phase_thread_interrupted_error, phaseId), e));
-					return;
-				}
-				if (subMonitor.isCanceled())
-					throw new OperationCanceledException();
-			}
+			if (!waitWhilePaused(status, subMonitor))
+				return;
 			Operand operand = operands[i];
 			if (!isApplicable(operand))
 				continue;
-
-			session.recordOperandStart(operand);
-			List<ProvisioningAction> actions = getActions(operand);
-			operandParameters = new HashMap<String, Object>(phaseParameters);
-			operandParameters.put(PARM_OPERAND, operand);
-			mergeStatus(status, initializeOperand(profile, operand, operandParameters, subMonitor));
-			if (status.matches(IStatus.ERROR | IStatus.CANCEL)) {
-				operandParameters = null;
+			if (!performOperand(status, session, profile, operand, getActions(operand), subMonitor))
 				return;
+		}
+	}
+
+	/*
+	 * Returns false if the thread was interrupted while the phase was paused.
+	 */
+	private boolean waitWhilePaused(MultiStatus status, SubMonitor subMonitor) {
+		while (isPaused) {
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				mergeStatus(status, new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.phase_thread_interrupted_error, phaseId), e));
+				return false;
 			}
+			if (subMonitor.isCanceled())
+				throw new OperationCanceledException();
+		}
+		return true;
+	}
+
+	/*
+	 * Performs the actions of a single operand. Returns false if the phase must stop.
+	 */
+	private boolean performOperand(MultiStatus status, EngineSession session, IProfile profile, Operand operand, List<ProvisioningAction> actions, SubMonitor subMonitor) {
+		session.recordOperandStart(operand);
+		operandParameters = new HashMap<String, Object>(phaseParameters);
+		operandParameters.put(PARM_OPERAND, operand);
+		mergeStatus(status, initializeOperand(profile, operand, operandParameters, subMonitor));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL)) {
+			operandParameters = null;
+			return false;
+		}
+
+		Touchpoint operandTouchpoint = (Touchpoint) operandParameters.get(PARM_TOUCHPOINT);
+		if (operandTouchpoint != null) {
+			mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, subMonitor));
+			if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+				return false;
+
+			operandParameters = touchpointToTouchpointOperandParameters.get(operandTouchpoint);
+		}
+
+		if (actions != null) {
+			Object lastResult = null;
+			for (int j = 0; j < actions.size(); j++) {
+				ProvisioningAction action = actions.get(j);
+				Map<String, Object> parameters = operandParameters;
+				Touchpoint touchpoint = action.getTouchpoint();
+				if (touchpoint != null) {
+					mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, subMonitor));
+					if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+						return false;
 
+					parameters = touchpointToTouchpointOperandParameters.get(touchpoint);
+				}
+				if (lastResult != null) {
+					parameters = new HashMap<String, Object>(parameters);
+					parameters.put(LAST_RESULT_INTERNAL_NAME, lastResult);
+				}
+				parameters = Collections.unmodifiableMap(parameters);
+
+				session.recordActionExecute(action, parameters);
+				Object[] result = new Object[] {lastResult};
+				mergeStatus(status, executeAction(session, operand, action, parameters, result));
+				lastResult = result[0];
+				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+					return false;
+			}
+		}
+		mergeStatus(status, touchpointCompleteOperand(profile, operand, operandParameters, subMonitor));
+		mergeStatus(status, completeOperand(profile, operand, operandParameters, subMonitor));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+			return false;
+		operandParameters = null;
+		session.recordOperandEnd(operand);
+		subMonitor.worked(1);
+		return true;
+	}
+
+	/*
+	 * Executes an action, storing its result in the given holder when it completes.
+	 */
+	private IStatus executeAction(EngineSession session, Operand operand, ProvisioningAction action, Map<String, Object> parameters, Object[] result) {
+		IStatus actionStatus = null;
+		try {
+			actionStatus = action.execute(parameters);
+			result[0] = action.getResult();
+		} catch (RuntimeException e) {
+			if (!forced)
+				throw e;
+			// "action.execute" calls user code and might throw an unchecked exception
+			// we catch the error here to gather information on where the problem occurred.
+			actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
+		} catch (LinkageError e) {
+			if (!forced)
+				throw e;
+			// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
+			actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
+		}
+		if (forced && actionStatus != null && actionStatus.matches(IStatus.ERROR)) {
+			MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, getProblemMessage(), null);
+			result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(this, operand, action), null));
+			LogHelper.log(result);
+			actionStatus = Status.OK_STATUS;
+		}
+		return actionStatus;
+	}
+
+	private int getPhaseThreads(EngineSession session) {
+		ProvisioningContext context = session.getProvisioningContext();
+		String value = context == null ? null : context.getProperty(PROP_PHASE_THREADS);
+		if (value == null)
+			value = EngineActivator.getContext().getProperty(PROP_PHASE_THREADS);
+		if (value == null)
+			return 1;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	private static boolean isIndependent(List<ProvisioningAction> actions) {
+		if (actions == null || actions.isEmpty())
+			return false;
+		for (ProvisioningAction action : actions) {
+			if (action instanceof ParameterizedProvisioningAction)
+				action = ((ParameterizedProvisioningAction) action).getAction();
+			if (!(action instanceof IIndependentAction))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the locations the given actions write to, or null if they are not known.
+	 */
+	private static List<File> getTargets(List<ProvisioningAction> actions, List<Map<String, Object>> actionParameters) {
+		List<File> targets = new ArrayList<File>();
+		for (int i = 0; i < actions.size(); i++) {
+			ProvisioningAction action = actions.get(i);
+			Map<String, Object> parameters = Collections.unmodifiableMap(actionParameters.get(i));
+			if (action instanceof ParameterizedProvisioningAction) {
+				parameters = ((ParameterizedProvisioningAction) action).previewActionParameters(parameters);
+				if (parameters == null)
+					return null;
+				action = ((ParameterizedProvisioningAction) action).getAction();
+			}
+			String[] actionTargets = ((IIndependentAction) action).getTargets(parameters);
+			if (actionTargets == null)
+				return null;
+			for (int j = 0; j < actionTargets.length; j++)
+				targets.add(new File(actionTargets[j]).getAbsoluteFile());
+		}
+		return targets;
+	}
+
+	/*
+	 * Returns whether the actions writing to the given locations may write the same files.
+	 * Unknown locations overlap with any other.
+	 */
+	private static boolean overlap(List<File> targets, List<File> otherTargets) {
+		if (targets == null || otherTargets == null)
+			return true;
+		for (File target : targets) {
+			for (File otherTarget : otherTargets) {
+				if (isAncestor(target, otherTarget) || isAncestor(otherTarget, target))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAncestor(File ancestor, File file) {
+		for (File current = file; current != null; current = current.getParentFile()) {
+			if (current.equals(ancestor))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * An operand whose actions run on a worker thread. Everything it needs is prepared
+	 * beforehand on the phase thread.
+	 */
+	private class ConcurrentOperand implements Callable<IStatus> {
+		final EngineSession session;
+		final Operand operand;
+		final Object record;
+		final List<ProvisioningAction> actions;
+		final List<Map<String, Object>> actionParameters;
+		final Map<String, Object> parameters;
+		final Map<Touchpoint, Map<String, Object>> touchpointParameters;
+		final List<File> targets;
+		final boolean[] stopped;
+		// the earlier operands writing to the same locations, which must run first
+		final List<ConcurrentOperand> predecessors = new ArrayList<ConcurrentOperand>();
+		Future<IStatus> result;
+
+		ConcurrentOperand(EngineSession session, Operand operand, Object record, List<ProvisioningAction> actions, List<Map<String, Object>> actionParameters, Map<String, Object> parameters, Map<Touchpoint, Map<String, Object>> touchpointParameters, boolean[] stopped) {
+			this.session = session;
+			this.operand = operand;
+			this.record = record;
+			this.actions = actions;
+			this.actionParameters = actionParameters;
+			this.parameters = parameters;
+			this.touchpointParameters = touchpointParameters;
+			this.targets = getTargets(actions, actionParameters);
+			this.stopped = stopped;
+		}
+
+		public IStatus call() {
+			MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
+			// the predecessors were submitted first, so they already have a thread of their own
+			for (ConcurrentOperand predecessor : predecessors) {
+				if (!succeeded(predecessor))
+					return status;
+			}
+			Object lastResult = null;
+			for (int j = 0; j < actions.size(); j++) {
+				synchronized (stopped) {
+					if (stopped[0])
+						break;
+				}
+				ProvisioningAction action = actions.get(j);
+				Map<String, Object> actionParams = actionParameters.get(j);
+				if (lastResult != null) {
+					actionParams = new HashMap<String, Object>(actionParams);
+					actionParams.put(LAST_RESULT_INTERNAL_NAME, lastResult);
+				}
+				actionParams = Collections.unmodifiableMap(actionParams);
+				session.recordActionExecute(record, action, actionParams);
+				Object[] result = new Object[] {lastResult};
+				mergeStatus(status, executeAction(session, operand, action, actionParams, result));
+				lastResult = result[0];
+				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+					break;
+			}
+			return status;
+		}
+	}
+
+	/*
+	 * Performs the operands in order, running consecutive operands whose actions are all
+	 * independent at the same time. An operand writing to the locations of a running operand
+	 * waits for it. Undo records are kept per operand in the session, so a rollback undoes the
+	 * actions of every operand that ran.
+	 */
+	private void mainPerformConcurrently(MultiStatus status, EngineSession session, Operand[] operands, SubMonitor subMonitor, int threads) {
+		IProfile profile = session.getProfile();
+		subMonitor.beginTask(null, operands.length);
+		final boolean[] stopped = new boolean[1];
+		LinkedList<ConcurrentOperand> running = new LinkedList<ConcurrentOperand>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Provisioning phase " + phaseId); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			for (int i = 0; i < operands.length; i++) {
+				if (subMonitor.isCanceled()) {
+					stop(stopped, running, status);
+					throw new OperationCanceledException();
+				}
+				if (!waitWhilePaused(status, subMonitor)) {
+					stop(stopped, running, status);
+					return;
+				}
+				Operand operand = operands[i];
+				if (!isApplicable(operand))
+					continue;
+				List<ProvisioningAction> actions = getActions(operand);
+				if (!isIndependent(actions)) {
+					// wait for the operands running so far, then perform this one alone
+					if (!completeAll(running, status, profile, subMonitor) || !performOperand(status, session, profile, operand, actions, subMonitor)) {
+						stop(stopped, running, status);
+						return;
+					}
+					continue;
+				}
+				ConcurrentOperand task = prepareOperand(status, session, profile, operand, actions, stopped, subMonitor);
+				if (task == null) {
+					stop(stopped, running, status);
+					return;
+				}
+				for (ConcurrentOperand other : running) {
+					if (overlap(task.targets, other.targets))
+						task.predecessors.add(other);
+				}
+				task.result = executor.submit(task);
+				running.add(task);
+				// keep a bounded number of prepared operands ahead of the completed ones
+				if (running.size() > 2 * threads && !complete(running.removeFirst(), status, profile, subMonitor)) {
+					stop(stopped, running, status);
+					return;
+				}
+			}
+			if (!completeAll(running, status, profile, subMonitor))
+				stop(stopped, running, status);
+		} catch (RuntimeException e) {
+			stopAfterFailure(stopped, running, status);
+			throw e;
+		} catch (Error e) {
+			stopAfterFailure(stopped, running, status);
+			throw e;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Initializes the operand and the parameters of each of its actions on the phase thread.
+	 * Returns null if the phase must stop.
+	 */
+	private ConcurrentOperand prepareOperand(MultiStatus status, EngineSession session, IProfile profile, Operand operand, List<ProvisioningAction> actions, boolean[] stopped, SubMonitor subMonitor) {
+		Object record = session.recordConcurrentOperandStart(operand);
+		operandParameters = new HashMap<String, Object>(phaseParameters);
+		operandParameters.put(PARM_OPERAND, operand);
+		operandParameters.put(PARM_CONCURRENT, Boolean.TRUE.toString());
+		try {
+			mergeStatus(status, initializeOperand(profile, operand, operandParameters, subMonitor));
+			if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+				return null;
 			Touchpoint operandTouchpoint = (Touchpoint) operandParameters.get(PARM_TOUCHPOINT);
 			if (operandTouchpoint != null) {
 				mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, subMonitor));
 				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-					return;
-
+					return null;
 				operandParameters = touchpointToTouchpointOperandParameters.get(operandTouchpoint);
 			}
-
-			if (actions != null) {
-				Object lastResult = null;
-				for (int j = 0; j < actions.size(); j++) {
-					ProvisioningAction action = actions.get(j);
-					Map<String, Object> parameters = operandParameters;
-					Touchpoint touchpoint = action.getTouchpoint();
-					if (touchpoint != null) {
-						mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, subMonitor));
-						if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-							return;
-
-						parameters = touchpointToTouchpointOperandParameters.get(touchpoint);
-					}
-					if (lastResult != null) {
-						parameters = new HashMap<String, Object>(parameters);
-						parameters.put(LAST_RESULT_INTERNAL_NAME, lastResult);
-					}
-					parameters = Collections.unmodifiableMap(parameters);
-
-					IStatus actionStatus = null;
-					try {
-						session.recordActionExecute(action, parameters);
-						actionStatus = action.execute(parameters);
-						lastResult = action.getResult();
-					} catch (RuntimeException e) {
-						if (!forced)
-							throw e;
-						// "action.execute" calls user code and might throw an unchecked exception
-						// we catch the error here to gather information on where the problem occurred.
-						actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
-					} catch (LinkageError e) {
-						if (!forced)
-							throw e;
-						// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
-						actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
-					}
-					if (forced && actionStatus != null && actionStatus.matches(IStatus.ERROR)) {
-						MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, getProblemMessage(), null);
-						result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(this, operand, action), null));
-						LogHelper.log(result);
-						actionStatus = Status.OK_STATUS;
-					}
-					mergeStatus(status, actionStatus);
+			List<Map<String, Object>> actionParameters = new ArrayList<Map<String, Object>>(actions.size());
+			for (ProvisioningAction action : actions) {
+				Map<String, Object> parameters = operandParameters;
+				Touchpoint touchpoint = action.getTouchpoint();
+				if (touchpoint != null) {
+					mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, subMonitor));
 					if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-						return;
+						return null;
+					parameters = touchpointToTouchpointOperandParameters.get(touchpoint);
 				}
+				actionParameters.add(parameters);
 			}
-			mergeStatus(status, touchpointCompleteOperand(profile, operand, operandParameters, subMonitor));
-			mergeStatus(status, completeOperand(profile, operand, operandParameters, subMonitor));
-			if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-				return;
+			Map<Touchpoint, Map<String, Object>> touchpointParameters = new HashMap<Touchpoint, Map<String, Object>>(touchpointToTouchpointOperandParameters);
+			return new ConcurrentOperand(session, operand, record, actions, actionParameters, operandParameters, touchpointParameters, stopped);
+		} finally {
+			// the next operand initializes its own touchpoint parameters
+			touchpointToTouchpointOperandParameters.clear();
 			operandParameters = null;
-			session.recordOperandEnd(operand);
-			subMonitor.worked(1);
+		}
+	}
+
+	private boolean completeAll(LinkedList<ConcurrentOperand> running, MultiStatus status, IProfile profile, SubMonitor subMonitor) {
+		while (!running.isEmpty()) {
+			if (!complete(running.removeFirst(), status, profile, subMonitor))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Waits for the actions of the given operand and completes it on the phase thread.
+	 * Returns false if the phase must stop.
+	 */
+	private boolean complete(ConcurrentOperand task, MultiStatus status, IProfile profile, SubMonitor subMonitor) {
+		mergeStatus(status, waitFor(task));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+			return false;
+		mergeStatus(status, touchpointCompleteOperand(profile, task.touchpointParameters));
+		mergeStatus(status, completeOperand(profile, task.operand, task.parameters, subMonitor));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+			return false;
+		subMonitor.worked(1);
+		return true;
+	}
+
+	/*
+	 * Stops the operands that have not started and waits for the running ones, so that
+	 * the session holds every action to undo.
+	 */
+	private void stop(boolean[] stopped, LinkedList<ConcurrentOperand> running, MultiStatus status) {
+		synchronized (stopped) {
+			stopped[0] = true;
+		}
+		RuntimeException exception = null;
+		Error error = null;
+		for (ConcurrentOperand task : running) {
+			try {
+				mergeStatus(status, waitFor(task));
+			} catch (RuntimeException e) {
+				if (exception == null)
+					exception = e;
+			} catch (Error e) {
+				if (error == null)
+					error = e;
+			}
+		}
+		running.clear();
+		if (error != null)
+			throw error;
+		if (exception != null)
+			throw exception;
+	}
+
+	private void stopAfterFailure(boolean[] stopped, LinkedList<ConcurrentOperand> running, MultiStatus status) {
+		try {
+			stop(stopped, running, status);
+		} catch (RuntimeException e) {
+			// the first failure is the one reported
+		} catch (Error e) {
+			// the first failure is the one reported
+		}
+	}
+
+	private static IStatus waitFor(ConcurrentOperand task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.result.get();
+				} catch (InterruptedException e) {
+					// the actions cannot be abandoned half way
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause == null ? task.operand.toString() : cause.getMessage());
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Waits for the actions of the given operand on a worker thread. The failure itself is
+	 * reported when the operand is completed on the phase thread.
+	 */
+	private static boolean succeeded(ConcurrentOperand task) {
+		try {
+			return !waitFor(task).matches(IStatus.ERROR | IStatus.CANCEL);
+		} catch (RuntimeException e) {
+			return false;
+		} catch (Error e) {
+			return false;
 		}
 	}
 
@@ -331,16 +721,21 @@ public abstract class Phase {
 	}
 
 	IStatus touchpointCompleteOperand(IProfile profile, Operand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
-		if (touchpointToTouchpointOperandParameters.isEmpty())
+		IStatus status = touchpointCompleteOperand(profile, touchpointToTouchpointOperandParameters);
+		touchpointToTouchpointOperandParameters.clear();
+		return status;
+	}
+
+	private static IStatus touchpointCompleteOperand(IProfile profile, Map<Touchpoint, Map<String, Object>> touchpointOperandParameters) {
+		if (touchpointOperandParameters.isEmpty())
 			return Status.OK_STATUS;
 
 		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
-		for (Map.Entry<Touchpoint, Map<String, Object>> entry : touchpointToTouchpointOperandParameters.entrySet()) {
+		for (Map.Entry<Touchpoint, Map<String, Object>> entry : touchpointOperandParameters.entrySet()) {
 			Touchpoint touchpoint = entry.getKey();
 			Map<String, Object> touchpointParameters = entry.getValue();
 			mergeStatus(status, touchpoint.completeOperand(profile, touchpointParameters));
 		}
-		touchpointToTouchpointOperandParameters.clear();
 		return status;
 	}
 
@@ -0,0 +1,473 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.equinox.internal.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+
+/**
+ * A compact binary encoding of a persisted profile, written next to the profile XML file
+ * it was produced from so that the profile can be read back without parsing the XML.
+ * The XML file remains the interchange format; the binary file is only used while the
+ * length and modification time of the XML file match the ones it records.
+ * <p>
+ * All strings are written once to a string table and referred to by their index, and
+ * each unit is written as a record of its own. Units that cannot be encoded, such as
+ * patches or units with requirements that are not simple, are carried as profile XML
+ * encoded by the profile registry.
+ * </p>
+ */
+public class ProfileBinaryFormat {
+	public static final String BINARY_EXT = ".bin"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x50325046; // "P2PF"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte SINGLETON = 1;
+	private static final byte FRAGMENT = 2;
+
+	/**
+	 * The contents of a persisted profile.
+	 */
+	public static class ProfileData {
+		public String profileId;
+		public String parentId;
+		public long timestamp;
+		public Map<String, String> properties;
+		// units mapped to their profile properties
+		public Map<IInstallableUnit, Map<String, String>> units;
+		// profile XML holding the units that could not be encoded
+		public byte[] encodedUnits;
+	}
+
+	private ProfileBinaryFormat() {
+		// static methods only
+	}
+
+	/**
+	 * Returns the binary file caching the contents of the given profile file.
+	 */
+	public static File getBinaryFile(File profileFile) {
+		return new File(profileFile.getParentFile(), profileFile.getName() + BINARY_EXT);
+	}
+
+	/**
+	 * Returns whether the given unit can be written to a binary profile, rather than
+	 * as part of the encoded units.
+	 */
+	public static boolean canEncode(IInstallableUnit iu) {
+		if (iu.getClass() != InstallableUnit.class && iu.getClass() != InstallableUnitFragment.class)
+			return false;
+		for (IRequirement requirement : iu.getRequirements())
+			if (!isSimple(requirement))
+				return false;
+		for (IRequirement requirement : iu.getMetaRequirements())
+			if (!isSimple(requirement))
+				return false;
+		if (iu instanceof IInstallableUnitFragment) {
+			for (IRequirement requirement : ((IInstallableUnitFragment) iu).getHost())
+				if (!isSimple(requirement))
+					return false;
+		}
+		IUpdateDescriptor descriptor = iu.getUpdateDescriptor();
+		if (descriptor != null) {
+			Collection<IMatchExpression<IInstallableUnit>> updated = descriptor.getIUsBeingUpdated();
+			if (updated.size() != 1 || !RequiredCapability.isSimpleRequirement(updated.iterator().next()))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isSimple(IRequirement requirement) {
+		return requirement.getMax() > 0 && RequiredCapability.isSimpleRequirement(requirement.getMatches());
+	}
+
+	/**
+	 * Writes the given profile contents to the binary file of the given profile file. The
+	 * units of the contents must all be encodable.
+	 */
+	public static void write(File profileFile, ProfileData data) throws IOException {
+		Encoder body = new Encoder();
+		body.writeString(data.profileId);
+		body.writeString(data.parentId);
+		body.output.writeLong(data.timestamp);
+		body.writeProperties(data.properties);
+		body.output.writeInt(data.units.size());
+		for (Entry<IInstallableUnit, Map<String, String>> entry : data.units.entrySet()) {
+			Encoder record = new Encoder(body.strings);
+			record.writeUnit(entry.getKey());
+			record.writeProperties(entry.getValue());
+			byte[] bytes = record.toByteArray();
+			body.output.writeInt(bytes.length);
+			body.output.write(bytes);
+		}
+		if (data.encodedUnits == null) {
+			body.output.writeInt(0);
+		} else {
+			body.output.writeInt(data.encodedUnits.length);
+			body.output.write(data.encodedUnits);
+		}
+		byte[] bodyBytes = body.toByteArray();
+
+		File binaryFile = getBinaryFile(profileFile);
+		// readers must never see a partially written file
+		File tempFile = new File(binaryFile.getParentFile(), binaryFile.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeLong(profileFile.length());
+			output.writeLong(profileFile.lastModified());
+			output.writeInt(body.strings.size());
+			for (String string : body.strings.keySet())
+				writeUTF8(output, string);
+			output.write(bodyBytes);
+		} catch (IOException e) {
+			output.close();
+			tempFile.delete();
+			throw e;
+		}
+		output.close();
+		binaryFile.delete();
+		if (!tempFile.renameTo(binaryFile)) {
+			tempFile.delete();
+			throw new IOException(binaryFile.toString());
+		}
+	}
+
+	/**
+	 * Reads the contents of the given profile file from its binary file. Returns <code>null</code>
+	 * if there is no binary file, or if it is out of date.
+	 */
+	public static ProfileData read(File profileFile) throws IOException {
+		File binaryFile = getBinaryFile(profileFile);
+		if (!binaryFile.isFile())
+			return null;
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFile)));
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+				return null;
+			if (input.readLong() != profileFile.length() || input.readLong() != profileFile.lastModified())
+				return null;
+			String[] strings = new String[input.readInt()];
+			for (int i = 0; i < strings.length; i++)
+				strings[i] = readUTF8(input);
+
+			Decoder decoder = new Decoder(input, strings);
+			ProfileData data = new ProfileData();
+			data.profileId = decoder.readString();
+			data.parentId = decoder.readString();
+			data.timestamp = input.readLong();
+			data.properties = decoder.readProperties();
+			int count = input.readInt();
+			data.units = new LinkedHashMap<IInstallableUnit, Map<String, String>>(count);
+			for (int i = 0; i < count; i++) {
+				// the record length allows records to be skipped, all of them are read here
+				input.readInt();
+				IInstallableUnit iu = decoder.readUnit();
+				data.units.put(iu, decoder.readProperties());
+			}
+			int length = input.readInt();
+			if (length > 0) {
+				data.encodedUnits = new byte[length];
+				input.readFully(data.encodedUnits);
+			}
+			return data;
+		} catch (RuntimeException e) {
+			// invalid versions, filters or locations
+			throw new IOException(e.getMessage());
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void writeUTF8(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readUTF8(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0)
+			throw new IOException();
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static class Encoder {
+		final Map<String, Integer> strings;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(bytes);
+
+		Encoder() {
+			this(new LinkedHashMap<String, Integer>());
+		}
+
+		Encoder(Map<String, Integer> strings) {
+			this.strings = strings;
+		}
+
+		byte[] toByteArray() throws IOException {
+			output.flush();
+			return bytes.toByteArray();
+		}
+
+		void writeString(String value) throws IOException {
+			if (value == null) {
+				output.writeInt(-1);
+				return;
+			}
+			Integer index = strings.get(value);
+			if (index == null) {
+				index = new Integer(strings.size());
+				strings.put(value, index);
+			}
+			output.writeInt(index.intValue());
+		}
+
+		void writeString(Object value) throws IOException {
+			writeString(value == null ? null : value.toString());
+		}
+
+		void writeProperties(Map<String, String> properties) throws IOException {
+			if (properties == null) {
+				output.writeInt(0);
+				return;
+			}
+			output.writeInt(properties.size());
+			for (Entry<String, String> entry : properties.entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+		}
+
+		void writeFilter(IMatchExpression<IInstallableUnit> filter) throws IOException {
+			writeString(filter == null ? null : filter.getParameters()[0]);
+		}
+
+		void writeRequirements(Collection<IRequirement> requirements) throws IOException {
+			output.writeInt(requirements.size());
+			for (IRequirement requirement : requirements) {
+				IMatchExpression<IInstallableUnit> match = requirement.getMatches();
+				writeString(RequiredCapability.extractNamespace(match));
+				writeString(RequiredCapability.extractName(match));
+				writeString(RequiredCapability.extractRange(match));
+				output.writeInt(requirement.getMin());
+				output.writeInt(requirement.getMax());
+				output.writeBoolean(requirement.isGreedy());
+				writeFilter(requirement.getFilter());
+				writeString(requirement.getDescription());
+			}
+		}
+
+		void writeUnit(IInstallableUnit iu) throws IOException {
+			byte flags = 0;
+			if (iu.isSingleton())
+				flags |= SINGLETON;
+			if (iu instanceof IInstallableUnitFragment)
+				flags |= FRAGMENT;
+			output.writeByte(flags);
+			writeString(iu.getId());
+			writeString(iu.getVersion());
+			writeProperties(iu.getProperties());
+
+			Collection<IProvidedCapability> capabilities = iu.getProvidedCapabilities();
+			output.writeInt(capabilities.size());
+			for (IProvidedCapability capability : capabilities) {
+				writeString(capability.getNamespace());
+				writeString(capability.getName());
+				writeString(capability.getVersion());
+			}
+			writeRequirements(iu.getRequirements());
+			writeRequirements(iu.getMetaRequirements());
+			if (iu instanceof IInstallableUnitFragment)
+				writeRequirements(((IInstallableUnitFragment) iu).getHost());
+
+			IUpdateDescriptor descriptor = iu.getUpdateDescriptor();
+			output.writeBoolean(descriptor != null);
+			if (descriptor != null) {
+				IMatchExpression<IInstallableUnit> updated = descriptor.getIUsBeingUpdated().iterator().next();
+				writeString(RequiredCapability.extractName(updated));
+				writeString(RequiredCapability.extractRange(updated));
+				output.writeInt(descriptor.getSeverity());
+				writeString(descriptor.getDescription());
+				writeString(descriptor.getLocation());
+			}
+			writeFilter(iu.getFilter());
+
+			Collection<IArtifactKey> artifacts = iu.getArtifacts();
+			output.writeInt(artifacts.size());
+			for (IArtifactKey artifact : artifacts) {
+				writeString(artifact.getClassifier());
+				writeString(artifact.getId());
+				writeString(artifact.getVersion());
+			}
+			writeString(iu.getTouchpointType().getId());
+			writeString(iu.getTouchpointType().getVersion());
+
+			Collection<ITouchpointData> touchpointData = iu.getTouchpointData();
+			output.writeInt(touchpointData.size());
+			for (ITouchpointData data : touchpointData) {
+				Map<String, ITouchpointInstruction> instructions = data.getInstructions();
+				output.writeInt(instructions.size());
+				for (Entry<String, ITouchpointInstruction> entry : instructions.entrySet()) {
+					writeString(entry.getKey());
+					writeString(entry.getValue().getBody());
+					writeString(entry.getValue().getImportAttribute());
+				}
+			}
+
+			Collection<ILicense> licenses = iu.getLicenses();
+			List<ILicense> written = new ArrayList<ILicense>(licenses.size());
+			for (ILicense license : licenses)
+				if (license != null)
+					written.add(license);
+			output.writeInt(written.size());
+			for (ILicense license : written) {
+				writeString(license.getLocation());
+				writeString(license.getBody());
+			}
+			ICopyright copyright = iu.getCopyright();
+			output.writeBoolean(copyright != null);
+			if (copyright != null) {
+				writeString(copyright.getLocation());
+				writeString(copyright.getBody());
+			}
+		}
+	}
+
+	private static class Decoder {
+		final DataInputStream input;
+		final String[] strings;
+
+		Decoder(DataInputStream input, String[] strings) {
+			this.input = input;
+			this.strings = strings;
+		}
+
+		String readString() throws IOException {
+			int index = input.readInt();
+			if (index < 0)
+				return null;
+			if (index >= strings.length)
+				throw new IOException();
+			return strings[index];
+		}
+
+		Version readVersion() throws IOException {
+			String version = readString();
+			return version == null ? null : Version.create(version);
+		}
+
+		VersionRange readRange() throws IOException {
+			String range = readString();
+			return range == null ? null : new VersionRange(range);
+		}
+
+		URI readURI() throws IOException {
+			String location = readString();
+			try {
+				return location == null ? null : new URI(location);
+			} catch (URISyntaxException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		IMatchExpression<IInstallableUnit> readFilter() throws IOException {
+			String filter = readString();
+			return filter == null ? null : InstallableUnit.parseFilter(filter);
+		}
+
+		Map<String, String> readProperties() throws IOException {
+			int count = input.readInt();
+			Map<String, String> properties = new LinkedHashMap<String, String>(count);
+			for (int i = 0; i < count; i++)
+				properties.put(readString(), readString());
+			return properties;
+		}
+
+		IRequirement[] readRequirements() throws IOException {
+			IRequirement[] requirements = new IRequirement[input.readInt()];
+			for (int i = 0; i < requirements.length; i++) {
+				String namespace = readString();
+				String name = readString();
+				VersionRange range = readRange();
+				int min = input.readInt();
+				int max = input.readInt();
+				boolean greedy = input.readBoolean();
+				IMatchExpression<IInstallableUnit> filter = readFilter();
+				String description = readString();
+				requirements[i] = MetadataFactory.createRequirement(namespace, name, range, filter, min, max, greedy, description);
+			}
+			return requirements;
+		}
+
+		IInstallableUnit readUnit() throws IOException {
+			byte flags = input.readByte();
+			InstallableUnitDescription description = (flags & FRAGMENT) != 0 ? new InstallableUnitFragmentDescription() : new InstallableUnitDescription();
+			description.setSingleton((flags & SINGLETON) != 0);
+			description.setId(readString());
+			description.setVersion(readVersion());
+			for (Entry<String, String> entry : readProperties().entrySet())
+				description.setProperty(entry.getKey(), entry.getValue());
+
+			IProvidedCapability[] capabilities = new IProvidedCapability[input.readInt()];
+			for (int i = 0; i < capabilities.length; i++)
+				capabilities[i] = MetadataFactory.createProvidedCapability(readString(), readString(), readVersion());
+			description.setCapabilities(capabilities);
+			description.setRequirements(readRequirements());
+			description.setMetaRequirements(readRequirements());
+			if ((flags & FRAGMENT) != 0)
+				((InstallableUnitFragmentDescription) description).setHost(readRequirements());
+
+			if (input.readBoolean()) {
+				String id = readString();
+				VersionRange range = readRange();
+				int severity = input.readInt();
+				description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor(id, range, severity, readString(), readURI()));
+			}
+			description.setFilter(readFilter());
+
+			IArtifactKey[] artifacts = new IArtifactKey[input.readInt()];
+			for (int i = 0; i < artifacts.length; i++)
+				artifacts[i] = new ArtifactKey(readString(), readString(), readVersion());
+			description.setArtifacts(artifacts);
+			description.setTouchpointType(MetadataFactory.createTouchpointType(readString(), readVersion()));
+
+			int dataCount = input.readInt();
+			for (int i = 0; i < dataCount; i++) {
+				int instructionCount = input.readInt();
+				Map<String, ITouchpointInstruction> instructions = new LinkedHashMap<String, ITouchpointInstruction>(instructionCount);
+				for (int j = 0; j < instructionCount; j++)
+					instructions.put(readString(), MetadataFactory.createTouchpointInstruction(readString(), readString()));
+				description.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+			}
+
+			ILicense[] licenses = new ILicense[input.readInt()];
+			for (int i = 0; i < licenses.length; i++)
+				licenses[i] = MetadataFactory.createLicense(readURI(), readString());
+			description.setLicenses(licenses);
+			if (input.readBoolean())
+				description.setCopyright(MetadataFactory.createCopyright(readURI(), readString()));
+			return MetadataFactory.createInstallableUnit(description);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.io.*;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+
+/**
+ * The difference between two persisted states of a profile. Removed units and changed
+ * properties are encoded here, while the units that were added are handed to the
+ * profile registry which writes them in the usual profile XML format.
+ */
+public class ProfileDelta {
+
+	/**
+	 * The properties and units of a profile as they were persisted.
+	 */
+	public static class State {
+		final long timestamp;
+		final Map<String, String> properties;
+		final Map<IInstallableUnit, Map<String, String>> units;
+
+		public State(IProfile profile) {
+			timestamp = profile.getTimestamp();
+			properties = new HashMap<String, String>(profile.getProperties());
+			IQueryResult<IInstallableUnit> result = profile.query(QueryUtil.createIUAnyQuery(), null);
+			units = new HashMap<IInstallableUnit, Map<String, String>>();
+			for (Iterator<IInstallableUnit> iterator = result.iterator(); iterator.hasNext();) {
+				IInstallableUnit iu = iterator.next();
+				units.put(iu, new HashMap<String, String>(profile.getInstallableUnitProperties(iu)));
+			}
+		}
+	}
+
+	// a null value marks a removed property
+	private final Map<String, String> properties = new HashMap<String, String>();
+	private final List<IVersionedId> removedUnits = new ArrayList<IVersionedId>();
+	// the complete properties of units whose properties changed
+	private final Map<IVersionedId, Map<String, String>> changedUnits = new HashMap<IVersionedId, Map<String, String>>();
+	private final Map<IInstallableUnit, Map<String, String>> addedUnits = new HashMap<IInstallableUnit, Map<String, String>>();
+	private byte[] encodedUnits;
+
+	private ProfileDelta() {
+		// use compute or read
+	}
+
+	/**
+	 * Returns the changes that turn the previous state into the current one.
+	 */
+	public static ProfileDelta compute(State previous, State current) {
+		ProfileDelta delta = new ProfileDelta();
+		for (Entry<String, String> entry : current.properties.entrySet()) {
+			if (!entry.getValue().equals(previous.properties.get(entry.getKey())))
+				delta.properties.put(entry.getKey(), entry.getValue());
+		}
+		for (String key : previous.properties.keySet()) {
+			if (!current.properties.containsKey(key))
+				delta.properties.put(key, null);
+		}
+		for (Entry<IInstallableUnit, Map<String, String>> entry : current.units.entrySet()) {
+			IInstallableUnit iu = entry.getKey();
+			Map<String, String> previousProperties = previous.units.get(iu);
+			if (previousProperties == null)
+				delta.addedUnits.put(iu, entry.getValue());
+			else if (!previousProperties.equals(entry.getValue()))
+				delta.changedUnits.put(new VersionedId(iu.getId(), iu.getVersion()), entry.getValue());
+		}
+		for (IInstallableUnit iu : previous.units.keySet()) {
+			if (!current.units.containsKey(iu))
+				delta.removedUnits.add(new VersionedId(iu.getId(), iu.getVersion()));
+		}
+		return delta;
+	}
+
+	/**
+	 * Returns the units added by this delta, mapped to their profile properties.
+	 */
+	public Map<IInstallableUnit, Map<String, String>> getAddedUnits() {
+		return addedUnits;
+	}
+
+	/**
+	 * Returns the units added by this delta as they were encoded by the profile registry,
+	 * or <code>null</code> if this delta adds no units.
+	 */
+	public byte[] getEncodedUnits() {
+		return encodedUnits;
+	}
+
+	public void setEncodedUnits(byte[] encodedUnits) {
+		this.encodedUnits = encodedUnits;
+	}
+
+	/**
+	 * Applies this delta to the given profile.
+	 * @param profile the profile in the state this delta was computed against
+	 * @param added the units added by this delta, mapped to their profile properties
+	 */
+	public void apply(Profile profile, Map<IInstallableUnit, Map<String, String>> added) {
+		for (Entry<String, String> entry : properties.entrySet()) {
+			if (entry.getValue() == null)
+				profile.removeProperty(entry.getKey());
+			else
+				profile.setProperty(entry.getKey(), entry.getValue());
+		}
+		for (IVersionedId removed : removedUnits) {
+			IInstallableUnit iu = findUnit(profile, removed);
+			if (iu != null) {
+				profile.removeInstallableUnit(iu);
+				profile.clearInstallableUnitProperties(iu);
+			}
+		}
+		for (Entry<IVersionedId, Map<String, String>> entry : changedUnits.entrySet()) {
+			IInstallableUnit iu = findUnit(profile, entry.getKey());
+			if (iu != null) {
+				profile.clearInstallableUnitProperties(iu);
+				profile.addInstallableUnitProperties(iu, entry.getValue());
+			}
+		}
+		for (Entry<IInstallableUnit, Map<String, String>> entry : added.entrySet()) {
+			profile.addInstallableUnit(entry.getKey());
+			if (entry.getValue() != null)
+				profile.addInstallableUnitProperties(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private static IInstallableUnit findUnit(Profile profile, IVersionedId id) {
+		IQueryResult<IInstallableUnit> result = profile.query(QueryUtil.createIUQuery(id), null);
+		return result.isEmpty() ? null : result.iterator().next();
+	}
+
+	public void write(DataOutputStream output) throws IOException {
+		output.writeInt(properties.size());
+		for (Entry<String, String> entry : properties.entrySet()) {
+			writeString(output, entry.getKey());
+			writeString(output, entry.getValue());
+		}
+		output.writeInt(removedUnits.size());
+		for (IVersionedId removed : removedUnits) {
+			writeString(output, removed.getId());
+			writeString(output, removed.getVersion().toString());
+		}
+		output.writeInt(changedUnits.size());
+		for (Entry<IVersionedId, Map<String, String>> entry : changedUnits.entrySet()) {
+			writeString(output, entry.getKey().getId());
+			writeString(output, entry.getKey().getVersion().toString());
+			output.writeInt(entry.getValue().size());
+			for (Entry<String, String> property : entry.getValue().entrySet()) {
+				writeString(output, property.getKey());
+				writeString(output, property.getValue());
+			}
+		}
+		if (encodedUnits == null) {
+			output.writeInt(0);
+		} else {
+			output.writeInt(encodedUnits.length);
+			output.write(encodedUnits);
+		}
+	}
+
+	public static ProfileDelta read(DataInputStream input) throws IOException {
+		ProfileDelta delta = new ProfileDelta();
+		int count = input.readInt();
+		for (int i = 0; i < count; i++)
+			delta.properties.put(readString(input), readString(input));
+		count = input.readInt();
+		for (int i = 0; i < count; i++)
+			delta.removedUnits.add(new VersionedId(readString(input), readString(input)));
+		count = input.readInt();
+		for (int i = 0; i < count; i++) {
+			IVersionedId id = new VersionedId(readString(input), readString(input));
+			int size = input.readInt();
+			Map<String, String> unitProperties = new HashMap<String, String>(size);
+			for (int j = 0; j < size; j++)
+				unitProperties.put(readString(input), readString(input));
+			delta.changedUnits.put(id, unitProperties);
+		}
+		int length = input.readInt();
+		if (length > 0) {
+			delta.encodedUnits = new byte[length];
+			input.readFully(delta.encodedUnits);
+		}
+		return delta;
+	}
+
+	// property values are not bounded in size, so writeUTF cannot be used
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An append-only file recording the states of a profile that were persisted after a
+ * full profile file, the checkpoint the journal is named after. Each record holds the
+ * {@link ProfileDelta} from the previous state, or marks a state as removed.
+ * <p>
+ * A record is written in a single step and a trailing record that was not completely
+ * written is ignored, so that an interrupted commit leaves the previous states intact.
+ * </p>
+ */
+public class ProfileJournal {
+	public static final String JOURNAL_EXT = ".journal"; //$NON-NLS-1$
+
+	private static final byte DELTA = 0;
+	private static final byte REMOVED = 1;
+	// kind, timestamp and length of the record body
+	private static final int HEADER_LENGTH = 1 + 8 + 4;
+
+	private final File file;
+	private final long checkpoint;
+	private long indexedLength = -1;
+	private long indexedLastModified;
+	private long validLength;
+	private long[] deltas = new long[0];
+	private long[] offsets = new long[0];
+	private int[] lengths = new int[0];
+	private final Set<Long> removed = new HashSet<Long>();
+
+	public ProfileJournal(File profileDirectory, long checkpoint) {
+		this.file = new File(profileDirectory, Long.toString(checkpoint) + JOURNAL_EXT);
+		this.checkpoint = checkpoint;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the timestamp of the profile file the deltas of this journal apply to.
+	 */
+	public long getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Returns the timestamps of the states recorded in this journal, in the order they were
+	 * persisted, including the removed ones.
+	 */
+	public long[] getTimestamps() {
+		index();
+		return deltas;
+	}
+
+	public long getLastTimestamp() {
+		long[] timestamps = getTimestamps();
+		return timestamps.length == 0 ? checkpoint : timestamps[timestamps.length - 1];
+	}
+
+	public boolean contains(long timestamp) {
+		long[] timestamps = getTimestamps();
+		for (int i = 0; i < timestamps.length; i++)
+			if (timestamps[i] == timestamp)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the timestamps marked as removed in this journal.
+	 */
+	public Set<Long> getRemoved() {
+		index();
+		return removed;
+	}
+
+	public long length() {
+		index();
+		return validLength;
+	}
+
+	/**
+	 * Returns the deltas recorded up to and including the given timestamp.
+	 */
+	public List<ProfileDelta> readDeltas(long timestamp) throws IOException {
+		index();
+		List<ProfileDelta> result = new ArrayList<ProfileDelta>();
+		if (deltas.length == 0)
+			return result;
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			long position = 0;
+			for (int i = 0; i < deltas.length && deltas[i] <= timestamp; i++) {
+				skipFully(input, offsets[i] + HEADER_LENGTH - position);
+				result.add(ProfileDelta.read(input));
+				position = offsets[i] + HEADER_LENGTH + lengths[i];
+			}
+		} finally {
+			input.close();
+		}
+		return result;
+	}
+
+	private static void skipFully(InputStream input, long count) throws IOException {
+		while (count > 0) {
+			long skipped = input.skip(count);
+			if (skipped <= 0)
+				throw new EOFException();
+			count -= skipped;
+		}
+	}
+
+	public void appendDelta(long timestamp, ProfileDelta delta) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(body);
+		delta.write(output);
+		output.close();
+		append(DELTA, timestamp, body.toByteArray());
+	}
+
+	public void appendRemoved(long timestamp) throws IOException {
+		append(REMOVED, timestamp, new byte[0]);
+	}
+
+	private void append(byte kind, long timestamp, byte[] body) throws IOException {
+		index();
+		ByteArrayOutputStream record = new ByteArrayOutputStream(HEADER_LENGTH + body.length);
+		DataOutputStream output = new DataOutputStream(record);
+		output.writeByte(kind);
+		output.writeLong(timestamp);
+		output.writeInt(body.length);
+		output.write(body);
+		output.close();
+
+		file.getParentFile().mkdirs();
+		RandomAccessFile journal = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			// drop whatever an interrupted append left behind
+			journal.setLength(validLength);
+			journal.seek(validLength);
+			try {
+				journal.write(record.toByteArray());
+			} catch (IOException e) {
+				journal.setLength(validLength);
+				throw e;
+			}
+		} finally {
+			journal.close();
+		}
+		indexedLength = -1;
+	}
+
+	public void delete() {
+		file.delete();
+		indexedLength = -1;
+	}
+
+	/*
+	 * Reads the record headers, unless the file did not change since they were last read.
+	 */
+	private void index() {
+		long length = file.length();
+		long lastModified = file.lastModified();
+		if (length == indexedLength && lastModified == indexedLastModified)
+			return;
+		List<Long> timestamps = new ArrayList<Long>();
+		List<Long> positions = new ArrayList<Long>();
+		List<Integer> bodyLengths = new ArrayList<Integer>();
+		removed.clear();
+		long position = 0;
+		if (length > 0) {
+			try {
+				DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					while (position + HEADER_LENGTH <= length) {
+						byte kind = input.readByte();
+						long timestamp = input.readLong();
+						int bodyLength = input.readInt();
+						if (bodyLength < 0 || position + HEADER_LENGTH + bodyLength > length)
+							break;
+						if (kind == DELTA) {
+							timestamps.add(new Long(timestamp));
+							positions.add(new Long(position));
+							bodyLengths.add(new Integer(bodyLength));
+						} else if (kind == REMOVED) {
+							removed.add(new Long(timestamp));
+						}
+						skipFully(input, bodyLength);
+						position += HEADER_LENGTH + bodyLength;
+					}
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				// keep the records read so far
+			}
+		}
+		deltas = new long[timestamps.size()];
+		offsets = new long[deltas.length];
+		lengths = new int[deltas.length];
+		for (int i = 0; i < deltas.length; i++) {
+			deltas[i] = timestamps.get(i).longValue();
+			offsets[i] = positions.get(i).longValue();
+			lengths[i] = bodyLengths.get(i).intValue();
+		}
+		validLength = position;
+		indexedLength = length;
+		indexedLastModified = lastModified;
+	}
+}
@@ -47,6 +47,11 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 	private static final String PROFILE_GZ_EXT = ".profile.gz"; //$NON-NLS-1$
 	public static final String DEFAULT_STORAGE_DIR = "profileRegistry"; //$NON-NLS-1$
 	private static final String DATA_EXT = ".data"; //$NON-NLS-1$
+	private static final String JOURNAL_EXT = ProfileJournal.JOURNAL_EXT;
+	private static final String TEMP_EXT = ".tmp"; //$NON-NLS-1$
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+	public static final Object PROFILE_COMPACT_JOB_FAMILY = new Object();
 
 	//Internal constant used to keep track of the newly created timestamp
 	private static final String SERVICE_SHARED_INSTALL_NEW_TIMESTAMP = IProfileRegistry.class.getName() + '_' + "NEW_SELF_TIMESTAMP"; //$NON-NLS-1$
@@ -72,6 +77,37 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 	// cache of last accessed profile state properties
 	private ProfileStateProperties lastAccessedProperties;
 
+	/**
+	 * Map of String(Profile id)->the state of the profile as it was last persisted, used to
+	 * compute the changes that are journaled.
+	 */
+	private Map<String, SoftReference<ProfileDelta.State>> persistedStates = new HashMap<String, SoftReference<ProfileDelta.State>>();
+	private Map<File, ProfileJournal> journals = new HashMap<File, ProfileJournal>();
+	private Map<String, CompactJob> compactJobs = new HashMap<String, CompactJob>();
+
+	private class CompactJob extends Job {
+		private final String profileId;
+
+		CompactJob(String profileId) {
+			super(NLS.bind(Messages.SimpleProfileRegistry_Compacting_profile, profileId));
+			setSystem(true);
+			this.profileId = profileId;
+		}
+
+		public boolean belongsTo(Object family) {
+			return family == PROFILE_COMPACT_JOB_FAMILY;
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				compactProfile(profileId);
+			} catch (RuntimeException e) {
+				LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, profileId), e));
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
 	public SimpleProfileRegistry(IProvisioningAgent agent, File registryDirectory) {
 		this(agent, registryDirectory, new SurrogateProfileHandler(agent), true);
 	}
@@ -192,24 +228,165 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 				return profile;
 		}
 
+		return loadProfile(id, timestamp);
+	}
+
+	/*
+	 * Reads the state of the profile with the given timestamp from disk, replaying the journal
+	 * when the state was not written in full.
+	 */
+	private Profile loadProfile(String id, long timestamp) {
 		File profileDirectory = getProfileFolder(id);
 		if (!profileDirectory.isDirectory())
 			return null;
 
-		File profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_GZ_EXT);
-		if (!profileFile.exists()) {
-			profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_EXT);
-			if (!profileFile.exists())
+		ProfileJournal[] profileJournals = getJournals(profileDirectory);
+		for (int i = 0; i < profileJournals.length; i++)
+			if (profileJournals[i].getRemoved().contains(new Long(timestamp)))
+				return null;
+
+		File profileFile = getProfileFile(profileDirectory, timestamp);
+		ProfileJournal journal = null;
+		if (profileFile == null) {
+			// the state may be journaled against an earlier profile file
+			for (int i = 0; i < profileJournals.length && journal == null; i++)
+				if (profileJournals[i].contains(timestamp))
+					journal = profileJournals[i];
+			if (journal == null)
+				return null;
+			profileFile = getProfileFile(profileDirectory, journal.getCheckpoint());
+			if (profileFile == null)
 				return null;
 		}
 
+		ProfileBinaryFormat.ProfileData data = readProfileData(profileFile);
+		if (data == null || !id.equals(data.profileId))
+			return null;
+		Profile profile = createProfile(data, Collections.<String, Profile> emptyMap());
+		if (journal != null && !applyJournal(profile, journal, timestamp))
+			return null;
+		return profile;
+	}
+
+	/*
+	 * Reads the contents of the given profile file, from its binary file when that is up to date.
+	 * Returns null if the profile file could not be read.
+	 */
+	private ProfileBinaryFormat.ProfileData readProfileData(File profileFile) {
+		if (isBinaryEnabled()) {
+			try {
+				ProfileBinaryFormat.ProfileData data = ProfileBinaryFormat.read(profileFile);
+				if (data != null) {
+					if (data.encodedUnits != null) {
+						Parser parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
+						parser.parse(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(data.encodedUnits))));
+						data.units.putAll(parser.getUnits(data.profileId));
+					}
+					return data;
+				}
+			} catch (IOException e) {
+				// the profile file is read instead
+				if (DebugHelper.DEBUG_PROFILE_REGISTRY)
+					DebugHelper.debug(PROFILE_REGISTRY, "Ignoring binary profile for: " + profileFile.getAbsolutePath()); //$NON-NLS-1$
+			}
+		}
+
 		Parser parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
 		try {
 			parser.parse(profileFile);
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, profileFile), e));
+			return null;
+		}
+		Iterator<ProfileParser.ProfileHandler> handlers = parser.getProfileHandlers().values().iterator();
+		if (!handlers.hasNext())
+			return null;
+		ProfileParser.ProfileHandler profileHandler = handlers.next();
+		ProfileBinaryFormat.ProfileData data = new ProfileBinaryFormat.ProfileData();
+		data.profileId = profileHandler.getProfileId();
+		data.parentId = profileHandler.getParentId();
+		data.timestamp = profileHandler.getTimestamp();
+		data.properties = profileHandler.getProperties();
+		data.units = parser.getUnits(data.profileId);
+		writeBinaryProfile(profileFile, data);
+		return data;
+	}
+
+	/*
+	 * Writes the binary file of the given profile file, so that the profile is read from it the
+	 * next time. Failing to do so is not an error, the profile file is read instead.
+	 */
+	private void writeBinaryProfile(File profileFile, ProfileBinaryFormat.ProfileData data) {
+		// the profiles of a shared install are typically read-only
+		if (!isBinaryEnabled() || !profileFile.getParentFile().canWrite())
+			return;
+		ProfileBinaryFormat.ProfileData encodable = new ProfileBinaryFormat.ProfileData();
+		encodable.profileId = data.profileId;
+		encodable.parentId = data.parentId;
+		encodable.timestamp = data.timestamp;
+		encodable.properties = data.properties;
+		encodable.units = new LinkedHashMap<IInstallableUnit, Map<String, String>>();
+		Map<IInstallableUnit, Map<String, String>> others = new HashMap<IInstallableUnit, Map<String, String>>();
+		for (Entry<IInstallableUnit, Map<String, String>> entry : data.units.entrySet()) {
+			if (ProfileBinaryFormat.canEncode(entry.getKey()))
+				encodable.units.put(entry.getKey(), entry.getValue());
+			else
+				others.put(entry.getKey(), entry.getValue());
+		}
+		try {
+			if (!others.isEmpty())
+				encodable.encodedUnits = encodeUnits(data.profileId, others);
+			ProfileBinaryFormat.write(profileFile, encodable);
+		} catch (IOException e) {
+			ProfileBinaryFormat.getBinaryFile(profileFile).delete();
+			if (DebugHelper.DEBUG_PROFILE_REGISTRY)
+				DebugHelper.debug(PROFILE_REGISTRY, "Unable to write binary profile for: " + profileFile.getAbsolutePath()); //$NON-NLS-1$
+		}
+	}
+
+	private void writeBinaryProfile(File profileFile, Profile profile) {
+		ProfileBinaryFormat.ProfileData data = new ProfileBinaryFormat.ProfileData();
+		data.profileId = profile.getProfileId();
+		data.timestamp = profile.getTimestamp();
+		// the properties and units as they are written to the profile file
+		data.properties = profile.getProperties();
+		data.units = new HashMap<IInstallableUnit, Map<String, String>>();
+		IQueryResult<IInstallableUnit> result = profile.query(QueryUtil.createIUAnyQuery(), null);
+		for (Iterator<IInstallableUnit> iterator = result.iterator(); iterator.hasNext();) {
+			IInstallableUnit iu = iterator.next();
+			data.units.put(iu, profile.getInstallableUnitProperties(iu));
+		}
+		writeBinaryProfile(profileFile, data);
+	}
+
+	private Profile createProfile(ProfileBinaryFormat.ProfileData data, Map<String, Profile> profileMap) {
+		Profile parentProfile = data.parentId == null ? null : profileMap.get(data.parentId);
+		Profile profile = new Profile(agent, data.profileId, parentProfile, data.properties);
+		if (surrogateProfileHandler != null && surrogateProfileHandler.isSurrogate(profile))
+			profile.setSurrogateProfileHandler(surrogateProfileHandler);
+		profile.setTimestamp(data.timestamp);
+		for (Entry<IInstallableUnit, Map<String, String>> entry : data.units.entrySet()) {
+			profile.addInstallableUnit(entry.getKey());
+			if (entry.getValue() != null)
+				profile.addInstallableUnitProperties(entry.getKey(), entry.getValue());
+		}
+		profile.setChanged(false);
+		return profile;
+	}
+
+	private File getProfileFile(File profileDirectory, long timestamp) {
+		File profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_GZ_EXT);
+		if (!profileFile.exists()) {
+			profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_EXT);
+			if (!profileFile.exists())
+				return null;
 		}
-		return parser.getProfileMap().get(id);
+		return profileFile;
+	}
+
+	private static long getTimestamp(File profileFile) {
+		String fileName = profileFile.getName();
+		return Long.parseLong(fileName.substring(0, fileName.indexOf(PROFILE_EXT)));
 	}
 
 	public synchronized long[] listProfileTimestamps(String id) {
@@ -223,6 +400,33 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (!profileDirectory.isDirectory())
 			return new long[0];
 
+		long[] timestamps = listProfileFileTimestamps(profileDirectory);
+		ProfileJournal[] profileJournals = getJournals(profileDirectory);
+		if (profileJournals.length == 0)
+			return timestamps;
+
+		SortedSet<Long> result = new TreeSet<Long>();
+		for (int i = 0; i < timestamps.length; i++)
+			result.add(new Long(timestamps[i]));
+		Set<Long> removed = new HashSet<Long>();
+		for (int i = 0; i < profileJournals.length; i++) {
+			long[] journaled = profileJournals[i].getTimestamps();
+			for (int j = 0; j < journaled.length; j++)
+				result.add(new Long(journaled[j]));
+			removed.addAll(profileJournals[i].getRemoved());
+		}
+		result.removeAll(removed);
+		timestamps = new long[result.size()];
+		int i = 0;
+		for (Long timestamp : result)
+			timestamps[i++] = timestamp.longValue();
+		return timestamps;
+	}
+
+	/*
+	 * Returns the sorted timestamps of the profile files written in full.
+	 */
+	private long[] listProfileFileTimestamps(File profileDirectory) {
 		File[] profileFiles = profileDirectory.listFiles(new FileFilter() {
 			public boolean accept(File pathname) {
 				return (pathname.getName().endsWith(PROFILE_EXT) || pathname.getName().endsWith(PROFILE_GZ_EXT)) && pathname.isFile() && !pathname.getName().startsWith("._"); //$NON-NLS-1$
@@ -243,6 +447,66 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		return timestamps;
 	}
 
+	private ProfileJournal getJournal(File profileDirectory, long checkpoint) {
+		File file = new File(profileDirectory, Long.toString(checkpoint) + JOURNAL_EXT);
+		ProfileJournal journal = journals.get(file);
+		if (journal == null) {
+			journal = new ProfileJournal(profileDirectory, checkpoint);
+			journals.put(file, journal);
+		}
+		return journal;
+	}
+
+	private ProfileJournal[] getJournals(File profileDirectory) {
+		File[] journalFiles = profileDirectory.listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				return pathname.getName().endsWith(JOURNAL_EXT) && pathname.isFile() && !pathname.getName().startsWith("._"); //$NON-NLS-1$
+			}
+		});
+		if (journalFiles == null)
+			return new ProfileJournal[0];
+		List<ProfileJournal> result = new ArrayList<ProfileJournal>(journalFiles.length);
+		for (int i = 0; i < journalFiles.length; i++) {
+			String fileName = journalFiles[i].getName();
+			try {
+				result.add(getJournal(profileDirectory, Long.parseLong(fileName.substring(0, fileName.length() - JOURNAL_EXT.length()))));
+			} catch (NumberFormatException e) {
+				// not a journal
+			}
+		}
+		return result.toArray(new ProfileJournal[result.size()]);
+	}
+
+	/*
+	 * Replays the deltas of the given journal onto the profile, up to and including the
+	 * state with the given timestamp.
+	 */
+	private boolean applyJournal(Profile profile, ProfileJournal journal, long timestamp) {
+		long[] timestamps = journal.getTimestamps();
+		try {
+			List<ProfileDelta> deltas = journal.readDeltas(timestamp);
+			Parser parser = null;
+			for (int i = 0; i < deltas.size(); i++) {
+				ProfileDelta delta = deltas.get(i);
+				Map<IInstallableUnit, Map<String, String>> added = Collections.emptyMap();
+				byte[] units = delta.getEncodedUnits();
+				if (units != null) {
+					if (parser == null)
+						parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
+					parser.parse(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(units))));
+					added = parser.getUnits(profile.getProfileId());
+				}
+				delta.apply(profile, added);
+				profile.setTimestamp(timestamps[i]);
+			}
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, journal.getFile()), e));
+			return false;
+		}
+		profile.setChanged(false);
+		return true;
+	}
+
 	private Profile internalGetProfile(String id) {
 		if (SELF.equals(id))
 			id = self;
@@ -442,6 +706,9 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (profile == null)
 			return;
 
+		// a sub profile is only linked to its parent once it has been read
+		if (profileMap instanceof ProfileMap)
+			((ProfileMap) profileMap).loadAll();
 		List<String> subProfileIds = profile.getSubProfileIds();
 		for (int i = 0; i < subProfileIds.size(); i++) {
 			removeProfile(subProfileIds.get(i));
@@ -480,13 +747,33 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (!profileDirectory.isDirectory())
 			return;
 
-		File profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_GZ_EXT);
-		if (!profileFile.exists()) {
-			profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_EXT);
-			if (!profileFile.exists())
-				return;
+		boolean removed = false;
+		try {
+			File profileFile = getProfileFile(profileDirectory, timestamp);
+			if (profileFile != null) {
+				ProfileJournal journal = getJournal(profileDirectory, timestamp);
+				if (journal.getTimestamps().length == 0) {
+					FileUtils.deleteAll(profileFile);
+					ProfileBinaryFormat.getBinaryFile(profileFile).delete();
+					journal.delete();
+				} else {
+					// later states are journaled against this file, so it can only be marked as removed
+					journal.appendRemoved(timestamp);
+				}
+				removed = true;
+			}
+			ProfileJournal[] profileJournals = getJournals(profileDirectory);
+			for (int i = 0; i < profileJournals.length; i++) {
+				if (profileJournals[i].contains(timestamp) && !profileJournals[i].getRemoved().contains(new Long(timestamp))) {
+					profileJournals[i].appendRemoved(timestamp);
+					removed = true;
+				}
+			}
+		} catch (IOException e) {
+			throw new ProvisionException(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, id), e));
 		}
-		FileUtils.deleteAll(profileFile);
+		if (!removed)
+			return;
 		// Ignore the return value here. If there was a problem removing the profile state
 		// properties we don't want to fail the whole operation since the profile state itself 
 		// was removed successfully
@@ -500,52 +787,127 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 
 	/**
 	 * Restores the profile registry from disk, and returns the loaded profile map.
+	 * Each profile is only read when it is first requested from the map.
 	 * Returns <code>null</code> if unable to read the registry.
 	 */
 	private Map<String, Profile> restore() {
 		if (store == null || !store.isDirectory())
 			throw new IllegalStateException(NLS.bind(Messages.reg_dir_not_available, store));
 
-		Parser parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
 		File[] profileDirectories = store.listFiles(new FileFilter() {
 			public boolean accept(File pathname) {
 				return pathname.getName().endsWith(PROFILE_EXT) && pathname.isDirectory();
 			}
 		});
+		ProfileMap profileMap = new ProfileMap();
 		// protect against NPE
-		if (profileDirectories == null) {
-			parser.getProfileMap();
-		}
+		if (profileDirectories == null)
+			return profileMap;
 		for (int i = 0; i < profileDirectories.length; i++) {
 			String directoryName = profileDirectories[i].getName();
 			String profileId = unescape(directoryName.substring(0, directoryName.lastIndexOf(PROFILE_EXT)));
-			ProfileLock lock = profileLocks.get(profileId);
-			if (lock == null) {
-				lock = new ProfileLock(this, profileDirectories[i]);
-				profileLocks.put(profileId, lock);
-			}
+			profileMap.addPending(profileId, profileDirectories[i]);
+		}
+		return profileMap;
+	}
 
-			boolean locked = false;
-			if (lock.processHoldsLock() || (locked = lock.lock())) {
-				try {
-					File profileFile = findLatestProfileFile(profileDirectories[i]);
-					if (profileFile != null) {
-						try {
-							parser.parse(profileFile);
-						} catch (IOException e) {
-							LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, profileFile), e));
-						}
-					}
-				} finally {
-					if (locked)
-						lock.unlock();
-				}
-			} else {
-				// could not lock the profile, so add a place holder
-				parser.addProfilePlaceHolder(profileId);
+	/*
+	 * Reads the latest state of the profile in the given directory. Returns null if the
+	 * profile could not be read.
+	 */
+	private Profile restoreProfile(String profileId, File profileDirectory, Map<String, Profile> profileMap) {
+		ProfileLock lock = profileLocks.get(profileId);
+		if (lock == null) {
+			lock = new ProfileLock(this, profileDirectory);
+			profileLocks.put(profileId, lock);
+		}
+
+		ProfileBinaryFormat.ProfileData data;
+		ProfileJournal journal = null;
+		boolean locked = false;
+		if (lock.processHoldsLock() || (locked = lock.lock())) {
+			try {
+				File profileFile = findLatestProfileFile(profileDirectory);
+				if (profileFile == null)
+					return null;
+				data = readProfileData(profileFile);
+				if (data == null)
+					return null;
+				journal = getJournal(profileDirectory, getTimestamp(profileFile));
+			} finally {
+				if (locked)
+					lock.unlock();
 			}
+		} else {
+			// could not lock the profile, so add a place holder
+			data = new ProfileBinaryFormat.ProfileData();
+			data.profileId = profileId;
+			data.units = Collections.emptyMap();
+		}
+		Profile profile = createProfile(data, profileMap);
+		if (journal != null && journal.getTimestamps().length > 0)
+			applyJournal(profile, journal, Long.MAX_VALUE);
+		if (isJournalEnabled())
+			persistedStates.put(profile.getProfileId(), new SoftReference<ProfileDelta.State>(new ProfileDelta.State(profile)));
+		return profile;
+	}
+
+	/*
+	 * Map of String(Profile id)->Profile which reads the profiles from disk as they are requested,
+	 * so that restoring the registry does not read the profiles that are never used.
+	 */
+	private class ProfileMap extends AbstractMap<String, Profile> {
+		private final Map<String, Profile> loaded = new HashMap<String, Profile>();
+		private final Map<String, File> pending = new HashMap<String, File>();
+
+		void addPending(String profileId, File profileDirectory) {
+			pending.put(profileId, profileDirectory);
+		}
+
+		private void load(Object profileId) {
+			// removed first, a parent profile being read must not read its child again
+			File profileDirectory = pending.remove(profileId);
+			if (profileDirectory == null)
+				return;
+			Profile profile = restoreProfile((String) profileId, profileDirectory, this);
+			if (profile != null)
+				loaded.put((String) profileId, profile);
+		}
+
+		void loadAll() {
+			while (!pending.isEmpty())
+				load(pending.keySet().iterator().next());
+		}
+
+		public Profile get(Object key) {
+			load(key);
+			return loaded.get(key);
+		}
+
+		public boolean containsKey(Object key) {
+			load(key);
+			return loaded.containsKey(key);
+		}
+
+		public Profile put(String key, Profile value) {
+			pending.remove(key);
+			return loaded.put(key, value);
+		}
+
+		public Profile remove(Object key) {
+			pending.remove(key);
+			return loaded.remove(key);
+		}
+
+		public int size() {
+			loadAll();
+			return loaded.size();
+		}
+
+		public Set<Entry<String, Profile>> entrySet() {
+			loadAll();
+			return loaded.entrySet();
 		}
-		return parser.getProfileMap();
 	}
 
 	private File findLatestProfileFile(File profileDirectory) {
@@ -584,6 +946,9 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (currentTimestamp <= previousTimestamp)
 			currentTimestamp = previousTimestamp + 1;
 		boolean shouldGzipFile = shouldGzipFile(profile);
+		// profiles read by engines that do not know about the journal are always written in full
+		if (shouldGzipFile && isJournalEnabled() && journalProfile(profile, profileDirectory, currentTimestamp))
+			return;
 		File profileFile = new File(profileDirectory, Long.toString(currentTimestamp) + (shouldGzipFile ? PROFILE_GZ_EXT : PROFILE_EXT));
 
 		// Log a stack trace to see who is writing the profile.
@@ -592,6 +957,19 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 
 		profile.setTimestamp(currentTimestamp);
 		profile.setChanged(false);
+		try {
+			writeProfile(profile, profileFile, shouldGzipFile);
+			writeBinaryProfile(profileFile, profile);
+			if (isJournalEnabled())
+				persistedStates.put(profile.getProfileId(), new SoftReference<ProfileDelta.State>(new ProfileDelta.State(profile)));
+		} catch (IOException e) {
+			profile.setTimestamp(previousTimestamp);
+			profileFile.delete();
+			LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, profile.getProfileId()), e));
+		}
+	}
+
+	private void writeProfile(Profile profile, File profileFile, boolean shouldGzipFile) throws IOException {
 		OutputStream os = null;
 		try {
 			if (shouldGzipFile)
@@ -600,10 +978,6 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 				os = new BufferedOutputStream(new FileOutputStream(profileFile));
 			Writer writer = new Writer(os);
 			writer.writeProfile(profile);
-		} catch (IOException e) {
-			profile.setTimestamp(previousTimestamp);
-			profileFile.delete();
-			LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, profile.getProfileId()), e));
 		} finally {
 			try {
 				if (os != null)
@@ -614,6 +988,195 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		}
 	}
 
+	/*
+	 * Appends the changes made to the profile since it was last persisted to the journal of the
+	 * latest profile file. Returns false if the profile has to be written in full instead.
+	 */
+	private boolean journalProfile(Profile profile, File profileDirectory, long timestamp) {
+		File checkpointFile = findLatestProfileFile(profileDirectory);
+		if (checkpointFile == null)
+			return false;
+		ProfileJournal journal = getJournal(profileDirectory, getTimestamp(checkpointFile));
+		long[] timestamps = listProfileTimestamps(profile.getProfileId());
+		// only changes to the latest persisted state can be journaled
+		if (timestamps.length == 0 || timestamps[timestamps.length - 1] != profile.getTimestamp() || journal.getLastTimestamp() != profile.getTimestamp())
+			return false;
+		if (journal.getTimestamps().length >= getCheckpointInterval())
+			return false;
+		ProfileDelta.State previous = getPersistedState(profile.getProfileId(), profile.getTimestamp());
+		if (previous == null)
+			return false;
+
+		if (DebugHelper.DEBUG_PROFILE_REGISTRY)
+			DebugHelper.debug(PROFILE_REGISTRY, "Journaling profile changes to: " + journal.getFile().getAbsolutePath()); //$NON-NLS-1$
+
+		long previousTimestamp = profile.getTimestamp();
+		profile.setTimestamp(timestamp);
+		ProfileDelta.State current = new ProfileDelta.State(profile);
+		ProfileDelta delta = ProfileDelta.compute(previous, current);
+		try {
+			if (!delta.getAddedUnits().isEmpty())
+				delta.setEncodedUnits(encodeUnits(profile.getProfileId(), delta.getAddedUnits()));
+			journal.appendDelta(timestamp, delta);
+		} catch (IOException e) {
+			profile.setTimestamp(previousTimestamp);
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, profile.getProfileId()), e));
+			return false;
+		}
+		profile.setChanged(false);
+		persistedStates.put(profile.getProfileId(), new SoftReference<ProfileDelta.State>(current));
+		// replaying a long journal costs more than reading the whole profile
+		if (journal.getTimestamps().length >= getCheckpointInterval() || journal.length() > checkpointFile.length())
+			scheduleCompaction(profile.getProfileId());
+		return true;
+	}
+
+	private ProfileDelta.State getPersistedState(String id, long timestamp) {
+		SoftReference<ProfileDelta.State> reference = persistedStates.get(id);
+		ProfileDelta.State state = reference == null ? null : reference.get();
+		if (state != null && state.timestamp == timestamp)
+			return state;
+		Profile persisted = loadProfile(id, timestamp);
+		if (persisted == null)
+			return null;
+		state = new ProfileDelta.State(persisted);
+		persistedStates.put(id, new SoftReference<ProfileDelta.State>(state));
+		return state;
+	}
+
+	/*
+	 * Writes the given units in the profile format, so that they are read back the same way.
+	 */
+	private byte[] encodeUnits(String id, Map<IInstallableUnit, Map<String, String>> units) throws IOException {
+		Profile profile = new Profile(agent, id, null, null);
+		for (Entry<IInstallableUnit, Map<String, String>> entry : units.entrySet()) {
+			profile.addInstallableUnit(entry.getKey());
+			if (entry.getValue() != null)
+				profile.addInstallableUnitProperties(entry.getKey(), entry.getValue());
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream os = new BufferedOutputStream(new GZIPOutputStream(bytes));
+		try {
+			new Writer(os).writeProfile(profile);
+		} finally {
+			os.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private void scheduleCompaction(String id) {
+		if (EngineActivator.getContext() == null)
+			return;
+		CompactJob job = compactJobs.get(id);
+		if (job == null) {
+			job = new CompactJob(id);
+			compactJobs.put(id, job);
+		}
+		job.schedule();
+	}
+
+	/**
+	 * Writes the latest state of the given profile in full if it was journaled, and deletes the
+	 * profile files and journals that only hold removed states.
+	 * @param id the id of the profile to compact
+	 */
+	public synchronized void compactProfile(String id) {
+		if (SELF.equals(id))
+			id = self;
+		if (id == null)
+			return;
+		File profileDirectory = getProfileFolder(id);
+		if (!profileDirectory.isDirectory())
+			return;
+		ProfileLock lock = profileLocks.get(id);
+		if (lock == null) {
+			lock = new ProfileLock(this, profileDirectory);
+			profileLocks.put(id, lock);
+		}
+		// the profile is being changed, the next commit compacts it again
+		if (lock.processHoldsLock() || !lock.lock())
+			return;
+		try {
+			long[] timestamps = listProfileTimestamps(id);
+			if (timestamps.length == 0)
+				return;
+			long latest = timestamps[timestamps.length - 1];
+			if (getProfileFile(profileDirectory, latest) == null) {
+				Profile profile = loadProfile(id, latest);
+				if (profile != null)
+					writeCheckpoint(profile, profileDirectory);
+			}
+			deleteRemovedStates(profileDirectory, timestamps);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeCheckpoint(Profile profile, File profileDirectory) {
+		boolean shouldGzipFile = shouldGzipFile(profile);
+		File profileFile = new File(profileDirectory, Long.toString(profile.getTimestamp()) + (shouldGzipFile ? PROFILE_GZ_EXT : PROFILE_EXT));
+		// readers in other processes must never see a partially written profile
+		File tempFile = new File(profileDirectory, profileFile.getName() + TEMP_EXT);
+		try {
+			writeProfile(profile, tempFile, shouldGzipFile);
+			if (!tempFile.renameTo(profileFile))
+				throw new IOException(NLS.bind(Messages.error_persisting_profile, profile.getProfileId()));
+			writeBinaryProfile(profileFile, profile);
+		} catch (IOException e) {
+			tempFile.delete();
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, profile.getProfileId()), e));
+		}
+	}
+
+	/*
+	 * Deletes the profile files, and their journals, whose states were all removed or were
+	 * written in full again later.
+	 */
+	private void deleteRemovedStates(File profileDirectory, long[] timestamps) {
+		Set<Long> existing = new HashSet<Long>();
+		for (int i = 0; i < timestamps.length; i++)
+			existing.add(new Long(timestamps[i]));
+		long[] checkpoints = listProfileFileTimestamps(profileDirectory);
+		// the latest profile file is the base of the current state
+		for (int i = 0; i < checkpoints.length - 1; i++) {
+			if (existing.contains(new Long(checkpoints[i])))
+				continue;
+			ProfileJournal journal = getJournal(profileDirectory, checkpoints[i]);
+			long[] journaled = journal.getTimestamps();
+			boolean needed = false;
+			for (int j = 0; j < journaled.length && !needed; j++)
+				needed = existing.contains(new Long(journaled[j])) && getProfileFile(profileDirectory, journaled[j]) == null;
+			if (needed)
+				continue;
+			File profileFile = getProfileFile(profileDirectory, checkpoints[i]);
+			if (profileFile != null) {
+				profileFile.delete();
+				ProfileBinaryFormat.getBinaryFile(profileFile).delete();
+			}
+			journal.delete();
+		}
+	}
+
+	private boolean isJournalEnabled() {
+		return Boolean.valueOf(EngineActivator.getContext().getProperty(EngineActivator.PROP_PROFILE_JOURNAL)).booleanValue();
+	}
+
+	private boolean isBinaryEnabled() {
+		return !"false".equals(EngineActivator.getContext().getProperty(EngineActivator.PROP_PROFILE_BINARY)); //$NON-NLS-1$
+	}
+
+	private int getCheckpointInterval() {
+		String value = EngineActivator.getContext().getProperty(EngineActivator.PROP_PROFILE_CHECKPOINT_INTERVAL);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return DEFAULT_CHECKPOINT_INTERVAL;
+	}
+
 	public void setEventBus(IProvisioningEventBus bus) {
 		this.eventBus = bus;
 	}
@@ -706,8 +1269,18 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			super(context, bundleId);
 		}
 
-		public void addProfilePlaceHolder(String profileId) {
-			profileHandlers.put(profileId, new ProfileHandler(profileId));
+		/**
+		 * Returns the units parsed for the given profile, mapped to their profile properties.
+		 */
+		public Map<IInstallableUnit, Map<String, String>> getUnits(String profileId) {
+			Map<IInstallableUnit, Map<String, String>> units = new HashMap<IInstallableUnit, Map<String, String>>();
+			ProfileHandler profileHandler = profileHandlers.get(profileId);
+			IInstallableUnit[] ius = profileHandler == null ? null : profileHandler.getInstallableUnits();
+			if (ius != null) {
+				for (int i = 0; i < ius.length; i++)
+					units.put(ius[i], profileHandler.getIUProperties(ius[i]));
+			}
+			return units;
 		}
 
 		public void parse(File file) throws IOException {
@@ -743,50 +1316,6 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			return this;
 		}
 
-		public Map<String, Profile> getProfileMap() {
-			Map<String, Profile> profileMap = new HashMap<String, Profile>();
-			for (String profileId : profileHandlers.keySet()) {
-				addProfile(profileId, profileMap);
-			}
-			return profileMap;
-		}
-
-		private void addProfile(String profileId, Map<String, Profile> profileMap) {
-			if (profileMap.containsKey(profileId))
-				return;
-
-			ProfileHandler profileHandler = profileHandlers.get(profileId);
-			Profile parentProfile = null;
-
-			String parentId = profileHandler.getParentId();
-			if (parentId != null) {
-				addProfile(parentId, profileMap);
-				parentProfile = profileMap.get(parentId);
-			}
-
-			Profile profile = new Profile(agent, profileId, parentProfile, profileHandler.getProperties());
-			if (surrogateProfileHandler != null && surrogateProfileHandler.isSurrogate(profile))
-				profile.setSurrogateProfileHandler(surrogateProfileHandler);
-
-			profile.setTimestamp(profileHandler.getTimestamp());
-
-			IInstallableUnit[] ius = profileHandler.getInstallableUnits();
-			if (ius != null) {
-				for (int i = 0; i < ius.length; i++) {
-					IInstallableUnit iu = ius[i];
-					profile.addInstallableUnit(iu);
-					Map<String, String> iuProperties = profileHandler.getIUProperties(iu);
-					if (iuProperties != null) {
-						for (Entry<String, String> entry : iuProperties.entrySet()) {
-							profile.setInstallableUnitProperty(iu, entry.getKey(), entry.getValue());
-						}
-					}
-				}
-			}
-			profile.setChanged(false);
-			profileMap.put(profileId, profile);
-		}
-
 		private final class ProfileDocHandler extends DocHandler {
 
 			public ProfileDocHandler(String rootName, RootHandler rootHandler) {
@@ -959,6 +1488,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		try {
 			//ensure there are no more profile preference save jobs running
 			Job.getJobManager().join(ProfilePreferences.PROFILE_SAVE_JOB_FAMILY, null);
+			Job.getJobManager().join(PROFILE_COMPACT_JOB_FAMILY, null);
 		} catch (InterruptedException e) {
 			//ignore
 		}
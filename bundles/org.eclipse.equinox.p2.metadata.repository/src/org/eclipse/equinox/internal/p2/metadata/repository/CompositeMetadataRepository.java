@@ -21,6 +21,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.index.IIndex;
@@ -50,7 +51,7 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 	// keep a list of the repositories that we have successfully loaded
 	private List<IMetadataRepository> loadedRepos = new ArrayList<IMetadataRepository>();
 	private IMetadataRepositoryManager manager;
-	private IPool<IInstallableUnit> iuPool = new WeakPool<IInstallableUnit>();
+	private final IPool<IInstallableUnit> iuPool = new ConcurrentPool<IInstallableUnit>();
 
 	/**
 	 * Create a Composite repository in memory.
@@ -99,12 +100,30 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 	CompositeMetadataRepository(IMetadataRepositoryManager manager, CompositeRepositoryState state, IProgressMonitor monitor) throws ProvisionException {
 		super(manager.getAgent(), state.getName(), state.getType(), state.getVersion(), state.getLocation(), state.getDescription(), state.getProvider(), state.getProperties());
 		this.manager = manager;
-		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
 		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<URI>();
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
-		for (URI child : state.getChildren())
-			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
-
+		List<URI> absolutes = new ArrayList<URI>();
+		for (URI child : state.getChildren()) {
+			URI absolute = URIUtil.makeAbsolute(child, getLocation());
+			if (childrenURIs.contains(child) || childrenURIs.contains(absolute))
+				continue;
+			childrenURIs.add(child);
+			absolutes.add(absolute);
+		}
+		int threads = CompositeChildLoader.getLoadingThreads(state.getProperties());
+		CompositeChildLoader.Result<IInstallableUnit>[] results = getLoader().load(absolutes.toArray(new URI[absolutes.size()]), threads, failOnChildFailure, monitor);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null)
+				continue;
+			if (results[i].failure != null && failOnChildFailure) {
+				// children loaded after the failed one must be cleaned up as well
+				for (int j = i + 1; j < results.length; j++) {
+					if (results[j] != null && results[j].failure == null && !results[j].known)
+						repositoriesToBeRemovedOnFailure.add(results[j].location);
+				}
+			}
+			childLoaded(results[i], failOnChildFailure, repositoriesToBeRemovedOnFailure);
+		}
 	}
 
 	CompositeMetadataRepository(IMetadataRepositoryManager manager, URI location, String name, Map<String, String> properties) {
@@ -161,29 +180,33 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		childrenURIs.add(childURI);
 		if (save)
 			save();
-		try {
-			boolean currentLoaded = getManager().contains(absolute);
-			IMetadataRepository currentRepo = getManager().loadRepository(absolute, sub);
-			if (!currentLoaded) {
-				//set enabled to false so repositories do not polled twice
-				getManager().setEnabled(absolute, false);
-				//set repository to system to hide from users
-				getManager().setRepositoryProperty(absolute, IRepository.PROP_SYSTEM, String.valueOf(true));
-				if (propagateException)
-					repositoriesToBeRemovedOnFailure.add(absolute);
+		childLoaded(getLoader().load(absolute, sub), propagateException, repositoriesToBeRemovedOnFailure);
+	}
+
+	private CompositeChildLoader<IInstallableUnit> getLoader() {
+		return new CompositeChildLoader<IInstallableUnit>(getManager(), getLocation()) {
+			protected void loaded(IRepository<IInstallableUnit> repository) {
+				// Share IUs across this CompositeMetadataRepository, the pool is safe to use from all loading threads
+				((IMetadataRepository) repository).compress(iuPool);
 			}
-			currentRepo.compress(iuPool); // Share IUs across this CompositeMetadataRepository
+		};
+	}
+
+	private void childLoaded(CompositeChildLoader.Result<IInstallableUnit> result, boolean propagateException, List<URI> repositoriesToBeRemovedOnFailure) throws ProvisionException {
+		if (result.failure == null) {
+			if (!result.known && propagateException)
+				repositoriesToBeRemovedOnFailure.add(result.location);
+			IMetadataRepository currentRepo = (IMetadataRepository) result.repository;
 			// we successfully loaded the repo so remember it
 			loadedRepos.add(currentRepo);
-
-		} catch (ProvisionException e) {
-			//repository failed to load. fall through
-			LogHelper.log(e);
-			if (propagateException) {
-				removeFromRepoManager(repositoriesToBeRemovedOnFailure);
-				String msg = NLS.bind(Messages.io_failedRead, getLocation());
-				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, e));
-			}
+			return;
+		}
+		//repository failed to load. fall through
+		LogHelper.log(result.failure);
+		if (propagateException) {
+			removeFromRepoManager(repositoriesToBeRemovedOnFailure);
+			String msg = NLS.bind(Messages.io_failedRead, getLocation());
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, result.failure));
 		}
 	}
 
@@ -45,6 +45,14 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	static final private Integer REPOSITORY_VERSION = new Integer(1);
 	static final private String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	static final private String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	static final private String INDEX_EXTENSION = ".index"; //$NON-NLS-1$
+
+	/**
+	 * Repository property that, when set to <code>true</code>, causes the capability index
+	 * to be written next to the content file on save, and memory mapped instead of being
+	 * computed when the repository is loaded again.
+	 */
+	public static final String PROP_PERSISTENT_INDEX = "p2.persistentIndex"; //$NON-NLS-1$
 
 	protected IUMap units = new IUMap();
 	protected HashSet<IRepositoryReference> repositories = new HashSet<IRepositoryReference>();
@@ -53,6 +61,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	private TranslationSupport translationSupport;
 	private boolean snapshotNeeded = false;
 	private boolean disableSave = false;
+	private boolean persistentIndexValid = true; // false when the units changed since the index file was written
 
 	private static File getActualLocation(URI location, String extension) {
 		File spec = URIUtil.toFile(location);
@@ -107,6 +116,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		}
 		units.addAll(installableUnits);
 		capabilityIndex = null; // Generated, not backed by units
+		persistentIndexValid = false;
 		save();
 	}
 
@@ -141,13 +151,74 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 
 		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
 			snapshotNeeded = true;
-			if (capabilityIndex == null)
-				capabilityIndex = new CapabilityIndex(units.iterator());
+			if (capabilityIndex == null) {
+				capabilityIndex = loadPersistentIndex();
+				if (capabilityIndex == null)
+					capabilityIndex = new CapabilityIndex(units.iterator());
+			}
 			return capabilityIndex;
 		}
 		return null;
 	}
 
+	private IInstallableUnit[] getSortedUnits() {
+		List<IInstallableUnit> sorted = new ArrayList<IInstallableUnit>();
+		for (Iterator<IInstallableUnit> iter = units.iterator(); iter.hasNext();)
+			sorted.add(iter.next());
+		Collections.sort(sorted);
+		return sorted.toArray(new IInstallableUnit[sorted.size()]);
+	}
+
+	private long getTimestamp() {
+		try {
+			String timestamp = getProperty(IRepository.PROP_TIMESTAMP);
+			return timestamp == null ? 0 : Long.parseLong(timestamp);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private File getIndexFile() {
+		URI location = getLocation();
+		if (location == null || !"file".equals(location.getScheme())) //$NON-NLS-1$
+			return null;
+		return getActualLocation(location, INDEX_EXTENSION);
+	}
+
+	// caller should be synchronized
+	private IIndex<IInstallableUnit> loadPersistentIndex() {
+		if (!persistentIndexValid || !"true".equalsIgnoreCase(getProperty(PROP_PERSISTENT_INDEX))) //$NON-NLS-1$
+			return null;
+		File indexFile = getIndexFile();
+		if (indexFile == null)
+			return null;
+		try {
+			return PersistentCapabilityIndex.load(indexFile, getSortedUnits(), getTimestamp());
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error reading metadata repository index: " + indexFile, e)); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	// caller should be synchronized
+	private void savePersistentIndex() {
+		File indexFile = getIndexFile();
+		if (indexFile == null)
+			return;
+		if (!"true".equalsIgnoreCase(getProperty(PROP_PERSISTENT_INDEX))) { //$NON-NLS-1$
+			if (indexFile.exists())
+				indexFile.delete();
+			return;
+		}
+		try {
+			PersistentCapabilityIndex.write(indexFile, getSortedUnits(), getTimestamp());
+			persistentIndexValid = true;
+		} catch (IOException e) {
+			// the stale index will be rejected on load since it was written for other units 
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error saving metadata repository index: " + indexFile, e)); //$NON-NLS-1$
+		}
+	}
+
 	public synchronized Object getManagedProperty(Object client, String memberName, Object key) {
 		if (!(client instanceof IInstallableUnit))
 			return null;
@@ -240,6 +311,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		} else
 			units.clear();
 		capabilityIndex = null; // Generated, not backed by units.
+		persistentIndexValid = false;
 		save();
 	}
 
@@ -258,6 +330,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 			}
 			units.removeAll(installableUnits);
 			capabilityIndex = null; // Generated, not backed by units.
+			persistentIndexValid = false;
 		}
 		if (changed)
 			save();
@@ -303,6 +376,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 			}
 			super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
 			new MetadataRepositoryIO(getProvisioningAgent()).write(this, output);
+			savePersistentIndex();
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, "Error saving metadata repository: " + getLocation(), e)); //$NON-NLS-1$
 		}
@@ -362,7 +436,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.p2.repository.metadata.IMetadataRepository#compress(IPool<IInstallableUnit> iuPool)
 	 */
-	public void compress(IPool<IInstallableUnit> iuPool) {
+	public synchronized void compress(IPool<IInstallableUnit> iuPool) {
 		units.compress(iuPool);
 	}
 }
@@ -21,12 +21,12 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
-import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataParser;
-import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataWriter;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.*;
 import org.eclipse.equinox.internal.p2.persistence.XMLWriter;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.*;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepositoryReference;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -41,10 +41,32 @@ import org.xml.sax.*;
  */
 public class MetadataRepositoryIO {
 
+	/**
+	 * System property that turns on lazy loading of installable units by default.
+	 * @see #setLazyLoading(boolean)
+	 */
+	public static final String PROP_LAZY_LOADING = "eclipse.p2.metadata.lazyLoading"; //$NON-NLS-1$
+
 	protected final IProvisioningAgent agent;
+	private boolean lazyLoading;
 
 	public MetadataRepositoryIO(IProvisioningAgent agent) {
 		this.agent = agent;
+		BundleContext context = Activator.getContext();
+		this.lazyLoading = context != null && Boolean.valueOf(context.getProperty(PROP_LAZY_LOADING)).booleanValue();
+	}
+
+	/**
+	 * Sets whether {@link #read(URL, InputStream, IProgressMonitor)} fully creates the
+	 * installable units of the repository. When loading lazily, the document is copied to
+	 * a temporary file, the touchpoint data, licenses and copyrights are skipped while
+	 * parsing it, and only the id, version, singleton, provided capabilities, filter and
+	 * update descriptor of each unit are kept in memory. The other parts of a unit are
+	 * parsed from the copy when they are first asked for. Fragments and patches are
+	 * always fully created.
+	 */
+	public void setLazyLoading(boolean lazyLoading) {
+		this.lazyLoading = lazyLoading;
 	}
 
 	/**
@@ -54,13 +76,27 @@ public class MetadataRepositoryIO {
 	 */
 	public IMetadataRepository read(URL location, InputStream input, IProgressMonitor monitor) throws ProvisionException {
 		BufferedInputStream bufferedInput = null;
+		UnitOffsetTable offsets = null;
 		try {
 			try {
 				bufferedInput = new BufferedInputStream(input);
 
 				Parser repositoryParser = new Parser(Activator.getContext(), Activator.ID);
 				repositoryParser.setErrorContext(location.toExternalForm());
+				if (lazyLoading) {
+					offsets = UnitOffsetTable.spool(bufferedInput);
+					repositoryParser.setOffsetTable(offsets);
+					input = offsets.openStream();
+				}
 				repositoryParser.parse(input, monitor);
+				if (repositoryParser.isIncomplete()) {
+					// Some units could not be read back from the copy, so read them all now
+					repositoryParser = new Parser(Activator.getContext(), Activator.ID);
+					repositoryParser.setErrorContext(location.toExternalForm());
+					repositoryParser.parse(offsets.openStream(), monitor);
+				} else {
+					offsets = null;
+				}
 				IStatus result = repositoryParser.getStatus();
 				switch (result.getSeverity()) {
 					case IStatus.CANCEL :
@@ -75,6 +111,8 @@ public class MetadataRepositoryIO {
 			} finally {
 				if (bufferedInput != null)
 					bufferedInput.close();
+				if (offsets != null)
+					offsets.dispose();
 			}
 		} catch (IOException ioe) {
 			String msg = NLS.bind(Messages.io_failedRead, location);
@@ -191,11 +229,50 @@ public class MetadataRepositoryIO {
 	private class Parser extends MetadataParser implements XMLConstants {
 
 		private IMetadataRepository theRepository = null;
+		private UnitOffsetTable offsets = null;
+		private boolean lazyUnits = false;
+		private boolean incomplete = false;
 
 		public Parser(BundleContext context, String bundleId) {
 			super(context, bundleId);
 		}
 
+		void setOffsetTable(UnitOffsetTable offsets) {
+			this.offsets = offsets;
+		}
+
+		/**
+		 * Returns whether the units were read lazily but could not all be found in the
+		 * copy of the document. The repository is not created in that case.
+		 */
+		boolean isIncomplete() {
+			return incomplete;
+		}
+
+		protected boolean skipDeferredSections() {
+			return offsets != null;
+		}
+
+		protected IInstallableUnit createInstallableUnit(InstallableUnitDescription desc, int index) {
+			if (offsets == null)
+				return super.createInstallableUnit(desc, index);
+			if (!(desc instanceof InstallableUnitFragmentDescription) && !(desc instanceof InstallableUnitPatchDescription)) {
+				// the description holds the header only, the rest is read from the copy when needed
+				lazyUnits = true;
+				return new LazyInstallableUnit(super.createInstallableUnit(desc, index), offsets, index);
+			}
+			// Fragments and patches are needed in full, read them back with their skipped sections
+			try {
+				IInstallableUnit unit = offsets.load(index);
+				if (unit.getId().equals(desc.getId()) && unit.getVersion().equals(desc.getVersion()))
+					return unit;
+			} catch (IOException e) {
+				// fall through
+			}
+			incomplete = true;
+			return super.createInstallableUnit(desc, index);
+		}
+
 		public synchronized void parse(InputStream stream, IProgressMonitor monitor) throws IOException {
 			this.status = null;
 			setProgressMonitor(monitor);
@@ -218,6 +295,8 @@ public class MetadataRepositoryIO {
 			} finally {
 				monitor.done();
 				stream.close();
+				if (offsets != null && !lazyUnits && !incomplete)
+					offsets.dispose();
 			}
 		}
 
@@ -307,8 +386,16 @@ public class MetadataRepositoryIO {
 				if (isValidXML()) {
 					state.Properties = (propertiesHandler == null ? new OrderedProperties(0) //
 							: propertiesHandler.getProperties());
+					if (offsets != null && (unitsHandler == null ? 0 : unitsHandler.size()) != offsets.size()) {
+						// The unit elements were not all found in the copy of the document, so
+						// the offsets cannot be trusted
+						incomplete = true;
+						return;
+					}
 					state.Units = (unitsHandler == null ? new IInstallableUnit[0] //
 							: unitsHandler.getUnits());
+					if (incomplete)
+						return;
 					state.Repositories = repositoryReferencesHandler == null ? new IRepositoryReference[0] : repositoryReferencesHandler.getReferences();
 					Object repositoryObject = null;
 					//can't create repository if missing type - this is already logged when parsing attributes
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.core.helpers.CollectionUtils;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.metadata.expression.IMemberProvider;
+
+/**
+ * An installable unit that only keeps the members needed to match it against the
+ * common queries in memory: id, version, singleton, provided capabilities, filter
+ * and update descriptor. Everything else is read back from a {@link UnitOffsetTable}
+ * the first time it is asked for and kept as long as memory permits.
+ */
+public class LazyInstallableUnit implements IInstallableUnit, IMemberProvider {
+	private final String id;
+	private final Version version;
+	private final boolean singleton;
+	private final IProvidedCapability[] providedCapabilities;
+	private final IMatchExpression<IInstallableUnit> filter;
+	private final IUpdateDescriptor updateDescriptor;
+
+	private final UnitOffsetTable table;
+	private final int index;
+	private SoftReference<IInstallableUnit> unit;
+
+	public LazyInstallableUnit(IInstallableUnit header, UnitOffsetTable table, int index) {
+		this.id = header.getId();
+		this.version = header.getVersion();
+		this.singleton = header.isSingleton();
+		Collection<IProvidedCapability> capabilities = header.getProvidedCapabilities();
+		this.providedCapabilities = capabilities.toArray(new IProvidedCapability[capabilities.size()]);
+		this.filter = header.getFilter();
+		this.updateDescriptor = header.getUpdateDescriptor();
+		this.table = table;
+		this.index = index;
+	}
+
+	/**
+	 * Returns the complete unit, parsing it if it is not in memory.
+	 */
+	private synchronized IInstallableUnit getUnit() {
+		IInstallableUnit result = unit == null ? null : unit.get();
+		if (result != null)
+			return result;
+		try {
+			result = table.load(index);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read " + this + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (!id.equals(result.getId()) || !version.equals(result.getVersion()))
+			throw new IllegalStateException("Unable to read " + this + ": found " + result); //$NON-NLS-1$ //$NON-NLS-2$
+		unit = new SoftReference<IInstallableUnit>(result);
+		return result;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Version getVersion() {
+		return version;
+	}
+
+	public boolean isSingleton() {
+		return singleton;
+	}
+
+	public Collection<IProvidedCapability> getProvidedCapabilities() {
+		return CollectionUtils.unmodifiableList(providedCapabilities);
+	}
+
+	public IMatchExpression<IInstallableUnit> getFilter() {
+		return filter;
+	}
+
+	public IUpdateDescriptor getUpdateDescriptor() {
+		return updateDescriptor;
+	}
+
+	public Collection<IArtifactKey> getArtifacts() {
+		return getUnit().getArtifacts();
+	}
+
+	public Collection<IInstallableUnitFragment> getFragments() {
+		return Collections.<IInstallableUnitFragment> emptyList();
+	}
+
+	public Map<String, String> getProperties() {
+		return getUnit().getProperties();
+	}
+
+	public String getProperty(String key) {
+		return getUnit().getProperty(key);
+	}
+
+	public String getProperty(String key, String locale) {
+		return getUnit().getProperty(key, locale);
+	}
+
+	public Collection<IRequirement> getRequirements() {
+		return getUnit().getRequirements();
+	}
+
+	public Collection<IRequirement> getMetaRequirements() {
+		return getUnit().getMetaRequirements();
+	}
+
+	public Collection<ITouchpointData> getTouchpointData() {
+		return getUnit().getTouchpointData();
+	}
+
+	public ITouchpointType getTouchpointType() {
+		return getUnit().getTouchpointType();
+	}
+
+	public boolean isResolved() {
+		return false;
+	}
+
+	public boolean satisfies(IRequirement candidate) {
+		return candidate.isMatch(this);
+	}
+
+	public IInstallableUnit unresolved() {
+		return this;
+	}
+
+	public Collection<ILicense> getLicenses() {
+		return getUnit().getLicenses();
+	}
+
+	public Collection<ILicense> getLicenses(String locale) {
+		return getUnit().getLicenses(locale);
+	}
+
+	public ICopyright getCopyright() {
+		return getUnit().getCopyright();
+	}
+
+	public ICopyright getCopyright(String locale) {
+		return getUnit().getCopyright(locale);
+	}
+
+	public Object getMember(String memberName) {
+		// Identity comparisons are fine here, see InstallableUnit#getMember
+		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES == memberName)
+			return providedCapabilities;
+		if (InstallableUnit.MEMBER_ID == memberName)
+			return id;
+		if (InstallableUnit.MEMBER_VERSION == memberName)
+			return version;
+		if (InstallableUnit.MEMBER_FILTER == memberName)
+			return filter;
+		if (InstallableUnit.MEMBER_UPDATE_DESCRIPTOR == memberName)
+			return updateDescriptor;
+		if (InstallableUnit.MEMBER_SINGLETON == memberName)
+			return Boolean.valueOf(singleton);
+		IInstallableUnit full = getUnit();
+		if (full instanceof IMemberProvider)
+			return ((IMemberProvider) full).getMember(memberName);
+		throw new IllegalArgumentException("No such member: " + memberName); //$NON-NLS-1$
+	}
+
+	public int compareTo(IInstallableUnit other) {
+		int cmp = id.compareTo(other.getId());
+		if (cmp == 0)
+			cmp = version.compareTo(other.getVersion());
+		return cmp;
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof IInstallableUnit))
+			return false;
+		IInstallableUnit other = (IInstallableUnit) obj;
+		return id.equals(other.getId()) && version.equals(other.getVersion());
+	}
+
+	public int hashCode() {
+		// Must be the same as InstallableUnit#hashCode
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + id.hashCode();
+		result = prime * result + version.hashCode();
+		return result;
+	}
+
+	public String toString() {
+		return id + ' ' + version;
+	}
+}
@@ -37,6 +37,25 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 		super(context, bundleId);
 	}
 
+	/**
+	 * Creates the installable unit for a description read by an {@link InstallableUnitsHandler}.
+	 * Subclasses may override to create units that are only partially held in memory.
+	 * @param desc the description of the unit
+	 * @param index the position of the unit in its enclosing units element
+	 */
+	protected IInstallableUnit createInstallableUnit(InstallableUnitDescription desc, int index) {
+		return MetadataFactory.createInstallableUnit(desc);
+	}
+
+	/**
+	 * Returns whether the touchpoint data, licenses and copyright of the installable units
+	 * are skipped while parsing. Subclasses that read these sections again when they are
+	 * needed may override to keep the units small.
+	 */
+	protected boolean skipDeferredSections() {
+		return false;
+	}
+
 	protected abstract class AbstractMetadataHandler extends AbstractHandler {
 
 		public AbstractMetadataHandler(ContentHandler parentHandler, String elementHandled) {
@@ -98,12 +117,18 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			units = new ArrayList<InstallableUnitDescription>(getOptionalSize(attributes, 4));
 		}
 
+		public int size() {
+			return units.size();
+		}
+
 		public IInstallableUnit[] getUnits() {
 			int size = units.size();
 			IInstallableUnit[] result = new IInstallableUnit[size];
 			int i = 0;
-			for (InstallableUnitDescription desc : units)
-				result[i++] = MetadataFactory.createInstallableUnit(desc);
+			for (InstallableUnitDescription desc : units) {
+				result[i] = createInstallableUnit(desc, i);
+				i++;
+			}
 			return result;
 		}
 
@@ -210,7 +235,9 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 					duplicateElement(this, name, attributes);
 				}
 			} else if (TOUCHPOINT_DATA_ELEMENT.equals(name)) {
-				if (touchpointDataHandler == null) {
+				if (skipDeferredSections()) {
+					new SkippingHandler(this, name);
+				} else if (touchpointDataHandler == null) {
 					touchpointDataHandler = new TouchpointDataHandler(this, attributes);
 				} else {
 					duplicateElement(this, name, attributes);
@@ -222,7 +249,9 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 					duplicateElement(this, name, attributes);
 				}
 			} else if (LICENSES_ELEMENT.equals(name)) {
-				if (licensesHandler == null) {
+				if (skipDeferredSections()) {
+					new SkippingHandler(this, name);
+				} else if (licensesHandler == null) {
 					licensesHandler = new LicensesHandler(this, attributes);
 				} else {
 					duplicateElement(this, name, attributes);
@@ -246,7 +275,9 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 					duplicateElement(this, name, attributes);
 				}
 			} else if (COPYRIGHT_ELEMENT.equals(name)) {
-				if (copyrightHandler == null) {
+				if (skipDeferredSections()) {
+					new SkippingHandler(this, name);
+				} else if (copyrightHandler == null) {
 					copyrightHandler = new CopyrightHandler(this, attributes);
 				} else {
 					duplicateElement(this, name, attributes);
@@ -332,6 +363,24 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 		}
 	}
 
+	/**
+	 * Handler for an element, and everything it contains, that is not read.
+	 */
+	protected class SkippingHandler extends AbstractHandler {
+
+		public SkippingHandler(AbstractHandler parentHandler, String elementHandled) {
+			super(parentHandler, elementHandled);
+		}
+
+		public void startElement(String name, Attributes attributes) {
+			new SkippingHandler(this, name);
+		}
+
+		public void characters(char[] chars, int start, int length) {
+			// the text is not needed
+		}
+	}
+
 	protected class ApplicabilityScopesHandler extends AbstractMetadataHandler {
 		private List<IRequirement[]> scopes;
 
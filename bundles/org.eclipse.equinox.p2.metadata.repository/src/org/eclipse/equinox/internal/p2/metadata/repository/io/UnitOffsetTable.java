@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.util.Collection;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.io.IUDeserializer;
+
+/**
+ * A private copy of a metadata document together with the byte range of every
+ * <code>unit</code> element it contains, in document order. Units are parsed again
+ * from their range when they are needed.
+ */
+public class UnitOffsetTable {
+	private static final String PREFIX = "tmp_units"; //$NON-NLS-1$
+	private static final String SUFFIX = ".xml"; //$NON-NLS-1$
+	private static final byte[] UNITS_START;
+	private static final byte[] UNITS_END;
+	static {
+		try {
+			UNITS_START = "<units size='1'>".getBytes("UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$
+			UNITS_END = "</units>".getBytes("UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	// "<unit" and "</unit>" as they appear in the low bytes of the scan window
+	private static final long UNIT_START = 0x3C756E6974L;
+	private static final long UNIT_END = 0x3C2F756E69743EL;
+
+	private final File file;
+	private long[] offsets = new long[256];
+	private int[] lengths = new int[256];
+	private int size;
+	private IUDeserializer deserializer;
+
+	private UnitOffsetTable(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Copies the given stream to a temporary file, recording the range of each unit
+	 * element.
+	 * @param input the metadata document, closed when this method returns
+	 * @return the offset table of the copied document
+	 */
+	public static UnitOffsetTable spool(InputStream input) throws IOException {
+		File file = File.createTempFile(PREFIX, SUFFIX);
+		file.deleteOnExit();
+		UnitOffsetTable result = new UnitOffsetTable(file);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			byte[] buffer = new byte[8192];
+			long window = 0;
+			long position = 0;
+			long start = -1;
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++, position++) {
+					int b = buffer[i] & 0xFF;
+					if ((window & 0xFFFFFFFFFFL) == UNIT_START && (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>'))
+						start = position - 5;
+					window = (window << 8) | b;
+					if (start >= 0 && (window & 0xFFFFFFFFFFFFFFL) == UNIT_END) {
+						result.add(start, (int) (position + 1 - start));
+						start = -1;
+					}
+				}
+				output.write(buffer, 0, read);
+			}
+		} finally {
+			try {
+				output.close();
+			} finally {
+				input.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a stream on the copy of the document.
+	 */
+	public InputStream openStream() throws IOException {
+		return new BufferedInputStream(new FileInputStream(file));
+	}
+
+	private void add(long offset, int length) {
+		if (size == offsets.length) {
+			long[] newOffsets = new long[size * 2];
+			System.arraycopy(offsets, 0, newOffsets, 0, size);
+			offsets = newOffsets;
+			int[] newLengths = new int[size * 2];
+			System.arraycopy(lengths, 0, newLengths, 0, size);
+			lengths = newLengths;
+		}
+		offsets[size] = offset;
+		lengths[size++] = length;
+	}
+
+	/**
+	 * Returns the number of unit elements found in the document.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Parses the unit element at the given position.
+	 * @param index the position of the unit in the document
+	 * @return the unit
+	 * @throws IOException if the copy of the document can no longer be read
+	 */
+	public synchronized IInstallableUnit load(int index) throws IOException {
+		byte[] unit = new byte[UNITS_START.length + lengths[index] + UNITS_END.length];
+		System.arraycopy(UNITS_START, 0, unit, 0, UNITS_START.length);
+		System.arraycopy(UNITS_END, 0, unit, unit.length - UNITS_END.length, UNITS_END.length);
+		RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			raf.seek(offsets[index]);
+			raf.readFully(unit, UNITS_START.length, lengths[index]);
+		} finally {
+			raf.close();
+		}
+		if (deserializer == null)
+			deserializer = new IUDeserializer();
+		Collection<IInstallableUnit> units = deserializer.read(new ByteArrayInputStream(unit));
+		if (units.size() != 1)
+			throw new IOException("Unexpected content at offset " + offsets[index] + " of " + file); //$NON-NLS-1$ //$NON-NLS-2$
+		return units.iterator().next();
+	}
+
+	/**
+	 * Deletes the copy of the document. Units that have not been loaded yet can no longer be loaded.
+	 */
+	public void dispose() {
+		file.delete();
+	}
+
+	protected void finalize() throws Throwable {
+		dispose();
+		super.finalize();
+	}
+}
@@ -11,6 +11,7 @@
 package org.eclipse.equinox.internal.p2.metadata;
 
 import java.util.List;
+import org.eclipse.equinox.p2.core.ConcurrentPool;
 import org.eclipse.equinox.p2.metadata.IVersionFormat;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.osgi.util.NLS;
@@ -33,6 +34,12 @@ public class OSGiVersion extends BasicVersion {
 
 	private final Comparable<?> qualifier;
 
+	/**
+	 * The OSGi versions in use. Equal versions created from different strings share
+	 * one instance, so most comparisons end on an identity check.
+	 */
+	private static final ConcurrentPool<OSGiVersion> versions = new ConcurrentPool<OSGiVersion>();
+
 	static {
 		allowedOSGiChars = new boolean[128];
 		for (int c = '0'; c <= '9'; ++c)
@@ -79,7 +86,18 @@ public class OSGiVersion extends BasicVersion {
 		int minor = ((Integer) vector.get(1)).intValue();
 		int micro = ((Integer) vector.get(2)).intValue();
 		Comparable<?> qualifier = vector.get(3);
-		return (major == 0 && minor == 0 && micro == 0 && qualifier == VersionVector.MINS_VALUE) ? (BasicVersion) emptyVersion : new OSGiVersion(major, minor, micro, qualifier);
+		return (BasicVersion) intern(major, minor, micro, qualifier);
+	}
+
+	/**
+	 * Returns the shared instance of the given OSGi version, or the empty version for 0.0.0
+	 * without a qualifier.
+	 * @throws IllegalArgumentException if the qualifier is not a valid OSGi qualifier
+	 */
+	public static Version intern(int major, int minor, int micro, Comparable<? extends Object> qualifier) {
+		if (major == 0 && minor == 0 && micro == 0 && qualifier == VersionVector.MINS_VALUE)
+			return emptyVersion;
+		return versions.add(new OSGiVersion(major, minor, micro, qualifier));
 	}
 
 	public OSGiVersion(int major, int minor, int micro, Comparable<? extends Object> qualifier) {
@@ -95,23 +113,25 @@ public class OSGiVersion extends BasicVersion {
 	}
 
 	public int compareTo(Version v) {
-		int result;
+		if (v == this)
+			return 0;
+
 		if (!(v instanceof OSGiVersion)) {
 			BasicVersion ov = (BasicVersion) v;
-			result = VersionVector.compare(getVector(), null, ov.getVector(), ov.getPad());
-		} else {
-			OSGiVersion ov = (OSGiVersion) v;
-			result = major - ov.major;
-			if (result == 0) {
-				result = minor - ov.minor;
-				if (result == 0) {
-					result = micro - ov.micro;
-					if (result == 0)
-						result = VersionVector.compareSegments(qualifier, ov.qualifier);
-				}
-			}
+			return VersionVector.compare(getVector(), null, ov.getVector(), ov.getPad());
 		}
-		return result;
+
+		// compare the primitive segments first, the qualifiers are interned
+		OSGiVersion ov = (OSGiVersion) v;
+		if (major != ov.major)
+			return major > ov.major ? 1 : -1;
+		if (minor != ov.minor)
+			return minor > ov.minor ? 1 : -1;
+		if (micro != ov.micro)
+			return micro > ov.micro ? 1 : -1;
+		if (qualifier == ov.qualifier)
+			return 0;
+		return VersionVector.compareSegments(qualifier, ov.qualifier);
 	}
 
 	public boolean equals(Object object) {
@@ -127,7 +147,7 @@ public class OSGiVersion extends BasicVersion {
 		}
 
 		OSGiVersion other = (OSGiVersion) object;
-		return micro == other.micro && minor == other.minor && major == other.major && qualifier.equals(other.qualifier);
+		return micro == other.micro && minor == other.minor && major == other.major && (qualifier == other.qualifier || qualifier.equals(other.qualifier));
 	}
 
 	public IVersionFormat getFormat() {
@@ -217,10 +237,8 @@ public class OSGiVersion extends BasicVersion {
 	}
 
 	private Object readResolve() {
-		OSGiVersion v = this;
-		// Preserve the empty string singleton.
-		if (qualifier.equals(VersionVector.MINS_VALUE))
-			v = new OSGiVersion(major, minor, micro, VersionVector.MINS_VALUE);
-		return v;
+		// Preserve the empty string singleton (the constructor interns the qualifier) and
+		// share the version.
+		return versions.add(new OSGiVersion(major, minor, micro, qualifier));
 	}
 }
@@ -11,6 +11,7 @@
 package org.eclipse.equinox.internal.p2.metadata;
 
 import java.util.*;
+import org.eclipse.equinox.p2.metadata.IVersionFormat;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.metadata.VersionFormatException;
 import org.eclipse.osgi.util.NLS;
@@ -60,6 +61,50 @@ public abstract class VersionParser {
 		return padValue;
 	}
 
+	/*
+	 * Parses the common <major>[.<minor>[.<micro>[.<qualifier>]]] form without creating
+	 * the segment vector. Returns null for anything else, including numbers that overflow,
+	 * so that the OSGi format decides what the string means.
+	 */
+	private static Version parseOSGi(String version, int pos, int maxPos) {
+		int major = 0;
+		int minor = 0;
+		int micro = 0;
+		for (int segment = 0; segment < 3; ++segment) {
+			int start = pos;
+			long value = 0;
+			for (; pos < maxPos; ++pos) {
+				char c = version.charAt(pos);
+				if (!isDigit(c))
+					break;
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE)
+					return null;
+			}
+			if (pos == start)
+				return null;
+
+			if (segment == 0)
+				major = (int) value;
+			else if (segment == 1)
+				minor = (int) value;
+			else
+				micro = (int) value;
+
+			if (pos == maxPos)
+				return OSGiVersion.intern(major, minor, micro, VersionVector.MINS_VALUE);
+			if (version.charAt(pos) != '.' || ++pos == maxPos)
+				return null;
+		}
+
+		String qualifier = version.substring(pos, maxPos);
+		if (qualifier.equals(IVersionFormat.DEFAULT_MAX_STRING_TRANSLATION))
+			return OSGiVersion.intern(major, minor, micro, VersionVector.MAXS_VALUE);
+		if (!OSGiVersion.isValidOSGiQualifier(qualifier))
+			return null;
+		return OSGiVersion.intern(major, minor, micro, qualifier);
+	}
+
 	private VersionParser() {
 		// Prevent class from being instantiated
 	}
@@ -86,6 +131,9 @@ public abstract class VersionParser {
 		VersionFormat fmt = null;
 		char c = version.charAt(pos);
 		if (isDigit(c)) {
+			Version osgiVersion = parseOSGi(version, pos, maxPos);
+			if (osgiVersion != null)
+				return osgiVersion;
 			return OSGiVersion.fromVector(VersionFormat.OSGI_FORMAT.parse(version, pos, maxPos));
 		}
 
@@ -0,0 +1,462 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.expression;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.MetadataActivator;
+import org.eclipse.equinox.p2.metadata.expression.IMemberProvider;
+import org.osgi.framework.BundleContext;
+
+/**
+ * <p>Compiles boolean expressions into trees of closures. A compiled predicate does not
+ * create evaluation contexts or iterators: variables live in the slots of a frame array,
+ * parameters are read from the array given to the match, and members of objects that are
+ * not {@link IMemberProvider member providers} are read through a method that is looked up
+ * once per class, without locking.</p>
+ * <p>Only the expressions found in requirements and filters are compiled, that is boolean
+ * operators, comparisons, matches, members, literals, parameters and <code>exists</code> or
+ * <code>all</code> over a collection. Expressions that use anything else, such as
+ * <code>everything</code> or collection functions, are left to the interpreter.</p>
+ */
+public final class ExpressionCompiler {
+	/**
+	 * Framework or system property that turns the compiler off, so that all expressions
+	 * are interpreted.
+	 */
+	public static final String PROP_INTERPRET = "eclipse.p2.expression.interpret"; //$NON-NLS-1$
+
+	/**
+	 * A compiled boolean expression. Instances are immutable and may be shared by threads.
+	 */
+	public static final class Predicate {
+		private final Closure body;
+		private final int frameSize;
+
+		Predicate(Closure body, int frameSize) {
+			this.body = body;
+			this.frameSize = frameSize;
+		}
+
+		/**
+		 * Evaluates the predicate with <code>this</code> bound to the given candidate.
+		 * @param parameters the values of the indexed parameters
+		 * @param candidate the value of <code>this</code>
+		 * @return <code>true</code> if the expression evaluates to {@link Boolean#TRUE}
+		 */
+		public boolean isMatch(Object[] parameters, Object candidate) {
+			Object[] frame = new Object[frameSize];
+			frame[0] = candidate;
+			return body.isTrue(parameters, frame);
+		}
+	}
+
+	static abstract class Closure {
+		abstract Object evaluate(Object[] parameters, Object[] frame);
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			return evaluate(parameters, frame) == Boolean.TRUE;
+		}
+	}
+
+	static abstract class BooleanClosure extends Closure {
+		final Object evaluate(Object[] parameters, Object[] frame) {
+			return Boolean.valueOf(isTrue(parameters, frame));
+		}
+
+		abstract boolean isTrue(Object[] parameters, Object[] frame);
+	}
+
+	static final class ConstantClosure extends Closure {
+		private final Object value;
+
+		ConstantClosure(Object value) {
+			this.value = value;
+		}
+
+		Object evaluate(Object[] parameters, Object[] frame) {
+			return value;
+		}
+	}
+
+	static final class ParameterClosure extends Closure {
+		private final int position;
+
+		ParameterClosure(int position) {
+			this.position = position;
+		}
+
+		Object evaluate(Object[] parameters, Object[] frame) {
+			return parameters[position];
+		}
+	}
+
+	static final class SlotClosure extends Closure {
+		private final int slot;
+
+		SlotClosure(int slot) {
+			this.slot = slot;
+		}
+
+		Object evaluate(Object[] parameters, Object[] frame) {
+			return frame[slot];
+		}
+	}
+
+	/**
+	 * The method used to read a member from the last class seen. It is replaced rather than
+	 * changed, so that readers never see a class with the method of another one.
+	 */
+	private static final class Accessor {
+		final Class<?> type;
+		final Method method;
+
+		Accessor(Class<?> type, Method method) {
+			this.type = type;
+			this.method = method;
+		}
+	}
+
+	static final class MemberClosure extends Closure {
+		private final Closure operand;
+		private final String name;
+		private final Member.DynamicMember member;
+		private volatile Accessor accessor;
+
+		MemberClosure(Closure operand, Member.DynamicMember member) {
+			this.operand = operand;
+			this.name = member.getName();
+			this.member = member;
+		}
+
+		Object evaluate(Object[] parameters, Object[] frame) {
+			Object self = operand.evaluate(parameters, frame);
+			if (self instanceof IMemberProvider)
+				return ((IMemberProvider) self).getMember(name);
+			if (self == null)
+				return member.invoke(self);
+
+			Accessor current = accessor;
+			if (current == null || current.type != self.getClass()) {
+				current = lookup(self.getClass());
+				if (current == null)
+					// let the interpreter find the member and report the problem
+					return member.invoke(self);
+				accessor = current;
+			}
+			try {
+				return current.method.invoke(self, Member.NO_ARGS);
+			} catch (IllegalAccessException e) {
+				return member.invoke(self);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getTargetException();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new RuntimeException("Problem invoking " + current.method.getName() + " on a " + self.getClass().getName(), cause); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+
+		private Accessor lookup(Class<?> type) {
+			String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			String[] candidates = name.startsWith("get") || name.startsWith("is") ? new String[] {name} : new String[] {"get" + suffix, "is" + suffix, name}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			for (int idx = 0; idx < candidates.length; ++idx) {
+				try {
+					Method method = type.getMethod(candidates[idx], new Class[0]);
+					if (!Modifier.isPublic(method.getModifiers()))
+						continue;
+					method.setAccessible(true);
+					return new Accessor(type, method);
+				} catch (NoSuchMethodException e) {
+					// try the next form
+				} catch (SecurityException e) {
+					return null;
+				}
+			}
+			return null;
+		}
+	}
+
+	static final class EqualsClosure extends BooleanClosure {
+		private final Closure lhs;
+		private final Closure rhs;
+		private final boolean negate;
+
+		EqualsClosure(Closure lhs, Closure rhs, boolean negate) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+			this.negate = negate;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			return CoercingComparator.coerceAndEquals(lhs.evaluate(parameters, frame), rhs.evaluate(parameters, frame)) != negate;
+		}
+	}
+
+	static final class CompareClosure extends BooleanClosure {
+		private final Closure lhs;
+		private final Closure rhs;
+		private final boolean compareLess;
+		private final boolean equalOK;
+
+		CompareClosure(Closure lhs, Closure rhs, boolean compareLess, boolean equalOK) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+			this.compareLess = compareLess;
+			this.equalOK = equalOK;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			int cmpResult = CoercingComparator.coerceAndCompare(lhs.evaluate(parameters, frame), rhs.evaluate(parameters, frame));
+			return cmpResult == 0 ? equalOK : (cmpResult < 0 ? compareLess : !compareLess);
+		}
+	}
+
+	static final class MatchesClosure extends BooleanClosure {
+		private final Closure lhs;
+		private final Closure rhs;
+		private final Matches matches;
+
+		MatchesClosure(Closure lhs, Closure rhs, Matches matches) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+			this.matches = matches;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			return matches.match(lhs.evaluate(parameters, frame), rhs.evaluate(parameters, frame));
+		}
+	}
+
+	static final class NotClosure extends BooleanClosure {
+		private final Closure operand;
+
+		NotClosure(Closure operand) {
+			this.operand = operand;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			return !operand.isTrue(parameters, frame);
+		}
+	}
+
+	static final class AndClosure extends BooleanClosure {
+		private final Closure[] operands;
+
+		AndClosure(Closure[] operands) {
+			this.operands = operands;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			for (int idx = 0; idx < operands.length; ++idx)
+				if (!operands[idx].isTrue(parameters, frame))
+					return false;
+			return true;
+		}
+	}
+
+	static final class OrClosure extends BooleanClosure {
+		private final Closure[] operands;
+
+		OrClosure(Closure[] operands) {
+			this.operands = operands;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			for (int idx = 0; idx < operands.length; ++idx)
+				if (operands[idx].isTrue(parameters, frame))
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * Evaluates <code>exists</code> (stops at the first match) or <code>all</code> (stops at
+	 * the first mismatch) with the item variable in a slot of the frame.
+	 */
+	static final class QuantifierClosure extends BooleanClosure {
+		private final Closure collection;
+		private final Closure body;
+		private final int slot;
+		private final boolean exists;
+
+		QuantifierClosure(Closure collection, Closure body, int slot, boolean exists) {
+			this.collection = collection;
+			this.body = body;
+			this.slot = slot;
+			this.exists = exists;
+		}
+
+		boolean isTrue(Object[] parameters, Object[] frame) {
+			Object value = collection.evaluate(parameters, frame);
+			if (value instanceof Collection<?>) {
+				for (Object each : (Collection<?>) value) {
+					frame[slot] = each;
+					if (body.isTrue(parameters, frame) == exists)
+						return exists;
+				}
+				return !exists;
+			}
+			if (value instanceof Object[]) {
+				Object[] array = (Object[]) value;
+				for (int idx = 0; idx < array.length; ++idx) {
+					frame[slot] = array[idx];
+					if (body.isTrue(parameters, frame) == exists)
+						return exists;
+				}
+				return !exists;
+			}
+			Iterator<?> itor = value instanceof IRepeatableIterator<?> ? ((IRepeatableIterator<?>) value).getCopy() : RepeatableIterator.create(value);
+			while (itor.hasNext()) {
+				frame[slot] = itor.next();
+				if (body.isTrue(parameters, frame) == exists)
+					return exists;
+			}
+			return !exists;
+		}
+	}
+
+	private static final Object NOT_COMPILABLE = new Object();
+	// the predicates are only weakly referenced: they may hold parts of their expression, which
+	// would otherwise keep the key from being collected
+	private static final Map<Expression, Object> cache = new WeakHashMap<Expression, Object>();
+	private static final boolean enabled = !Boolean.valueOf(getProperty(PROP_INTERPRET)).booleanValue();
+
+	private static String getProperty(String key) {
+		BundleContext context = MetadataActivator.getContext();
+		return context == null ? System.getProperty(key) : context.getProperty(key);
+	}
+
+	/**
+	 * Returns the compiled form of the given boolean expression, in which <code>this</code>
+	 * is the candidate of the match. Equal expressions share the same compiled form as long as
+	 * it is referenced.
+	 * @param expression the expression to compile
+	 * @return the compiled expression, or <code>null</code> if it must be interpreted
+	 */
+	public static Predicate compile(Expression expression) {
+		if (!enabled)
+			return null;
+		synchronized (cache) {
+			Object compiled = cache.get(expression);
+			if (compiled == NOT_COMPILABLE)
+				return null;
+			if (compiled != null) {
+				@SuppressWarnings("unchecked")
+				Predicate predicate = ((WeakReference<Predicate>) compiled).get();
+				if (predicate != null)
+					return predicate;
+			}
+		}
+		Predicate predicate = new ExpressionCompiler().compileRoot(expression);
+		synchronized (cache) {
+			cache.put(expression, predicate == null ? NOT_COMPILABLE : new WeakReference<Predicate>(predicate));
+		}
+		return predicate;
+	}
+
+	/**
+	 * Returns what the cache holds for the given expression: a weak reference to its compiled
+	 * form, another object if it cannot be compiled, or <code>null</code> if it is not cached.
+	 * Used by the tests.
+	 */
+	public static Object getCacheEntry(Expression expression) {
+		synchronized (cache) {
+			return cache.get(expression);
+		}
+	}
+
+	private final List<Variable> scope = new ArrayList<Variable>();
+	private final List<Integer> slots = new ArrayList<Integer>();
+	private int frameSize = 1;
+
+	private ExpressionCompiler() {
+		// instances only live during one compilation
+	}
+
+	private Predicate compileRoot(Expression expression) {
+		try {
+			return new Predicate(compileExpression(expression), frameSize);
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private Closure compileExpression(Expression expression) {
+		Class<?> type = expression.getClass();
+		if (type == Literal.class)
+			return new ConstantClosure(((Literal) expression).value);
+		if (type == Parameter.class)
+			return new ParameterClosure(((Parameter) expression).position);
+		if (type == Variable.class)
+			return new SlotClosure(getSlot((Variable) expression));
+		if (type == Member.DynamicMember.class)
+			return new MemberClosure(compileExpression(((Member) expression).operand), (Member.DynamicMember) expression);
+		if (type == Equals.class) {
+			Equals equals = (Equals) expression;
+			return new EqualsClosure(compileExpression(equals.lhs), compileExpression(equals.rhs), equals.negate);
+		}
+		if (type == Compare.class) {
+			Compare compare = (Compare) expression;
+			return new CompareClosure(compileExpression(compare.lhs), compileExpression(compare.rhs), compare.compareLess, compare.equalOK);
+		}
+		if (type == Matches.class) {
+			Matches matches = (Matches) expression;
+			return new MatchesClosure(compileExpression(matches.lhs), compileExpression(matches.rhs), matches);
+		}
+		if (type == Not.class)
+			return new NotClosure(compileExpression(((Not) expression).operand));
+		if (type == And.class)
+			return new AndClosure(compileExpressions(((And) expression).operands));
+		if (type == Or.class)
+			return new OrClosure(compileExpressions(((Or) expression).operands));
+		if (type == Exists.class || type == All.class)
+			return compileQuantifier((CollectionFilter) expression, type == Exists.class);
+		throw new UnsupportedOperationException();
+	}
+
+	private Closure[] compileExpressions(Expression[] expressions) {
+		Closure[] closures = new Closure[expressions.length];
+		for (int idx = 0; idx < expressions.length; ++idx)
+			closures[idx] = compileExpression(expressions[idx]);
+		return closures;
+	}
+
+	private Closure compileQuantifier(CollectionFilter filter, boolean exists) {
+		// curried lambdas assign extra variables, leave them to the interpreter
+		if (filter.lambda.getClass() != LambdaExpression.class)
+			throw new UnsupportedOperationException();
+		Closure collection = compileExpression(filter.operand);
+		int slot = frameSize++;
+		scope.add(filter.lambda.getItemVariable());
+		slots.add(new Integer(slot));
+		try {
+			return new QuantifierClosure(collection, compileExpression(filter.lambda.operand), slot, exists);
+		} finally {
+			scope.remove(scope.size() - 1);
+			slots.remove(slots.size() - 1);
+		}
+	}
+
+	private int getSlot(Variable variable) {
+		// the innermost lambda wins when variables have the same name
+		for (int idx = scope.size() - 1; idx >= 0; --idx)
+			if (scope.get(idx).equals(variable))
+				return slots.get(idx).intValue();
+		if (ExpressionFactory.THIS.equals(variable))
+			return 0;
+		throw new UnsupportedOperationException();
+	}
+}
@@ -19,6 +19,8 @@ import org.osgi.framework.ServiceReference;
 
 public class LDAPFilter extends Unary implements IFilterExpression {
 
+	private transient volatile Object compiled;
+
 	LDAPFilter(Expression expression) {
 		super(expression);
 	}
@@ -55,6 +57,15 @@ public class LDAPFilter extends Unary implements IFilterExpression {
 	}
 
 	public boolean isMatch(Object candidate) {
+		Object current = compiled;
+		if (current == null) {
+			ExpressionCompiler.Predicate predicate = ExpressionCompiler.compile(operand);
+			current = predicate == null ? Boolean.FALSE : (Object) predicate;
+			compiled = current;
+		}
+		if (current != Boolean.FALSE)
+			return ((ExpressionCompiler.Predicate) current).isMatch(MatchExpression.noParams, candidate);
+
 		Variable self = ExpressionFactory.THIS;
 		IEvaluationContext ctx = EvaluationContext.create(self);
 		self.setValue(ctx, candidate);
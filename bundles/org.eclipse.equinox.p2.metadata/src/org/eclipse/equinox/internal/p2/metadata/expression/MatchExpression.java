@@ -20,8 +20,9 @@ import org.eclipse.equinox.p2.metadata.expression.*;
  * to evaluate the expression.
  */
 public class MatchExpression<T> extends Unary implements IMatchExpression<T> {
-	private static final Object[] noParams = new Object[0];
+	static final Object[] noParams = new Object[0];
 	private final Object[] parameters;
+	private transient volatile Object compiled;
 
 	MatchExpression(Expression expression, Object[] parameters) {
 		super(expression);
@@ -78,9 +79,25 @@ public class MatchExpression<T> extends Unary implements IMatchExpression<T> {
 	}
 
 	public boolean isMatch(T value) {
+		ExpressionCompiler.Predicate predicate = getCompiledPredicate();
+		if (predicate != null)
+			return predicate.isMatch(parameters, value);
 		return isMatch(createContext(), value);
 	}
 
+	/**
+	 * Returns the compiled form of the predicate, or <code>null</code> if it is interpreted.
+	 */
+	private ExpressionCompiler.Predicate getCompiledPredicate() {
+		Object current = compiled;
+		if (current == null) {
+			ExpressionCompiler.Predicate predicate = ExpressionCompiler.compile(operand);
+			current = predicate == null ? Boolean.FALSE : (Object) predicate;
+			compiled = current;
+		}
+		return current == Boolean.FALSE ? null : (ExpressionCompiler.Predicate) current;
+	}
+
 	public void toLDAPString(StringBuffer bld) {
 		operand.toLDAPString(bld);
 	}
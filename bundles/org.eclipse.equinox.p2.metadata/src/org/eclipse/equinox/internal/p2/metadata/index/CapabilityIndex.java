@@ -48,6 +48,14 @@ public class CapabilityIndex extends Index<IInstallableUnit> {
 		this.capabilityMap = index;
 	}
 
+	/**
+	 * Constructor for subclasses that keep the capability names in another form.
+	 * Such subclasses must override {@link #getUnits(Object)}.
+	 */
+	protected CapabilityIndex() {
+		this.capabilityMap = null;
+	}
+
 	private Object getRequirementIDs(IEvaluationContext ctx, IExpression requirement, Object queriedKeys) {
 		switch (requirement.getExpressionType()) {
 			case IExpression.TYPE_AND :
@@ -203,26 +211,24 @@ public class CapabilityIndex extends Index<IInstallableUnit> {
 		} else if (queriedKeys instanceof Collection<?>) {
 			matchingIUs = new HashSet<IInstallableUnit>();
 			for (Object key : (Collection<Object>) queriedKeys)
-				collectMatchingIUs((String) key, matchingIUs);
+				matchingIUs.addAll(getUnits(key));
 		} else {
-			Object v = capabilityMap.get(queriedKeys);
-			if (v == null)
-				matchingIUs = Collections.<IInstallableUnit> emptySet();
-			else if (v instanceof IInstallableUnit)
-				matchingIUs = Collections.singleton((IInstallableUnit) v);
-			else
-				matchingIUs = (Collection<IInstallableUnit>) v;
+			matchingIUs = getUnits(queriedKeys);
 		}
 		return matchingIUs.iterator();
 	}
 
-	private void collectMatchingIUs(String name, Collection<IInstallableUnit> collector) {
+	/**
+	 * Returns the IUs that provide a capability with the given name.
+	 * @param name the capability name
+	 * @return the providing IUs, possibly empty, never <code>null</code>
+	 */
+	protected Collection<IInstallableUnit> getUnits(Object name) {
 		Object v = capabilityMap.get(name);
 		if (v == null)
-			return;
+			return Collections.<IInstallableUnit> emptySet();
 		if (v instanceof IInstallableUnit)
-			collector.add((IInstallableUnit) v);
-		else
-			collector.addAll((Collection<IInstallableUnit>) v);
+			return Collections.singleton((IInstallableUnit) v);
+		return (Collection<IInstallableUnit>) v;
 	}
 }
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.index;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+
+/**
+ * A CapabilityIndex read from a file that is memory mapped. The file maps each capability
+ * name to the ordinals of the providing IUs, an ordinal being the position of an IU in the
+ * sorted array of all the IUs that the index was written for.
+ * <p>
+ * The file layout is a header (magic, format version, fingerprint, unit count and key count)
+ * followed by a table of (key offset, ordinals offset, ordinal count) sorted by key, the UTF-8
+ * encoded keys and the ordinals.
+ * </p>
+ */
+public class PersistentCapabilityIndex extends CapabilityIndex {
+	private static final int MAGIC = 0x50324958; // P2IX
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int ENTRY_SIZE = 12;
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	private final ByteBuffer buffer;
+	private final IInstallableUnit[] units;
+	private final int keyCount;
+
+	private PersistentCapabilityIndex(ByteBuffer buffer, IInstallableUnit[] units, int keyCount) {
+		this.buffer = buffer;
+		this.units = units;
+		this.keyCount = keyCount;
+	}
+
+	/**
+	 * Computes a value that changes when the given IUs are not the ones an index was written for.
+	 * @param sortedUnits the IUs, sorted
+	 * @param timestamp the timestamp of the repository
+	 */
+	public static long fingerprint(IInstallableUnit[] sortedUnits, long timestamp) {
+		long fingerprint = timestamp;
+		for (int i = 0; i < sortedUnits.length; i++)
+			fingerprint = 31 * fingerprint + sortedUnits[i].hashCode();
+		return fingerprint;
+	}
+
+	/**
+	 * Writes an index of the capabilities provided by the given IUs.
+	 * @param file the index file
+	 * @param sortedUnits the IUs, sorted
+	 * @param timestamp the timestamp of the repository containing the IUs
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(File file, IInstallableUnit[] sortedUnits, long timestamp) throws IOException {
+		TreeMap<String, List<Integer>> ordinals = new TreeMap<String, List<Integer>>();
+		for (int i = 0; i < sortedUnits.length; i++) {
+			for (IProvidedCapability pc : sortedUnits[i].getProvidedCapabilities()) {
+				List<Integer> providers = ordinals.get(pc.getName());
+				if (providers == null) {
+					providers = new ArrayList<Integer>(1);
+					ordinals.put(pc.getName(), providers);
+				}
+				if (providers.isEmpty() || providers.get(providers.size() - 1).intValue() != i)
+					providers.add(new Integer(i));
+			}
+		}
+
+		List<byte[]> keys = new ArrayList<byte[]>(ordinals.size());
+		int keysSize = 0;
+		int ordinalCount = 0;
+		for (Map.Entry<String, List<Integer>> entry : ordinals.entrySet()) {
+			byte[] key = entry.getKey().getBytes(ENCODING);
+			keys.add(key);
+			keysSize += 4 + key.length;
+			ordinalCount += entry.getValue().size();
+		}
+
+		int keysOffset = HEADER_SIZE + ENTRY_SIZE * keys.size();
+		int ordinalsOffset = keysOffset + keysSize;
+		ByteBuffer out = ByteBuffer.allocate(ordinalsOffset + 4 * ordinalCount);
+		out.putInt(MAGIC);
+		out.putInt(FORMAT_VERSION);
+		out.putLong(fingerprint(sortedUnits, timestamp));
+		out.putInt(sortedUnits.length);
+		out.putInt(keys.size());
+		int keyPosition = keysOffset;
+		int ordinalPosition = ordinalsOffset;
+		int idx = 0;
+		for (List<Integer> providers : ordinals.values()) {
+			byte[] key = keys.get(idx++);
+			out.putInt(keyPosition);
+			out.putInt(ordinalPosition);
+			out.putInt(providers.size());
+			out.putInt(keyPosition, key.length);
+			for (int i = 0; i < key.length; i++)
+				out.put(keyPosition + 4 + i, key[i]);
+			for (int i = 0; i < providers.size(); i++)
+				out.putInt(ordinalPosition + 4 * i, providers.get(i).intValue());
+			keyPosition += 4 + key.length;
+			ordinalPosition += 4 * providers.size();
+		}
+		out.clear();
+
+		// Write to a temporary file first so that a crash never leaves a partial index behind
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		FileOutputStream stream = new FileOutputStream(tmp);
+		try {
+			FileChannel channel = stream.getChannel();
+			while (out.hasRemaining())
+				channel.write(out);
+		} finally {
+			stream.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("Unable to write " + file); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Maps an index previously written by {@link #write(File, IInstallableUnit[], long)}.
+	 * @param file the index file
+	 * @param sortedUnits the IUs to serve, sorted
+	 * @param timestamp the timestamp of the repository containing the IUs
+	 * @return the index or <code>null</code> if the file does not exist or was not written for the given IUs
+	 * @throws IOException if the file cannot be read
+	 */
+	public static PersistentCapabilityIndex load(File file, IInstallableUnit[] sortedUnits, long timestamp) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE)
+			return null;
+		FileInputStream stream = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = stream.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// The mapping stays valid after the channel is closed
+			stream.close();
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+			return null;
+		if (buffer.getInt(16) != sortedUnits.length || buffer.getLong(8) != fingerprint(sortedUnits, timestamp))
+			return null;
+		return new PersistentCapabilityIndex(buffer, sortedUnits, buffer.getInt(20));
+	}
+
+	protected Collection<IInstallableUnit> getUnits(Object name) {
+		if (!(name instanceof String))
+			return Collections.<IInstallableUnit> emptySet();
+		int entry = find((String) name);
+		if (entry < 0)
+			return Collections.<IInstallableUnit> emptySet();
+		int entryPosition = HEADER_SIZE + ENTRY_SIZE * entry;
+		int ordinalPosition = buffer.getInt(entryPosition + 4);
+		int count = buffer.getInt(entryPosition + 8);
+		if (count == 1)
+			return Collections.singleton(units[buffer.getInt(ordinalPosition)]);
+		List<IInstallableUnit> result = new ArrayList<IInstallableUnit>(count);
+		for (int i = 0; i < count; i++)
+			result.add(units[buffer.getInt(ordinalPosition + 4 * i)]);
+		return result;
+	}
+
+	private int find(String name) {
+		int low = 0;
+		int high = keyCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = getKey(mid).compareTo(name);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private String getKey(int entry) {
+		int keyPosition = buffer.getInt(HEADER_SIZE + ENTRY_SIZE * entry);
+		byte[] key = new byte[buffer.getInt(keyPosition)];
+		for (int i = 0; i < key.length; i++)
+			key[i] = buffer.get(keyPosition + 4 + i);
+		try {
+			return new String(key, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
@@ -117,7 +117,7 @@ public abstract class Version implements Comparable<Version>, Serializable {
 			logicQualifier = VersionVector.MAXS_VALUE;
 		else
 			logicQualifier = qualifier;
-		return new OSGiVersion(major, minor, micro, logicQualifier);
+		return OSGiVersion.intern(major, minor, micro, logicQualifier);
 	}
 
 	/**
@@ -15,14 +15,17 @@ package org.eclipse.equinox.p2.publisher.eclipse;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintCache;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.GeneratorBundleInfo;
 import org.eclipse.equinox.p2.metadata.*;
@@ -35,6 +38,7 @@ import org.eclipse.equinox.p2.publisher.actions.*;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.spi.p2.publisher.LocalizationHelper;
 import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
 import org.eclipse.osgi.framework.util.Headers;
@@ -62,7 +66,7 @@ import org.osgi.framework.Constants;
  * </ul>
  */
 @SuppressWarnings("restriction")
-public class BundlesAction extends AbstractPublisherAction {
+public class BundlesAction extends AbstractPublisherAction implements IConcurrentPublisherAction {
 
 	/**
 	 * A capability name in the {@link PublisherHelper#NAMESPACE_ECLIPSE_TYPE} namespace
@@ -114,6 +118,8 @@ public class BundlesAction extends AbstractPublisherAction {
 
 	private File[] locations;
 	private BundleDescription[] bundles;
+	private int parallelism = 1;
+	private FingerprintCache fingerprints;
 	protected MultiStatus finalStatus;
 
 	public static IArtifactKey createBundleArtifactKey(String bsn, String version) {
@@ -514,7 +520,8 @@ public class BundlesAction extends AbstractPublisherAction {
 		return ServiceHelper.getService(Activator.getContext(), PluginConverter.class);
 	}
 
-	private static Dictionary<String, String> convertPluginManifest(File bundleLocation, boolean logConversionException) {
+	// the plug-in converter keeps the state of the conversion in progress, so manifests are converted one at a time
+	private static synchronized Dictionary<String, String> convertPluginManifest(File bundleLocation, boolean logConversionException) {
 		PluginConverter converter;
 		try {
 			converter = acquirePluginConverter();
@@ -700,6 +707,38 @@ public class BundlesAction extends AbstractPublisherAction {
 		this.bundles = bundles;
 	}
 
+	/**
+	 * Sets the number of threads publishing the bundles. With more than one thread the manifests
+	 * are parsed, the artifacts digested and the folder bundles zipped concurrently. The IUs are
+	 * still created in the order of the bundles, so hosts are processed before their fragments, and
+	 * the artifacts are added to the artifact repository on the calling thread in the same order, so
+	 * the published IUs and descriptors are the same as with a single thread.
+	 * @param parallelism the number of threads, 1 to publish on the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Sets the cache of what previous runs published for each bundle location. Unchanged bundles
+	 * whose IUs and artifacts are still in the repositories are not read again, their published IUs
+	 * are added to the result instead. Changed bundles, and bundles whose shape advice from the
+	 * features changed, are removed from the repositories and published again.
+	 * @param fingerprints the cache, or <code>null</code> to publish every bundle
+	 */
+	public void setFingerprintCache(FingerprintCache fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
+	public String[] getConsumedResults() {
+		return new String[] {BUNDLES, ADVICE};
+	}
+
+	public String[] getProducedResults() {
+		// the advice added for advice files only applies to the bundles of this action
+		return new String[] {BUNDLES};
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		if (bundles == null && locations == null)
@@ -709,8 +748,12 @@ public class BundlesAction extends AbstractPublisherAction {
 		finalStatus = new MultiStatus(Activator.ID, IStatus.OK, Messages.message_bundlesPublisherMultistatus, null);
 
 		try {
-			if (bundles == null)
-				bundles = getBundleDescriptions(expandLocations(locations), monitor);
+			if (bundles == null) {
+				File[] bundleLocations = expandLocations(locations);
+				if (fingerprints != null)
+					bundleLocations = reuseUnchangedBundles(bundleLocations, results);
+				bundles = getBundleDescriptions(bundleLocations, monitor);
+			}
 			generateBundleIUs(bundles, publisherInfo, results, monitor);
 			bundles = null;
 		} catch (OperationCanceledException e) {
@@ -756,6 +799,41 @@ public class BundlesAction extends AbstractPublisherAction {
 		}
 	}
 
+	/*
+	 * Add the IUs published for the unchanged bundles to the result and answer the other locations.
+	 */
+	private File[] reuseUnchangedBundles(File[] bundleLocations, IPublisherResult result) {
+		IMetadataRepository metadataRepository = info.getMetadataRepository();
+		ArrayList<File> changed = new ArrayList<File>(bundleLocations.length);
+		for (int i = 0; i < bundleLocations.length; i++) {
+			FingerprintCache.Entry entry = fingerprints.getUnchanged(bundleLocations[i]);
+			if (entry != null && isSameShapeAdvice(entry) && FingerprintCache.isPublished(entry, info)) {
+				result.addIUs(FingerprintCache.getIUs(entry.getRootIUs(), metadataRepository), IPublisherResult.ROOT);
+				result.addIUs(FingerprintCache.getIUs(entry.getNonRootIUs(), metadataRepository), IPublisherResult.NON_ROOT);
+				fingerprints.reuse(bundleLocations[i], entry);
+				continue;
+			}
+			// otherwise the IU of the previous run would be found and reused for the changed bundle
+			FingerprintCache.Entry previous = fingerprints.remove(bundleLocations[i]);
+			if (previous != null)
+				FingerprintCache.unpublish(previous, info);
+			changed.add(bundleLocations[i]);
+		}
+		return changed.toArray(new File[changed.size()]);
+	}
+
+	/*
+	 * Whether the shape advised for the bundle is the one it was published with. A feature
+	 * changing how the bundle is unpacked changes the bundle IU without changing the bundle.
+	 */
+	private boolean isSameShapeAdvice(FingerprintCache.Entry entry) {
+		if (entry.getRootIUs().isEmpty())
+			return false;
+		IVersionedId bundleId = entry.getRootIUs().get(0);
+		String shape = getShapeAdvice(bundleId.getId(), bundleId.getVersion(), info);
+		return shape == null ? entry.getAdvice() == null : shape.equals(entry.getAdvice());
+	}
+
 	private File[] expandLocations(File[] list) {
 		ArrayList<File> result = new ArrayList<File>();
 		expandLocations(list, result);
@@ -787,6 +865,19 @@ public class BundlesAction extends AbstractPublisherAction {
 	}
 
 	protected void generateBundleIUs(BundleDescription[] bundleDescriptions, IPublisherInfo info, IPublisherResult result, IProgressMonitor monitor) {
+		ExecutorService executor = parallelism > 1 && bundleDescriptions.length > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+		try {
+			generateBundleIUs(bundleDescriptions, info, result, executor, monitor);
+		} finally {
+			if (executor != null)
+				shutdown(executor);
+		}
+	}
+
+	private void generateBundleIUs(BundleDescription[] bundleDescriptions, final IPublisherInfo info, IPublisherResult result, ExecutorService executor, IProgressMonitor monitor) {
+		// The artifacts are digested ahead of the loop below, which must create the IUs in order
+		List<Future<IArtifactDescriptor>> descriptors = executor == null ? null : createArtifactDescriptors(bundleDescriptions, info, executor);
+		List<Publication> publications = new ArrayList<Publication>();
 
 		// This assumes that hosts are processed before fragments because for each fragment the host
 		// is queried for the strings that should be translated.
@@ -794,7 +885,7 @@ public class BundlesAction extends AbstractPublisherAction {
 			if (monitor.isCanceled())
 				throw new OperationCanceledException();
 
-			BundleDescription bd = bundleDescriptions[i];
+			final BundleDescription bd = bundleDescriptions[i];
 			if (bd != null && bd.getSymbolicName() != null && bd.getVersion() != null) {
 				//First check to see if there is already an IU around for this
 				IInstallableUnit bundleIU = queryForIU(result, bundleDescriptions[i].getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()));
@@ -806,15 +897,18 @@ public class BundlesAction extends AbstractPublisherAction {
 				}
 
 				File location = new File(bd.getLocation());
-				IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(info, key, location);
+				final IArtifactDescriptor ad = descriptors == null ? PublisherHelper.createArtifactDescriptor(info, key, location) : getResult(descriptors.get(i));
 				processArtifactPropertiesAdvice(bundleIU, ad, info);
 
-				// Publish according to the shape on disk
-				File bundleLocation = new File(bd.getLocation());
-				if (bundleLocation.isDirectory())
-					publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), info);
-				else
-					publishArtifact(ad, bundleLocation, info);
+				if (executor == null)
+					publishBundleArtifact(ad, bd, info);
+				else {
+					publications.add(new Publication(ad, bd, executor.submit(new Callable<File>() {
+						public File call() throws IOException {
+							return stageBundleArtifact(ad, bd, info);
+						}
+					})));
+				}
 
 				IInstallableUnit fragment = null;
 				if (isFragment(bd)) {
@@ -839,12 +933,165 @@ public class BundlesAction extends AbstractPublisherAction {
 				if (fragment != null)
 					result.addIU(fragment, IPublisherResult.NON_ROOT);
 
+				List<IInstallableUnit> roots = new ArrayList<IInstallableUnit>();
+				roots.add(bundleIU);
 				InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, info);
 				for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-					result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
+					IInstallableUnit other = MetadataFactory.createInstallableUnit(others[iuIndex]);
+					result.addIU(other, IPublisherResult.ROOT);
+					roots.add(other);
+				}
+
+				if (fingerprints != null) {
+					List<IInstallableUnit> nonRoots = fragment == null ? Collections.<IInstallableUnit> emptyList() : Collections.singletonList(fragment);
+					String shape = getShapeAdvice(bd.getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()), info);
+					fingerprints.put(location, ad.getProperty(IArtifactDescriptor.DOWNLOAD_MD5), shape, roots, nonRoots, Collections.singletonList(key));
 				}
 			}
 		}
+
+		// the artifacts are added in the order of the bundles, once they are staged
+		try {
+			for (Iterator<Publication> iterator = publications.iterator(); iterator.hasNext();) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				Publication publication = iterator.next();
+				iterator.remove();
+				File staged = getResult(publication.staged);
+				try {
+					if (staged != null)
+						publishArtifact(publication.descriptor, staged, info);
+					else
+						publishBundleArtifact(publication.descriptor, publication.bundle, info);
+				} finally {
+					if (staged != null)
+						staged.delete();
+				}
+			}
+		} finally {
+			if (!publications.isEmpty()) {
+				// let the staging in progress finish before deleting what it staged
+				shutdown(executor);
+				for (Publication publication : publications)
+					publication.discard();
+			}
+		}
+	}
+
+	/*
+	 * Zip a folder bundle to a temporary file, on a thread of the executor. Answer the file, or null if the
+	 * bundle is published as it is.
+	 */
+	private File stageBundleArtifact(IArtifactDescriptor ad, BundleDescription bd, IPublisherInfo info) throws IOException {
+		File bundleLocation = new File(bd.getLocation());
+		IArtifactRepository destination = info.getArtifactRepository();
+		if (!bundleLocation.isDirectory() || destination == null || (info.getArtifactOptions() & IPublisherInfo.A_PUBLISH) == 0)
+			return null;
+		File[] inclusions = bundleLocation.listFiles();
+		if (inclusions == null || inclusions.length == 0 || destination.contains(ad))
+			return null;
+		File tempFile = File.createTempFile("p2.generator", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			FileUtils.zip(inclusions, null, tempFile, createRootPrefixComputer(bundleLocation));
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+		return tempFile;
+	}
+
+	/*
+	 * The artifact of a bundle being staged on the executor.
+	 */
+	private static class Publication {
+		final IArtifactDescriptor descriptor;
+		final BundleDescription bundle;
+		final Future<File> staged;
+
+		Publication(IArtifactDescriptor descriptor, BundleDescription bundle, Future<File> staged) {
+			this.descriptor = descriptor;
+			this.bundle = bundle;
+			this.staged = staged;
+		}
+
+		/*
+		 * Delete the staged file of an artifact that will not be added.
+		 */
+		void discard() {
+			if (!staged.isDone() || staged.isCancelled())
+				return;
+			try {
+				File file = staged.get();
+				if (file != null)
+					file.delete();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// nothing was staged
+			}
+		}
+	}
+
+	private void publishBundleArtifact(IArtifactDescriptor ad, BundleDescription bd, IPublisherInfo info) {
+		// Publish according to the shape on disk
+		File bundleLocation = new File(bd.getLocation());
+		if (bundleLocation.isDirectory())
+			publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), info);
+		else
+			publishArtifact(ad, bundleLocation, info);
+	}
+
+	/*
+	 * Digest the artifacts of the bundles on the executor. The futures are in the order of the bundles,
+	 * with null for the bundles that are not published.
+	 */
+	private static List<Future<IArtifactDescriptor>> createArtifactDescriptors(BundleDescription[] bundleDescriptions, final IPublisherInfo info, ExecutorService executor) {
+		List<Future<IArtifactDescriptor>> result = new ArrayList<Future<IArtifactDescriptor>>(bundleDescriptions.length);
+		for (int i = 0; i < bundleDescriptions.length; i++) {
+			final BundleDescription bd = bundleDescriptions[i];
+			if (bd == null || bd.getSymbolicName() == null || bd.getVersion() == null) {
+				result.add(null);
+				continue;
+			}
+			result.add(executor.submit(new Callable<IArtifactDescriptor>() {
+				public IArtifactDescriptor call() {
+					IArtifactKey key = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
+					return PublisherHelper.createArtifactDescriptor(info, key, new File(bd.getLocation()));
+				}
+			}));
+		}
+		return result;
+	}
+
+	/*
+	 * Answer the result of a task run on the executor, rethrowing what it failed with.
+	 */
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/*
+	 * Stop the tasks not started yet and wait for those in progress, they may still be writing to the repository.
+	 */
+	private static void shutdown(ExecutorService executor) {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	/**
@@ -862,14 +1109,10 @@ public class BundlesAction extends AbstractPublisherAction {
 	}
 
 	private static boolean isDir(BundleDescription bundle, IPublisherInfo info) {
-		Collection<IBundleShapeAdvice> advice = info.getAdvice(null, true, bundle.getSymbolicName(), PublisherHelper.fromOSGiVersion(bundle.getVersion()), IBundleShapeAdvice.class);
+		String shape = getShapeAdvice(bundle.getSymbolicName(), PublisherHelper.fromOSGiVersion(bundle.getVersion()), info);
 		// if the advice has a shape, use it
-		if (advice != null && !advice.isEmpty()) {
-			// we know there is some advice but if there is more than one, take the first.
-			String shape = advice.iterator().next().getShape();
-			if (shape != null)
-				return shape.equals(IBundleShapeAdvice.DIR);
-		}
+		if (shape != null)
+			return shape.equals(IBundleShapeAdvice.DIR);
 		// otherwise go with whatever we figured out from the manifest or the shape on disk
 		@SuppressWarnings("unchecked")
 		Map<String, String> manifest = (Map<String, String>) bundle.getUserObject();
@@ -877,6 +1120,14 @@ public class BundlesAction extends AbstractPublisherAction {
 		return DIR.equals(format);
 	}
 
+	private static String getShapeAdvice(String id, Version version, IPublisherInfo info) {
+		Collection<IBundleShapeAdvice> advice = info.getAdvice(null, true, id, version, IBundleShapeAdvice.class);
+		if (advice == null || advice.isEmpty())
+			return null;
+		// we know there is some advice but if there is more than one, take the first.
+		return advice.iterator().next().getShape();
+	}
+
 	private boolean isFragment(BundleDescription bd) {
 		return (bd.getHost() != null ? true : false);
 	}
@@ -884,6 +1135,8 @@ public class BundlesAction extends AbstractPublisherAction {
 	protected BundleDescription[] getBundleDescriptions(File[] bundleLocations, IProgressMonitor monitor) {
 		if (bundleLocations == null)
 			return new BundleDescription[0];
+		if (parallelism > 1 && bundleLocations.length > 1)
+			return getBundleDescriptionsInParallel(bundleLocations, monitor);
 		List<BundleDescription> result = new ArrayList<BundleDescription>(bundleLocations.length);
 		for (int i = 0; i < bundleLocations.length; i++) {
 			if (monitor.isCanceled())
@@ -903,6 +1156,50 @@ public class BundlesAction extends AbstractPublisherAction {
 		return result.toArray(new BundleDescription[0]);
 	}
 
+	/*
+	 * Parse the manifests on several threads, keeping the bundles and the errors in the order of the locations.
+	 */
+	private BundleDescription[] getBundleDescriptionsInParallel(File[] bundleLocations, IProgressMonitor monitor) {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<BundleDescription>> descriptions = new ArrayList<Future<BundleDescription>>(bundleLocations.length);
+			for (int i = 0; i < bundleLocations.length; i++) {
+				final File bundleLocation = bundleLocations[i];
+				descriptions.add(executor.submit(new Callable<BundleDescription>() {
+					public BundleDescription call() throws IOException, BundleException {
+						return createBundleDescription(bundleLocation);
+					}
+				}));
+			}
+			List<BundleDescription> result = new ArrayList<BundleDescription>(bundleLocations.length);
+			for (int i = 0; i < bundleLocations.length; i++) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				BundleDescription description = null;
+				try {
+					description = descriptions.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException || cause instanceof BundleException)
+						addPublishingErrorToFinalStatus(cause, bundleLocations[i]);
+					else if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					else if (cause instanceof Error)
+						throw (Error) cause;
+				}
+				if (description != null) {
+					result.add(description);
+				}
+			}
+			return result.toArray(new BundleDescription[0]);
+		} finally {
+			shutdown(executor);
+		}
+	}
+
 	private void addPublishingErrorToFinalStatus(Throwable t, File bundleLocation) {
 		finalStatus.add(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.exception_errorPublishingBundle, bundleLocation, t.getMessage()), t));
 	}
@@ -21,6 +21,7 @@ import org.eclipse.equinox.internal.p2.core.helpers.FileUtils.IPathComputer;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.publisher.FileSetDescriptor;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintCache;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
 import org.eclipse.equinox.p2.metadata.*;
@@ -42,7 +43,7 @@ import org.eclipse.pde.internal.publishing.Activator;
  * Publish IUs for all of the features in the given set of locations.  The locations can
  * be actual locations of the features or folders of features.
  */
-public class FeaturesAction extends AbstractPublisherAction {
+public class FeaturesAction extends AbstractPublisherAction implements IConcurrentPublisherAction {
 	public static final String INSTALL_FEATURES_FILTER = "(org.eclipse.update.install.features=true)"; //$NON-NLS-1$
 	private static final String UPDATE_FEATURE_APPLICATION_PROP = "org.eclipse.update.feature.application"; //$NON-NLS-1$
 	private static final String UPDATE_FEATURE_PLUGIN_PROP = "org.eclipse.update.feature.plugin"; //$NON-NLS-1$
@@ -51,6 +52,8 @@ public class FeaturesAction extends AbstractPublisherAction {
 
 	protected Feature[] features;
 	private File[] locations;
+	private FingerprintCache fingerprints;
+	private Map<String, FingerprintCache.Entry> unchangedFeatures;
 
 	public static IArtifactKey createFeatureArtifactKey(String id, String version) {
 		return new ArtifactKey(PublisherHelper.ECLIPSE_FEATURE_CLASSIFIER, id, Version.parseVersion(version));
@@ -155,6 +158,17 @@ public class FeaturesAction extends AbstractPublisherAction {
 		this.locations = locations;
 	}
 
+	/**
+	 * Sets the cache of what previous runs published for each feature location. The features are
+	 * still parsed for the advice they give about bundles, but the artifacts of unchanged features
+	 * whose IUs and artifacts are still in the repositories are not digested and published again.
+	 * Changed features are removed from the repositories and published again.
+	 * @param fingerprints the cache, or <code>null</code> to publish every feature
+	 */
+	public void setFingerprintCache(FingerprintCache fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
 	/**
 	 * Looks for advice in a p2.inf file inside the feature location.
 	 */
@@ -375,6 +389,23 @@ public class FeaturesAction extends AbstractPublisherAction {
 		return MetadataFactory.createInstallableUnitPatch(iu);
 	}
 
+	/*
+	 * Remember the unchanged features and remove what was published for the changed ones.
+	 */
+	private void findUnchangedFeatures(File[] featureLocations) {
+		unchangedFeatures = new HashMap<String, FingerprintCache.Entry>();
+		for (int i = 0; i < featureLocations.length; i++) {
+			FingerprintCache.Entry entry = fingerprints.getUnchanged(featureLocations[i]);
+			if (entry != null && FingerprintCache.isPublished(entry, info)) {
+				unchangedFeatures.put(featureLocations[i].getAbsolutePath(), entry);
+				continue;
+			}
+			FingerprintCache.Entry previous = fingerprints.remove(featureLocations[i]);
+			if (previous != null)
+				FingerprintCache.unpublish(previous, info);
+		}
+	}
+
 	private File[] expandLocations(File[] list) {
 		ArrayList<File> result = new ArrayList<File>();
 		expandLocations(list, result);
@@ -407,13 +438,15 @@ public class FeaturesAction extends AbstractPublisherAction {
 			createAdviceFileAdvice(feature, info);
 
 			ArrayList<IInstallableUnit> childIUs = new ArrayList<IInstallableUnit>();
+			FingerprintCache.Entry unchanged = unchangedFeatures == null || feature.getLocation() == null ? null : unchangedFeatures.get(feature.getLocation());
 
 			IInstallableUnit featureJarIU = queryForIU(result, getTransformedId(feature.getId(), false, false), Version.parseVersion(feature.getVersion()));
 			if (featureJarIU == null)
 				featureJarIU = generateFeatureJarIU(feature, info);
 
 			if (featureJarIU != null) {
-				publishFeatureArtifacts(feature, featureJarIU, info);
+				if (unchanged == null)
+					publishFeatureArtifacts(feature, featureJarIU, info);
 				result.addIU(featureJarIU, IPublisherResult.NON_ROOT);
 				childIUs.add(featureJarIU);
 			}
@@ -423,14 +456,30 @@ public class FeaturesAction extends AbstractPublisherAction {
 				childIUs.addAll(generateRootFileIUs(feature, result, info));
 				groupIU = createGroupIU(feature, childIUs, info);
 			}
+			ArrayList<IInstallableUnit> rootIUs = new ArrayList<IInstallableUnit>();
 			if (groupIU != null) {
 				result.addIU(groupIU, IPublisherResult.ROOT);
+				rootIUs.add(groupIU);
 				InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(groupIU, info);
 				for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-					result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
+					IInstallableUnit other = MetadataFactory.createInstallableUnit(others[iuIndex]);
+					result.addIU(other, IPublisherResult.ROOT);
+					rootIUs.add(other);
 				}
 			}
 			generateSiteReferences(feature, result, info);
+
+			if (fingerprints != null && feature.getLocation() != null) {
+				File location = new File(feature.getLocation());
+				if (unchanged != null)
+					fingerprints.reuse(location, unchanged);
+				else {
+					ArrayList<IArtifactKey> artifacts = new ArrayList<IArtifactKey>();
+					for (IInstallableUnit child : childIUs)
+						artifacts.addAll(child.getArtifacts());
+					fingerprints.put(location, null, null, rootIUs, childIUs, artifacts);
+				}
+			}
 		}
 	}
 
@@ -595,13 +644,25 @@ public class FeaturesAction extends AbstractPublisherAction {
 		return false;
 	}
 
+	public String[] getConsumedResults() {
+		return new String[] {FEATURES, ADVICE};
+	}
+
+	public String[] getProducedResults() {
+		return new String[] {FEATURES, ADVICE};
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		if (features == null && locations == null)
 			throw new IllegalStateException(Messages.exception_noFeaturesOrLocations);
 		this.info = publisherInfo;
-		if (features == null)
-			features = getFeatures(expandLocations(locations));
+		if (features == null) {
+			File[] featureLocations = expandLocations(locations);
+			if (fingerprints != null)
+				findUnchangedFeatures(featureLocations);
+			features = getFeatures(featureLocations);
+		}
 		generateFeatureIUs(features, results);
 		return Status.OK_STATUS;
 	}
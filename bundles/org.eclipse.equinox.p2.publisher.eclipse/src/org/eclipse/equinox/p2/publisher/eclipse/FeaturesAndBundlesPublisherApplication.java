@@ -10,12 +10,18 @@
 package org.eclipse.equinox.p2.publisher.eclipse;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintCache;
+import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.publisher.actions.RootIUAction;
 import org.eclipse.equinox.p2.publisher.actions.RootIUResultFilterAdvice;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * <p>
@@ -25,6 +31,12 @@ import org.eclipse.equinox.p2.publisher.actions.RootIUResultFilterAdvice;
  * </p><p>
  * Optionally, the -features <csv of file locations> and -bundles <csv of file locations> arguments can 
  * be specified.  If given, these override the defaults derived from a supplied -source parameter.
+ * </p><p>
+ * The -parallelism <number of threads> argument publishes the bundles on several threads.
+ * </p><p>
+ * The -incremental flag appends to the repositories and only publishes the features and bundles
+ * that changed since the last incremental run.  What was published for each input is remembered
+ * in a file next to a local metadata repository.
  * </p>
  */
 public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApplication {
@@ -35,6 +47,10 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 	protected String rootIU = null;
 	protected String rootVersion = null;
 
+	protected boolean incremental = false;
+
+	private FingerprintCache fingerprints;
+
 	public FeaturesAndBundlesPublisherApplication() {
 		// nothing to do
 	}
@@ -55,6 +71,15 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 			rootVersion = parameter;
 	}
 
+	protected void processFlag(String arg, PublisherInfo pinfo) {
+		super.processFlag(arg, pinfo);
+
+		if (arg.equalsIgnoreCase("-incremental")) { //$NON-NLS-1$
+			incremental = true;
+			append = true;
+		}
+	}
+
 	private File[] createFiles(String parameter) {
 		String[] filespecs = AbstractPublisherAction.getArrayFromString(parameter, ","); //$NON-NLS-1$
 		File[] result = new File[filespecs.length];
@@ -67,10 +92,19 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 		ArrayList<IPublisherAction> result = new ArrayList<IPublisherAction>();
 		if (features == null)
 			features = new File[] {new File(source, "features")}; //$NON-NLS-1$
-		result.add(new FeaturesAction(features));
+		fingerprints = null;
+		File metadataFolder = incremental && metadataLocation != null ? URIUtil.toFile(metadataLocation) : null;
+		if (metadataFolder != null)
+			fingerprints = new FingerprintCache(metadataFolder);
+		FeaturesAction featuresAction = new FeaturesAction(features);
+		featuresAction.setFingerprintCache(fingerprints);
+		result.add(featuresAction);
 		if (bundles == null)
 			bundles = new File[] {new File(source, "plugins")}; //$NON-NLS-1$
-		result.add(new BundlesAction(bundles));
+		BundlesAction bundlesAction = new BundlesAction(bundles);
+		bundlesAction.setParallelism(parallelism);
+		bundlesAction.setFingerprintCache(fingerprints);
+		result.add(bundlesAction);
 
 		if (rootIU != null) {
 			result.add(new RootIUAction(rootIU, Version.parseVersion(rootVersion), rootIU));
@@ -79,4 +113,18 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 
 		return result.toArray(new IPublisherAction[result.size()]);
 	}
+
+	public Object run(PublisherInfo publisherInfo) throws Exception {
+		Object result = super.run(publisherInfo);
+		// only remember what was published once it is in the repositories
+		if (fingerprints != null && IApplication.EXIT_OK.equals(result)) {
+			try {
+				fingerprints.save();
+				System.out.println(NLS.bind(Messages.message_incrementalReuse, String.valueOf(fingerprints.getReusedCount())));
+			} catch (IOException e) {
+				System.out.println(NLS.bind(Messages.exception_fingerprintCacheNotSaved, e.getMessage()));
+			}
+		}
+		return result;
+	}
 }
@@ -97,6 +97,7 @@ public abstract class AbstractPublishTask extends Task {
 	protected String artifactRepoName;
 	protected PublisherInfo provider = null;
 	protected List<RepoEntry> contextRepositories = new ArrayList<RepoEntry>();
+	protected int parallelism = 1;
 
 	protected IProvisioningAgent getProvisioningAgent() {
 		return ServiceHelper.getService(Activator.getContext(), IProvisioningAgent.class);
@@ -150,6 +151,12 @@ public abstract class AbstractPublishTask extends Task {
 		}
 	}
 
+	protected Publisher createPublisher() {
+		Publisher publisher = new Publisher(getInfo());
+		publisher.setParallelism(parallelism);
+		return publisher;
+	}
+
 	protected PublisherInfo getInfo() {
 		if (provider == null)
 			provider = new PublisherInfo();
@@ -171,6 +178,10 @@ public abstract class AbstractPublishTask extends Task {
 		append = Boolean.parseBoolean(value);
 	}
 
+	public void setParallelism(String value) {
+		parallelism = Integer.parseInt(value);
+	}
+
 	public void setPublishArtifacts(String value) {
 		publish = Boolean.parseBoolean(value);
 	}
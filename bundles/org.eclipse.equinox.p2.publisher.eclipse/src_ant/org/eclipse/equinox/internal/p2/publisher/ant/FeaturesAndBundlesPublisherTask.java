@@ -17,7 +17,6 @@ import org.apache.tools.ant.types.FileSet;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.publisher.IPublisherAction;
-import org.eclipse.equinox.p2.publisher.Publisher;
 import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
 import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
 
@@ -38,11 +37,14 @@ public class FeaturesAndBundlesPublisherTask extends AbstractPublishTask {
 		ArrayList<IPublisherAction> actions = new ArrayList<IPublisherAction>();
 		if (f.length > 0)
 			actions.add(new FeaturesAction(f));
-		if (b.length > 0)
-			actions.add(new BundlesAction(b));
+		if (b.length > 0) {
+			BundlesAction bundlesAction = new BundlesAction(b);
+			bundlesAction.setParallelism(parallelism);
+			actions.add(bundlesAction);
+		}
 
 		if (actions.size() > 0)
-			new Publisher(getInfo()).publish(actions.toArray(new IPublisherAction[actions.size()]), new NullProgressMonitor());
+			createPublisher().publish(actions.toArray(new IPublisherAction[actions.size()]), new NullProgressMonitor());
 	}
 
 	private File[] getLocations(List<Object> collection) {
@@ -84,7 +84,7 @@ public class ProductPublisherTask extends AbstractPublishTask {
 			flavor = "tooling"; //$NON-NLS-1$
 
 		IPublisherAction action = new ProductAction(source, productDescriptor, flavor, executables != null ? new File(executables) : null, jreLocation != null ? new File(jreLocation) : null);
-		new Publisher(getInfo()).publish(new IPublisherAction[] {action}, new NullProgressMonitor());
+		createPublisher().publish(new IPublisherAction[] {action}, new NullProgressMonitor());
 	}
 
 	protected PublisherInfo getInfo() {
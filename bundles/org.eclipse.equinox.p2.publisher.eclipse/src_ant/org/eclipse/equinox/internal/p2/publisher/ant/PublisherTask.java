@@ -53,7 +53,7 @@ public class PublisherTask extends AbstractPublishTask {
 		createVersionAdvice();
 		IPublisherAction[] actions = createActions();
 		//TODO Do something with publisher result
-		new Publisher(getInfo()).publish(actions, new NullProgressMonitor());
+		createPublisher().publish(actions, new NullProgressMonitor());
 	}
 
 	private IPublisherAction[] createActions() {
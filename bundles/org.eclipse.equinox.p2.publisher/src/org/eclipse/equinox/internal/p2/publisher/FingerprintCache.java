@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.publisher.IPublisherInfo;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * Remembers what was published for each input file of a previous publishing run, keyed by
+ * the file's path, size and modification time.  Actions use it to reuse the published IUs
+ * and artifacts of unchanged inputs instead of reading and digesting them again.  An entry also
+ * records the advice from other inputs that the file was published with, since an unchanged
+ * file is published differently when that advice changes.
+ * <p>
+ * The cache is stored as a properties file next to the metadata repository.  Only the entries
+ * for inputs seen during the current run are saved.
+ * </p>
+ */
+public class FingerprintCache {
+	public static final String CACHE_FILE = "publisher.fingerprints"; //$NON-NLS-1$
+
+	private static final String FIELD_SEPARATOR = "|"; //$NON-NLS-1$
+	private static final String LIST_SEPARATOR = ";"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * What was published for an input file.
+	 */
+	public static class Entry {
+		final long size;
+		final long lastModified;
+		final String digest;
+		final String advice;
+		final List<IVersionedId> roots;
+		final List<IVersionedId> nonRoots;
+		final List<IArtifactKey> artifacts;
+
+		Entry(long size, long lastModified, String digest, String advice, List<IVersionedId> roots, List<IVersionedId> nonRoots, List<IArtifactKey> artifacts) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.digest = digest;
+			this.advice = advice;
+			this.roots = roots;
+			this.nonRoots = nonRoots;
+			this.artifacts = artifacts;
+		}
+
+		/**
+		 * Returns the advice the input was published with, or <code>null</code>.
+		 */
+		public String getAdvice() {
+			return advice;
+		}
+
+		public List<IVersionedId> getRootIUs() {
+			return roots;
+		}
+
+		public List<IVersionedId> getNonRootIUs() {
+			return nonRoots;
+		}
+
+		public List<IArtifactKey> getArtifacts() {
+			return artifacts;
+		}
+	}
+
+	private final File file;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final Map<String, Entry> seen = new HashMap<String, Entry>();
+	private int reused = 0;
+
+	/**
+	 * Loads the cache stored in the given directory.  A missing or unreadable cache is empty.
+	 */
+	public FingerprintCache(File directory) {
+		this.file = new File(directory, CACHE_FILE);
+		if (!file.exists())
+			return;
+		Properties properties = new Properties();
+		InputStream input = null;
+		try {
+			input = new BufferedInputStream(new FileInputStream(file));
+			properties.load(input);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read " + file, e)); //$NON-NLS-1$
+			return;
+		} finally {
+			close(input);
+		}
+		for (Map.Entry<Object, Object> property : properties.entrySet()) {
+			try {
+				entries.put((String) property.getKey(), parse((String) property.getValue()));
+			} catch (IllegalArgumentException e) {
+				// an entry we cannot read is republished
+			}
+		}
+	}
+
+	/**
+	 * Returns what was published for the given location if it did not change since then, or
+	 * <code>null</code>.  A file whose size or modification time changed is still unchanged when
+	 * its content has the recorded digest.
+	 */
+	public synchronized Entry getUnchanged(File location) {
+		String path = location.getAbsolutePath();
+		Entry entry = entries.get(path);
+		if (entry == null)
+			return null;
+		long[] stamp = stamp(location);
+		if (stamp[0] == entry.size && stamp[1] == entry.lastModified)
+			return entry;
+		if (entry.digest == null || location.isDirectory() || !entry.digest.equals(computeMD5(location)))
+			return null;
+		entry = new Entry(stamp[0], stamp[1], entry.digest, entry.advice, entry.roots, entry.nonRoots, entry.artifacts);
+		entries.put(path, entry);
+		return entry;
+	}
+
+	/**
+	 * Forgets and returns what was published for the given location, or <code>null</code>.
+	 */
+	public synchronized Entry remove(File location) {
+		return entries.remove(location.getAbsolutePath());
+	}
+
+	/**
+	 * Records that the given unchanged entry was reused during this run.
+	 */
+	public synchronized void reuse(File location, Entry entry) {
+		seen.put(location.getAbsolutePath(), entry);
+		reused++;
+	}
+
+	/**
+	 * Records what was published for the given location during this run.
+	 * @param digest the MD5 of the location, or <code>null</code> to compute it
+	 * @param advice the advice from other inputs the location was published with, or <code>null</code>
+	 */
+	public synchronized void put(File location, String digest, String advice, Collection<? extends IVersionedId> roots, Collection<? extends IVersionedId> nonRoots, Collection<IArtifactKey> artifacts) {
+		long[] stamp = stamp(location);
+		if (digest == null && !location.isDirectory())
+			digest = computeMD5(location);
+		Entry entry = new Entry(stamp[0], stamp[1], digest, advice, toIds(roots), toIds(nonRoots), new ArrayList<IArtifactKey>(artifacts));
+		entries.put(location.getAbsolutePath(), entry);
+		seen.put(location.getAbsolutePath(), entry);
+	}
+
+	/**
+	 * Returns the number of inputs reused during this run.
+	 */
+	public synchronized int getReusedCount() {
+		return reused;
+	}
+
+	/**
+	 * Returns whether everything recorded in the entry is still in the repositories of the given info.
+	 */
+	public static boolean isPublished(Entry entry, IPublisherInfo info) {
+		IMetadataRepository metadataRepository = info.getMetadataRepository();
+		if (metadataRepository == null)
+			return false;
+		if (getIUs(entry.roots, metadataRepository).size() != entry.roots.size() || getIUs(entry.nonRoots, metadataRepository).size() != entry.nonRoots.size())
+			return false;
+		IArtifactRepository artifactRepository = info.getArtifactRepository();
+		if (artifactRepository == null || (info.getArtifactOptions() & (IPublisherInfo.A_INDEX | IPublisherInfo.A_PUBLISH)) == 0)
+			return true;
+		for (IArtifactKey key : entry.artifacts)
+			if (!artifactRepository.contains(key))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the IUs with the given ids found in the repository.
+	 */
+	public static List<IInstallableUnit> getIUs(List<IVersionedId> ids, IMetadataRepository repository) {
+		List<IInstallableUnit> result = new ArrayList<IInstallableUnit>(ids.size());
+		for (IVersionedId id : ids) {
+			IQueryResult<IInstallableUnit> ius = repository.query(QueryUtil.createIUQuery(id), null);
+			if (!ius.isEmpty())
+				result.add(ius.iterator().next());
+		}
+		return result;
+	}
+
+	/**
+	 * Removes what was published for the entry from the repositories of the given info so that
+	 * the changed input is published again rather than shadowed by the previous result.
+	 */
+	public static void unpublish(Entry entry, IPublisherInfo info) {
+		IMetadataRepository metadataRepository = info.getMetadataRepository();
+		if (metadataRepository != null) {
+			metadataRepository.removeInstallableUnits(getIUs(entry.roots, metadataRepository));
+			metadataRepository.removeInstallableUnits(getIUs(entry.nonRoots, metadataRepository));
+		}
+		IArtifactRepository artifactRepository = info.getArtifactRepository();
+		if (artifactRepository != null && artifactRepository.isModifiable())
+			artifactRepository.removeDescriptors(entry.artifacts.toArray(new IArtifactKey[entry.artifacts.size()]), new NullProgressMonitor());
+	}
+
+	/**
+	 * Writes the entries seen during this run.
+	 */
+	public synchronized void save() throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Entry> entry : seen.entrySet())
+			properties.put(entry.getKey(), format(entry.getValue()));
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+	}
+
+	/*
+	 * The size and modification time of a file.  For a directory these are the total size and the
+	 * latest modification time of the files it contains, since its own time stamp does not change
+	 * when a nested file does.
+	 */
+	private static long[] stamp(File location) {
+		long[] result = new long[] {0, location.lastModified()};
+		if (!location.isDirectory()) {
+			result[0] = location.length();
+			return result;
+		}
+		stamp(location, result);
+		return result;
+	}
+
+	private static void stamp(File directory, long[] result) {
+		File[] children = directory.listFiles();
+		if (children == null)
+			return;
+		for (int i = 0; i < children.length; i++) {
+			result[1] = Math.max(result[1], children[i].lastModified());
+			if (children[i].isDirectory())
+				stamp(children[i], result);
+			else
+				result[0] += children[i].length();
+		}
+	}
+
+	private static String computeMD5(File location) {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		InputStream input = null;
+		try {
+			input = new FileInputStream(location);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				md5.update(buffer, 0, read);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			close(input);
+		}
+		StringBuffer result = new StringBuffer();
+		byte[] digest = md5.digest();
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				result.append('0');
+			result.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return result.toString();
+	}
+
+	private static List<IVersionedId> toIds(Collection<? extends IVersionedId> ius) {
+		List<IVersionedId> result = new ArrayList<IVersionedId>(ius.size());
+		for (IVersionedId iu : ius)
+			result.add(new VersionedId(iu.getId(), iu.getVersion()));
+		return result;
+	}
+
+	private static String format(Entry entry) {
+		StringBuffer result = new StringBuffer();
+		result.append(entry.size).append(FIELD_SEPARATOR);
+		result.append(entry.lastModified).append(FIELD_SEPARATOR);
+		result.append(entry.digest == null ? "" : entry.digest).append(FIELD_SEPARATOR); //$NON-NLS-1$
+		appendList(entry.roots, result);
+		result.append(FIELD_SEPARATOR);
+		appendList(entry.nonRoots, result);
+		result.append(FIELD_SEPARATOR);
+		for (Iterator<IArtifactKey> iter = entry.artifacts.iterator(); iter.hasNext();) {
+			result.append(iter.next().toExternalForm());
+			if (iter.hasNext())
+				result.append(LIST_SEPARATOR);
+		}
+		if (entry.advice != null)
+			result.append(FIELD_SEPARATOR).append(entry.advice);
+		return result.toString();
+	}
+
+	private static void appendList(List<IVersionedId> ids, StringBuffer result) {
+		for (Iterator<IVersionedId> iter = ids.iterator(); iter.hasNext();) {
+			result.append(iter.next().toString());
+			if (iter.hasNext())
+				result.append(LIST_SEPARATOR);
+		}
+	}
+
+	private static Entry parse(String value) {
+		String[] fields = value.split("\\" + FIELD_SEPARATOR, -1); //$NON-NLS-1$
+		if (fields.length != 6 && fields.length != 7)
+			throw new IllegalArgumentException(value);
+		List<IVersionedId> roots = new ArrayList<IVersionedId>();
+		for (String id : split(fields[3]))
+			roots.add(VersionedId.parse(id));
+		List<IVersionedId> nonRoots = new ArrayList<IVersionedId>();
+		for (String id : split(fields[4]))
+			nonRoots.add(VersionedId.parse(id));
+		List<IArtifactKey> artifacts = new ArrayList<IArtifactKey>();
+		for (String key : split(fields[5]))
+			artifacts.add(ArtifactKey.parse(key));
+		String advice = fields.length == 7 ? fields[6] : null;
+		return new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2].length() == 0 ? null : fields[2], advice, roots, nonRoots, artifacts);
+	}
+
+	private static String[] split(String list) {
+		return list.length() == 0 ? new String[0] : list.split(LIST_SEPARATOR);
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
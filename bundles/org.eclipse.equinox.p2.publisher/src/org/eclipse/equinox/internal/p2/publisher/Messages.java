@@ -31,6 +31,7 @@ public class Messages extends NLS {
 	public static String exception_repoMustBeURL;
 	public static String exception_sourcePath;
 	public static String exception_nonExistingJreLocationFile;
+	public static String exception_fingerprintCacheNotSaved;
 
 	public static String message_bundlesPublisherMultistatus;
 	public static String message_generatingMetadata;
@@ -38,6 +39,7 @@ public class Messages extends NLS {
 	public static String message_noSimpleconfigurator;
 	public static String message_resultException;
 	public static String message_publisherArguments;
+	public static String message_incrementalReuse;
 
 	public static String message_problemsWhilePublishingEE;
 	public static String message_problemsWhileParsingProfileProperty;
@@ -58,6 +58,7 @@ public abstract class AbstractPublisherApplication implements IApplication {
 	protected boolean inplace = false;
 	protected boolean append = false;
 	protected boolean reusePackedFiles = false;
+	protected int parallelism = 1;
 	protected String[] configurations;
 	private IStatus status;
 
@@ -187,6 +188,9 @@ public abstract class AbstractPublisherApplication implements IApplication {
 
 		if (arg.equalsIgnoreCase("-contextArtifacts")) //$NON-NLS-1$
 			setContextRepositories(contextMetadataRepositories, processRepositoryList(parameter));
+
+		if (arg.equalsIgnoreCase("-parallelism")) //$NON-NLS-1$
+			parallelism = Integer.parseInt(parameter);
 	}
 
 	private URI[] processRepositoryList(String parameter) {
@@ -313,7 +317,9 @@ public abstract class AbstractPublisherApplication implements IApplication {
 	protected abstract IPublisherAction[] createActions();
 
 	protected Publisher createPublisher(PublisherInfo publisherInfo) {
-		return new Publisher(publisherInfo);
+		Publisher publisher = new Publisher(publisherInfo);
+		publisher.setParallelism(parallelism);
+		return publisher;
 	}
 
 	public Object start(IApplicationContext context) throws Exception {
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.publisher;
+
+/**
+ * A publisher action that declares which kinds of results it reads from and adds to the
+ * publishing state.  The {@link Publisher} uses these declarations to run independent actions
+ * at the same time.  An action only runs after every earlier action that produces a kind it
+ * consumes, or that consumes a kind it produces.  Actions that do not implement this interface
+ * are run once all earlier actions are done and before any later action is started.
+ * <p>
+ * The kinds are free form strings.  The constants below are used by the actions shipped with
+ * the publisher.
+ * </p>
+ */
+public interface IConcurrentPublisherAction extends IPublisherAction {
+	/**
+	 * Result kind for the IUs describing bundles and their fragments.
+	 */
+	public static final String BUNDLES = "bundles"; //$NON-NLS-1$
+
+	/**
+	 * Result kind for the IUs describing features and their groups.
+	 */
+	public static final String FEATURES = "features"; //$NON-NLS-1$
+
+	/**
+	 * Result kind for the IUs describing root files.
+	 */
+	public static final String ROOT_FILES = "rootFiles"; //$NON-NLS-1$
+
+	/**
+	 * Result kind for the IUs describing the execution environment.
+	 */
+	public static final String JRE = "jre"; //$NON-NLS-1$
+
+	/**
+	 * Result kind for advice added to the publisher info while publishing.
+	 */
+	public static final String ADVICE = "advice"; //$NON-NLS-1$
+
+	/**
+	 * Returns the kinds of results this action reads, either from the publisher result
+	 * or from the publisher info.
+	 * @return the consumed result kinds, never <code>null</code>
+	 */
+	public String[] getConsumedResults();
+
+	/**
+	 * Returns the kinds of results this action adds, either to the publisher result
+	 * or to the publisher info.
+	 * @return the produced result kinds, never <code>null</code>
+	 */
+	public String[] getProducedResults();
+}
@@ -11,8 +11,10 @@
 package org.eclipse.equinox.p2.publisher;
 
 import java.net.URI;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.publisher.Activator;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
@@ -30,6 +32,7 @@ public class Publisher {
 
 	private IPublisherInfo info;
 	private IPublisherResult results;
+	private int parallelism = 1;
 
 	/**
 	 * Returns a metadata repository that corresponds to the given settings.  If a repository at the 
@@ -186,6 +189,36 @@ public class Publisher {
 		this.results = results;
 	}
 
+	/**
+	 * Sets the number of threads used to run actions.  With more than one thread, actions
+	 * implementing {@link IConcurrentPublisherAction} that do not depend on each other are
+	 * run at the same time.  The default is 1, which runs the actions one after the other.
+	 * The publisher result must be safe for concurrent use when more than one thread is used.
+	 * @param parallelism the number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns whether the given action must wait for the earlier action to complete before it runs.
+	 */
+	static boolean dependsOn(IPublisherAction action, IPublisherAction earlier) {
+		if (!(action instanceof IConcurrentPublisherAction) || !(earlier instanceof IConcurrentPublisherAction))
+			return true;
+		IConcurrentPublisherAction current = (IConcurrentPublisherAction) action;
+		IConcurrentPublisherAction previous = (IConcurrentPublisherAction) earlier;
+		return intersects(current.getConsumedResults(), previous.getProducedResults()) || intersects(current.getProducedResults(), previous.getConsumedResults());
+	}
+
+	private static boolean intersects(String[] first, String[] second) {
+		for (int i = 0; i < first.length; i++)
+			for (int j = 0; j < second.length; j++)
+				if (first[i].equals(second[j]))
+					return true;
+		return false;
+	}
+
 	class ArtifactProcess implements IRunnableWithProgress {
 
 		private final IPublisherAction[] actions;
@@ -198,6 +231,10 @@ public class Publisher {
 		}
 
 		public void run(IProgressMonitor monitor) {
+			if (parallelism > 1 && actions.length > 1) {
+				runConcurrently(monitor);
+				return;
+			}
 			MultiStatus finalStatus = new MultiStatus("this", 0, "publishing result", null); //$NON-NLS-1$//$NON-NLS-2$
 			for (int i = 0; i < actions.length; i++) {
 				if (monitor.isCanceled()) {
@@ -211,6 +248,75 @@ public class Publisher {
 			result = finalStatus;
 		}
 
+		/*
+		 * Submits the actions in order.  Each task first waits for the earlier actions it depends on.
+		 * Since the executor starts tasks in the order they were submitted, every action a task waits
+		 * for is already running or done, so the pool cannot fill up with waiting tasks.
+		 */
+		private void runConcurrently(final IProgressMonitor monitor) {
+			MultiStatus finalStatus = new MultiStatus("this", 0, "publishing result", null); //$NON-NLS-1$//$NON-NLS-2$
+			final IProgressMonitor actionMonitor = new NullProgressMonitor() {
+				public boolean isCanceled() {
+					return monitor.isCanceled();
+				}
+			};
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, actions.length));
+			try {
+				final List<Future<IStatus>> futures = new ArrayList<Future<IStatus>>(actions.length);
+				for (int i = 0; i < actions.length; i++) {
+					final IPublisherAction action = actions[i];
+					final List<Future<IStatus>> dependencies = new ArrayList<Future<IStatus>>();
+					for (int j = 0; j < i; j++)
+						if (dependsOn(action, actions[j]))
+							dependencies.add(futures.get(j));
+					futures.add(executor.submit(new Callable<IStatus>() {
+						public IStatus call() throws Exception {
+							for (Future<IStatus> dependency : dependencies)
+								dependency.get();
+							if (actionMonitor.isCanceled())
+								return Status.CANCEL_STATUS;
+							return action.perform(info, results, actionMonitor);
+						}
+					}));
+				}
+				for (Future<IStatus> future : futures) {
+					IStatus status = getStatus(future);
+					if (monitor.isCanceled()) {
+						result = Status.CANCEL_STATUS;
+						return;
+					}
+					finalStatus.merge(status);
+					monitor.worked(1);
+				}
+			} finally {
+				// do not return while the remaining actions still write to the repositories and the result
+				executor.shutdownNow();
+				try {
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			result = finalStatus;
+		}
+
+		private IStatus getStatus(Future<IStatus> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return Status.CANCEL_STATUS;
+			} catch (ExecutionException e) {
+				// rethrow what the action threw, as running it on this thread would have done
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+
 		public IStatus getStatus() {
 			return result;
 		}
@@ -233,6 +339,9 @@ public class Publisher {
 					// If the batch process didn't report any errors, then 
 					// Use the status from our actions
 					finalStatus = artifactProcess.getStatus();
+				// the batch saves the repository, unless changes made outside of it are still written behind
+				if (info.getArtifactRepository() instanceof SimpleArtifactRepository)
+					((SimpleArtifactRepository) info.getArtifactRepository()).flush();
 			} else {
 				artifactProcess.run(sub);
 				finalStatus = artifactProcess.getStatus();
@@ -11,6 +11,7 @@
 package org.eclipse.equinox.p2.publisher;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -23,7 +24,8 @@ public class PublisherInfo implements IPublisherInfo {
 	private IMetadataRepository contextMetadataRepository;
 	private IArtifactRepository contextArtifactRepository;
 	private String[] configurations = new String[0];
-	private List<IPublisherAdvice> adviceList = new ArrayList<IPublisherAdvice>(11);
+	// actions running at the same time may add advice while others are reading it
+	private List<IPublisherAdvice> adviceList = new CopyOnWriteArrayList<IPublisherAdvice>();
 
 	public void addAdvice(IPublisherAdvice advice) {
 		adviceList.add(advice);
@@ -12,15 +12,20 @@
 package org.eclipse.equinox.p2.publisher;
 
 import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.internal.p2.metadata.IUMap;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.metadata.expression.CompoundIterator;
+import org.eclipse.equinox.internal.p2.metadata.expression.QueryResult;
 import org.eclipse.equinox.internal.p2.metadata.index.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.metadata.index.IIndex;
-import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.*;
 
+/**
+ * The default publisher result.  It is safe for use by several actions running at the same time.
+ */
 public class PublisherResult extends IndexProvider<IInstallableUnit> implements IPublisherResult {
 
 	final IUMap rootIUs = new IUMap();
@@ -28,19 +33,19 @@ public class PublisherResult extends IndexProvider<IInstallableUnit> implements
 
 	private IIndex<IInstallableUnit> idIndex;
 
-	public void addIU(IInstallableUnit iu, String type) {
+	public synchronized void addIU(IInstallableUnit iu, String type) {
 		if (type == ROOT)
 			rootIUs.add(iu);
 		if (type == NON_ROOT)
 			nonRootIUs.add(iu);
 	}
 
-	public void addIUs(Collection<IInstallableUnit> ius, String type) {
+	public synchronized void addIUs(Collection<IInstallableUnit> ius, String type) {
 		for (IInstallableUnit iu : ius)
 			addIU(iu, type);
 	}
 
-	public IInstallableUnit getIU(String id, Version version, String type) {
+	public synchronized IInstallableUnit getIU(String id, Version version, String type) {
 		if (type == null || type == ROOT) {
 			IInstallableUnit result = rootIUs.get(id, version);
 			if (result != null)
@@ -56,7 +61,7 @@ public class PublisherResult extends IndexProvider<IInstallableUnit> implements
 
 	// TODO this method really should not be needed as it just returns the first
 	// matching IU non-deterministically.
-	public IInstallableUnit getIU(String id, String type) {
+	public synchronized IInstallableUnit getIU(String id, String type) {
 		if (type == null || type == ROOT) {
 			IQueryResult<IInstallableUnit> ius = rootIUs.get(id);
 			if (!ius.isEmpty())
@@ -73,7 +78,7 @@ public class PublisherResult extends IndexProvider<IInstallableUnit> implements
 	/**
 	 * Returns the IUs in this result with the given id.
 	 */
-	public Collection<IInstallableUnit> getIUs(String id, String type) {
+	public synchronized Collection<IInstallableUnit> getIUs(String id, String type) {
 		if (type == null) {
 			// TODO can this be optimized?
 			ArrayList<IInstallableUnit> result = new ArrayList<IInstallableUnit>();
@@ -88,6 +93,7 @@ public class PublisherResult extends IndexProvider<IInstallableUnit> implements
 		return null;
 	}
 
+	// not synchronized so that merging two results never holds both locks
 	public void merge(IPublisherResult result, int mode) {
 		if (mode == MERGE_MATCHING) {
 			addIUs(result.getIUs(null, ROOT), ROOT);
@@ -114,6 +120,20 @@ public class PublisherResult extends IndexProvider<IInstallableUnit> implements
 		return null;
 	}
 
+	/**
+	 * Runs the query while holding the lock of this result.  The query result is collected before
+	 * returning so that it is not affected by IUs added afterwards.
+	 */
+	public synchronized IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+		IQueryResult<IInstallableUnit> result = super.query(query, monitor);
+		if (result instanceof Collector<?>)
+			return result;
+		ArrayList<IInstallableUnit> collected = new ArrayList<IInstallableUnit>();
+		for (Iterator<IInstallableUnit> iter = result.iterator(); iter.hasNext();)
+			collected.add(iter.next());
+		return new QueryResult<IInstallableUnit>(collected);
+	}
+
 	public Iterator<IInstallableUnit> everything() {
 		ArrayList<Iterator<IInstallableUnit>> iterators = new ArrayList<Iterator<IInstallableUnit>>();
 		iterators.add(nonRootIUs.iterator());
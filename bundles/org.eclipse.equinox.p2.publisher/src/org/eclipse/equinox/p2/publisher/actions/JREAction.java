@@ -31,7 +31,7 @@ import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.*;
 
-public class JREAction extends AbstractPublisherAction {
+public class JREAction extends AbstractPublisherAction implements IConcurrentPublisherAction {
 	private static final String DEFAULT_JRE_NAME = "a.jre"; //$NON-NLS-1$
 	private static final Version DEFAULT_JRE_VERSION = Version.parseVersion("1.6"); //$NON-NLS-1$
 	private static final String DEFAULT_PROFILE = "JavaSE-1.6"; //$NON-NLS-1$
@@ -55,6 +55,14 @@ public class JREAction extends AbstractPublisherAction {
 		this.environment = environment;
 	}
 
+	public String[] getConsumedResults() {
+		return new String[0];
+	}
+
+	public String[] getProducedResults() {
+		return new String[] {JRE};
+	}
+
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		String problemMessage = NLS.bind(Messages.message_problemsWhilePublishingEE, jreLocation != null ? jreLocation : environment);
 		resultStatus = new MultiStatus(Activator.ID, 0, problemMessage, null);
@@ -22,7 +22,7 @@ import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
 
-public class RootFilesAction extends AbstractPublisherAction {
+public class RootFilesAction extends AbstractPublisherAction implements IConcurrentPublisherAction {
 	private String idBase;
 	private Version version;
 	private String flavor;
@@ -48,6 +48,14 @@ public class RootFilesAction extends AbstractPublisherAction {
 		this.createParent = createParent;
 	}
 
+	public String[] getConsumedResults() {
+		return new String[0];
+	}
+
+	public String[] getProducedResults() {
+		return new String[] {ROOT_FILES};
+	}
+
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		setPublisherInfo(publisherInfo);
 		IPublisherResult innerResult = new PublisherResult();
@@ -12,17 +12,25 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.mirroring;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.processors.md5.MD5Verifier;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.RawMirrorRequest;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStepHandler;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.internal.repository.tools.Activator;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.tools.comparator.ArtifactComparatorFactory;
@@ -33,6 +41,10 @@ import org.eclipse.osgi.util.NLS;
  * A utility class that performs mirroring of artifacts between repositories.
  */
 public class Mirroring {
+	private static final int MAX_RETRY_REQUEST = 200;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String[] DIGEST_PROPERTIES = {IArtifactDescriptor.DOWNLOAD_MD5, IArtifactDescriptor.DOWNLOAD_SIZE, IArtifactDescriptor.ARTIFACT_MD5, IArtifactDescriptor.ARTIFACT_SIZE};
+
 	private IArtifactRepository source;
 	private IArtifactRepository destination;
 	private IArtifactRepository baseline;
@@ -48,6 +60,12 @@ public class Mirroring {
 	private Transport transport;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int parallelism = 1;
+	private IArtifactMirrorLog mirrorLog;
+	private boolean incremental = false;
+	private boolean removeDeleted = false;
+	// the descriptors of the destination replaced by a changed source descriptor, by source descriptor
+	private Map<IArtifactDescriptor, IArtifactDescriptor> replaced = Collections.<IArtifactDescriptor, IArtifactDescriptor> emptyMap();
 
 	private IArtifactComparator getComparator() {
 		if (comparator == null)
@@ -85,7 +103,52 @@ public class Mirroring {
 		this.mirrorProperties = properties;
 	}
 
+	/**
+	 * Sets the number of artifacts downloaded at the same time. With more than one thread
+	 * the artifacts are downloaded to temporary files, checked and compared with the baseline
+	 * by a pool of threads, while the mirroring thread adds them to the destination in a
+	 * single batch, so the destination is only saved once.
+	 * @param parallelism the number of download threads, 1 to mirror on the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Sets the log the throughput of a parallel mirroring is reported to.
+	 */
+	public void setMirrorLog(IArtifactMirrorLog mirrorLog) {
+		this.mirrorLog = mirrorLog;
+	}
+
+	/**
+	 * Sets whether only the artifacts that are new or changed since the destination was last
+	 * mirrored are copied. The descriptors of the source and the destination are matched up front
+	 * and a descriptor whose digest or size properties differ from the source is replaced.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Sets whether an incremental mirroring removes the descriptors of the destination that are
+	 * no longer in the source.
+	 */
+	public void setRemoveDeleted(boolean removeDeleted) {
+		this.removeDeleted = removeDeleted;
+	}
+
 	public MultiStatus run(boolean failOnError, boolean verbose) {
+		try {
+			return doRun(failOnError, verbose);
+		} finally {
+			// the destination may write its descriptors behind
+			if (destination instanceof SimpleArtifactRepository)
+				((SimpleArtifactRepository) destination).flush();
+		}
+	}
+
+	private MultiStatus doRun(boolean failOnError, boolean verbose) {
 		if (!destination.isModifiable())
 			throw new IllegalStateException(NLS.bind(Messages.exception_destinationNotModifiable, destination.getLocation()));
 		if (compare)
@@ -104,16 +167,15 @@ public class Mirroring {
 			compareExclusions = exclusions.toUnmodifiableSet();
 		}
 
-		while (keys.hasNext()) {
-			IArtifactKey key = keys.next();
-			IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
-			for (int j = 0; j < descriptors.length; j++) {
-				IStatus result = mirror(descriptors[j], verbose);
-				//Only log INFO and WARNING if we want verbose logging. Always log ERRORs
-				if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
-					multiStatus.add(result);
-				//stop mirroring as soon as we have an error
-				if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
+		Iterator<IArtifactDescriptor> descriptors = incremental ? computeDelta(keys, verbose).iterator() : new DescriptorIterator(keys);
+		if (parallelism > 1) {
+			if (!mirrorInParallel(descriptors, failOnError, verbose, multiStatus))
+				return multiStatus;
+		} else {
+			while (descriptors.hasNext()) {
+				IArtifactDescriptor descriptor = descriptors.next();
+				IStatus result = replaced.containsKey(descriptor) ? replace(descriptor, verbose) : mirror(descriptor, verbose);
+				if (!addResult(multiStatus, result, failOnError, verbose))
 					return multiStatus;
 			}
 		}
@@ -143,6 +205,295 @@ public class Mirroring {
 		return multiStatus;
 	}
 
+	/*
+	 * Match the descriptors of the source against those of the destination and answer the source descriptors
+	 * that are missing from the destination or differ from it. Changed descriptors are remembered and only
+	 * removed from the destination once their replacement has been downloaded. Those gone from the source
+	 * are removed right away if asked to.
+	 */
+	private List<IArtifactDescriptor> computeDelta(Iterator<IArtifactKey> keys, boolean verbose) {
+		Map<DescriptorKey, IArtifactDescriptor> existing = new HashMap<DescriptorKey, IArtifactDescriptor>();
+		for (IArtifactDescriptor descriptor : destination.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null))
+			existing.put(new DescriptorKey(descriptor), descriptor);
+
+		List<IArtifactDescriptor> delta = new ArrayList<IArtifactDescriptor>();
+		List<IArtifactDescriptor> obsolete = new ArrayList<IArtifactDescriptor>();
+		replaced = new HashMap<IArtifactDescriptor, IArtifactDescriptor>();
+		Set<IArtifactKey> sourceKeys = new HashSet<IArtifactKey>();
+		int added = 0;
+		int unchanged = 0;
+		while (keys.hasNext()) {
+			IArtifactKey key = keys.next();
+			sourceKeys.add(key);
+			IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
+			for (int i = 0; i < descriptors.length; i++) {
+				if (!includePacked && IArtifactDescriptor.FORMAT_PACKED.equals(descriptors[i].getProperty(IArtifactDescriptor.FORMAT)))
+					continue;
+				IArtifactDescriptor destinationDescriptor = existing.remove(new DescriptorKey(descriptors[i]));
+				if (destinationDescriptor == null) {
+					delta.add(descriptors[i]);
+					added++;
+				} else if (hasChanged(descriptors[i], destinationDescriptor)) {
+					delta.add(descriptors[i]);
+					replaced.put(descriptors[i], destinationDescriptor);
+				} else
+					unchanged++;
+			}
+		}
+
+		if (removeDeleted) {
+			// the descriptors left were not found with the keys mirrored, they are gone if their key is
+			// one of those or if the source does not know their key at all
+			for (IArtifactDescriptor descriptor : existing.values()) {
+				if (sourceKeys.contains(descriptor.getArtifactKey()) || !source.contains(descriptor.getArtifactKey()))
+					obsolete.add(descriptor);
+			}
+		}
+
+		IStatus summary = new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.Mirroring_incrementalDelta, new Object[] {Integer.toString(added), Integer.toString(replaced.size()), Integer.toString(obsolete.size()), Integer.toString(unchanged)}));
+		if (verbose)
+			System.out.println(summary.getMessage());
+		if (mirrorLog != null)
+			mirrorLog.log(summary);
+
+		if (!obsolete.isEmpty())
+			destination.removeDescriptors(obsolete.toArray(new IArtifactDescriptor[obsolete.size()]), new NullProgressMonitor());
+		return delta;
+	}
+
+	/*
+	 * Mirror a changed artifact on the calling thread. The descriptor it replaces is removed once the new
+	 * artifact has been downloaded, the destination cannot hold both.
+	 */
+	private IStatus replace(IArtifactDescriptor sourceDescriptor, boolean verbose) {
+		Download download = createDownload(sourceDescriptor, verbose, new NullProgressMonitor());
+		if (download == null)
+			return Status.OK_STATUS;
+		return commit(download.call());
+	}
+
+	/*
+	 * Answer whether the digest or size of an artifact differ between two of its descriptors. Properties
+	 * only one of them has are not compared, older repositories may not record them.
+	 */
+	private static boolean hasChanged(IArtifactDescriptor sourceDescriptor, IArtifactDescriptor destinationDescriptor) {
+		for (int i = 0; i < DIGEST_PROPERTIES.length; i++) {
+			String sourceValue = sourceDescriptor.getProperty(DIGEST_PROPERTIES[i]);
+			String destinationValue = destinationDescriptor.getProperty(DIGEST_PROPERTIES[i]);
+			if (sourceValue != null && destinationValue != null && !sourceValue.equals(destinationValue))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Add the result of mirroring a descriptor to the status of the run and answer whether mirroring should go on.
+	 */
+	private static boolean addResult(MultiStatus multiStatus, IStatus result, boolean failOnError, boolean verbose) {
+		//Only log INFO and WARNING if we want verbose logging. Always log ERRORs
+		if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
+			multiStatus.add(result);
+		//stop mirroring as soon as we have an error
+		return !(failOnError && multiStatus.getSeverity() == IStatus.ERROR);
+	}
+
+	/*
+	 * Mirror the artifacts with several download threads, adding them to the destination in a single batch.
+	 * Answer whether mirroring should go on.
+	 */
+	private boolean mirrorInParallel(final Iterator<IArtifactDescriptor> descriptors, final boolean failOnError, final boolean verbose, final MultiStatus multiStatus) {
+		final boolean[] completed = new boolean[1];
+		IStatus batchStatus = destination.executeBatch(new IRunnableWithProgress() {
+			public void run(IProgressMonitor monitor) {
+				completed[0] = mirrorInParallel(descriptors, failOnError, verbose, multiStatus, monitor);
+			}
+		}, new NullProgressMonitor());
+		if (!batchStatus.isOK())
+			multiStatus.add(batchStatus);
+		return completed[0] && !(failOnError && multiStatus.getSeverity() == IStatus.ERROR);
+	}
+
+	/*
+	 * The artifacts missing from the destination are downloaded to temporary files by a pool of threads. At most
+	 * twice as many artifacts as there are threads are downloaded ahead of this thread, which adds them to the
+	 * destination in the order they complete. Artifacts already in the destination are handled by this thread.
+	 */
+	private boolean mirrorInParallel(Iterator<IArtifactDescriptor> descriptors, boolean failOnError, boolean verbose, MultiStatus multiStatus, IProgressMonitor monitor) {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		CompletionService<Download> downloads = new ExecutorCompletionService<Download>(executor);
+		IProgressMonitor downloadMonitor = new NullProgressMonitor();
+		long start = System.currentTimeMillis();
+		int pending = 0;
+		int count = 0;
+		long bytes = 0;
+		boolean stopped = false;
+		try {
+			while (!stopped && descriptors.hasNext()) {
+				IArtifactDescriptor descriptor = descriptors.next();
+				Download download = createDownload(descriptor, verbose, downloadMonitor);
+				if (download == null) {
+					stopped = !addResult(multiStatus, mirror(descriptor, verbose), failOnError, verbose);
+					continue;
+				}
+				downloads.submit(download);
+				pending++;
+				while (!stopped && pending >= 2 * parallelism) {
+					Download completed = take(downloads);
+					pending--;
+					stopped = !addResult(multiStatus, commit(completed), failOnError, verbose);
+					if (completed.status.isOK()) {
+						count++;
+						bytes += completed.size;
+					}
+				}
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+			}
+			while (!stopped && pending > 0) {
+				Download download = take(downloads);
+				pending--;
+				stopped = !addResult(multiStatus, commit(download), failOnError, verbose);
+				if (download.status.isOK()) {
+					count++;
+					bytes += download.size;
+				}
+			}
+		} finally {
+			if (pending > 0) {
+				// stop the downloads in progress and throw away those that will not be added
+				downloadMonitor.setCanceled(true);
+				pending -= executor.shutdownNow().size();
+				while (pending-- > 0)
+					take(downloads).discard();
+			}
+			executor.shutdown();
+		}
+
+		long time = System.currentTimeMillis() - start;
+		String[] bindings = new String[] {Integer.toString(count), Long.toString(bytes / 1024), Long.toString(time), Long.toString(time == 0 ? 0 : bytes * 1000 / 1024 / time), Integer.toString(parallelism)};
+		IStatus throughput = new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.Mirroring_throughput, bindings));
+		if (verbose)
+			System.out.println(throughput.getMessage());
+		if (mirrorLog != null)
+			mirrorLog.log(throughput);
+		return !stopped;
+	}
+
+	private static Download take(CompletionService<Download> downloads) {
+		try {
+			return downloads.take().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			// downloads only fail with errors, exceptions are turned into their status
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/*
+	 * Create the download of an artifact missing from the destination, or answer null if there is nothing
+	 * to download.
+	 */
+	private Download createDownload(IArtifactDescriptor sourceDescriptor, boolean verbose, IProgressMonitor monitor) {
+		if (!includePacked && IArtifactDescriptor.FORMAT_PACKED.equals(sourceDescriptor.getProperty(IArtifactDescriptor.FORMAT)))
+			return null;
+
+		IArtifactDescriptor baselineDescriptor = getBaselineDescriptor(sourceDescriptor);
+		IArtifactDescriptor targetDescriptor = baselineDescriptor != null ? baselineDescriptor : raw ? sourceDescriptor : new ArtifactDescriptor(sourceDescriptor);
+		// a changed artifact is still in the destination until its replacement is downloaded
+		IArtifactDescriptor obsolete = replaced.get(sourceDescriptor);
+		if (obsolete == null && destination.contains(targetDescriptor))
+			return null;
+
+		if (verbose)
+			System.out.println("Mirroring: " + sourceDescriptor.getArtifactKey() + " (Descriptor: " + sourceDescriptor + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		boolean comparing = compare && !compareExclusions.contains(sourceDescriptor);
+		Download download;
+		if (baselineDescriptor != null)
+			download = new Download(baseline, baselineDescriptor, targetDescriptor, comparing, comparing ? sourceDescriptor : null, monitor);
+		else
+			download = new Download(source, sourceDescriptor, targetDescriptor, comparing, null, monitor);
+		download.obsolete = obsolete;
+		return download;
+	}
+
+	/*
+	 * Add a downloaded artifact to the destination, in place of the descriptor it replaces if any, and
+	 * answer the status of its mirroring. A replaced descriptor is kept when the download failed.
+	 */
+	private IStatus commit(Download download) {
+		IStatus status = download.status;
+		try {
+			if (status.isOK()) {
+				if (download.obsolete != null)
+					destination.removeDescriptor(download.obsolete);
+				status = download.status = copy(download.file, download.targetDescriptor);
+			}
+		} finally {
+			download.discard();
+		}
+		if (!download.comparing)
+			return status;
+
+		MultiStatus compareStatus = new MultiStatus(Activator.ID, IStatus.OK, null, null);
+		if (download.comparison != null) {
+			if (comparatorLog != null && !download.comparison.isOK())
+				comparatorLog.log(download.sourceDescriptor, download.comparison);
+			compareStatus.add(download.comparison);
+		}
+		compareStatus.add(status);
+		return compareStatus;
+	}
+
+	private IStatus copy(File file, IArtifactDescriptor targetDescriptor) {
+		OutputStream output;
+		try {
+			output = destination.getOutputStream(targetDescriptor);
+		} catch (ProvisionException e) {
+			return e.getStatus();
+		}
+
+		IStatus status = Status.OK_STATUS;
+		InputStream input = null;
+		try {
+			input = new FileInputStream(file);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int length;
+			while ((length = input.read(buffer)) != -1)
+				output.write(buffer, 0, length);
+		} catch (IOException e) {
+			status = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_addFailed, targetDescriptor, destination.getLocation()), e);
+			// the descriptor must not be added when the stream is closed
+			if (output instanceof IStateful)
+				((IStateful) output).setStatus(status);
+		} finally {
+			close(input);
+			try {
+				output.close();
+			} catch (IOException e) {
+				if (status.isOK())
+					status = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_addFailed, targetDescriptor, destination.getLocation()), e);
+			}
+		}
+		if (!status.isOK() && destination.contains(targetDescriptor))
+			destination.removeDescriptor(targetDescriptor);
+		return status;
+	}
+
+	private static void close(Closeable stream) {
+		if (stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
 	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose) {
 		if (!includePacked && IArtifactDescriptor.FORMAT_PACKED.equals(sourceDescriptor.getProperty(IArtifactDescriptor.FORMAT)))
 			return Status.OK_STATUS;
@@ -227,6 +578,162 @@ public class Mirroring {
 		return request.getResult();
 	}
 
+	/*
+	 * The download of an artifact to a temporary file, run by the download threads. The comparison with the
+	 * baseline is made here too since it only reads the source and baseline repositories; the destination is
+	 * left to the mirroring thread.
+	 */
+	private class Download implements Callable<Download> {
+		final IArtifactRepository repository;
+		final IArtifactDescriptor sourceDescriptor;
+		final IArtifactDescriptor targetDescriptor;
+		final boolean comparing;
+		// the descriptor of the source repository to compare with the baseline, or null
+		final IArtifactDescriptor comparedDescriptor;
+		final IProgressMonitor monitor;
+		// the descriptor of the destination this download replaces, or null
+		IArtifactDescriptor obsolete;
+		File file;
+		long size;
+		IStatus status = Status.OK_STATUS;
+		IStatus comparison;
+
+		Download(IArtifactRepository repository, IArtifactDescriptor sourceDescriptor, IArtifactDescriptor targetDescriptor, boolean comparing, IArtifactDescriptor comparedDescriptor, IProgressMonitor monitor) {
+			this.repository = repository;
+			this.sourceDescriptor = sourceDescriptor;
+			this.targetDescriptor = targetDescriptor;
+			this.comparing = comparing;
+			this.comparedDescriptor = comparedDescriptor;
+			this.monitor = monitor;
+		}
+
+		public Download call() {
+			try {
+				if (comparedDescriptor != null) {
+					// comparators are not shared between threads
+					comparison = ArtifactComparatorFactory.getArtifactComparator(comparatorID).compare(baseline, sourceDescriptor, source, comparedDescriptor);
+				}
+				status = download();
+			} catch (RuntimeException e) {
+				status = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_downloadFailed, sourceDescriptor), e);
+			}
+			if (!status.isOK())
+				discard();
+			return this;
+		}
+
+		/*
+		 * Keep retrying the repository until it reports back that it will be impossible to get the artifact from it.
+		 */
+		private IStatus download() {
+			if (!repository.contains(sourceDescriptor))
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_artifactNotFound, sourceDescriptor.getArtifactKey()));
+			IStatus result;
+			int counter = 0;
+			do {
+				discard();
+				result = downloadOnce();
+			} while (result.getSeverity() == IStatus.ERROR && result.getCode() == IArtifactRepository.CODE_RETRY && counter++ < MAX_RETRY_REQUEST && !monitor.isCanceled());
+			return result;
+		}
+
+		private IStatus downloadOnce() {
+			OutputStream output = null;
+			try {
+				file = File.createTempFile("p2mirror", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+				output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+				// the bytes are mirrored as they are, so only check their digest
+				OutputStream destination = output;
+				String md5 = sourceDescriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
+				if (SimpleArtifactRepository.MD5_CHECK_ENABLED && md5 != null)
+					destination = new ProcessingStepHandler().link(new ProcessingStep[] {new MD5Verifier(md5)}, output, monitor);
+				IStatus result = repository.getRawArtifact(sourceDescriptor, destination, monitor);
+				if (destination != output) {
+					// the digest is only checked when the verifier is closed
+					destination.close();
+					IStatus verification = ProcessingStepHandler.checkStatus(destination);
+					if (result.isOK() && verification.matches(IStatus.ERROR))
+						result = verification;
+				}
+				output.close();
+				size = file.length();
+				return result;
+			} catch (IOException e) {
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_downloadFailed, sourceDescriptor), e);
+			} finally {
+				close(output);
+			}
+		}
+
+		void discard() {
+			if (file != null && !file.delete() && file.exists())
+				file.deleteOnExit();
+			file = null;
+		}
+	}
+
+	/*
+	 * Identifies a descriptor by its key, format and processing steps. Descriptors of different repository
+	 * implementations are never equal, so they cannot be matched with each other directly.
+	 */
+	private static class DescriptorKey {
+		private final IArtifactKey key;
+		private final String format;
+		private final List<IProcessingStepDescriptor> steps;
+
+		DescriptorKey(IArtifactDescriptor descriptor) {
+			this.key = descriptor.getArtifactKey();
+			this.format = descriptor.getProperty(IArtifactDescriptor.FORMAT);
+			this.steps = Arrays.asList(descriptor.getProcessingSteps());
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof DescriptorKey))
+				return false;
+			DescriptorKey other = (DescriptorKey) obj;
+			return key.equals(other.key) && (format == null ? other.format == null : format.equals(other.format)) && steps.equals(other.steps);
+		}
+
+		public int hashCode() {
+			return 31 * (31 * key.hashCode() + (format == null ? 0 : format.hashCode())) + steps.hashCode();
+		}
+	}
+
+	/*
+	 * Iterates over the source descriptors of the keys, getting them as they are needed.
+	 */
+	private class DescriptorIterator implements Iterator<IArtifactDescriptor> {
+		private final Iterator<IArtifactKey> keys;
+		private IArtifactDescriptor[] descriptors = new IArtifactDescriptor[0];
+		private int index = 0;
+
+		DescriptorIterator(Iterator<IArtifactKey> keys) {
+			this.keys = keys;
+		}
+
+		public boolean hasNext() {
+			while (index == descriptors.length) {
+				if (!keys.hasNext())
+					return false;
+				descriptors = source.getArtifactDescriptors(keys.next());
+				index = 0;
+			}
+			return true;
+		}
+
+		public IArtifactDescriptor next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return descriptors[index++];
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	public void setArtifactKeys(IArtifactKey[] keys) {
 		this.keysToMirror = Arrays.asList(keys);
 	}
@@ -16,6 +16,7 @@ import java.util.*;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryHelper;
@@ -81,6 +82,9 @@ public abstract class AbstractApplication {
 	}
 
 	protected void finalizeRepositories() {
+		// save what the destination still holds when it writes its descriptors behind
+		if (destinationArtifactRepository instanceof SimpleArtifactRepository)
+			((SimpleArtifactRepository) destinationArtifactRepository).flush();
 		if (removeAddedRepositories) {
 			IArtifactRepositoryManager artifactRepositoryManager = getArtifactRepositoryManager();
 			for (URI uri : artifactReposToRemove)
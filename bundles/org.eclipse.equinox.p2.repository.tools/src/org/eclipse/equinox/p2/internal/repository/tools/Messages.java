@@ -43,6 +43,7 @@ public class Messages extends NLS {
 	public static String MirrorApplication_metadataDestinationNoSource;
 	public static String MirrorApplication_no_IUs;
 	public static String MirrorApplication_set_source_repositories;
+	public static String MirrorApplication_invalid_parallelism;
 
 	public static String ProcessRepo_location_not_url;
 	public static String ProcessRepo_must_be_local;
@@ -61,6 +62,12 @@ public class Messages extends NLS {
 	public static String Mirroring_ValidationError;
 	public static String Mirroring_missingDescriptor;
 	public static String Mirroring_differentDescriptorProperty;
+	public static String Mirroring_artifactNotFound;
+	public static String Mirroring_downloadFailed;
+	public static String Mirroring_addFailed;
+	public static String Mirroring_throughput;
+	public static String Mirroring_incrementalDelta;
+	public static String MirrorApplication_incrementalDelta;
 
 	public static String invalidComparatorId;
 	public static String info_noMD5Infomation;
@@ -52,6 +52,9 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	private String[] rootIUs = null;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int parallelism = 1;
+	private boolean incremental = false;
+	private boolean removeDeleted = false;
 
 	private File mirrorLogFile; // file to log mirror output to (optional)
 	private File comparatorLogFile; // file to comparator output to (optional)
@@ -133,6 +136,16 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 				mirrorReferences = true;
 			else if (args[i].equalsIgnoreCase("-properties")) //$NON-NLS-1$
 				mirrorProperties = true;
+			else if (args[i].equalsIgnoreCase("-incremental")) //$NON-NLS-1$
+				incremental = true;
+			else if (args[i].equalsIgnoreCase("-removeDeleted")) //$NON-NLS-1$
+				removeDeleted = true;
+
+			// the parallelism must be given, and a negative one looks like a flag
+			if (args[i].equalsIgnoreCase("-parallelism")) { //$NON-NLS-1$
+				parallelism = parseParallelism(i == args.length - 1 ? "" : args[++i]); //$NON-NLS-1$
+				continue;
+			}
 
 			// check for args with parameters. If we are at the last argument or 
 			// if the next one has a '-' as the first character, then we can't have 
@@ -182,6 +195,18 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 			comparatorLog = getLog(comparatorLogLocation, comparatorID);
 	}
 
+	private static int parseParallelism(String arg) {
+		int result;
+		try {
+			result = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			result = 0;
+		}
+		if (result < 1)
+			throw new IllegalArgumentException(NLS.bind(Messages.MirrorApplication_invalid_parallelism, arg));
+		return result;
+	}
+
 	public IStatus run(IProgressMonitor monitor) throws ProvisionException {
 		IStatus mirrorStatus = Status.OK_STATUS;
 		try {
@@ -237,6 +262,10 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 		mirror.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
 		mirror.setIncludePacked(includePacked);
 		mirror.setMirrorProperties(mirrorProperties);
+		mirror.setParallelism(parallelism);
+		mirror.setMirrorLog(mirrorLog);
+		mirror.setIncremental(incremental);
+		mirror.setRemoveDeleted(removeDeleted);
 
 		// If IUs have been specified then only they should be mirrored, otherwise mirror everything.
 		if (iusSpecified)
@@ -261,11 +290,48 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 
 	private void mirrorMetadata(IQueryable<IInstallableUnit> slice, IProgressMonitor monitor) {
 		IQueryResult<IInstallableUnit> allIUs = slice.query(QueryUtil.createIUAnyQuery(), monitor);
-		destinationMetadataRepository.addInstallableUnits(allIUs.toUnmodifiableSet());
+		if (incremental)
+			mirrorMetadataIncrementally(allIUs.toUnmodifiableSet(), monitor);
+		else
+			destinationMetadataRepository.addInstallableUnits(allIUs.toUnmodifiableSet());
 		if (mirrorReferences)
 			destinationMetadataRepository.addReferences(getCompositeMetadataRepository().getReferences());
 	}
 
+	/*
+	 * Add only the IUs missing from the destination. IUs are identified by their id and version,
+	 * which are never reused for different content, so IUs found in both are left alone.
+	 */
+	private void mirrorMetadataIncrementally(Set<IInstallableUnit> ius, IProgressMonitor monitor) {
+		Set<IInstallableUnit> existing = new HashSet<IInstallableUnit>(destinationMetadataRepository.query(QueryUtil.createIUAnyQuery(), monitor).toUnmodifiableSet());
+		List<IInstallableUnit> added = new ArrayList<IInstallableUnit>();
+		for (IInstallableUnit iu : ius) {
+			if (!existing.remove(iu))
+				added.add(iu);
+		}
+
+		List<IInstallableUnit> removed = new ArrayList<IInstallableUnit>();
+		if (removeDeleted && !existing.isEmpty()) {
+			// the IUs left were not part of this mirror, only remove those gone from the source
+			Set<IInstallableUnit> sourceIUs = getCompositeMetadataRepository().query(QueryUtil.createIUAnyQuery(), monitor).toUnmodifiableSet();
+			for (IInstallableUnit iu : existing) {
+				if (!sourceIUs.contains(iu))
+					removed.add(iu);
+			}
+		}
+
+		IStatus summary = new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.MirrorApplication_incrementalDelta, new Object[] {Integer.toString(added.size()), Integer.toString(removed.size()), Integer.toString(ius.size() - added.size())}));
+		if (verbose)
+			System.out.println(summary.getMessage());
+		if (mirrorLog != null)
+			mirrorLog.log(summary);
+
+		if (!added.isEmpty())
+			destinationMetadataRepository.addInstallableUnits(added);
+		if (!removed.isEmpty())
+			destinationMetadataRepository.removeInstallableUnits(removed);
+	}
+
 	/*
 	 * Ensure all mandatory parameters have been set. Throw an exception if there
 	 * are any missing. We don't require the user to specify the artifact repository here,
@@ -472,4 +538,25 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	public void setMirrorProperties(boolean mirrorProperties) {
 		this.mirrorProperties = mirrorProperties;
 	}
+
+	/*
+	 * Set the number of artifacts downloaded at the same time
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/*
+	 * Set whether only new and changed artifacts and IUs are mirrored
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/*
+	 * Set whether an incremental mirror removes what is gone from the source
+	 */
+	public void setRemoveDeleted(boolean removeDeleted) {
+		this.removeDeleted = removeDeleted;
+	}
 }
@@ -145,4 +145,16 @@ public class MirrorTask extends AbstractRepositoryTask {
 	public void setMirrorProperties(boolean value) {
 		((MirrorApplication) application).setMirrorProperties(value);
 	}
+
+	public void setParallelism(int value) {
+		((MirrorApplication) application).setParallelism(value);
+	}
+
+	public void setIncremental(boolean value) {
+		((MirrorApplication) application).setIncremental(value);
+	}
+
+	public void setRemoveDeleted(boolean value) {
+		((MirrorApplication) application).setRemoveDeleted(value);
+	}
 }
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import java.net.URI;
+import java.util.EventObject;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * An event broadcast after a composite repository has attempted to load one of its children.
+ */
+public class CompositeChildLoadEvent extends EventObject {
+
+	private static final long serialVersionUID = 2795713620543487263L;
+	private final URI child;
+	private final long duration;
+	private final IStatus status;
+
+	public CompositeChildLoadEvent(URI parent, URI child, long duration, IStatus status) {
+		super(parent);
+		this.child = child;
+		this.duration = duration;
+		this.status = status;
+	}
+
+	/**
+	 * Returns the location of the composite repository.
+	 */
+	public URI getParent() {
+		return (URI) getSource();
+	}
+
+	/**
+	 * Returns the absolute location of the child repository.
+	 */
+	public URI getChild() {
+		return child;
+	}
+
+	/**
+	 * Returns the time in milliseconds it took to load the child.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the status of the load, which is OK when the child was loaded.
+	 */
+	public IStatus getStatus() {
+		return status;
+	}
+
+	public String toString() {
+		return "CompositeChildLoadEvent[" + getChild() + " in " + getParent() + ", " + duration + "ms, " + status + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
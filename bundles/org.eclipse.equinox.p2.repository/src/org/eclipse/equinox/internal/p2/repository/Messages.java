@@ -87,6 +87,8 @@ public class Messages extends NLS {
 
 	public static String RepositoryTransport_failedReadRepo;
 
+	public static String CompositeChildLoader_cycle;
+
 	static {
 		// initialize resource bundles
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
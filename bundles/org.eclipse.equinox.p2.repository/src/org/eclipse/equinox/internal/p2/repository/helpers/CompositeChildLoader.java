@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.Activator;
+import org.eclipse.equinox.internal.p2.repository.CompositeChildLoadEvent;
+import org.eclipse.equinox.internal.p2.repository.Messages;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.*;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Loads the children of a composite repository through a repository manager, optionally
+ * several at a time. Children that the manager did not know about are hidden from users
+ * and disabled, and a {@link CompositeChildLoadEvent} is broadcast for every child.
+ */
+public class CompositeChildLoader<T> {
+	/**
+	 * Repository property holding the number of children of a composite repository that may
+	 * be loaded at the same time.
+	 */
+	public static final String PROP_LOADING_THREADS = "p2.composite.loading.threads"; //$NON-NLS-1$
+
+	/**
+	 * The number of children loaded at the same time when a composite repository does not
+	 * specify it. Children are loaded one after the other unless configured otherwise.
+	 */
+	public static final int LOADING_THREADS_DEFAULT = getDefaultLoadingThreads();
+
+	/**
+	 * The outcome of loading a child.
+	 */
+	public static class Result<T> {
+		public final URI location;
+		// Whether the manager knew the child before it was loaded
+		public final boolean known;
+		public final IRepository<T> repository;
+		public final ProvisionException failure;
+
+		Result(URI location, boolean known, IRepository<T> repository, ProvisionException failure) {
+			this.location = location;
+			this.known = known;
+			this.repository = repository;
+			this.failure = failure;
+		}
+	}
+
+	/*
+	 * The composites whose children are being loaded by the current thread, or by the threads
+	 * waiting for it, with the thread holding the load lock of each.
+	 */
+	private static final ThreadLocal<Map<URI, Thread>> loading = new ThreadLocal<Map<URI, Thread>>();
+
+	private final IRepositoryManager<T> manager;
+	private final URI parent;
+
+	public CompositeChildLoader(IRepositoryManager<T> manager, URI parent) {
+		this.manager = manager;
+		this.parent = parent;
+	}
+
+	private static int getDefaultLoadingThreads() {
+		try {
+			BundleContext context = Activator.getContext();
+			String value = context == null ? null : context.getProperty("eclipse.p2.composite.loading.threads"); //$NON-NLS-1$
+			return value == null ? 1 : Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the number of children that may be loaded at the same time for a composite
+	 * repository with the given properties.
+	 */
+	public static int getLoadingThreads(Map<String, String> properties) {
+		String value = properties == null ? null : properties.get(PROP_LOADING_THREADS);
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value));
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return LOADING_THREADS_DEFAULT;
+	}
+
+	/**
+	 * Loads a single child.
+	 * @param location the absolute location of the child
+	 * @param monitor the progress monitor
+	 * @return the outcome of the load
+	 */
+	public Result<T> load(URI location, IProgressMonitor monitor) {
+		return load(location, getAncestors(), monitor);
+	}
+
+	/*
+	 * The composites being loaded when the children of the parent are loaded by the current thread.
+	 */
+	private Map<URI, Thread> getAncestors() {
+		Map<URI, Thread> outer = loading.get();
+		Map<URI, Thread> ancestors = outer == null ? new HashMap<URI, Thread>() : new HashMap<URI, Thread>(outer);
+		if (!ancestors.containsKey(parent))
+			ancestors.put(parent, Thread.currentThread());
+		return ancestors;
+	}
+
+	private Result<T> load(URI location, Map<URI, Thread> ancestors, IProgressMonitor monitor) {
+		boolean known = manager.contains(location);
+		long time = System.currentTimeMillis();
+		IRepository<T> repository = null;
+		ProvisionException failure = null;
+		Thread owner = ancestors.get(location);
+		if (owner != null && owner != Thread.currentThread()) {
+			// the manager only lets the thread holding the load lock of a composite load it again,
+			// and that thread waits for this child
+			failure = new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CompositeChildLoader_cycle, location), null));
+		} else {
+			Map<URI, Thread> outer = loading.get();
+			loading.set(ancestors);
+			try {
+				repository = manager.loadRepository(location, monitor);
+				loaded(repository);
+				if (!known) {
+					//set enabled to false so repositories do not get polled twice
+					manager.setEnabled(location, false);
+					//set repository to system to hide from users
+					manager.setRepositoryProperty(location, IRepository.PROP_SYSTEM, String.valueOf(true));
+				}
+			} catch (ProvisionException e) {
+				failure = e;
+			} finally {
+				loading.set(outer);
+			}
+		}
+		time = System.currentTimeMillis() - time;
+		publishEvent(new CompositeChildLoadEvent(parent, location, time, failure == null ? Status.OK_STATUS : failure.getStatus()));
+		return new Result<T>(location, known, repository, failure);
+	}
+
+	/**
+	 * Called on the thread that loaded the given child, before the outcome of the load is
+	 * reported. Several children may be loaded at the same time.
+	 * @param repository the child that was loaded
+	 */
+	protected void loaded(IRepository<T> repository) {
+		// nothing to do by default
+	}
+
+	/**
+	 * Loads the given children, at most <code>threads</code> at a time.
+	 * @param locations the absolute locations of the children
+	 * @param threads the number of children that may be loaded at the same time
+	 * @param stopOnFailure whether children that have not started loading are skipped once a child failed to load
+	 * @param monitor the progress monitor
+	 * @return the outcome for each child in the order of the given locations, <code>null</code> for children that were skipped
+	 */
+	@SuppressWarnings("unchecked")
+	public Result<T>[] load(URI[] locations, int threads, final boolean stopOnFailure, IProgressMonitor monitor) {
+		final Result<T>[] results = new Result[locations.length];
+		final SubMonitor sub = SubMonitor.convert(monitor, 100 * locations.length);
+		final Map<URI, Thread> ancestors = getAncestors();
+		if (threads <= 1 || locations.length <= 1) {
+			for (int i = 0; i < locations.length; i++) {
+				results[i] = load(locations[i], ancestors, sub.newChild(100));
+				if (stopOnFailure && results[i].failure != null)
+					break;
+			}
+			return results;
+		}
+
+		final boolean[] stopped = new boolean[1];
+		// Children report their progress when they are collected, they only look for cancelation
+		final IProgressMonitor childMonitor = new NullProgressMonitor() {
+			public boolean isCanceled() {
+				synchronized (stopped) {
+					if (stopped[0])
+						return true;
+				}
+				return sub.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, locations.length), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Composite repository loader"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			List<Future<Result<T>>> futures = new ArrayList<Future<Result<T>>>(locations.length);
+			for (int i = 0; i < locations.length; i++) {
+				final URI location = locations[i];
+				futures.add(executor.submit(new Callable<Result<T>>() {
+					public Result<T> call() {
+						if (childMonitor.isCanceled())
+							return null;
+						Result<T> result = load(location, ancestors, childMonitor);
+						if (stopOnFailure && result.failure != null) {
+							synchronized (stopped) {
+								stopped[0] = true;
+							}
+						}
+						return result;
+					}
+				}));
+			}
+			for (int i = 0; i < locations.length; i++) {
+				results[i] = waitFor(futures.get(i), locations[i], stopped);
+				sub.worked(100);
+			}
+			if (sub.isCanceled())
+				throw new OperationCanceledException();
+		} finally {
+			executor.shutdown();
+		}
+		return results;
+	}
+
+	private Result<T> waitFor(Future<Result<T>> future, URI location, boolean[] stopped) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					// keep waiting, the load cannot be abandoned half way, but let the caller know
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof OperationCanceledException) {
+						// a child canceled because another one failed is skipped
+						synchronized (stopped) {
+							if (stopped[0])
+								return null;
+						}
+					}
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause == null ? location.toString() : cause.getMessage());
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private void publishEvent(CompositeChildLoadEvent event) {
+		IProvisioningEventBus eventBus = (IProvisioningEventBus) manager.getAgent().getService(IProvisioningEventBus.SERVICE_NAME);
+		if (eventBus != null)
+			eventBus.publishEvent(event);
+	}
+}
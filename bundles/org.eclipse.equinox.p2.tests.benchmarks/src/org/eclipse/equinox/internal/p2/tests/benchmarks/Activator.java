@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.p2.core.*;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+
+/**
+ * The activator class controls the plug-in life cycle
+ */
+public class Activator implements BundleActivator {
+
+	// The plug-in ID
+	public static final String PLUGIN_ID = "org.eclipse.equinox.p2.tests.benchmarks"; //$NON-NLS-1$
+	private static BundleContext bundleContext;
+
+	public void start(BundleContext context) throws Exception {
+		bundleContext = context;
+	}
+
+	public void stop(BundleContext context) throws Exception {
+		bundleContext = null;
+	}
+
+	/*
+	 * Return the bundle context or <code>null</code>.
+	 */
+	public static BundleContext getBundleContext() {
+		return bundleContext;
+	}
+
+	/*
+	 * Create a provisioning agent whose data is kept in the given folder.
+	 */
+	static IProvisioningAgent createAgent(File location) throws ProvisionException {
+		IProvisioningAgentProvider provider = ServiceHelper.getService(bundleContext, IProvisioningAgentProvider.class);
+		if (provider == null)
+			throw new IllegalStateException("No provisioning agent provider, is org.eclipse.equinox.ds started?"); //$NON-NLS-1$
+		return provider.createAgent(location.toURI());
+	}
+
+	/*
+	 * Create an empty folder that benchmarks can write to.
+	 */
+	static File createTempFolder(String prefix) throws IOException {
+		File folder = File.createTempFile(prefix, ""); //$NON-NLS-1$
+		folder.delete();
+		if (!folder.mkdirs())
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		return folder;
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		file.delete();
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the descriptor lookups of a simple artifact repository made by the download
+ * jobs while they fetch artifacts. Run it with different thread counts (<code>-t</code>) to
+ * see how much the threads slow each other down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ArtifactRepositoryBenchmark {
+	@Param({"1000", "20000"})
+	public int size;
+
+	private File folder;
+	private IProvisioningAgent agent;
+	private IArtifactRepository repository;
+	private IArtifactKey[] keys;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup
+	public void setUp() throws IOException, ProvisionException {
+		folder = Activator.createTempFolder("p2artifacts"); //$NON-NLS-1$
+		agent = Activator.createAgent(new File(folder, "agent")); //$NON-NLS-1$
+		IArtifactRepositoryManager manager = (IArtifactRepositoryManager) agent.getService(IArtifactRepositoryManager.SERVICE_NAME);
+		URI location = new File(folder, "repository").toURI(); //$NON-NLS-1$
+		repository = manager.createRepository(location, "benchmark", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null); //$NON-NLS-1$
+		keys = new IArtifactKey[size];
+		IArtifactDescriptor[] descriptors = new IArtifactDescriptor[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = repository.createArtifactKey("osgi.bundle", "bundle" + i, Version.createOSGi(1, 0, i)); //$NON-NLS-1$ //$NON-NLS-2$
+			descriptors[i] = repository.createArtifactDescriptor(keys[i]);
+		}
+		repository.addDescriptors(descriptors, new NullProgressMonitor());
+	}
+
+	@TearDown
+	public void tearDown() {
+		agent.stop();
+		Activator.delete(folder);
+	}
+
+	@Benchmark
+	public boolean contains(Cursor cursor) {
+		return repository.contains(keys[cursor.next++ % keys.length]);
+	}
+
+	@Benchmark
+	public URI location(Cursor cursor) {
+		IArtifactDescriptor[] descriptors = repository.getArtifactDescriptors(keys[cursor.next++ % keys.length]);
+		return ((IFileArtifactRepository) repository).getArtifactFile(descriptors[0]).toURI();
+	}
+}
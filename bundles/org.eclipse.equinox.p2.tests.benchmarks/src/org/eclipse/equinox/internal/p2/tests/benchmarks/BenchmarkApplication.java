@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.util.Collection;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Application which runs the p2 benchmarks. The application arguments are the usual
+ * JMH command line options, for example:
+ * <pre>
+ * eclipse -application org.eclipse.equinox.p2.tests.benchmarks.application
+ *   -consoleLog PlannerBenchmark -p size=50000 -wi 5 -i 10 -rf json -rff planner.json
+ * </pre>
+ * The benchmarks need the p2 services of the running framework, so they always run in
+ * this VM rather than in forked ones. Compare results taken with the same VM options.
+ *
+ * @since 1.0
+ */
+public class BenchmarkApplication implements IApplication {
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.equinox.app.IApplication#start(org.eclipse.equinox.app.IApplicationContext)
+	 */
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+		CommandLineOptions commandLine = new CommandLineOptions(args == null ? new String[0] : args);
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return IApplication.EXIT_OK;
+		}
+		Options options = new OptionsBuilder().parent(commandLine).forks(0).build();
+		Collection<RunResult> results = new Runner(options).run();
+		return results.isEmpty() ? new Integer(1) : IApplication.EXIT_OK;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.equinox.app.IApplication#stop()
+	 */
+	public void stop() {
+		// nothing to do
+	}
+}
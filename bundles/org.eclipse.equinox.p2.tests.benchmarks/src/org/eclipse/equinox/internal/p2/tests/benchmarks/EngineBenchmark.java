@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the engine installing and uninstalling units that have no touchpoint, which
+ * measures the cost of the phases, the profile bookkeeping and the profile writes rather
+ * than the cost of any touchpoint action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EngineBenchmark {
+	private static final String PROFILE_ID = "benchmark"; //$NON-NLS-1$
+
+	@Param({"100", "1000"})
+	public int size;
+
+	private File folder;
+	private IProvisioningAgent agent;
+	private IEngine engine;
+	private IProfileRegistry registry;
+	private IInstallableUnit[] units;
+
+	@Setup
+	public void setUp() throws IOException, ProvisionException {
+		folder = Activator.createTempFolder("p2engine"); //$NON-NLS-1$
+		agent = Activator.createAgent(new File(folder, "agent")); //$NON-NLS-1$
+		engine = (IEngine) agent.getService(IEngine.SERVICE_NAME);
+		registry = (IProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
+		registry.addProfile(PROFILE_ID);
+		units = new SyntheticRepository(size, 0, 1).getUnits();
+	}
+
+	@TearDown
+	public void tearDown() {
+		agent.stop();
+		Activator.delete(folder);
+	}
+
+	@Benchmark
+	public IStatus installAndUninstall() {
+		IProvisioningPlan plan = engine.createPlan(registry.getProfile(PROFILE_ID), null);
+		for (int i = 0; i < units.length; i++)
+			plan.addInstallableUnit(units[i]);
+		IStatus status = engine.perform(plan, new NullProgressMonitor());
+		if (!status.isOK())
+			throw new IllegalStateException(status.toString());
+
+		plan = engine.createPlan(registry.getProfile(PROFILE_ID), null);
+		for (int i = 0; i < units.length; i++)
+			plan.removeInstallableUnit(units[i]);
+		status = engine.perform(plan, new NullProgressMonitor());
+		if (!status.isOK())
+			throw new IllegalStateException(status.toString());
+		return status;
+	}
+}
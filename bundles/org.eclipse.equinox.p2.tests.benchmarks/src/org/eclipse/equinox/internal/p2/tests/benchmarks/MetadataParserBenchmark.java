@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.*;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks parsing the <code>content.xml</code> of a metadata repository, both fully
+ * and with lazy loading of the installable units.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MetadataParserBenchmark {
+	@Param({"1000", "10000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean lazy;
+
+	private File folder;
+	private IProvisioningAgent agent;
+	private URL location;
+	private byte[] content;
+
+	@Setup
+	public void setUp() throws IOException, ProvisionException {
+		folder = Activator.createTempFolder("p2parser"); //$NON-NLS-1$
+		agent = Activator.createAgent(new File(folder, "agent")); //$NON-NLS-1$
+		File repositoryFolder = new File(folder, "repository"); //$NON-NLS-1$
+		LocalMetadataRepository repository = new LocalMetadataRepository(agent, repositoryFolder.toURI(), "benchmark", null); //$NON-NLS-1$
+		repository.addInstallableUnits(Arrays.asList(new SyntheticRepository(size, 3, 2).getUnits()));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new MetadataRepositoryIO(agent).write(repository, output);
+		content = output.toByteArray();
+		location = new File(repositoryFolder, "content.xml").toURI().toURL(); //$NON-NLS-1$
+	}
+
+	@TearDown
+	public void tearDown() {
+		agent.stop();
+		Activator.delete(folder);
+	}
+
+	@Benchmark
+	public IMetadataRepository load() throws ProvisionException {
+		MetadataRepositoryIO io = new MetadataRepositoryIO(agent);
+		io.setLazyLoading(lazy);
+		return io.read(location, new ByteArrayInputStream(content), new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.director.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the steps of the planner: slicing the available units, encoding the slice
+ * for the SAT solver, and solving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlannerBenchmark {
+	@Param({"1000", "10000"})
+	public int size;
+
+	@Param({"3"})
+	public int requirements;
+
+	@Param({"2"})
+	public int versions;
+
+	IInstallableUnit root;
+	QueryableArray available;
+	Map<String, String> context;
+	IQueryable<IInstallableUnit> slice;
+	Set<IInstallableUnit> nonGreedyIUs;
+
+	/**
+	 * A problem that is encoded again before each call to the solver, since solving
+	 * consumes the encoding.
+	 */
+	@State(Scope.Thread)
+	public static class EncodedProblem {
+		Projector projector;
+
+		@Setup(Level.Invocation)
+		public void encode(PlannerBenchmark planner) {
+			projector = planner.encode();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		SyntheticRepository repository = new SyntheticRepository(size, requirements, versions);
+		root = repository.getRoot();
+		available = new QueryableArray(repository.getUnits());
+		context = new HashMap<String, String>();
+		context.put("osgi.os", "linux"); //$NON-NLS-1$ //$NON-NLS-2$
+		context.put("osgi.ws", "gtk"); //$NON-NLS-1$ //$NON-NLS-2$
+		context.put("osgi.arch", "x86_64"); //$NON-NLS-1$ //$NON-NLS-2$
+		Slicer slicer = new Slicer(available, context, false);
+		slice = slicer.slice(new IInstallableUnit[] {root}, new NullProgressMonitor());
+		nonGreedyIUs = slicer.getNonGreedyIUs();
+	}
+
+	Projector encode() {
+		Projector projector = new Projector(slice, context, nonGreedyIUs, false);
+		projector.encode(root, new IInstallableUnit[0], new QueryableArray(new IInstallableUnit[0]), Collections.<IInstallableUnit> emptySet(), new NullProgressMonitor());
+		return projector;
+	}
+
+	@Benchmark
+	public IQueryable<IInstallableUnit> slice() {
+		return new Slicer(available, context, false).slice(new IInstallableUnit[] {root}, new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public Projector encodeSlice() {
+		return encode();
+	}
+
+	@Benchmark
+	public IStatus invokeSolver(EncodedProblem problem) {
+		return problem.projector.invokeSolver(new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.engine.Profile;
+import org.eclipse.equinox.internal.p2.engine.SimpleProfileRegistry;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks restoring the profiles of a registry from disk, which happens the first
+ * time a profile is asked for in a session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProfileRegistryBenchmark {
+	private static final String PROFILE_ID = "benchmark"; //$NON-NLS-1$
+	private static final String INCLUSION_RULES = "org.eclipse.equinox.p2.internal.inclusion.rules"; //$NON-NLS-1$
+
+	@Param({"1000", "10000"})
+	public int size;
+
+	private File folder;
+	private File registryFolder;
+	private IProvisioningAgent agent;
+
+	@Setup
+	public void setUp() throws IOException, ProvisionException {
+		folder = Activator.createTempFolder("p2registry"); //$NON-NLS-1$
+		agent = Activator.createAgent(new File(folder, "agent")); //$NON-NLS-1$
+		registryFolder = new File(folder, "registry"); //$NON-NLS-1$
+		SimpleProfileRegistry registry = new SimpleProfileRegistry(agent, registryFolder, null, false);
+		registry.addProfile(PROFILE_ID);
+		Profile profile = (Profile) registry.getProfile(PROFILE_ID);
+		registry.lockProfile(profile);
+		try {
+			IInstallableUnit[] units = new SyntheticRepository(size, 3, 1).getUnits();
+			for (int i = 0; i < units.length; i++) {
+				profile.addInstallableUnit(units[i]);
+				profile.setInstallableUnitProperty(units[i], INCLUSION_RULES, "STRICT"); //$NON-NLS-1$
+			}
+			registry.updateProfile(profile);
+		} finally {
+			registry.unlockProfile(profile);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		agent.stop();
+		Activator.delete(folder);
+	}
+
+	@Benchmark
+	public IProfile[] restore() {
+		return new SimpleProfileRegistry(agent, registryFolder, null, false).getProfiles();
+	}
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the queries the planner runs the most: finding the units that satisfy a
+ * requirement, which is answered by the capability index, and finding units by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private IQueryable<IInstallableUnit> queryable;
+	private IRequirement[] requirements;
+	private IInstallableUnit[] units;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup
+	public void setUp() {
+		SyntheticRepository repository = new SyntheticRepository(size, 3, 2);
+		units = repository.getUnits();
+		requirements = repository.getRequirements();
+		queryable = new QueryableArray(units);
+		// build the indexes before measuring
+		queryable.query(QueryUtil.createMatchQuery(requirements[0].getMatches()), null);
+		queryable.query(QueryUtil.createIUQuery(units[0].getId()), null);
+	}
+
+	@Benchmark
+	public Set<IInstallableUnit> capabilityQuery(Cursor cursor) {
+		IRequirement requirement = requirements[cursor.next++ % requirements.length];
+		return queryable.query(QueryUtil.createMatchQuery(requirement.getMatches()), null).toUnmodifiableSet();
+	}
+
+	@Benchmark
+	public Set<IInstallableUnit> idQuery(Cursor cursor) {
+		IInstallableUnit unit = units[cursor.next++ % units.length];
+		return queryable.query(QueryUtil.createIUQuery(unit.getId()), null).toUnmodifiableSet();
+	}
+}
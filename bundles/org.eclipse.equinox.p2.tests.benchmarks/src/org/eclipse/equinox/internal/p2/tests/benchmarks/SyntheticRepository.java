@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+
+/**
+ * A generated repository of installable units, so that the benchmarks do not depend on
+ * test data or on the network. Units are named <code>bench.unit.&lt;n&gt;</code> and come in
+ * several versions. Each unit requires a few capabilities provided by units with a lower
+ * number, which gives dependency graphs with shared sub-trees like real repositories.
+ * The same arguments always produce the same repository.
+ */
+public class SyntheticRepository {
+	public static final String NAMESPACE = "org.eclipse.equinox.p2.benchmark"; //$NON-NLS-1$
+	private static final String UNIT_PREFIX = "bench.unit."; //$NON-NLS-1$
+	private static final String CAPABILITY_PREFIX = "bench.capability."; //$NON-NLS-1$
+	private static final int ROOT_REQUIREMENTS = 10;
+
+	private final IInstallableUnit[] units;
+	private final IRequirement[] requirements;
+	private final IInstallableUnit root;
+
+	/**
+	 * @param size the number of installable units
+	 * @param requirementCount the number of requirements of each unit
+	 * @param versions the number of versions of each unit id
+	 */
+	public SyntheticRepository(int size, int requirementCount, int versions) {
+		Random random = new Random(size);
+		int ids = Math.max(1, size / versions);
+		List<IInstallableUnit> allUnits = new ArrayList<IInstallableUnit>(size);
+		Set<IRequirement> allRequirements = new LinkedHashSet<IRequirement>();
+		for (int i = 0; i < ids; i++) {
+			for (int v = 0; v < versions; v++) {
+				InstallableUnitDescription description = new InstallableUnitDescription();
+				String id = UNIT_PREFIX + i;
+				Version version = Version.createOSGi(1, v, 0);
+				description.setId(id);
+				description.setVersion(version);
+				description.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, id, version), MetadataFactory.createProvidedCapability(NAMESPACE, CAPABILITY_PREFIX + i, version)});
+				List<IRequirement> unitRequirements = new ArrayList<IRequirement>(requirementCount);
+				for (int r = 0; i > 0 && r < requirementCount; r++) {
+					IRequirement requirement = MetadataFactory.createRequirement(NAMESPACE, CAPABILITY_PREFIX + random.nextInt(i), new VersionRange(Version.createOSGi(1, 0, 0), true, Version.createOSGi(2, 0, 0), false), null, false, false);
+					unitRequirements.add(requirement);
+					allRequirements.add(requirement);
+				}
+				description.setRequirements(unitRequirements.toArray(new IRequirement[unitRequirements.size()]));
+				allUnits.add(MetadataFactory.createInstallableUnit(description));
+			}
+		}
+		units = allUnits.toArray(new IInstallableUnit[allUnits.size()]);
+		requirements = allRequirements.toArray(new IRequirement[allRequirements.size()]);
+
+		// the root stands for a profile asking for the units with the deepest dependencies
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId("bench.root"); //$NON-NLS-1$
+		description.setVersion(Version.createOSGi(1, 0, 0));
+		List<IRequirement> rootRequirements = new ArrayList<IRequirement>();
+		for (int i = Math.max(0, ids - ROOT_REQUIREMENTS); i < ids; i++)
+			rootRequirements.add(MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, UNIT_PREFIX + i, VersionRange.emptyRange, null, false, false));
+		description.setRequirements(rootRequirements.toArray(new IRequirement[rootRequirements.size()]));
+		root = MetadataFactory.createInstallableUnit(description);
+	}
+
+	public IInstallableUnit[] getUnits() {
+		return units;
+	}
+
+	/**
+	 * Returns the distinct requirements of the units of the repository.
+	 */
+	public IRequirement[] getRequirements() {
+		return requirements;
+	}
+
+	/**
+	 * Returns a unit, not part of the repository, that requires the top-level units.
+	 */
+	public IInstallableUnit getRoot() {
+		return root;
+	}
+}
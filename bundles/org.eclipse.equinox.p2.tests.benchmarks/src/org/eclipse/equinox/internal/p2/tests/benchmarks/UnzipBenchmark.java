@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.tests.benchmarks;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.*;
+import org.eclipse.equinox.internal.p2.touchpoint.natives.Util;
+import org.eclipse.equinox.internal.p2.touchpoint.natives.ZipExtractor;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks unzipping an archive the way the native touchpoint does, once through the zip
+ * stream and once through the central directory on several threads. The stream does not
+ * depend on <code>threads</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UnzipBenchmark {
+	@Param({"100", "2000"})
+	public int entries;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	private File folder;
+	private File zipFile;
+	private File outputDir;
+	private int run;
+
+	@Setup
+	public void setUp() throws IOException {
+		folder = Activator.createTempFolder("p2unzip"); //$NON-NLS-1$
+		zipFile = new File(folder, "archive.zip"); //$NON-NLS-1$
+		Random random = new Random(entries);
+		byte[] content = new byte[64 * 1024];
+		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+		try {
+			for (int i = 0; i < entries; i++) {
+				out.putNextEntry(new ZipEntry("plugins/bundle" + (i % 50) + "/file" + i + ".class")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				// half random, half repeated bytes so the entries compress like class files
+				random.nextBytes(content);
+				int length = 1024 + random.nextInt(content.length - 1024);
+				out.write(content, 0, length / 2);
+				for (int j = length / 2; j < length; j++)
+					out.write(j % 16);
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		outputDir = new File(folder, "out" + run++); //$NON-NLS-1$
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() {
+		Activator.delete(outputDir);
+	}
+
+	@TearDown
+	public void tearDown() {
+		Activator.delete(folder);
+	}
+
+	@Benchmark
+	public File[] stream() throws IOException {
+		InputStream in = new FileInputStream(zipFile);
+		try {
+			return Util.unzipStream(in, zipFile.length(), outputDir, null, "", null); //$NON-NLS-1$
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public File[] extractor() throws IOException {
+		ZipFile zip = new ZipFile(zipFile);
+		try {
+			return new ZipExtractor(zip, outputDir, null, null, null, null, threads).extract();
+		} finally {
+			zip.close();
+		}
+	}
+}
@@ -19,6 +19,7 @@ public class AllTests extends TestCase {
 
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
+		suite.addTestSuite(ArtifactCacheTest.class);
 		suite.addTestSuite(ArtifactLockingTest.class);
 		suite.addTestSuite(ArtifactOutputStreamTest.class);
 		suite.addTestSuite(ArtifactRepositoryManagerTest.class);
@@ -33,9 +34,11 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(FoldersRepositoryTest.class);
 		suite.addTestSuite(JarURLArtifactRepositoryTest.class);
 		suite.addTestSuite(LocationTest.class);
+		suite.addTestSuite(MapperTest.class);
 		suite.addTestSuite(MD5Tests.class);
 		suite.addTestSuite(MirrorSelectorTest.class);
 		suite.addTestSuite(MirrorRequestTest.class);
+		suite.addTestSuite(PartialDownloadTest.class);
 		suite.addTestSuite(SimpleArtifactRepositoryTest.class);
 		suite.addTestSuite(TransferTest.class);
 		return suite;
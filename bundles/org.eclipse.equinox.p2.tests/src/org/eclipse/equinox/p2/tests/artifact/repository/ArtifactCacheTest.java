@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository;
+
+import java.io.*;
+import java.security.MessageDigest;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.ArtifactCache;
+import org.eclipse.equinox.internal.p2.artifact.repository.MirrorRequest;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class ArtifactCacheTest extends AbstractProvisioningTest {
+	private File cacheFolder;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		cacheFolder = getTempFolder();
+	}
+
+	protected void tearDown() throws Exception {
+		delete(cacheFolder);
+		super.tearDown();
+	}
+
+	private static String md5(byte[] content) throws Exception {
+		byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				buf.append('0');
+			buf.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return buf.toString();
+	}
+
+	private static IArtifactDescriptor createDescriptor(String id, byte[] content) throws Exception {
+		IArtifactKey key = new ArtifactKey("osgi.bundle", id, Version.create("1.0.0"));
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(key);
+		descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, md5(content));
+		return descriptor;
+	}
+
+	private static void record(ArtifactCache cache, IArtifactDescriptor descriptor, byte[] content, IStatus status) throws IOException {
+		ArtifactCache.CacheOutputStream recorder = cache.record(descriptor, new ByteArrayOutputStream());
+		assertNotNull(recorder);
+		recorder.write(content);
+		recorder.commit(status);
+	}
+
+	public void testRecordAndCopy() throws Exception {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, ArtifactCache.DEFAULT_MAX_SIZE);
+		byte[] content = "some artifact".getBytes();
+		IArtifactDescriptor descriptor = createDescriptor("a", content);
+		assertNull("1.0", cache.copyTo(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor()));
+
+		ByteArrayOutputStream destination = new ByteArrayOutputStream();
+		ArtifactCache.CacheOutputStream recorder = cache.record(descriptor, destination);
+		recorder.write(content);
+		recorder.commit(Status.OK_STATUS);
+		assertEquals("1.1", new String(content), destination.toString());
+
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		IStatus status = cache.copyTo(descriptor, copy, new NullProgressMonitor());
+		assertTrue("2.0", status.isOK());
+		assertEquals("2.1", new String(content), copy.toString());
+		assertEquals("2.2", 1, cache.getHits());
+		assertEquals("2.3", 1, cache.getMisses());
+	}
+
+	public void testFailedDownloadIsNotCached() throws Exception {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, ArtifactCache.DEFAULT_MAX_SIZE);
+		byte[] content = "some artifact".getBytes();
+		IArtifactDescriptor descriptor = createDescriptor("a", content);
+		record(cache, descriptor, content, new Status(IStatus.ERROR, "test", "failed"));
+		assertNull("1.0", cache.copyTo(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor()));
+
+		// bytes that do not match the digest are not cached either
+		record(cache, descriptor, "corrupted".getBytes(), Status.OK_STATUS);
+		assertNull("2.0", cache.copyTo(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor()));
+	}
+
+	public void testIncompleteCopyIsNotAHit() throws Exception {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, ArtifactCache.DEFAULT_MAX_SIZE);
+		byte[] content = "some artifact".getBytes();
+		IArtifactDescriptor descriptor = createDescriptor("a", content);
+		record(cache, descriptor, content, Status.OK_STATUS);
+
+		IProgressMonitor canceled = new NullProgressMonitor();
+		canceled.setCanceled(true);
+		assertEquals("1.0", IStatus.CANCEL, cache.copyTo(descriptor, new ByteArrayOutputStream(), canceled).getSeverity());
+		assertEquals("1.1", 0, cache.getHits());
+
+		OutputStream broken = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("broken destination");
+			}
+		};
+		IStatus status = cache.copyTo(descriptor, broken, new NullProgressMonitor());
+		assertEquals("2.0", IStatus.ERROR, status.getSeverity());
+		assertEquals("2.1", 0, cache.getHits());
+		// the entry itself is fine and kept
+		assertTrue("2.2", getEntry(descriptor).exists());
+		assertEquals("2.3", 0, cache.getEvictions());
+
+		assertTrue("3.0", cache.copyTo(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor()).isOK());
+		assertEquals("3.1", 1, cache.getHits());
+	}
+
+	public void testConflictingMaxSize() {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, 100);
+		// the cache is shared, the size given first is kept
+		assertSame("1.0", cache, ArtifactCache.getCache(cacheFolder, 200));
+		assertEquals("1.1", 100, cache.getMaxSize());
+	}
+
+	public void testNoDigest() {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, ArtifactCache.DEFAULT_MAX_SIZE);
+		IArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0")));
+		assertNull("1.0", cache.record(descriptor, new ByteArrayOutputStream()));
+		assertNull("1.1", cache.copyTo(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor()));
+	}
+
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, 25);
+		byte[] contentA = "aaaaaaaaaa".getBytes();
+		byte[] contentB = "bbbbbbbbbb".getBytes();
+		byte[] contentC = "cccccccccc".getBytes();
+		IArtifactDescriptor a = createDescriptor("a", contentA);
+		IArtifactDescriptor b = createDescriptor("b", contentB);
+		IArtifactDescriptor c = createDescriptor("c", contentC);
+		record(cache, a, contentA, Status.OK_STATUS);
+		record(cache, b, contentB, Status.OK_STATUS);
+		// using a makes b the least recently used entry
+		long now = System.currentTimeMillis();
+		getEntry(a).setLastModified(now - 10000);
+		getEntry(b).setLastModified(now - 20000);
+		assertNotNull("1.0", cache.copyTo(a, new ByteArrayOutputStream(), new NullProgressMonitor()));
+
+		record(cache, c, contentC, Status.OK_STATUS);
+		assertEquals("2.0", 1, cache.getEvictions());
+		assertNotNull("2.1", cache.copyTo(a, new ByteArrayOutputStream(), new NullProgressMonitor()));
+		assertNull("2.2", cache.copyTo(b, new ByteArrayOutputStream(), new NullProgressMonitor()));
+		assertNotNull("2.3", cache.copyTo(c, new ByteArrayOutputStream(), new NullProgressMonitor()));
+	}
+
+	private File getEntry(IArtifactDescriptor descriptor) {
+		String digest = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
+		return new File(new File(new File(cacheFolder, "md5"), digest.substring(0, 2)), digest);
+	}
+
+	public void testMirrorFromCache() throws Exception {
+		ArtifactCache cache = ArtifactCache.getCache(cacheFolder, ArtifactCache.DEFAULT_MAX_SIZE);
+		byte[] content = "some artifact".getBytes();
+		IArtifactDescriptor descriptor = createDescriptor("a", content);
+		record(cache, descriptor, content, Status.OK_STATUS);
+
+		// the source only knows about the artifact, its file does not exist
+		File sourceFolder = getTempFolder();
+		File targetFolder = getTempFolder();
+		IArtifactRepository source = createArtifactRepository(sourceFolder.toURI(), null);
+		source.addDescriptor(descriptor, null);
+		IArtifactRepository target = createArtifactRepository(targetFolder.toURI(), null);
+
+		getAgent().registerService(ArtifactCache.SERVICE_NAME, cache);
+		try {
+			MirrorRequest request = new MirrorRequest(descriptor.getArtifactKey(), target, null, null, getTransport());
+			request.perform(source, new NullProgressMonitor());
+			assertTrue("1.0", request.getResult().isOK());
+			assertTrue("1.1", target.contains(descriptor.getArtifactKey()));
+			assertEquals("1.2", 1, cache.getHits());
+		} finally {
+			getAgent().unregisterService(ArtifactCache.SERVICE_NAME, cache);
+			delete(sourceFolder);
+			delete(targetFolder);
+		}
+	}
+}
@@ -18,6 +18,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepositoryFactory;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
@@ -552,4 +553,124 @@ public class BatchExecuteArtifactRepositoryTest extends AbstractProvisioningTest
 		}
 	}
 
+	/*
+	 * This tests that descriptors added in write-behind mode are only saved when the repository is flushed
+	 */
+	public void testWriteBehind() {
+		try {
+			repositoryFile = getTempFolder();
+			repositoryURI = repositoryFile.toURI();
+			Map properties = new HashMap();
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+			URI artifactXML = new URI(repositoryFile.toURI().toString() + "/artifacts.xml");
+			repo.setWriteBehind(true);
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion));
+			repo.addDescriptor(createDescriptor("bar", "bar", Version.emptyVersion));
+			assertFalse("1.0", fileContainsString(artifactXML, "foo"));
+			assertEquals("1.1", 2, repo.query(ArtifactKeyQuery.ALL_KEYS, new NullProgressMonitor()).toSet().size());
+
+			repo.flush();
+			assertTrue("2.0", fileContainsString(artifactXML, "foo"));
+			assertTrue("2.1", fileContainsString(artifactXML, "bar"));
+			assertFalse("2.2", new File(repositoryFile, "artifacts.xml.tmp").exists());
+		} catch (Exception e) {
+			fail("Test failed", e);
+		}
+	}
+
+
+	/*
+	 * This tests that descriptors added in write-behind mode are saved once enough changes accumulated
+	 */
+	public void testWriteBehindChanges() {
+		try {
+			repositoryFile = getTempFolder();
+			repositoryURI = repositoryFile.toURI();
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+			URI artifactXML = new URI(repositoryFile.toURI().toString() + "/artifacts.xml");
+			repo.setWriteBehind(true);
+			repo.setWriteBehindLimits(3, 60000);
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion));
+			repo.addDescriptor(createDescriptor("bar", "bar", Version.emptyVersion));
+			assertFalse("1.0", fileContainsString(artifactXML, "bar"));
+
+			repo.addDescriptor(createDescriptor("baz", "baz", Version.emptyVersion));
+			assertTrue("2.0", fileContainsString(artifactXML, "foo"));
+			assertTrue("2.1", fileContainsString(artifactXML, "bar"));
+			assertTrue("2.2", fileContainsString(artifactXML, "baz"));
+		} catch (Exception e) {
+			fail("Test failed", e);
+		}
+	}
+
+	/*
+	 * This tests that descriptors added in write-behind mode are saved by the flush job after the delay
+	 */
+	public void testWriteBehindDelay() {
+		try {
+			repositoryFile = getTempFolder();
+			repositoryURI = repositoryFile.toURI();
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+			URI artifactXML = new URI(repositoryFile.toURI().toString() + "/artifacts.xml");
+			repo.setWriteBehind(true);
+			repo.setWriteBehindLimits(1000, 200);
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion));
+			assertFalse("1.0", fileContainsString(artifactXML, "foo"));
+
+			long end = System.currentTimeMillis() + 10000;
+			while (!fileContainsString(artifactXML, "foo") && System.currentTimeMillis() < end)
+				Thread.sleep(50);
+			assertTrue("2.0", fileContainsString(artifactXML, "foo"));
+		} catch (Exception e) {
+			fail("Test failed", e);
+		}
+	}
+
+	/*
+	 * This tests that descriptors added in write-behind mode are saved when the repository is removed from the manager
+	 */
+	public void testWriteBehindRemoveRepository() {
+		try {
+			repositoryFile = getTempFolder();
+			repositoryURI = repositoryFile.toURI();
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+			URI artifactXML = new URI(repositoryFile.toURI().toString() + "/artifacts.xml");
+			repo.setWriteBehind(true);
+			repo.setWriteBehindLimits(1000, 60000);
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion));
+			assertFalse("1.0", fileContainsString(artifactXML, "foo"));
+
+			getArtifactRepositoryManager().removeRepository(repositoryURI);
+			assertTrue("2.0", fileContainsString(artifactXML, "foo"));
+		} catch (Exception e) {
+			fail("Test failed", e);
+		}
+	}
+
+	/*
+	 * This tests that the new index is put in place when a save stopped after moving the old index away
+	 */
+	public void testRestoreInterruptedSave() {
+		try {
+			repositoryFile = getTempFolder();
+			repositoryURI = repositoryFile.toURI();
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "My Repo", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+			File artifactsFile = new File(repositoryFile, "artifacts.xml");
+			repo.addDescriptor(createDescriptor("foo", "foo", Version.emptyVersion));
+			copy("1.0", artifactsFile, new File(repositoryFile, "artifacts.xml.old"));
+			repo.addDescriptor(createDescriptor("bar", "bar", Version.emptyVersion));
+			assertTrue("1.1", artifactsFile.renameTo(new File(repositoryFile, "artifacts.xml.tmp")));
+			getArtifactRepositoryManager().removeRepository(repositoryURI);
+
+			SimpleArtifactRepositoryFactory factory = new SimpleArtifactRepositoryFactory();
+			factory.setAgent(getAgent());
+			IArtifactRepository restored = factory.load(repositoryURI, 0, new NullProgressMonitor());
+			assertTrue("2.0", restored.contains(new ArtifactKey("bar", "bar", Version.emptyVersion)));
+			assertTrue("2.1", artifactsFile.exists());
+			assertFalse("2.2", new File(repositoryFile, "artifacts.xml.old").exists());
+			assertFalse("2.3", new File(repositoryFile, "artifacts.xml.tmp").exists());
+		} catch (Exception e) {
+			fail("Test failed", e);
+		}
+	}
 }
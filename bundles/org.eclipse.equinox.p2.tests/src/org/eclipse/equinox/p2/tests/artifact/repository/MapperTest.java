@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository;
+
+import java.net.URI;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.Mapper;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestActivator;
+import org.osgi.framework.Filter;
+
+/**
+ * Tests the mapping of artifacts to their location in a simple artifact repository.
+ */
+public class MapperTest extends AbstractProvisioningTest {
+	private static final String[][] DEFAULT_RULES = { {"(& (classifier=osgi.bundle))", "${repoUrl}/plugins/${id}_${version}.jar"}, {"(& (classifier=binary))", "${repoUrl}/binary/${id}_${version}"}, {"(& (classifier=org.eclipse.update.feature))", "${repoUrl}/features/${id}_${version}.jar"}};
+	private static final String[][] PACKED_RULES = { {"(& (classifier=osgi.bundle) (format=packed))", "${repoUrl}/plugins/${id}_${version}.jar.pack.gz"}, {"(& (classifier=osgi.bundle))", "${repoUrl}/plugins/${id}_${version}.jar"}, {"(& (classifier=binary))", "${repoUrl}/binary/${id}_${version}"}, {"(& (classifier=org.eclipse.update.feature) (format=packed))", "${repoUrl}/features/${id}_${version}.jar.pack.gz"}, {"(& (classifier=org.eclipse.update.feature))", "${repoUrl}/features/${id}_${version}.jar"}};
+
+	private static final URI REPO = URI.create("http://example.com/repo");
+
+	private Mapper createMapper(String[][] rules) {
+		Mapper mapper = new Mapper();
+		mapper.initialize(TestActivator.getContext(), rules);
+		return mapper;
+	}
+
+	public void testDefaultRules() {
+		Mapper mapper = createMapper(DEFAULT_RULES);
+		assertEquals("1.0", URI.create("http://example.com/repo/plugins/a_1.0.0.jar"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", null));
+		assertEquals("1.1", URI.create("http://example.com/repo/plugins/a_1.0.0.jar"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", "packed"));
+		assertEquals("1.2", URI.create("http://example.com/repo/binary/b_2.0.0"), mapper.map(REPO, "binary", "b", "2.0.0", null));
+		assertEquals("1.3", URI.create("http://example.com/repo/features/f_3.0.0.jar"), mapper.map(REPO, "org.eclipse.update.feature", "f", "3.0.0", null));
+		assertNull("1.4", mapper.map(REPO, "other", "a", "1.0.0", null));
+	}
+
+	public void testPackedRules() {
+		Mapper mapper = createMapper(PACKED_RULES);
+		assertEquals("1.0", URI.create("http://example.com/repo/plugins/a_1.0.0.jar.pack.gz"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", "packed"));
+		assertEquals("1.1", URI.create("http://example.com/repo/plugins/a_1.0.0.jar"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", null));
+		assertEquals("1.2", URI.create("http://example.com/repo/features/f_3.0.0.jar.pack.gz"), mapper.map(REPO, "org.eclipse.update.feature", "f", "3.0.0", "packed"));
+		assertEquals("1.3", URI.create("http://example.com/repo/features/f_3.0.0.jar"), mapper.map(REPO, "org.eclipse.update.feature", "f", "3.0.0", null));
+		assertEquals("1.4", URI.create("http://example.com/repo/binary/b_2.0.0"), mapper.map(REPO, "binary", "b", "2.0.0", "packed"));
+	}
+
+	public void testCaseInsensitiveNames() {
+		Mapper mapper = createMapper(new String[][] { {"(&(CLASSIFIER=osgi.bundle)(Format=packed))", "${REPOURL}/packed/${Id}_${VERSION}"}, {"(Classifier=osgi.bundle)", "${RepoUrl}/plain/${ID}"}});
+		assertEquals("1.0", URI.create("http://example.com/repo/packed/a_1.0.0"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", "packed"));
+		assertEquals("1.1", URI.create("http://example.com/repo/plain/a"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", null));
+		// the values are compared with their case
+		assertNull("1.2", mapper.map(REPO, "OSGI.BUNDLE", "a", "1.0.0", null));
+	}
+
+	public void testFilterOperators() {
+		Mapper mapper = createMapper(new String[][] { {"(|(classifier=a)(classifier=b))", "${repoUrl}/or/${id}"}, {"(id~=Some Name)", "${repoUrl}/approx/${id}"}, {"(version>=2.0.0)", "${repoUrl}/newer/${id}"}, {"(!(classifier=osgi.bundle))", "${repoUrl}/not/${id}"}});
+		assertEquals("1.0", URI.create("http://example.com/repo/or/x"), mapper.map(REPO, "a", "x", "1.0.0", null));
+		assertEquals("1.1", URI.create("http://example.com/repo/or/x"), mapper.map(REPO, "b", "x", "1.0.0", null));
+		assertEquals("1.2", URI.create("http://example.com/repo/approx/somename"), mapper.map(REPO, "osgi.bundle", "somename", "1.0.0", null));
+		assertEquals("1.3", URI.create("http://example.com/repo/newer/x"), mapper.map(REPO, "osgi.bundle", "x", "3.0.0", null));
+		assertNull("1.4", mapper.map(REPO, "osgi.bundle", "x", "1.0.0", null));
+		assertEquals("1.5", URI.create("http://example.com/repo/not/x"), mapper.map(REPO, "c", "x", "1.0.0", null));
+	}
+
+	public void testUnknownAttributes() {
+		Mapper mapper = createMapper(new String[][] { {"(&(classifier=osgi.bundle)(unknown=x))", "${repoUrl}/never/${id}"}, {"(!(unknown=x))", "${repoUrl}/${unknown}always/${id}"}});
+		assertEquals("1.0", URI.create("http://example.com/repo/always/a"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", null));
+	}
+
+	public void testUnterminatedVariable() throws Exception {
+		Mapper mapper = createMapper(new String[][] {{"(classifier=osgi.bundle)", "http://example.com/fixed/${id"}});
+		assertEquals("1.0", URIUtil.fromString("http://example.com/fixed/${id"), mapper.map(REPO, "osgi.bundle", "a", "1.0.0", null));
+	}
+
+	public void testTrailingSlash() {
+		Mapper mapper = createMapper(DEFAULT_RULES);
+		assertEquals("1.0", URI.create("http://example.com/plugins/a_1.0.0.jar"), mapper.map(URI.create("http://example.com/"), "osgi.bundle", "a", "1.0.0", null));
+		assertEquals("1.1", URI.create("http://example.com/repo/plugins/a_1.0.0.jar"), mapper.map(URI.create("http://example.com/repo/"), "osgi.bundle", "a", "1.0.0", null));
+	}
+
+	public void testNullClassifier() {
+		Mapper mapper = createMapper(new String[][] { {"(classifier=null)", "${repoUrl}/literal/${id}"}, {"(!(classifier=*))", "${repoUrl}/none/${id}"}});
+		assertEquals("1.0", URI.create("http://example.com/repo/none/a"), mapper.map(REPO, null, "a", "1.0.0", null));
+		// a missing classifier and the string "null" are remembered apart
+		assertEquals("1.1", URI.create("http://example.com/repo/literal/a"), mapper.map(REPO, "null", "a", "1.0.0", null));
+		assertEquals("1.2", URI.create("http://example.com/repo/none/a"), mapper.map(REPO, null, "a", "1.0.0", null));
+		assertNull("1.3", createMapper(DEFAULT_RULES).map(REPO, null, "a", "1.0.0", null));
+	}
+
+	public void testNullRepositoryLocation() {
+		Mapper mapper = createMapper(new String[][] {{"(classifier=osgi.bundle)", "http://example.com/fixed/${id}"}});
+		assertEquals("1.0", URI.create("http://example.com/fixed/a"), mapper.map(null, "osgi.bundle", "a", "1.0.0", null));
+		assertEquals("1.1", URI.create("http://example.com/fixed/a"), mapper.map(null, "osgi.bundle", "a", "1.0.0", null));
+		assertEquals("1.2", URI.create("http://example.com/fixed/b"), mapper.map(REPO, "osgi.bundle", "b", "1.0.0", null));
+	}
+
+	/*
+	 * The rule chosen is the first one whose LDAP filter matches the artifact
+	 */
+	public void testAgreesWithFilters() throws Exception {
+		String[] filters = new String[] {"(&(classifier=osgi.bundle)(format=packed))", "(&(CLASSIFIER=osgi.bundle)(id=special))", "(classifier=osgi.bundle)", "(|(classifier=binary)(format=packed))", "(id~=MixedCase)", "(version>=2)", "(!(classifier=org.eclipse.update.feature))", "(format=*)"};
+		String[][] rules = new String[filters.length][];
+		for (int i = 0; i < filters.length; i++)
+			rules[i] = new String[] {filters[i], "${repoUrl}/rule" + i + "/${id}"};
+		Mapper mapper = createMapper(rules);
+
+		String[] classifiers = new String[] {null, "osgi.bundle", "binary", "org.eclipse.update.feature", "null"};
+		String[] ids = new String[] {"a", "special", "mixedcase"};
+		String[] versions = new String[] {"1.0.0", "2.0.0"};
+		String[] formats = new String[] {null, "packed", "other"};
+		for (int pass = 0; pass < 2; pass++) {
+			for (String classifier : classifiers) {
+				for (String id : ids) {
+					for (String version : versions) {
+						for (String format : formats) {
+							Dictionary<String, Object> values = new Hashtable<String, Object>();
+							values.put("repoUrl", URIUtil.toUnencodedString(REPO));
+							if (classifier != null)
+								values.put("classifier", classifier);
+							values.put("id", id);
+							values.put("version", version);
+							if (format != null)
+								values.put("format", format);
+							URI expected = null;
+							for (int i = 0; i < filters.length && expected == null; i++) {
+								Filter filter = TestActivator.getContext().createFilter(filters[i]);
+								if (filter.match(values))
+									expected = URI.create("http://example.com/repo/rule" + i + "/" + id);
+							}
+							assertEquals(values.toString(), expected, mapper.map(REPO, classifier, id, version, format));
+						}
+					}
+				}
+			}
+		}
+	}
+}
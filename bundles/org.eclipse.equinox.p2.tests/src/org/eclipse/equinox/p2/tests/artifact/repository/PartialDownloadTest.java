@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository;
+
+import java.io.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.PartialDownload;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class PartialDownloadTest extends AbstractProvisioningTest {
+	private File folder;
+	private File file;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+		file = new File(folder, "artifact.part");
+	}
+
+	protected void tearDown() throws Exception {
+		delete(folder);
+		super.tearDown();
+	}
+
+	public void testResume() throws IOException {
+		PartialDownload partial = new PartialDownload(file, 10);
+		assertEquals("1.0", 0, partial.getLength());
+		ByteArrayOutputStream destination = new ByteArrayOutputStream();
+		partial.journal(destination).write("abcd".getBytes());
+		partial.finish(new Status(IStatus.ERROR, "test", "connection lost"));
+		assertEquals("1.1", "abcd", destination.toString());
+		assertEquals("1.2", 4, file.length());
+
+		// the next attempt replays the journal and only needs the remaining bytes
+		partial = new PartialDownload(file, 10);
+		assertEquals("2.0", 4, partial.getLength());
+		destination = new ByteArrayOutputStream();
+		assertTrue("2.1", partial.replay(destination).isOK());
+		partial.journal(destination).write("efghij".getBytes());
+		partial.finish(Status.OK_STATUS);
+		assertEquals("2.2", "abcdefghij", destination.toString());
+		assertFalse("2.3", file.exists());
+	}
+
+	public void testCanceledDownloadIsKept() throws IOException {
+		PartialDownload partial = new PartialDownload(file, 10);
+		partial.journal(new ByteArrayOutputStream()).write("abc".getBytes());
+		partial.finish(Status.CANCEL_STATUS);
+		assertEquals("1.0", 3, new PartialDownload(file, 10).getLength());
+	}
+
+	public void testUnexpectedJournalIsDiscarded() throws IOException {
+		PartialDownload partial = new PartialDownload(file, 10);
+		partial.journal(new ByteArrayOutputStream()).write("0123456789ab".getBytes());
+		partial.finish(Status.CANCEL_STATUS);
+		assertEquals("1.0", 0, new PartialDownload(file, 10).getLength());
+		assertFalse("1.1", file.exists());
+	}
+
+	public void testReceivedLength() throws IOException {
+		PartialDownload partial = new PartialDownload(file, 10);
+		partial.journal(new ByteArrayOutputStream()).write("abcd".getBytes());
+		partial.finish(Status.CANCEL_STATUS);
+
+		// a server ignoring the range sends the whole artifact again
+		partial = new PartialDownload(file, 10);
+		long start = partial.getLength();
+		partial.replay(new ByteArrayOutputStream());
+		partial.journal(new ByteArrayOutputStream()).write("abcdefghij".getBytes());
+		assertEquals("1.0", 10, partial.getReceived());
+		assertTrue("1.1", partial.getReceived() != partial.getSize() - start);
+		partial.finish(Status.CANCEL_STATUS);
+
+		// each attempt counts from zero
+		partial.journal(new ByteArrayOutputStream()).write("ef".getBytes());
+		assertEquals("2.0", 2, partial.getReceived());
+		partial.finish(Status.CANCEL_STATUS);
+	}
+}
@@ -18,6 +18,7 @@ import java.lang.reflect.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import junit.framework.AssertionFailedError;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepositoryFactory;
@@ -425,6 +426,66 @@ public class SimpleArtifactRepositoryTest extends AbstractProvisioningTest {
 		assertEquals(d3.getArtifactKey(), resultDescriptor.getArtifactKey());
 	}
 
+	public void testSetRules() throws Exception {
+		File folder = getTestFolder("ArtifactRepository_testSetRules");
+		repositoryURI = folder.toURI();
+		SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0")));
+		repo.addDescriptor(descriptor, new NullProgressMonitor());
+		assertEquals("1.0", new File(folder, "plugins/a_1.0.0.jar"), repo.getArtifactFile(descriptor));
+		assertEquals("1.1", new File(folder, "binary/b_1.0.0"), repo.getArtifactFile(new ArtifactDescriptor(new ArtifactKey("binary", "b", Version.create("1.0.0")))));
+
+		repo.setRules(new String[][] { {"(& (classifier=osgi.bundle))", "${repoUrl}/bundles/${id}-${version}.jar"}});
+		assertEquals("2.0", new File(folder, "bundles/a-1.0.0.jar"), repo.getArtifactFile(descriptor));
+		assertNull("2.1", repo.getArtifactFile(new ArtifactDescriptor(new ArtifactKey("binary", "b", Version.create("1.0.0")))));
+	}
+
+	/*
+	 * Lookups made while descriptors are added and removed see a consistent repository
+	 */
+	public void testConcurrentLookups() throws Exception {
+		File folder = getTestFolder("ArtifactRepository_testConcurrentLookups");
+		repositoryURI = folder.toURI();
+		final IArtifactRepository repo = getArtifactRepositoryManager().createRepository(repositoryURI, "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap());
+		final ArtifactDescriptor stable = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "stable", Version.create("1.0.0")));
+		repo.addDescriptor(stable, new NullProgressMonitor());
+
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 200; j++) {
+							if (!repo.contains(stable) || repo.getArtifactDescriptors(stable.getArtifactKey()).length != 1)
+								failures.add(new AssertionFailedError("the stable descriptor is missing"));
+							for (Iterator<IArtifactKey> keys = repo.query(ArtifactKeyQuery.ALL_KEYS, null).iterator(); keys.hasNext();)
+								keys.next();
+							repo.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).toUnmodifiableSet();
+						}
+					} catch (Throwable t) {
+						failures.add(t);
+					}
+				}
+			};
+			readers[i].start();
+		}
+		try {
+			for (int i = 0; i < 100; i++) {
+				ArtifactDescriptor d = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a", Version.createOSGi(1, 0, i)));
+				repo.addDescriptor(d, new NullProgressMonitor());
+				if (i % 2 == 0)
+					repo.removeDescriptor(d, new NullProgressMonitor());
+			}
+		} finally {
+			for (int i = 0; i < readers.length; i++)
+				readers[i].join();
+		}
+		if (!failures.isEmpty())
+			fail("1.0", failures.get(0));
+		assertEquals("1.1", 51, queryResultSize(repo.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null)));
+	}
+
 	/*
 	 * Tests the number of threads allowed
 	 */
@@ -23,6 +23,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(BackupTest.class);
 		suite.addTestSuite(CollectorTest.class);
 		suite.addTestSuite(CompoundQueryableTest.class);
+		suite.addTestSuite(ConcurrentPoolTest.class);
 		suite.addTestSuite(FileUtilsTest.class);
 		suite.addTestSuite(OrderedPropertiesTest.class);
 		suite.addTestSuite(ProvisioningAgentTest.class);
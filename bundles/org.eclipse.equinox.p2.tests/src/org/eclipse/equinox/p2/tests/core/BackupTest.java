@@ -286,6 +286,45 @@ public class BackupTest extends AbstractProvisioningTest {
 		assertNoGarbage(store);
 	}
 
+	public void testBackupAllMovesDirectory() {
+		// keep the backup on the same volume so the directory can be renamed
+		BackupStore store = new BackupStore(sourceDir, BUPREFIX);
+		try {
+			store.backupAll(aDir);
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IO Exception when backing up aDir");
+		}
+		if (aDir.exists())
+			fail("Directory not moved to backup - still exists");
+		assertEquals("Directory not moved with one rename", 1, store.getRenameCount());
+		try {
+			store.restore();
+		} catch (IOException e) {
+			fail("Restore failed");
+		}
+		assertFileContent("A not restored", aTxt, "A");
+		assertFileContent("B not restored", bTxt, "B");
+		assertFileContent("C not restored", cTxt, "C");
+		assertEquals("Directory not restored with one rename", 2, store.getRenameCount());
+		assertEquals(0, store.getCopiedBytes());
+		assertNoGarbage(store);
+	}
+
+	public void testBackupCopyCountsBytes() {
+		BackupStore store = new BackupStore(null, BUPREFIX);
+		try {
+			store.backupCopy(aTxt);
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("Could not backupCopy aTxt");
+		}
+		assertEquals(aTxt.length(), store.getCopiedBytes());
+		store.discard();
+		assertFileContent("Copy should have been kept", aTxt, "A");
+		assertNoGarbage(store);
+	}
+
 	private void assertNoGarbage(BackupStore store) {
 		File buDir = new File(store.getBackupRoot(), BUPREFIX);
 		if (buDir.exists())
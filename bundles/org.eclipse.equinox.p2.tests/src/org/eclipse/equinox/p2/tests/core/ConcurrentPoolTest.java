@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.core;
+
+import junit.framework.TestCase;
+import org.eclipse.equinox.p2.core.ConcurrentPool;
+
+/**
+ * Tests for {@link ConcurrentPool}.
+ */
+public class ConcurrentPoolTest extends TestCase {
+	private static final int COUNT = 1000;
+
+	public void testSharing() {
+		ConcurrentPool<String> pool = new ConcurrentPool<String>();
+		assertNull("1.0", pool.add(null));
+		String first = new String("value");
+		String second = new String("value");
+		assertSame("1.1", first, pool.add(first));
+		assertSame("1.2", first, pool.add(second));
+		assertEquals("1.3", 1, pool.size());
+
+		assertEquals("2.0", 2, pool.getAddCount());
+		assertEquals("2.1", 1, pool.getSharedCount());
+		assertEquals("2.2", 0.5, pool.getSharingRatio(), 0);
+	}
+
+	public void testGrowth() {
+		// a single segment has to grow to hold all the objects
+		ConcurrentPool<String> pool = new ConcurrentPool<String>(1);
+		String[] values = new String[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			values[i] = "value" + i;
+			assertSame("1.0", values[i], pool.add(values[i]));
+		}
+		assertEquals("1.1", COUNT, pool.size());
+		for (int i = 0; i < COUNT; i++)
+			assertSame("2.0", values[i], pool.add(new String(values[i])));
+		assertEquals("2.1", COUNT, pool.getSharedCount());
+	}
+
+	public void testConcurrentAdds() throws InterruptedException {
+		final ConcurrentPool<String> pool = new ConcurrentPool<String>();
+		final String[][] results = new String[4][COUNT];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final String[] result = results[i];
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < COUNT; j++)
+						result[j] = pool.add(new String("value" + j));
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+
+		// all threads got the same instances
+		for (int i = 1; i < results.length; i++)
+			for (int j = 0; j < COUNT; j++)
+				assertSame("1.0", results[0][j], results[i][j]);
+		assertEquals("1.1", (long) results.length * COUNT, pool.getAddCount());
+		assertEquals("1.2", (long) (results.length - 1) * COUNT, pool.getSharedCount());
+	}
+}
@@ -31,6 +31,8 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(ProfileTest.class);
 		suite.addTestSuite(ProfilePreferencesTest.class);
 		suite.addTestSuite(ProfileRegistryTest.class);
+		suite.addTestSuite(ProfileJournalTest.class);
+		suite.addTestSuite(ProfileBinaryFormatTest.class);
 		suite.addTestSuite(ProvisioningContextTest.class);
 		suite.addTestSuite(SurrogateProfileHandlerTest.class);
 		suite.addTestSuite(ActionManagerTest.class);
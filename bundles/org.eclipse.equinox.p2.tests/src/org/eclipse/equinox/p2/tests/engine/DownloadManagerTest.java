@@ -10,14 +10,22 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.engine;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.engine.CollectEvent;
 import org.eclipse.equinox.internal.p2.engine.DownloadManager;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
+import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
@@ -227,6 +235,120 @@ public class DownloadManagerTest extends AbstractProvisioningTest {
 
 	}
 
+	/**
+	 * Tests that downloading several artifacts from several repositories at the same time
+	 * performs each request once, and moves a failed request to the next repository.
+	 */
+	public void testScheduledDownload() throws ProvisionException {
+		IArtifactKey shared = new ArtifactKey("osgi.bundle", "shared", Version.create("1.0.0"));
+		IArtifactKey single = new ArtifactKey("osgi.bundle", "single", Version.create("1.0.0"));
+		File folder = getTempFolder();
+		URI[] artifactRepos = new URI[] {new File(folder, "first").toURI(), new File(folder, "second").toURI()};
+		IArtifactRepository first = createArtifactRepository(artifactRepos[0], null);
+		first.addDescriptor(new ArtifactDescriptor(shared), null);
+		IArtifactRepository second = createArtifactRepository(artifactRepos[1], null);
+		second.addDescriptor(new ArtifactDescriptor(shared), null);
+		second.addDescriptor(new ArtifactDescriptor(single), null);
+
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setArtifactRepositories(artifactRepos);
+		context.setProperty(DownloadManager.PROP_DOWNLOAD_THREADS, "4");
+		DownloadManager manager = createDownloadManager(context);
+
+		// the shared artifact cannot be read from the first repository
+		RecordingRequest sharedRequest = new RecordingRequest(shared, artifactRepos[0]);
+		RecordingRequest singleRequest = new RecordingRequest(single, null);
+		manager.add(new IArtifactRequest[] {sharedRequest, singleRequest});
+		IStatus result = manager.start(null);
+		assertTrue("1.0", result.isOK());
+		assertEquals("1.1", Arrays.asList(artifactRepos[0], artifactRepos[1]), sharedRequest.performed);
+		assertEquals("1.2", Collections.singletonList(artifactRepos[1]), singleRequest.performed);
+
+		// Right now the provisioning context adds these to the manager so
+		// we have to remove them so as not to affect other tests.
+		getArtifactRepositoryManager().removeRepository(artifactRepos[0]);
+		getArtifactRepositoryManager().removeRepository(artifactRepos[1]);
+	}
+
+	/**
+	 * Tests that the requests scheduled on the same repository are performed in groups, with one
+	 * pair of collect events per group.
+	 */
+	public void testScheduledDownloadGroupsRequests() throws ProvisionException {
+		File folder = getTempFolder();
+		URI[] artifactRepos = new URI[] {new File(folder, "grouped").toURI()};
+		IArtifactRepository repository = createArtifactRepository(artifactRepos[0], null);
+		RecordingRequest[] requests = new RecordingRequest[8];
+		for (int i = 0; i < requests.length; i++) {
+			IArtifactKey key = new ArtifactKey("osgi.bundle", "grouped" + i, Version.create("1.0.0"));
+			repository.addDescriptor(new ArtifactDescriptor(key), null);
+			requests[i] = new RecordingRequest(key, null);
+		}
+
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setArtifactRepositories(artifactRepos);
+		context.setProperty(DownloadManager.PROP_DOWNLOAD_THREADS, "2");
+		DownloadManager manager = createDownloadManager(context);
+		manager.add(requests);
+
+		final List<IArtifactRequest> started = Collections.synchronizedList(new ArrayList<IArtifactRequest>());
+		final int[] events = new int[2];
+		ProvisioningListener listener = new SynchronousProvisioningListener() {
+			public void notify(EventObject o) {
+				if (!(o instanceof CollectEvent))
+					return;
+				CollectEvent event = (CollectEvent) o;
+				synchronized (events) {
+					if (event.getType() == CollectEvent.TYPE_REPOSITORY_START) {
+						events[0]++;
+						started.addAll(Arrays.asList(event.getDownloadRequests()));
+					} else if (event.getType() == CollectEvent.TYPE_REPOSITORY_END)
+						events[1]++;
+				}
+			}
+		};
+		IProvisioningEventBus eventBus = getEventBus();
+		eventBus.addListener(listener);
+		try {
+			IStatus result = manager.start(null);
+			assertTrue("1.0", result.isOK());
+			// the requests are shared by the two download threads
+			assertEquals("1.1", 2, events[0]);
+			assertEquals("1.2", 2, events[1]);
+			assertEquals("1.3", new HashSet<IArtifactRequest>(Arrays.asList(requests)), new HashSet<IArtifactRequest>(started));
+			for (int i = 0; i < requests.length; i++)
+				assertEquals("1.4." + i, Collections.singletonList(artifactRepos[0]), requests[i].performed);
+		} finally {
+			eventBus.removeListener(listener);
+			getArtifactRepositoryManager().removeRepository(artifactRepos[0]);
+		}
+	}
+
+	static class RecordingRequest implements IArtifactRequest {
+		final IArtifactKey key;
+		final URI failingLocation;
+		final List<URI> performed = Collections.synchronizedList(new ArrayList<URI>());
+		private IStatus result;
+
+		RecordingRequest(IArtifactKey key, URI failingLocation) {
+			this.key = key;
+			this.failingLocation = failingLocation;
+		}
+
+		public IArtifactKey getArtifactKey() {
+			return key;
+		}
+
+		public void perform(IArtifactRepository sourceRepository, IProgressMonitor monitor) {
+			performed.add(sourceRepository.getLocation());
+			result = sourceRepository.getLocation().equals(failingLocation) ? new Status(IStatus.ERROR, "test", "failed") : Status.OK_STATUS;
+		}
+
+		public IStatus getResult() {
+			return result;
+		}
+	}
+
 	private DownloadManager createDownloadManager(ProvisioningContext context) {
 		return new DownloadManager(context, getAgent());
 	}
@@ -309,6 +309,186 @@ public class PhaseTest extends AbstractProvisioningTest {
 		assertEquals(TestAction.class, ((ParameterizedProvisioningAction) actionsList2.get(0)).getAction().getClass());
 	}
 
+	public static class IndependentTestAction extends ProvisioningAction implements IIndependentAction {
+		static final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		static final List<Object> executed = Collections.synchronizedList(new ArrayList<Object>());
+
+		public IStatus execute(Map parameters) {
+			threads.add(Thread.currentThread());
+			executed.add(parameters.get("iu"));
+			return null;
+		}
+
+		public IStatus undo(Map parameters) {
+			return null;
+		}
+
+		public String[] getTargets(Map parameters) {
+			return new String[0];
+		}
+	}
+
+	public void testConcurrentOperands() {
+		final int[] completed = new int[1];
+		TestPhase phase = new TestPhase() {
+			protected List<ProvisioningAction> getActions(InstallableUnitOperand operand) {
+				return Collections.<ProvisioningAction> singletonList(new IndependentTestAction());
+			}
+
+			protected IStatus completeOperand(IProfile profile, Operand operand, Map parameters, IProgressMonitor monitor) {
+				// operands are always completed on the thread performing the phase
+				completed[0]++;
+				return super.completeOperand(profile, operand, parameters, monitor);
+			}
+		};
+		PhaseSet phaseSet = new TestPhaseSet(phase);
+		IProfile profile = createProfile("PhaseTest");
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(Phase.PROP_PHASE_THREADS, "4");
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		for (int i = 0; i < 10; i++)
+			plan.addInstallableUnit(createIU("testConcurrentOperands" + i));
+
+		IndependentTestAction.threads.clear();
+		IndependentTestAction.executed.clear();
+		IStatus status = engine.perform(plan, phaseSet, new NullProgressMonitor());
+		if (!status.isOK())
+			fail(status.toString());
+		assertEquals(10, IndependentTestAction.executed.size());
+		assertEquals(10, completed[0]);
+		assertFalse(IndependentTestAction.threads.contains(Thread.currentThread()));
+		assertTrue(phase.completePhase);
+	}
+
+	public static class FailingTestAction extends ProvisioningAction implements IIndependentAction {
+		static final List<Object> executed = Collections.synchronizedList(new ArrayList<Object>());
+		static final List<Object> undone = Collections.synchronizedList(new ArrayList<Object>());
+		static final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		static String failingId;
+
+		public IStatus execute(Map parameters) {
+			IInstallableUnit iu = (IInstallableUnit) parameters.get("iu");
+			threads.add(Thread.currentThread());
+			executed.add(iu.getId());
+			try {
+				// let the other operands start
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				// go on
+			}
+			if (iu.getId().equals(failingId))
+				return new Status(IStatus.ERROR, "test", "failed on purpose");
+			return null;
+		}
+
+		public IStatus undo(Map parameters) {
+			undone.add(((IInstallableUnit) parameters.get("iu")).getId());
+			return null;
+		}
+
+		public String[] getTargets(Map parameters) {
+			return new String[0];
+		}
+	}
+
+	public void testConcurrentOperandsRollback() {
+		TestPhase phase = new TestPhase() {
+			protected List<ProvisioningAction> getActions(InstallableUnitOperand operand) {
+				return Collections.<ProvisioningAction> singletonList(new FailingTestAction());
+			}
+		};
+		PhaseSet phaseSet = new TestPhaseSet(phase);
+		IProfile profile = createProfile("PhaseTest");
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(Phase.PROP_PHASE_THREADS, "4");
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		for (int i = 0; i < 10; i++)
+			plan.addInstallableUnit(createIU("testConcurrentOperandsRollback" + i));
+
+		FailingTestAction.executed.clear();
+		FailingTestAction.undone.clear();
+		FailingTestAction.threads.clear();
+		FailingTestAction.failingId = "testConcurrentOperandsRollback5";
+		IStatus status = engine.perform(plan, phaseSet, new NullProgressMonitor());
+		assertTrue("1.0", status.matches(IStatus.ERROR));
+		assertTrue("1.1", FailingTestAction.executed.contains(FailingTestAction.failingId));
+		assertTrue("1.2", FailingTestAction.threads.size() > 1);
+		// every action that ran is undone, whichever thread ran it
+		assertEquals("1.3", new HashSet<Object>(FailingTestAction.executed), new HashSet<Object>(FailingTestAction.undone));
+		assertEquals("1.4", FailingTestAction.executed.size(), FailingTestAction.undone.size());
+	}
+
+	public static class TargetTestAction extends ProvisioningAction implements IIndependentAction {
+		static final List<Object> executed = Collections.synchronizedList(new ArrayList<Object>());
+		static final int[] running = new int[2];
+		static final int[] maxRunning = new int[2];
+		static File folder;
+
+		public IStatus execute(Map parameters) {
+			int group = getGroup(parameters);
+			synchronized (running) {
+				running[group]++;
+				maxRunning[group] = Math.max(maxRunning[group], running[group]);
+			}
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				// go on
+			}
+			synchronized (running) {
+				running[group]--;
+			}
+			executed.add(((IInstallableUnit) parameters.get("iu")).getId());
+			return null;
+		}
+
+		public IStatus undo(Map parameters) {
+			return null;
+		}
+
+		public String[] getTargets(Map parameters) {
+			// the even operands write into one folder or below it, the odd ones into a folder each
+			String id = ((IInstallableUnit) parameters.get("iu")).getId();
+			if (getGroup(parameters) == 1)
+				return new String[] {new File(folder, id).getAbsolutePath()};
+			if ((id.charAt(id.length() - 1) - '0') % 4 == 0)
+				return new String[] {new File(folder, "shared").getAbsolutePath()};
+			return new String[] {new File(folder, "shared/sub").getAbsolutePath()};
+		}
+
+		private static int getGroup(Map parameters) {
+			String id = ((IInstallableUnit) parameters.get("iu")).getId();
+			return (id.charAt(id.length() - 1) - '0') % 2;
+		}
+	}
+
+	public void testConcurrentOperandsWithOverlappingTargets() {
+		TestPhase phase = new TestPhase() {
+			protected List<ProvisioningAction> getActions(InstallableUnitOperand operand) {
+				return Collections.<ProvisioningAction> singletonList(new TargetTestAction());
+			}
+		};
+		TargetTestAction.folder = getTempFolder();
+		PhaseSet phaseSet = new TestPhaseSet(phase);
+		IProfile profile = createProfile("PhaseTest");
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(Phase.PROP_PHASE_THREADS, "4");
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		for (int i = 0; i < 10; i++)
+			plan.addInstallableUnit(createIU("testOverlappingTargets" + i));
+
+		TargetTestAction.executed.clear();
+		Arrays.fill(TargetTestAction.running, 0);
+		Arrays.fill(TargetTestAction.maxRunning, 0);
+		IStatus status = engine.perform(plan, phaseSet, new NullProgressMonitor());
+		if (!status.isOK())
+			fail(status.toString());
+		assertEquals("1.0", 10, TargetTestAction.executed.size());
+		// operands writing to the same folder, or below it, run one after the other
+		assertEquals("1.1", 1, TargetTestAction.maxRunning[0]);
+		delete(TargetTestAction.folder);
+	}
+
 	public void testCancelHappenBeforeCompleteCollectPhase() {
 		final String testDataLocation = "testData/mirror/mirrorSourceRepo3";
 		Set<IInstallableUnit> ius = null;
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for the binary profile files kept by the profile registry.
+ */
+public class ProfileBinaryFormatTest extends AbstractProvisioningTest {
+	private static final String PROFILE_NAME = "ProfileBinaryFormatTest";
+	private File folder;
+	private SimpleProfileRegistry registry;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+		registry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+	}
+
+	protected void tearDown() throws Exception {
+		System.getProperties().remove(EngineActivator.PROP_PROFILE_BINARY);
+		delete(folder);
+		super.tearDown();
+	}
+
+	private void commit(Profile profile) {
+		profile.setChanged(false);
+		registry.lockProfile(profile);
+		try {
+			profile.setChanged(true);
+			registry.updateProfile(profile);
+		} finally {
+			registry.unlockProfile(profile);
+			profile.setChanged(false);
+		}
+	}
+
+	private File getProfileFile(String id, long timestamp) {
+		return new File(new File(folder, id + ".profile"), timestamp + ".profile.gz");
+	}
+
+	private static IInstallableUnit getUnit(IProfile profile, String id) {
+		IQueryResult<IInstallableUnit> result = profile.query(QueryUtil.createIUQuery(id), null);
+		return result.isEmpty() ? null : result.iterator().next();
+	}
+
+	/*
+	 * Overwrites part of the given file without changing its length and modification time.
+	 */
+	private static void corrupt(File file) throws IOException {
+		long lastModified = file.lastModified();
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.seek(file.length() / 2);
+			output.write(new byte[16]);
+		} finally {
+			output.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	private Profile createProfile() throws ProvisionException {
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME, Collections.singletonMap("property", "value"));
+		IRequirement requirement = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "b", new VersionRange("[1.0.0,2.0.0)"), InstallableUnit.parseFilter("(osgi.os=linux)"), 0, 1, false, "description");
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("key", "value");
+		ITouchpointData data = MetadataFactory.createTouchpointData(Collections.singletonMap("install", "mkdir(path:${installFolder}/a);"));
+		IUpdateDescriptor update = MetadataFactory.createUpdateDescriptor("a", new VersionRange("[0.0.0,1.0.0)"), IUpdateDescriptor.HIGH, "update");
+		IInstallableUnit a = createIU("a", Version.create("1.0.0"), InstallableUnit.parseFilter("(osgi.ws=gtk)"), new IRequirement[] {requirement}, NO_PROVIDES, properties, MetadataFactory.createTouchpointType("org.eclipse.equinox.p2.native", Version.create("1.0.0")), data, true, update, null);
+		IInstallableUnit fragment = createIUFragment(a, "a.fragment", Version.create("1.0.0"));
+		IRequirement[][] scope = new IRequirement[][] {{MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "a", VersionRange.emptyRange, null, false, false)}};
+		IRequirementChange change = MetadataFactory.createRequirementChange(requirement, MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "b", new VersionRange("[2.0.0,3.0.0)"), null, false, false));
+		IInstallableUnit patch = createIUPatch("p", Version.create("1.0.0"), false, new IRequirementChange[] {change}, scope, null);
+		profile.addInstallableUnit(a);
+		profile.setInstallableUnitProperty(a, "unit", "a");
+		profile.addInstallableUnit(fragment);
+		profile.addInstallableUnit(patch);
+		profile.setInstallableUnitProperty(patch, "unit", "p");
+		commit(profile);
+		return profile;
+	}
+
+	public void testRoundTrip() throws Exception {
+		Profile profile = createProfile();
+		File profileFile = getProfileFile(PROFILE_NAME, profile.getTimestamp());
+		assertTrue("1.0", ProfileBinaryFormat.getBinaryFile(profileFile).exists());
+		// only the binary file can be read now
+		corrupt(profileFile);
+
+		IProfile restored = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(PROFILE_NAME);
+		assertNotNull("2.0", restored);
+		assertEquals("2.1", profile.getTimestamp(), restored.getTimestamp());
+		assertEquals("2.2", "value", restored.getProperty("property"));
+		assertEquals("2.3", 3, restored.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
+
+		IInstallableUnit a = getUnit(profile, "a");
+		IInstallableUnit restoredA = getUnit(restored, "a");
+		assertEquals("3.0", a, restoredA);
+		assertTrue("3.1", restoredA.isSingleton());
+		assertEquals("3.2", a.getProperties(), restoredA.getProperties());
+		assertEquals("3.3", a.getRequirements(), restoredA.getRequirements());
+		assertEquals("3.4", new ArrayList<IProvidedCapability>(a.getProvidedCapabilities()), new ArrayList<IProvidedCapability>(restoredA.getProvidedCapabilities()));
+		assertEquals("3.5", a.getFilter(), restoredA.getFilter());
+		assertEquals("3.6", a.getTouchpointType(), restoredA.getTouchpointType());
+		assertEquals("3.7", a.getTouchpointData(), restoredA.getTouchpointData());
+		assertEquals("3.8", a.getUpdateDescriptor().getSeverity(), restoredA.getUpdateDescriptor().getSeverity());
+		assertEquals("3.9", a.getUpdateDescriptor().getIUsBeingUpdated().iterator().next(), restoredA.getUpdateDescriptor().getIUsBeingUpdated().iterator().next());
+		assertEquals("3.10", "a", restored.getInstallableUnitProperty(restoredA, "unit"));
+
+		IInstallableUnit restoredFragment = getUnit(restored, "a.fragment");
+		assertTrue("4.0", restoredFragment instanceof IInstallableUnitFragment);
+		IInstallableUnitFragment fragment = (IInstallableUnitFragment) getUnit(profile, "a.fragment");
+		assertEquals("4.1", fragment.getHost(), ((IInstallableUnitFragment) restoredFragment).getHost());
+
+		// patches are carried in the XML format
+		IInstallableUnit restoredPatch = getUnit(restored, "p");
+		assertTrue("5.0", restoredPatch instanceof IInstallableUnitPatch);
+		assertEquals("5.1", 1, ((IInstallableUnitPatch) restoredPatch).getRequirementsChange().size());
+		assertEquals("5.2", "p", restored.getInstallableUnitProperty(restoredPatch, "unit"));
+	}
+
+	public void testOutOfDateBinaryFile() throws Exception {
+		Profile profile = createProfile();
+		File profileFile = getProfileFile(PROFILE_NAME, profile.getTimestamp());
+		File binaryFile = ProfileBinaryFormat.getBinaryFile(profileFile);
+		// the profile file was written again, the binary file no longer describes it
+		profileFile.setLastModified(profileFile.lastModified() - 10000);
+		long written = binaryFile.lastModified();
+		binaryFile.setLastModified(written - 10000);
+
+		IProfile restored = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(PROFILE_NAME);
+		assertNotNull("1.0", getUnit(restored, "a"));
+		assertNotNull("1.1", getUnit(restored, "p"));
+		// the binary file was written again from the profile file
+		assertTrue("1.2", binaryFile.lastModified() > written - 10000);
+	}
+
+	public void testDisabled() throws ProvisionException {
+		System.setProperty(EngineActivator.PROP_PROFILE_BINARY, "false");
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		profile.addInstallableUnit(createIU("a"));
+		commit(profile);
+		assertFalse("1.0", ProfileBinaryFormat.getBinaryFile(getProfileFile(PROFILE_NAME, profile.getTimestamp())).exists());
+		assertNotNull("1.1", getUnit(new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(PROFILE_NAME), "a"));
+	}
+
+	public void testProfilesReadOnDemand() throws ProvisionException {
+		registry.addProfile(PROFILE_NAME);
+		registry.addProfile(PROFILE_NAME + "2");
+
+		SimpleProfileRegistry restored = new SimpleProfileRegistry(getAgent(), folder, null, false);
+		assertNotNull("1.0", restored.getProfile(PROFILE_NAME));
+		// the second profile was not read when the registry was restored
+		delete(new File(folder, PROFILE_NAME + "2.profile"));
+		assertNull("1.1", restored.getProfile(PROFILE_NAME + "2"));
+		assertEquals("1.2", 1, restored.getProfiles().length);
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import java.io.File;
+import java.io.FileFilter;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for the profile registry when it journals the changes made by commits.
+ */
+public class ProfileJournalTest extends AbstractProvisioningTest {
+	private static final String PROFILE_NAME = "ProfileJournalTest";
+	private File folder;
+	private SimpleProfileRegistry registry;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		System.setProperty(EngineActivator.PROP_PROFILE_JOURNAL, "true");
+		folder = getTempFolder();
+		registry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+	}
+
+	protected void tearDown() throws Exception {
+		Job.getJobManager().join(SimpleProfileRegistry.PROFILE_COMPACT_JOB_FAMILY, null);
+		System.getProperties().remove(EngineActivator.PROP_PROFILE_JOURNAL);
+		System.getProperties().remove(EngineActivator.PROP_PROFILE_CHECKPOINT_INTERVAL);
+		delete(folder);
+		super.tearDown();
+	}
+
+	private void commit(Profile profile) {
+		profile.setChanged(false);
+		registry.lockProfile(profile);
+		try {
+			profile.setChanged(true);
+			registry.updateProfile(profile);
+		} finally {
+			registry.unlockProfile(profile);
+			profile.setChanged(false);
+		}
+	}
+
+	private File[] getProfileFiles() {
+		return new File(folder, PROFILE_NAME + ".profile").listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				return pathname.getName().endsWith(".profile.gz");
+			}
+		});
+	}
+
+	private static boolean contains(IProfile profile, String id) {
+		return !profile.query(QueryUtil.createIUQuery(id), null).isEmpty();
+	}
+
+	public void testJournaledCommits() throws ProvisionException {
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		IInstallableUnit a = createIU("a");
+		IInstallableUnit b = createIU("b");
+		profile.addInstallableUnit(a);
+		profile.setInstallableUnitProperty(a, "key", "1");
+		profile.setProperty("property", "1");
+		commit(profile);
+		long first = profile.getTimestamp();
+
+		profile.removeInstallableUnit(a);
+		profile.addInstallableUnit(b);
+		profile.setInstallableUnitProperty(b, "key", "2");
+		profile.removeProperty("property");
+		commit(profile);
+
+		// only the profile created by addProfile was written in full
+		assertEquals("1.0", 1, getProfileFiles().length);
+		assertEquals("1.1", 3, registry.listProfileTimestamps(PROFILE_NAME).length);
+
+		IProfile state = registry.getProfile(PROFILE_NAME, first);
+		assertTrue("2.0", contains(state, "a"));
+		assertFalse("2.1", contains(state, "b"));
+		assertEquals("2.2", "1", state.getInstallableUnitProperty(a, "key"));
+		assertEquals("2.3", "1", state.getProperty("property"));
+
+		// another registry replays the journal
+		SimpleProfileRegistry restored = new SimpleProfileRegistry(getAgent(), folder, null, false);
+		IProfile current = restored.getProfile(PROFILE_NAME);
+		assertEquals("3.0", profile.getTimestamp(), current.getTimestamp());
+		assertFalse("3.1", contains(current, "a"));
+		assertTrue("3.2", contains(current, "b"));
+		assertEquals("3.3", "2", current.getInstallableUnitProperty(b, "key"));
+		assertNull("3.4", current.getProperty("property"));
+	}
+
+	public void testRemoveJournaledStates() throws ProvisionException {
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		long initial = profile.getTimestamp();
+		profile.addInstallableUnit(createIU("a"));
+		commit(profile);
+		long second = profile.getTimestamp();
+		profile.addInstallableUnit(createIU("b"));
+		commit(profile);
+
+		registry.removeProfile(PROFILE_NAME, second);
+		assertNull("1.0", registry.getProfile(PROFILE_NAME, second));
+		// the profile file the journal applies to can only be marked as removed
+		registry.removeProfile(PROFILE_NAME, initial);
+		assertNull("1.1", registry.getProfile(PROFILE_NAME, initial));
+		assertEquals("1.2", 1, getProfileFiles().length);
+
+		long[] timestamps = registry.listProfileTimestamps(PROFILE_NAME);
+		assertEquals("2.0", 1, timestamps.length);
+		assertEquals("2.1", profile.getTimestamp(), timestamps[0]);
+		IProfile current = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(PROFILE_NAME);
+		assertTrue("2.2", contains(current, "a"));
+		assertTrue("2.3", contains(current, "b"));
+	}
+
+	public void testCompaction() throws Exception {
+		System.setProperty(EngineActivator.PROP_PROFILE_CHECKPOINT_INTERVAL, "2");
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		long initial = profile.getTimestamp();
+		profile.addInstallableUnit(createIU("a"));
+		commit(profile);
+		long second = profile.getTimestamp();
+		profile.addInstallableUnit(createIU("b"));
+		commit(profile);
+
+		Job.getJobManager().join(SimpleProfileRegistry.PROFILE_COMPACT_JOB_FAMILY, null);
+		registry.compactProfile(PROFILE_NAME);
+		// the latest state was written in full
+		assertEquals("1.0", 2, getProfileFiles().length);
+		assertTrue("1.1", new File(new File(folder, PROFILE_NAME + ".profile"), profile.getTimestamp() + ".profile.gz").exists());
+
+		// once all the states it holds are removed, the first profile file and its journal are deleted
+		registry.removeProfile(PROFILE_NAME, initial);
+		registry.removeProfile(PROFILE_NAME, second);
+		registry.compactProfile(PROFILE_NAME);
+		assertEquals("2.0", 1, getProfileFiles().length);
+		assertFalse("2.1", new File(new File(folder, PROFILE_NAME + ".profile"), initial + ProfileJournal.JOURNAL_EXT).exists());
+
+		profile.addInstallableUnit(createIU("c"));
+		commit(profile);
+		assertEquals("3.0", 1, getProfileFiles().length);
+		IProfile current = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(PROFILE_NAME);
+		assertTrue("3.1", contains(current, "a"));
+		assertTrue("3.2", contains(current, "b"));
+		assertTrue("3.3", contains(current, "c"));
+	}
+}
@@ -91,6 +91,24 @@ public class ProfileRegistryTest extends AbstractProvisioningTest {
 		assertNull(registry.getProfile(PROFILE_NAME));
 	}
 
+	public void testRemoveRestoredParentProfile() throws ProvisionException {
+		File folder = getTempFolder();
+		folder.mkdirs();
+		SimpleProfileRegistry profileRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+		profileRegistry.addProfile("parent", null, null);
+		profileRegistry.addProfile("child", null, "parent");
+
+		// the parent is read before its child
+		profileRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+		profileRegistry.removeProfile("parent");
+		assertNull(profileRegistry.getProfile("child"));
+
+		profileRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+		assertNull(profileRegistry.getProfile("parent"));
+		assertNull(profileRegistry.getProfile("child"));
+		assertEquals(0, profileRegistry.getProfiles().length);
+	}
+
 	public void testBasicPeristence() {
 		assertNull(registry.getProfile(PROFILE_NAME));
 		IProfile test = createProfile(PROFILE_NAME);
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.expression;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.expression.Expression;
+import org.eclipse.equinox.internal.p2.metadata.expression.ExpressionCompiler;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Checks that compiled expressions give the same answers as the interpreter.
+ */
+public class ExpressionCompilerTest extends AbstractProvisioningTest {
+	private static final IExpressionFactory factory = ExpressionUtil.getFactory();
+
+	private static void assertSameMatch(IMatchExpression<IInstallableUnit> expression, IInstallableUnit candidate) {
+		// isMatch(context, candidate) always interprets
+		boolean interpreted = expression.isMatch(expression.createContext(), candidate);
+		assertEquals(expression + " on " + candidate, interpreted, expression.isMatch(candidate));
+	}
+
+	private List<IInstallableUnit> createUnits() {
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		for (int i = 0; i < 4; i++) {
+			IProvidedCapability[] provides = new IProvidedCapability[] {MetadataFactory.createProvidedCapability("ns", "cap", Version.createOSGi(1, i, 0)), MetadataFactory.createProvidedCapability("other", "cap" + i, Version.createOSGi(i, 0, 0))};
+			units.add(createIU("unit" + i, Version.createOSGi(1, i, 0), null, NO_REQUIRES, provides, NO_PROPERTIES, null, NO_TP_DATA, i % 2 == 0));
+		}
+		return units;
+	}
+
+	public void testRequirements() {
+		VersionRange[] ranges = new VersionRange[] {null, new VersionRange("[1.1.0,1.1.0]"), new VersionRange("1.1.0"), new VersionRange("(1.1.0,2.0.0)"), new VersionRange("[1.0.0,1.2.0]"), new VersionRange("(1.0.0,1.2.0]"), new VersionRange("[1.0.0,1.2.0)")};
+		List<IInstallableUnit> units = createUnits();
+		for (int r = 0; r < ranges.length; r++) {
+			IRequirement requirement = MetadataFactory.createRequirement("ns", "cap", ranges[r], null, false, false);
+			for (IInstallableUnit unit : units)
+				assertSameMatch(requirement.getMatches(), unit);
+		}
+	}
+
+	public void testFilters() {
+		String[] filters = new String[] {"(osgi.os=linux)", "(&(osgi.os=linux)(!(osgi.ws=win32)))", "(|(osgi.arch=x86)(osgi.arch=x86_64))", "(osgi.nl=en*)", "(osgi.os~=LINUX)", "(missing=*)"};
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("osgi.os", "linux");
+		properties.put("osgi.ws", "gtk");
+		properties.put("osgi.arch", "x86_64");
+		properties.put("osgi.nl", "en_US");
+		IInstallableUnit context = InstallableUnit.contextIU(properties);
+		IInstallableUnit emptyContext = InstallableUnit.contextIU(new HashMap<String, String>());
+		for (int i = 0; i < filters.length; i++) {
+			IMatchExpression<IInstallableUnit> filter = InstallableUnit.parseFilter(filters[i]);
+			assertSameMatch(filter, context);
+			assertSameMatch(filter, emptyContext);
+		}
+		assertTrue(InstallableUnit.parseFilter(filters[1]).isMatch(context));
+		assertFalse(InstallableUnit.parseFilter(filters[5]).isMatch(context));
+	}
+
+	public void testQueries() {
+		String[] expressions = new String[] {"id ~= /unit*/ && version >= '1.1.0'", "singleton && !(id == 'unit0')", "providedCapabilities.all(x | x.version < '2.0.0')", "providedCapabilities.exists(x | x.namespace == $0 && providedCapabilities.exists(y | y.name == x.name))"};
+		List<IInstallableUnit> units = createUnits();
+		for (int i = 0; i < expressions.length; i++) {
+			IMatchExpression<IInstallableUnit> expression = factory.matchExpression(ExpressionUtil.parse(expressions[i]), "other");
+			for (IInstallableUnit unit : units)
+				assertSameMatch(expression, unit);
+		}
+	}
+
+	public void testInterpretedExpressions() {
+		assertNull(ExpressionCompiler.compile((Expression) ExpressionUtil.parse("everything.exists(x | x == this)")));
+		assertNull(ExpressionCompiler.compile((Expression) ExpressionUtil.parse("id == $0 && everything.exists(x | x.id == $0)")));
+		assertNotNull(ExpressionCompiler.compile((Expression) ExpressionUtil.parse("providedCapabilities.exists(x | x.name == $0)")));
+	}
+
+	/*
+	 * The cache only holds the compiled form of an expression weakly, since it may refer to parts of
+	 * the expression, and compiles the expression again once its compiled form is collected
+	 */
+	public void testCacheDoesNotKeepExpressions() {
+		Expression expression = (Expression) ExpressionUtil.parse("id ~= /unit*/");
+		ExpressionCompiler.Predicate predicate = ExpressionCompiler.compile(expression);
+		assertNotNull("1.0", predicate);
+		assertSame("1.1", predicate, ExpressionCompiler.compile((Expression) ExpressionUtil.parse("id ~= /unit*/")));
+
+		Object entry = ExpressionCompiler.getCacheEntry(expression);
+		assertTrue("2.0", entry instanceof WeakReference);
+		assertSame("2.1", predicate, ((WeakReference<?>) entry).get());
+
+		// as if the compiled form had been collected
+		((WeakReference<?>) entry).clear();
+		ExpressionCompiler.Predicate recompiled = ExpressionCompiler.compile(expression);
+		assertNotNull("3.0", recompiled);
+		assertNotSame("3.1", predicate, recompiled);
+		entry = ExpressionCompiler.getCacheEntry(expression);
+		assertTrue("3.2", entry instanceof WeakReference);
+		assertSame("3.3", recompiled, ((WeakReference<?>) entry).get());
+
+		Expression interpreted = (Expression) ExpressionUtil.parse("everything.exists(x | x == this)");
+		assertNull("4.0", ExpressionCompiler.compile(interpreted));
+		assertFalse("4.1", ExpressionCompiler.getCacheEntry(interpreted) instanceof WeakReference);
+	}
+}
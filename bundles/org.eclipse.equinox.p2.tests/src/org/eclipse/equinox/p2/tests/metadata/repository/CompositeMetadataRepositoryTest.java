@@ -18,9 +18,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.CompositeChildLoadEvent;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepositoryFactory;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProvisioningListener;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
@@ -266,6 +270,90 @@ public class CompositeMetadataRepositoryTest extends AbstractProvisioningTest {
 		assertEquals("Assert correct number of IUs", getNumUnique(repo1.query(QueryUtil.createIUAnyQuery(), null), repo2.query(QueryUtil.createIUAnyQuery(), null)), compRepo.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
 	}
 
+	public void testParallelChildLoading() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(CompositeChildLoader.PROP_LOADING_THREADS, "4");
+		CompositeMetadataRepository compRepo = (CompositeMetadataRepository) manager.createRepository(repoLocation.toURI(), "metadata name", IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, properties);
+		File child1 = getTestData("1", "/testData/mirror/mirrorSourceRepo1 with space");
+		File child2 = getTestData("2", "/testData/mirror/mirrorSourceRepo2");
+		File child3 = getTestData("3", "/testData/mirror/mirrorSourceRepo3");
+		compRepo.addChild(child1.toURI());
+		compRepo.addChild(child2.toURI());
+		compRepo.addChild(child3.toURI());
+		manager.removeRepository(repoLocation.toURI());
+
+		final List<CompositeChildLoadEvent> events = Collections.synchronizedList(new ArrayList<CompositeChildLoadEvent>());
+		SynchronousProvisioningListener listener = new SynchronousProvisioningListener() {
+			public void notify(EventObject o) {
+				if (o instanceof CompositeChildLoadEvent)
+					events.add((CompositeChildLoadEvent) o);
+			}
+		};
+		IProvisioningEventBus eventBus = (IProvisioningEventBus) getAgent().getService(IProvisioningEventBus.SERVICE_NAME);
+		eventBus.addListener(listener);
+		IMetadataRepository loaded;
+		try {
+			loaded = manager.loadRepository(repoLocation.toURI(), null);
+		} finally {
+			eventBus.removeListener(listener);
+		}
+
+		//children keep the order they were added in
+		List<URI> children = ((CompositeMetadataRepository) loaded).getChildren();
+		assertEquals(3, children.size());
+		assertTrue(URIUtil.sameURI(child1.toURI(), children.get(0)));
+		assertTrue(URIUtil.sameURI(child2.toURI(), children.get(1)));
+		assertTrue(URIUtil.sameURI(child3.toURI(), children.get(2)));
+		assertContains("child1 content", manager.loadRepository(child1.toURI(), null), loaded);
+		assertContains("child3 content", manager.loadRepository(child3.toURI(), null), loaded);
+
+		assertEquals(3, events.size());
+		for (CompositeChildLoadEvent event : events) {
+			assertTrue(event.getStatus().isOK());
+			assertTrue(event.getDuration() >= 0);
+		}
+	}
+
+	/*
+	 * A composite that is a child of its own child loads without waiting for itself
+	 */
+	public void testParallelCyclicChildLoading() throws Exception {
+		final IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(CompositeChildLoader.PROP_LOADING_THREADS, "4");
+		File cycleLocation = new File(getTempFolder(), "cycle");
+		CompositeMetadataRepository compRepo = (CompositeMetadataRepository) manager.createRepository(repoLocation.toURI(), "metadata name", IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, properties);
+		CompositeMetadataRepository cycle = (CompositeMetadataRepository) manager.createRepository(cycleLocation.toURI(), "cycle", IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, properties);
+		File child1 = getTestData("1", "/testData/mirror/mirrorSourceRepo1 with space");
+		compRepo.addChild(child1.toURI());
+		compRepo.addChild(cycleLocation.toURI());
+		cycle.addChild(repoLocation.toURI());
+		manager.removeRepository(repoLocation.toURI());
+		manager.removeRepository(cycleLocation.toURI());
+
+		final IMetadataRepository[] loaded = new IMetadataRepository[1];
+		Thread loader = new Thread() {
+			public void run() {
+				try {
+					loaded[0] = manager.loadRepository(repoLocation.toURI(), null);
+				} catch (ProvisionException e) {
+					// reported below
+				}
+			}
+		};
+		try {
+			loader.start();
+			loader.join(60000);
+			assertFalse("loading did not complete", loader.isAlive());
+			assertNotNull(loaded[0]);
+			assertContains("child1 content", manager.loadRepository(child1.toURI(), null), loaded[0]);
+		} finally {
+			manager.removeRepository(cycleLocation.toURI());
+			delete(cycleLocation);
+		}
+	}
+
 	public void testRemoveNonexistantChild() {
 		//Setup: create an uncompressed repository
 		CompositeMetadataRepository compRepo = createRepo(false);
@@ -12,9 +12,13 @@
 package org.eclipse.equinox.p2.tests.metadata.repository;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.net.URI;
 import java.util.*;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -82,6 +86,69 @@ public class LocalMetadataRepositoryTest extends AbstractProvisioningTest {
 		}
 	}
 
+	public void testPersistentIndex() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(LocalMetadataRepository.PROP_PERSISTENT_INDEX, "true");
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+
+		IInstallableUnit a = createIU("A", Version.create("1.0.0"), new IProvidedCapability[] {MetadataFactory.createProvidedCapability("test.namespace", "shared", Version.create("1.0.0"))});
+		IInstallableUnit b = createIU("B", Version.create("1.0.0"), new IProvidedCapability[] {MetadataFactory.createProvidedCapability("test.namespace", "shared", Version.create("2.0.0"))});
+		IInstallableUnit c = createIU("C", Version.create("1.0.0"));
+		repo.addInstallableUnits(Arrays.asList(a, b, c));
+		assertTrue("Index file not written", new File(repoLocation, "content.index").exists());
+
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		IRequirement sharedReq = MetadataFactory.createRequirement("test.namespace", "shared", VersionRange.emptyRange, null, false, false);
+		assertEquals(2, queryResultSize(repo.query(QueryUtil.createMatchQuery(sharedReq.getMatches()), null)));
+		IRequirement cReq = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "C", VersionRange.emptyRange, null, false, false);
+		assertContains(repo.query(QueryUtil.createMatchQuery(cReq.getMatches()), null), c);
+		IRequirement missingReq = MetadataFactory.createRequirement("test.namespace", "missing", VersionRange.emptyRange, null, false, false);
+		assertTrue(repo.query(QueryUtil.createMatchQuery(missingReq.getMatches()), null).isEmpty());
+
+		//the index must follow changes to the repository
+		repo.removeInstallableUnits(Arrays.asList(b));
+		assertEquals(1, queryResultSize(repo.query(QueryUtil.createMatchQuery(sharedReq.getMatches()), null)));
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		assertEquals(1, queryResultSize(repo.query(QueryUtil.createMatchQuery(sharedReq.getMatches()), null)));
+	}
+
+	public void testLazyLoading() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		Map iuProperties = new HashMap();
+		iuProperties.put(TEST_KEY, TEST_VALUE);
+		ITouchpointData data = MetadataFactory.createTouchpointData(Collections.singletonMap("install", "doSomething(arg:<unit>)"));
+		IInstallableUnit a = createIU("A", Version.create("1.0.0"), null, NO_REQUIRES, NO_PROVIDES, iuProperties, TOUCHPOINT_OSGI, data, true);
+		IInstallableUnit b = createIU("B", Version.create("1.0.0"), createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "A", VersionRange.emptyRange));
+		IInstallableUnitFragment f = createIUFragment(a, "F", Version.create("1.0.0"));
+		repo.addInstallableUnits(Arrays.asList(a, b, f));
+
+		File content = new File(repoLocation, "content.xml");
+		MetadataRepositoryIO io = new MetadataRepositoryIO(getAgent());
+		io.setLazyLoading(true);
+		IMetadataRepository lazy = io.read(content.toURL(), new FileInputStream(content), new NullProgressMonitor());
+		assertEquals(3, queryResultSize(lazy.query(QueryUtil.createIUAnyQuery(), null)));
+
+		IInstallableUnit lazyA = lazy.query(QueryUtil.createIUQuery("A"), null).iterator().next();
+		assertEquals(a, lazyA);
+		assertEquals(a.hashCode(), lazyA.hashCode());
+		assertEquals(new ArrayList(a.getProvidedCapabilities()), new ArrayList(lazyA.getProvidedCapabilities()));
+		assertEquals(TEST_VALUE, lazyA.getProperty(TEST_KEY));
+		assertEquals(new ArrayList(a.getTouchpointData()), new ArrayList(lazyA.getTouchpointData()));
+		assertEquals(a.getTouchpointType(), lazyA.getTouchpointType());
+
+		IInstallableUnit lazyB = lazy.query(QueryUtil.createIUQuery("B"), null).iterator().next();
+		assertEquals(new ArrayList(b.getRequirements()), new ArrayList(lazyB.getRequirements()));
+		assertContains(lazy.query(QueryUtil.createIUPropertyQuery(TEST_KEY, TEST_VALUE), null), a);
+		IInstallableUnit lazyF = lazy.query(QueryUtil.createIUQuery("F"), null).iterator().next();
+		assertTrue(lazyF instanceof IInstallableUnitFragment);
+		// the sections skipped while parsing are read back for fragments
+		assertEquals(new ArrayList(f.getTouchpointData()), new ArrayList(lazyF.getTouchpointData()));
+	}
+
 	public void testGetProperties() throws ProvisionException {
 		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
 		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
@@ -734,6 +734,24 @@ public class ArtifactMirrorApplicationTest extends AbstractProvisioningTest {
 		}
 	}
 
+	/**
+	 * Tests how mirror application handles a parallelism that is not a positive number
+	 */
+	public void testArtifactMirrorInvalidParallelism() {
+		String[] values = new String[] {"0", "-2", "many"};
+		for (int i = 0; i < values.length; i++) {
+			String[] args = new String[] {"-source", "file:" + sourceRepoLocation.getAbsolutePath(), "-destination", "file:" + destRepoLocation.getAbsolutePath(), "-parallelism", values[i]};
+			try {
+				runMirrorApplication("1." + i, args);
+				fail("2." + i + " IllegalArgumentException not thrown");
+			} catch (IllegalArgumentException e) {
+				assertTrue("3." + i, e.getMessage().indexOf(values[i]) != -1);
+			} catch (Exception e) {
+				fail("4." + i, e);
+			}
+		}
+	}
+
 	/**
 	 * Ensures that a repository created by the mirror application is a copy of the source
 	 */
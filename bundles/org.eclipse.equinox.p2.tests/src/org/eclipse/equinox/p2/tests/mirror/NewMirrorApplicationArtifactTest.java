@@ -14,6 +14,7 @@ package org.eclipse.equinox.p2.tests.mirror;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.processors.md5.Messages;
@@ -21,6 +22,7 @@ import org.eclipse.equinox.internal.p2.artifact.repository.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.internal.repository.tools.MirrorApplication;
 import org.eclipse.equinox.p2.internal.repository.tools.RepositoryDescriptor;
@@ -28,9 +30,11 @@ import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.tests.*;
 import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
 import org.eclipse.osgi.framework.log.FrameworkLog;
@@ -878,6 +882,243 @@ public class NewMirrorApplicationArtifactTest extends AbstractProvisioningTest {
 		}
 	}
 
+	private void runParallelMirrorApplication(String message, File source, File destination) {
+		MirrorApplication app = new MirrorApplication();
+		app.addSource(createRepositoryDescriptor(source.toURI(), null, null, null));
+		app.addDestination(createRepositoryDescriptor(destination.toURI(), null, null, null));
+		app.setParallelism(4);
+		try {
+			app.run(null);
+		} catch (Exception e) {
+			fail(message, e);
+		}
+	}
+
+	/**
+	 * Tests that mirroring with several download threads copies the same files as mirroring on a single thread
+	 */
+	public void testParallelArtifactFileCopying() {
+		File packedRepoLocation = getTestData("1.0", "/testData/mirror/mirrorPackedRepo");
+		runParallelMirrorApplication("1.1", packedRepoLocation, destRepoLocation);
+
+		try {
+			assertContentEquals("1.2", getArtifactRepositoryManager().loadRepository(packedRepoLocation.toURI(), null), getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+			assertEqualArtifacts("1.3", (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(packedRepoLocation.toURI(), null), (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+		} catch (ProvisionException e) {
+			fail("1.4", e);
+		}
+	}
+
+	/**
+	 * Tests mirroring with several download threads to a repository populated with partially duplicate data
+	 * Source contains A, B, C, D
+	 * Target contains  A, B
+	 * Expected is A, B, C, D
+	 */
+	public void testParallelArtifactMirrorToPartialDuplicate() {
+		runParallelMirrorApplication("1.0", sourceRepoLocation, destRepoLocation);
+		runParallelMirrorApplication("1.1", sourceRepo3Location, destRepoLocation);
+
+		try {
+			// the destination is only saved once the batch is over, so load it again from disk
+			getArtifactRepositoryManager().removeRepository(destRepoLocation.toURI());
+			assertContentEquals("1.2", getArtifactRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null), getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+		} catch (ProvisionException e) {
+			fail("1.3", e);
+		}
+	}
+
+	private void runIncrementalMirrorApplication(String message, File source, File destination, boolean removeDeleted) {
+		runIncrementalMirrorApplication(message, source, destination, removeDeleted, "artifact");
+	}
+
+	private void runIncrementalMirrorApplication(String message, File source, File destination, boolean removeDeleted, String kind) {
+		MirrorApplication app = new MirrorApplication();
+		RepositoryDescriptor sourceDescriptor = createRepositoryDescriptor(source.toURI(), null, null, null);
+		sourceDescriptor.setKind(kind);
+		app.addSource(sourceDescriptor);
+		RepositoryDescriptor destinationDescriptor = createRepositoryDescriptor(destination.toURI(), null, null, null);
+		destinationDescriptor.setKind(kind);
+		app.addDestination(destinationDescriptor);
+		app.setIncremental(true);
+		app.setRemoveDeleted(removeDeleted);
+		try {
+			app.run(null);
+		} catch (Exception e) {
+			fail(message, e);
+		}
+	}
+
+	/**
+	 * Tests an incremental mirror to a repository populated with partially duplicate data
+	 * Source contains A, B, C, D
+	 * Target contains  A, B
+	 * Expected is A, B, C, D
+	 */
+	public void testIncrementalArtifactMirrorToPartialDuplicate() {
+		runIncrementalMirrorApplication("1.0", sourceRepoLocation, destRepoLocation, false);
+		runIncrementalMirrorApplication("1.1", sourceRepo3Location, destRepoLocation, false);
+
+		try {
+			assertContentEquals("1.2", getArtifactRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null), getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+		} catch (ProvisionException e) {
+			fail("1.3", e);
+		}
+	}
+
+	/**
+	 * Tests that an incremental mirror removes the artifacts gone from the source when asked to
+	 * Source contains A, B
+	 * Target contains A, B, C, D
+	 * Expected is A, B
+	 */
+	public void testIncrementalArtifactMirrorRemoveDeleted() {
+		runIncrementalMirrorApplication("1.0", sourceRepo3Location, destRepoLocation, false);
+		runIncrementalMirrorApplication("1.1", sourceRepoLocation, destRepoLocation, true);
+
+		try {
+			assertContentEquals("1.2", getArtifactRepositoryManager().loadRepository(sourceRepoLocation.toURI(), null), getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+		} catch (ProvisionException e) {
+			fail("1.3", e);
+		}
+	}
+
+	/**
+	 * Tests that an incremental mirror replaces a destination artifact whose MD5 differs from the source
+	 */
+	public void testIncrementalArtifactMirrorChangedDigest() throws Exception {
+		File source = new File(getTempFolder(), "IncrementalSource");
+		delete(source);
+		copy("0.0", sourceRepoLocation, source);
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "helloworld", Version.create("1.0.0"));
+		try {
+			SimpleArtifactRepository sourceRepository = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(source.toURI(), null);
+			File sourceFile = sourceRepository.getArtifactFile(key);
+			String md5 = computeMD5(sourceFile);
+			setProperty(sourceRepository, key, IArtifactDescriptor.DOWNLOAD_MD5, md5);
+			getArtifactRepositoryManager().removeRepository(source.toURI());
+
+			runIncrementalMirrorApplication("1.0", source, destRepoLocation, false);
+
+			// the destination holds a damaged copy recorded with another digest
+			SimpleArtifactRepository destination = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null);
+			File destinationFile = destination.getArtifactFile(key);
+			writeBuffer(destinationFile, new StringBuffer("damaged"));
+			setProperty(destination, key, IArtifactDescriptor.DOWNLOAD_MD5, "00000000000000000000000000000000");
+			getArtifactRepositoryManager().removeRepository(destRepoLocation.toURI());
+
+			runIncrementalMirrorApplication("2.0", source, destRepoLocation, false);
+
+			destination = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null);
+			IArtifactDescriptor[] descriptors = destination.getArtifactDescriptors(key);
+			assertEquals("2.1", 1, descriptors.length);
+			assertEquals("2.2", md5, descriptors[0].getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+			assertEquals("2.3", md5, computeMD5(destination.getArtifactFile(key)));
+		} finally {
+			getArtifactRepositoryManager().removeRepository(source.toURI());
+			delete(source);
+		}
+	}
+
+	/**
+	 * Tests that an incremental mirror keeps a changed destination artifact when its replacement cannot be downloaded
+	 */
+	public void testIncrementalArtifactMirrorKeepsChangedOnFailure() throws Exception {
+		File source = new File(getTempFolder(), "IncrementalSource");
+		delete(source);
+		copy("0.0", sourceRepoLocation, source);
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "helloworld", Version.create("1.0.0"));
+		try {
+			SimpleArtifactRepository sourceRepository = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(source.toURI(), null);
+			String md5 = computeMD5(sourceRepository.getArtifactFile(key));
+			setProperty(sourceRepository, key, IArtifactDescriptor.DOWNLOAD_MD5, md5);
+			getArtifactRepositoryManager().removeRepository(source.toURI());
+
+			runIncrementalMirrorApplication("1.0", source, destRepoLocation, false);
+
+			// the source now records another digest, but its artifact is gone
+			sourceRepository = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(source.toURI(), null);
+			sourceRepository.getArtifactFile(key).delete();
+			setProperty(sourceRepository, key, IArtifactDescriptor.DOWNLOAD_MD5, "00000000000000000000000000000000");
+			getArtifactRepositoryManager().removeRepository(source.toURI());
+
+			MirrorApplication app = new MirrorApplication();
+			RepositoryDescriptor sourceDescriptor = createRepositoryDescriptor(source.toURI(), null, null, null);
+			sourceDescriptor.setKind("artifact");
+			app.addSource(sourceDescriptor);
+			RepositoryDescriptor destinationDescriptor = createRepositoryDescriptor(destRepoLocation.toURI(), null, null, null);
+			destinationDescriptor.setKind("artifact");
+			app.addDestination(destinationDescriptor);
+			app.setIncremental(true);
+			try {
+				app.run(null);
+			} catch (Exception e) {
+				// the missing artifact is reported
+			}
+
+			getArtifactRepositoryManager().removeRepository(destRepoLocation.toURI());
+			SimpleArtifactRepository destination = (SimpleArtifactRepository) getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null);
+			IArtifactDescriptor[] descriptors = destination.getArtifactDescriptors(key);
+			assertEquals("2.1", 1, descriptors.length);
+			assertEquals("2.2", md5, descriptors[0].getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+			assertEquals("2.3", md5, computeMD5(destination.getArtifactFile(key)));
+		} finally {
+			getArtifactRepositoryManager().removeRepository(source.toURI());
+			delete(source);
+		}
+	}
+
+	/**
+	 * Tests an incremental metadata mirror adding the IUs missing from the destination and removing
+	 * those gone from the source
+	 */
+	public void testIncrementalMetadataMirrorRemoveDeleted() throws Exception {
+		try {
+			runIncrementalMirrorApplication("1.0", sourceRepoLocation, destRepoLocation, false, "metadata");
+			runIncrementalMirrorApplication("1.1", sourceRepo3Location, destRepoLocation, false, "metadata");
+			assertContentEquals("1.2", getMetadataRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null), getMetadataRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+			getMetadataRepositoryManager().removeRepository(destRepoLocation.toURI());
+
+			// the yetanotherfeature IUs are gone from the source
+			runIncrementalMirrorApplication("2.0", sourceRepoLocation, destRepoLocation, true, "metadata");
+			IMetadataRepository destination = getMetadataRepositoryManager().loadRepository(destRepoLocation.toURI(), null);
+			assertContentEquals("2.1", getMetadataRepositoryManager().loadRepository(sourceRepoLocation.toURI(), null), destination);
+			assertTrue("2.2", destination.query(QueryUtil.createIUQuery("yetanotherplugin"), null).isEmpty());
+		} finally {
+			getMetadataRepositoryManager().removeRepository(destRepoLocation.toURI());
+			getMetadataRepositoryManager().removeRepository(sourceRepoLocation.toURI());
+			getMetadataRepositoryManager().removeRepository(sourceRepo3Location.toURI());
+		}
+	}
+
+	private static void setProperty(SimpleArtifactRepository repository, IArtifactKey key, String name, String value) {
+		IArtifactDescriptor[] descriptors = repository.getArtifactDescriptors(key);
+		for (int i = 0; i < descriptors.length; i++)
+			((ArtifactDescriptor) descriptors[i]).setProperty(name, value);
+		repository.save();
+	}
+
+	private static String computeMD5(File file) throws Exception {
+		MessageDigest md5 = MessageDigest.getInstance("MD5");
+		InputStream input = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				md5.update(buffer, 0, read);
+		} finally {
+			input.close();
+		}
+		StringBuffer result = new StringBuffer();
+		byte[] digest = md5.digest();
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				result.append('0');
+			result.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return result.toString();
+	}
+
 	/**
 	 * Verifies that the mirror application executes processing steps correctly
 	 */
@@ -185,6 +185,32 @@ public class OSGiVersionTest extends VersionTesting {
 
 	}
 
+	public void testSharedInstances() {
+		Version v = Version.parseVersion("1.2.3.qualifier");
+		assertSame("the same version string gives the same instance", v, Version.parseVersion(" 1.2.3.qualifier "));
+		assertSame("leading zeros give the same instance", v, Version.parseVersion("01.02.03.qualifier"));
+		assertSame("created versions are shared with parsed ones", v, Version.createOSGi(1, 2, 3, "qualifier"));
+		assertSame("a version without qualifier is shared", Version.parseVersion("1.2"), Version.createOSGi(1, 2, 0));
+		assertSame("0.0.0 is the empty version", Version.emptyVersion, Version.parseVersion("0.0"));
+		assertSame("zzz is the maximum qualifier", Version.createOSGi(1, 0, 0, "zzz"), Version.parseVersion("1.0.0.zzz"));
+		assertTrue("zzz is greater than any other qualifier", Version.parseVersion("1.0.0.zzz").compareTo(Version.parseVersion("1.0.0.zzzz")) > 0);
+	}
+
+	public void testLargeSegments() {
+		Version max = Version.parseVersion("2147483647.0.0");
+		Version v = Version.parseVersion("1.0.0");
+		assertTrue("2147483647 is the largest segment", max.compareTo(v) > 0);
+		assertTrue("2147483647 is the largest segment", v.compareTo(max) < 0);
+		assertEquals("2147483647.2147483647.2147483647", Version.parseVersion("2147483647.2147483647.2147483647").toString());
+	}
+
+	public void testCompareWithRaw() {
+		Version v = Version.parseVersion("1.2.3.a");
+		assertEquals("same as raw", 0, v.compareTo(Version.parseVersion("raw:1.2.3.'a'")));
+		assertTrue("less than a longer raw version", v.compareTo(Version.parseVersion("raw:1.2.3.'a'.1")) < 0);
+		assertTrue("greater than a shorter raw version", v.compareTo(Version.parseVersion("raw:1.2.3")) > 0);
+	}
+
 	public void testVersionCompare() {
 		// should parse without exception
 		Version v1 = Version.parseVersion("1");
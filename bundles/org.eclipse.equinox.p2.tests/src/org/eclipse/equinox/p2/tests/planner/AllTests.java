@@ -78,6 +78,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(GreedyRequirement.class);
 		suite.addTestSuite(InclusionRuleTest.class);
 		suite.addTestSuite(InclusionRuleTest2.class);
+		suite.addTestSuite(IncrementalPlanningTest.class);
 		suite.addTestSuite(IUProperties.class);
 		suite.addTestSuite(IUPropertyRemoval.class);
 		suite.addTestSuite(IUWithFilter.class);
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests that planning with a reused encoding gives the same results as planning from scratch.
+ */
+public class IncrementalPlanningTest extends AbstractProvisioningTest {
+	private IInstallableUnit a1;
+	private IInstallableUnit b1;
+	private IInstallableUnit c1;
+	private IInstallableUnit d1;
+	private IProfile profile;
+	private IPlanner planner;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		b1 = createIU("B", Version.create("1.0.0"), true);
+		d1 = createIU("D", Version.create("1.0.0"), true);
+		a1 = createIU("A", Version.create("1.0.0"), createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "B", new VersionRange("[1.0.0, 3.0.0)")));
+		c1 = createIU("C", Version.create("1.0.0"), createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "D", new VersionRange("[1.0.0, 2.0.0)")));
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, b1, c1, d1});
+
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+	}
+
+	private ProvisioningContext createIncrementalContext() {
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(SimplePlanner.INCREMENTAL, Boolean.TRUE.toString());
+		return context;
+	}
+
+	public void testAddRoot() {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {a1});
+		IProvisioningPlan plan = planner.getProvisioningPlan(req, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan.getStatus().getSeverity());
+		assertInstallOperand(plan, a1);
+		assertInstallOperand(plan, b1);
+		assertNoOperand(plan, d1);
+
+		ProfileChangeRequest req2 = new ProfileChangeRequest(profile);
+		req2.addInstallableUnits(new IInstallableUnit[] {a1, c1});
+		IProvisioningPlan plan2 = planner.getProvisioningPlan(req2, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan2.getStatus().getSeverity());
+		assertInstallOperand(plan2, a1);
+		assertInstallOperand(plan2, b1);
+		assertInstallOperand(plan2, c1);
+		assertInstallOperand(plan2, d1);
+	}
+
+	public void testNewMatchInvalidatesEncoding() {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {a1});
+		IProvisioningPlan plan = planner.getProvisioningPlan(req, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan.getStatus().getSeverity());
+		assertInstallOperand(plan, b1);
+
+		//A newer B now satisfies the requirement of A and must be picked up instead of the reused encoding of A
+		IInstallableUnit b2 = createIU("B", Version.create("2.0.0"), true);
+		createTestMetdataRepository(new IInstallableUnit[] {b2});
+
+		IProvisioningPlan plan2 = planner.getProvisioningPlan(req, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan2.getStatus().getSeverity());
+		assertInstallOperand(plan2, a1);
+		assertInstallOperand(plan2, b2);
+		assertNoOperand(plan2, b1);
+	}
+
+	public void testUnsatisfiableAfterReuse() {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {c1});
+		assertEquals(IStatus.OK, planner.getProvisioningPlan(req, createIncrementalContext(), null).getStatus().getSeverity());
+
+		IInstallableUnit e1 = createIU("E", Version.create("1.0.0"), createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "D", new VersionRange("[2.0.0, 3.0.0)")));
+		createTestMetdataRepository(new IInstallableUnit[] {e1});
+		ProfileChangeRequest req2 = new ProfileChangeRequest(profile);
+		req2.addInstallableUnits(new IInstallableUnit[] {c1, e1});
+		assertEquals(IStatus.ERROR, planner.getProvisioningPlan(req2, createIncrementalContext(), null).getStatus().getSeverity());
+	}
+}
@@ -30,6 +30,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(EquinoxExecutableActionTest.class);
 		suite.addTestSuite(EquinoxLauncherCUActionTest.class);
 		suite.addTestSuite(FeaturesActionTest.class);
+		suite.addTestSuite(FingerprintCacheTest.class);
 		suite.addTestSuite(JREActionTest.class);
 		suite.addTestSuite(LocalizationTests.class);
 		suite.addTestSuite(LocalUpdateSiteActionTest.class);
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.publisher;
+
+import java.io.File;
+import java.util.Collections;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.publisher.FingerprintCache;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.publisher.*;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
+import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class FingerprintCacheTest extends AbstractProvisioningTest {
+	private File folder;
+	private File input;
+	private IVersionedId bundleId = new VersionedId("a.bundle", Version.createOSGi(1, 0, 0));
+	private IVersionedId fragmentId = new VersionedId("a.bundle.translated_host", Version.createOSGi(1, 0, 0));
+	private IArtifactKey key = new ArtifactKey("osgi.bundle", "a.bundle", Version.createOSGi(1, 0, 0));
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+		input = new File(folder, "a.bundle_1.0.0.jar");
+		writeBuffer(input, new StringBuffer("content"));
+	}
+
+	protected void tearDown() throws Exception {
+		delete(folder);
+		super.tearDown();
+	}
+
+	private void record(FingerprintCache cache) throws Exception {
+		cache.put(input, null, "dir", Collections.singletonList(bundleId), Collections.singletonList(fragmentId), Collections.singletonList(key));
+		cache.save();
+	}
+
+	public void testUnchangedInputIsFound() throws Exception {
+		record(new FingerprintCache(folder));
+
+		FingerprintCache.Entry entry = new FingerprintCache(folder).getUnchanged(input);
+		assertNotNull("1.0", entry);
+		assertEquals("1.1", Collections.singletonList(bundleId), entry.getRootIUs());
+		assertEquals("1.2", Collections.singletonList(fragmentId), entry.getNonRootIUs());
+		assertEquals("1.3", Collections.singletonList(key), entry.getArtifacts());
+		assertEquals("1.4", "dir", entry.getAdvice());
+	}
+
+	public void testChangedInputIsNotFound() throws Exception {
+		record(new FingerprintCache(folder));
+
+		writeBuffer(input, new StringBuffer("changed content"));
+		assertNull(new FingerprintCache(folder).getUnchanged(input));
+	}
+
+	public void testTouchedInputWithSameContentIsFound() throws Exception {
+		record(new FingerprintCache(folder));
+
+		assertTrue("1.0", input.setLastModified(input.lastModified() - 10000));
+		assertNotNull("1.1", new FingerprintCache(folder).getUnchanged(input));
+	}
+
+	public void testOnlyInputsSeenAreSaved() throws Exception {
+		record(new FingerprintCache(folder));
+
+		// a run that did not publish the input forgets it
+		new FingerprintCache(folder).save();
+		assertNull("1.0", new FingerprintCache(folder).getUnchanged(input));
+
+		FingerprintCache cache = new FingerprintCache(folder);
+		record(cache);
+		cache = new FingerprintCache(folder);
+		cache.reuse(input, cache.getUnchanged(input));
+		cache.save();
+		assertNotNull("1.1", new FingerprintCache(folder).getUnchanged(input));
+		assertEquals("1.2", 1, cache.getReusedCount());
+	}
+
+	/*
+	 * Publish features and bundles, change a feature and a bundle, and publish them again
+	 */
+	public void testIncrementalPublishing() throws Exception {
+		File features = new File(folder, "features");
+		File plugins = new File(folder, "plugins");
+		writeFeature(new File(features, "f"), "false");
+		writeBundle(new File(plugins, "b1"), "b1", "1.0.0");
+		writeBundle(new File(plugins, "b2"), "b2", "1.0.0");
+		writeBundle(new File(plugins, "b3"), "b3", "1.0.0");
+		File repository = new File(folder, "repository");
+		IMetadataRepository metadataRepository = createMetadataRepository(repository.toURI(), null);
+		IArtifactRepository artifactRepository = createArtifactRepository(repository.toURI(), null);
+
+		publish(features, plugins, repository, metadataRepository, artifactRepository);
+		IInstallableUnit b1 = getIU(metadataRepository, "b1");
+		IInstallableUnit b2 = getIU(metadataRepository, "b2");
+		assertFalse("1.0", isZipped(b1));
+		assertNotNull("1.1", getIU(metadataRepository, "b3"));
+		assertNotNull("1.2", getIU(metadataRepository, "f.feature.group"));
+
+		// the feature now unpacks b1 and b3 has a new version
+		writeFeature(new File(features, "f"), "true");
+		writeBundle(new File(plugins, "b3"), "b3", "2.0.0.v2");
+		FingerprintCache cache = publish(features, plugins, repository, metadataRepository, artifactRepository);
+
+		assertEquals("2.0", 1, cache.getReusedCount());
+		assertSame("2.1", b2, getIU(metadataRepository, "b2"));
+		assertTrue("2.2", artifactRepository.contains(BundlesAction.createBundleArtifactKey("b2", "1.0.0")));
+
+		IInstallableUnit newB1 = getIU(metadataRepository, "b1");
+		assertNotSame("3.0", b1, newB1);
+		assertTrue("3.1", isZipped(newB1));
+		assertEquals("3.2", 1, metadataRepository.query(QueryUtil.createIUQuery("b1"), null).toUnmodifiableSet().size());
+
+		assertTrue("4.0", metadataRepository.query(QueryUtil.createIUQuery("b3", Version.create("1.0.0")), null).isEmpty());
+		assertFalse("4.1", artifactRepository.contains(BundlesAction.createBundleArtifactKey("b3", "1.0.0")));
+		assertFalse("4.2", metadataRepository.query(QueryUtil.createIUQuery("b3", Version.create("2.0.0.v2")), null).isEmpty());
+		assertTrue("4.3", artifactRepository.contains(BundlesAction.createBundleArtifactKey("b3", "2.0.0.v2")));
+
+		assertNotNull("5.0", getIU(metadataRepository, "f.feature.group"));
+		assertTrue("5.1", artifactRepository.contains(FeaturesAction.createFeatureArtifactKey("f", "1.0.0")));
+	}
+
+	private FingerprintCache publish(File features, File plugins, File repository, IMetadataRepository metadataRepository, IArtifactRepository artifactRepository) throws Exception {
+		PublisherInfo info = new PublisherInfo();
+		info.setMetadataRepository(metadataRepository);
+		info.setArtifactRepository(artifactRepository);
+		info.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_PUBLISH);
+		FingerprintCache cache = new FingerprintCache(repository);
+		FeaturesAction featuresAction = new FeaturesAction(new File[] {features});
+		featuresAction.setFingerprintCache(cache);
+		BundlesAction bundlesAction = new BundlesAction(new File[] {plugins});
+		bundlesAction.setFingerprintCache(cache);
+		IStatus status = new Publisher(info).publish(new IPublisherAction[] {featuresAction, bundlesAction}, new NullProgressMonitor());
+		assertTrue(status.getMessage(), status.isOK());
+		cache.save();
+		return cache;
+	}
+
+	private void writeFeature(File location, String unpack) throws Exception {
+		delete(location);
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		buffer.append("<feature id=\"f\" version=\"1.0.0\">\n");
+		buffer.append("\t<plugin id=\"b1\" version=\"1.0.0\" unpack=\"" + unpack + "\"/>\n");
+		buffer.append("</feature>\n");
+		writeBuffer(new File(location, "feature.xml"), buffer);
+	}
+
+	private void writeBundle(File location, String id, String version) throws Exception {
+		delete(location);
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("Manifest-Version: 1.0\n");
+		buffer.append("Bundle-ManifestVersion: 2\n");
+		buffer.append("Bundle-SymbolicName: " + id + "\n");
+		buffer.append("Bundle-Version: " + version + "\n");
+		writeBuffer(new File(location, "META-INF/MANIFEST.MF"), buffer);
+	}
+
+	private boolean isZipped(IInstallableUnit iu) {
+		for (ITouchpointData data : iu.getTouchpointData())
+			if (data.getInstruction("zipped") != null)
+				return true;
+		return false;
+	}
+}
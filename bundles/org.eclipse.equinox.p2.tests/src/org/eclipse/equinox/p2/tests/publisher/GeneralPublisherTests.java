@@ -13,10 +13,18 @@ package org.eclipse.equinox.p2.tests.publisher;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
+import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.internal.p2.publisher.QuotedTokenizer;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.ProductFile;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAndBundlesPublisherApplication;
 import org.eclipse.equinox.p2.tests.StringBufferStream;
 
@@ -114,4 +122,94 @@ public class GeneralPublisherTests extends TestCase {
 		assertEquals("d", tokenizer.nextToken());
 		assertFalse(tokenizer.hasMoreTokens());
 	}
+
+	public void testConcurrentIndependentActions() {
+		final CountDownLatch started = new CountDownLatch(2);
+		IPublisherAction[] actions = new IPublisherAction[2];
+		for (int i = 0; i < actions.length; i++) {
+			final String id = "iu" + i;
+			actions[i] = new TestConcurrentAction(new String[0], new String[] {id}) {
+				public IStatus perform(IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor) {
+					started.countDown();
+					try {
+						// only returns true if the other action is running at the same time
+						if (!started.await(10, TimeUnit.SECONDS))
+							return new Status(IStatus.ERROR, "test", "actions did not run concurrently");
+					} catch (InterruptedException e) {
+						return Status.CANCEL_STATUS;
+					}
+					results.addIU(createIU(id), IPublisherResult.ROOT);
+					return Status.OK_STATUS;
+				}
+			};
+		}
+		PublisherResult results = new PublisherResult();
+		Publisher publisher = new Publisher(new PublisherInfo(), results);
+		publisher.setParallelism(2);
+		IStatus status = publisher.publish(actions, new NullProgressMonitor());
+		assertTrue("1.0", status.isOK());
+		assertNotNull("1.1", results.getIU("iu0", IPublisherResult.ROOT));
+		assertNotNull("1.2", results.getIU("iu1", IPublisherResult.ROOT));
+	}
+
+	public void testConcurrentDependentActionsRunInOrder() {
+		IPublisherAction producer = new TestConcurrentAction(new String[0], new String[] {"kind"}) {
+			public IStatus perform(IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor) {
+				try {
+					// give a wrongly scheduled consumer the time to run first
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+				results.addIU(createIU("produced"), IPublisherResult.NON_ROOT);
+				return Status.OK_STATUS;
+			}
+		};
+		IPublisherAction consumer = new TestConcurrentAction(new String[] {"kind"}, new String[0]) {
+			public IStatus perform(IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor) {
+				if (results.getIU("produced", null) == null)
+					return new Status(IStatus.ERROR, "test", "consumer ran before producer");
+				results.addIU(createIU("consumed"), IPublisherResult.ROOT);
+				return Status.OK_STATUS;
+			}
+		};
+		// an action without declarations waits for everything before it
+		IPublisherAction barrier = new IPublisherAction() {
+			public IStatus perform(IPublisherInfo info, IPublisherResult results, IProgressMonitor monitor) {
+				if (results.getIU("consumed", null) == null)
+					return new Status(IStatus.ERROR, "test", "barrier ran before consumer");
+				return Status.OK_STATUS;
+			}
+		};
+		PublisherResult results = new PublisherResult();
+		Publisher publisher = new Publisher(new PublisherInfo(), results);
+		publisher.setParallelism(3);
+		IStatus status = publisher.publish(new IPublisherAction[] {producer, consumer, barrier}, new NullProgressMonitor());
+		assertTrue("1.0", status.isOK());
+	}
+
+	static IInstallableUnit createIU(String id) {
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId(id);
+		description.setVersion(Version.createOSGi(1, 0, 0));
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	abstract static class TestConcurrentAction implements IConcurrentPublisherAction {
+		private final String[] consumed;
+		private final String[] produced;
+
+		TestConcurrentAction(String[] consumed, String[] produced) {
+			this.consumed = consumed;
+			this.produced = produced;
+		}
+
+		public String[] getConsumedResults() {
+			return consumed;
+		}
+
+		public String[] getProducedResults() {
+			return produced;
+		}
+	}
 }
@@ -32,7 +32,7 @@ import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
 import org.eclipse.equinox.p2.publisher.eclipse.IBundleShapeAdvice;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
-import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.tests.TestActivator;
 import org.eclipse.equinox.p2.tests.TestData;
 import org.eclipse.equinox.p2.tests.publisher.TestArtifactRepository;
@@ -464,4 +464,52 @@ public class BundlesActionTest extends ActionTest {
 		Collection<IInstallableUnit> ius = publisherResult.getIUs("org.eclipse.p2.test.validManifest", IPublisherResult.ROOT);
 		assertThat(ius.size(), is(1));
 	}
+
+	public void testPublishBundlesInParallelWhereOneBundleIsInvalid() throws Exception {
+		File[] bundleLocations = new File(TestActivator.getTestDataFolder(), "bug331683").listFiles();
+		BundlesAction bundlesAction = new BundlesAction(bundleLocations);
+		bundlesAction.setParallelism(4);
+		PublisherResult results = new PublisherResult();
+		IStatus status = bundlesAction.perform(new PublisherInfo(), results, new NullProgressMonitor());
+
+		assertThat(status, errorStatus());
+		assertThat(status.getChildren().length, is(1));
+		assertThat(results.getIUs("org.eclipse.p2.test.validManifest", IPublisherResult.ROOT).size(), is(1));
+	}
+
+	public void testParallelPublishingCreatesSameIUs() throws Exception {
+		File[] files = TEST_BASE.listFiles();
+		File folder = getTempFolder();
+		IArtifactRepository sequentialRepository = createArtifactRepository(new File(folder, "sequential").toURI(), null);
+		PublisherResult sequentialResults = new PublisherResult();
+		assertEquals("1.0", Status.OK_STATUS, new BundlesAction(files).perform(createPublishingInfo(sequentialRepository), sequentialResults, new NullProgressMonitor()));
+
+		IArtifactRepository parallelRepository = createArtifactRepository(new File(folder, "parallel").toURI(), null);
+		BundlesAction bundlesAction = new BundlesAction(files);
+		bundlesAction.setParallelism(4);
+		PublisherResult parallelResults = new PublisherResult();
+		assertEquals("2.0", Status.OK_STATUS, bundlesAction.perform(createPublishingInfo(parallelRepository), parallelResults, new NullProgressMonitor()));
+
+		// the IUs are compared member by member, their equality only looks at the id and version
+		Collection<IInstallableUnit> sequentialIUs = sequentialResults.getIUs(null, null);
+		Collection<IInstallableUnit> parallelIUs = parallelResults.getIUs(null, null);
+		assertEquals("3.0", sequentialIUs.toArray(new IInstallableUnit[sequentialIUs.size()]), parallelIUs.toArray(new IInstallableUnit[parallelIUs.size()]));
+		// the descriptors are added in the same order
+		assertEquals("3.1", getDescriptors(sequentialRepository), getDescriptors(parallelRepository));
+		assertContentEquals("3.2", sequentialRepository, parallelRepository);
+	}
+
+	private static PublisherInfo createPublishingInfo(IArtifactRepository repository) {
+		PublisherInfo info = new PublisherInfo();
+		info.setArtifactRepository(repository);
+		info.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_PUBLISH);
+		return info;
+	}
+
+	private static List<IArtifactDescriptor> getDescriptors(IArtifactRepository repository) {
+		List<IArtifactDescriptor> result = new ArrayList<IArtifactDescriptor>();
+		for (Iterator<IArtifactDescriptor> iterator = repository.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).iterator(); iterator.hasNext();)
+			result.add(iterator.next());
+		return result;
+	}
 }
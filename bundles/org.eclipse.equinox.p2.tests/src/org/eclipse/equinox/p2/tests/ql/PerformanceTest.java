@@ -283,8 +283,10 @@ public class PerformanceTest extends AbstractProvisioningTest {
 				"$0.traverse(set(), _, { cache, parent | parent.requirements.unique(cache).select(rc | rc.filter == null || $1 ~= rc.filter).collect(rc | everything.select(iu | iu ~= rc)).flatten()})", roots, envIU);
 
 		long sliceTime = 0;
+		long parallelSliceTime = 0;
 		long traverseTime = 0;
 		IQueryable slice = null;
+		IQueryable parallelSlice = null;
 		for (int idx = 0; idx < 100; ++idx) {
 			long startTime = System.currentTimeMillis();
 			r = repo.query(query, new NullProgressMonitor());
@@ -295,6 +297,12 @@ public class PerformanceTest extends AbstractProvisioningTest {
 			Slicer slicer = new Slicer(new QueryableArray(gatherAvailableInstallableUnits(repo)), env, false);
 			slice = slicer.slice(roots, new NullProgressMonitor());
 			sliceTime += (System.currentTimeMillis() - startTime);
+
+			startTime = System.currentTimeMillis();
+			Slicer parallelSlicer = new Slicer(new QueryableArray(gatherAvailableInstallableUnits(repo)), env, false);
+			parallelSlicer.setParallelism(Runtime.getRuntime().availableProcessors());
+			parallelSlice = parallelSlicer.slice(roots, new NullProgressMonitor());
+			parallelSliceTime += (System.currentTimeMillis() - startTime);
 		}
 		// Check the size of the last slice to verify that it's the same as the traverse size
 		r = slice.query(new MatchQuery() {
@@ -303,9 +311,14 @@ public class PerformanceTest extends AbstractProvisioningTest {
 			}
 		}, new NullProgressMonitor());
 		assertEquals(queryResultSize(r), 411);
+		// The parallel slice must contain exactly the same IUs
+		IQueryResult parallelResult = parallelSlice.query(QueryUtil.createIUAnyQuery(), new NullProgressMonitor());
+		assertEquals(r.toUnmodifiableSet(), parallelResult.toUnmodifiableSet());
 
 		System.out.print("100 * Slicing took: ");
 		System.out.println(sliceTime);
+		System.out.print("100 * Parallel slicing took: ");
+		System.out.println(parallelSliceTime);
 		System.out.print("100 * Indexed Traverse expression took: ");
 		System.out.println(traverseTime);
 		System.out.println();
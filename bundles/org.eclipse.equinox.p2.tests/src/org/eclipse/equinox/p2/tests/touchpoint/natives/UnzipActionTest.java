@@ -10,8 +10,9 @@ package org.eclipse.equinox.p2.tests.touchpoint.natives;
 
 import java.io.*;
 import java.util.*;
-import org.eclipse.equinox.internal.p2.touchpoint.natives.IBackupStore;
-import org.eclipse.equinox.internal.p2.touchpoint.natives.NativeTouchpoint;
+import java.util.zip.*;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.touchpoint.natives.*;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.actions.ActionConstants;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.actions.UnzipAction;
 import org.eclipse.equinox.p2.engine.IProfile;
@@ -288,6 +289,87 @@ public class UnzipActionTest extends AbstractProvisioningTest {
 		testUnzip(parameters, getTempFolder(), new String[] {a, b}, new String[] {c});
 	}
 
+	public void testParallelUnzipMatchesStream() throws IOException {
+		File zipFile = new File(getTempFolder(), "parallel.zip");
+		long time = 1262304000000L; // 2010-01-01, a multiple of the 2 second zip time resolution
+		ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			for (int i = 0; i < 20; i++) {
+				ZipEntry dir = new ZipEntry("dir" + i + "/");
+				dir.setTime(time);
+				zipOut.putNextEntry(dir);
+				zipOut.closeEntry();
+				for (int j = 0; j < 5; j++) {
+					ZipEntry entry = new ZipEntry("dir" + i + "/file" + j + ".txt");
+					entry.setTime(time + (i * 5 + j) * 2000L);
+					zipOut.putNextEntry(entry);
+					// some of the entries are larger than the copy buffer
+					int size = j == 0 ? 300 * 1024 + i : i * 100 + j;
+					for (int k = 0; k < size; k++)
+						zipOut.write('a' + (k + i + j) % 26);
+					zipOut.closeEntry();
+				}
+			}
+		} finally {
+			zipOut.close();
+		}
+
+		File streamFolder = new File(getTempFolder(), "stream");
+		InputStream in = new FileInputStream(zipFile);
+		File[] streamFiles;
+		try {
+			streamFiles = Util.unzipStream(in, zipFile.length(), streamFolder, null, null, null, null, "", new NullProgressMonitor());
+		} finally {
+			in.close();
+		}
+
+		File parallelFolder = new File(getTempFolder(), "parallel");
+		// an existing file is backed up before it is replaced
+		File replaced = new File(parallelFolder, "dir3/file1.txt");
+		writeToFile(replaced, "original");
+		BackupStore store = new BackupStore(null, "unzip");
+		File[] parallelFiles;
+		ZipFile zip = new ZipFile(zipFile);
+		try {
+			parallelFiles = new ZipExtractor(zip, parallelFolder, null, null, null, store, 4).extract();
+		} finally {
+			zip.close();
+		}
+
+		assertEquals(streamFiles.length, parallelFiles.length);
+		for (int i = 0; i < streamFiles.length; i++) {
+			File expected = streamFiles[i];
+			File actual = parallelFiles[i];
+			assertEquals(getRelativePath(streamFolder, expected), getRelativePath(parallelFolder, actual));
+			assertEquals(actual.getPath(), expected.isDirectory(), actual.isDirectory());
+			if (!expected.isDirectory()) {
+				assertEquals(actual.getPath(), expected.lastModified(), actual.lastModified());
+				assertTrue(actual.getPath(), Arrays.equals(getContent(expected), getContent(actual)));
+			}
+		}
+
+		store.restore();
+		assertEquals("original", new String(getContent(replaced)));
+	}
+
+	private static String getRelativePath(File folder, File file) {
+		return file.getPath().substring(folder.getPath().length());
+	}
+
+	private static byte[] getContent(File file) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				content.write(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return content.toByteArray();
+	}
+
 	private void testUnzip(Map<String, String> params, File installFolder, String[] shoudlExistNames, String[] shoudlNotExistNames) {
 
 		ArrayList<File> shoudlExist = new ArrayList<File>();
@@ -17,8 +17,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.frameworkadmin.BundleInfo;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.engine.Phase;
 import org.eclipse.equinox.internal.provisional.frameworkadmin.FrameworkAdminRuntimeException;
+import org.eclipse.equinox.internal.provisional.frameworkadmin.Manipulator;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.engine.IProfile;
@@ -35,6 +38,11 @@ public class EclipseTouchpoint extends Touchpoint {
 	public static final String PARM_IU = "iu"; //$NON-NLS-1$
 	public static final String PARM_ARTIFACT = "artifact"; //$NON-NLS-1$
 	public static final String PARM_ARTIFACT_LOCATION = "artifact.location"; //$NON-NLS-1$
+	/**
+	 * The bundles installed by an operand performed at the same time as other operands. They are
+	 * added to the configuration when the operand completes, so in the order of the operands.
+	 */
+	public static final String PARM_INSTALLED_BUNDLES = "installedBundles"; //$NON-NLS-1$
 	private static final Object PARM_AGENT = "agent"; //$NON-NLS-1$
 
 	private static final String NATIVE_TOUCHPOINT_ID = "org.eclipse.equinox.p2.touchpoint.natives"; //$NON-NLS-1$
@@ -194,6 +202,20 @@ public class EclipseTouchpoint extends Touchpoint {
 			if (fileLocation != null && fileLocation.exists())
 				parameters.put(PARM_ARTIFACT_LOCATION, fileLocation.getAbsolutePath());
 		}
+		if (Boolean.parseBoolean((String) parameters.get(Phase.PARM_CONCURRENT)))
+			parameters.put(PARM_INSTALLED_BUNDLES, new ArrayList<BundleInfo>());
+		return Status.OK_STATUS;
+	}
+
+	public IStatus completeOperand(IProfile profile, Map<String, Object> parameters) {
+		@SuppressWarnings("unchecked")
+		List<BundleInfo> installedBundles = (List<BundleInfo>) parameters.get(PARM_INSTALLED_BUNDLES);
+		if (installedBundles != null && !installedBundles.isEmpty()) {
+			Manipulator manipulator = (Manipulator) parameters.get(PARM_MANIPULATOR);
+			for (BundleInfo bundleInfo : installedBundles)
+				manipulator.getConfigData().addBundle(bundleInfo);
+			installedBundles.clear();
+		}
 		return Status.OK_STATUS;
 	}
 
@@ -9,11 +9,11 @@
 package org.eclipse.equinox.internal.p2.touchpoint.eclipse.actions;
 
 import java.io.File;
-import java.util.Collection;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.eclipse.equinox.internal.p2.engine.IIndependentAction;
 import org.eclipse.equinox.internal.p2.touchpoint.eclipse.EclipseTouchpoint;
 import org.eclipse.equinox.internal.p2.touchpoint.eclipse.Util;
 import org.eclipse.equinox.internal.provisional.frameworkadmin.Manipulator;
@@ -25,7 +25,7 @@ import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.osgi.util.NLS;
 
-public class InstallBundleAction extends ProvisioningAction {
+public class InstallBundleAction extends ProvisioningAction implements IIndependentAction {
 	public static final String ID = "installBundle"; //$NON-NLS-1$
 
 	public IStatus execute(Map<String, Object> parameters) {
@@ -36,6 +36,11 @@ public class InstallBundleAction extends ProvisioningAction {
 		return UninstallBundleAction.uninstallBundle(parameters);
 	}
 
+	public String[] getTargets(Map<String, Object> parameters) {
+		// the configuration is only written when the profile is committed
+		return new String[0];
+	}
+
 	public static IStatus installBundle(Map<String, Object> parameters) {
 		IProvisioningAgent agent = (IProvisioningAgent) parameters.get(ActionConstants.PARM_AGENT);
 		IProfile profile = (IProfile) parameters.get(ActionConstants.PARM_PROFILE);
@@ -72,7 +77,14 @@ public class InstallBundleAction extends ProvisioningAction {
 		BundleInfo bundleInfo = Util.createBundleInfo(bundleFile, iu);
 		if (bundleInfo == null)
 			return Util.createError(NLS.bind(Messages.failed_bundleinfo, iu));
-		manipulator.getConfigData().addBundle(bundleInfo);
+		// other operands of the phase may be performed at the same time, the touchpoint
+		// then adds the bundle when the operand completes so that the order is kept
+		@SuppressWarnings("unchecked")
+		List<BundleInfo> installedBundles = (List<BundleInfo>) parameters.get(EclipseTouchpoint.PARM_INSTALLED_BUNDLES);
+		if (installedBundles != null)
+			installedBundles.add(bundleInfo);
+		else
+			manipulator.getConfigData().addBundle(bundleInfo);
 
 		return Status.OK_STATUS;
 	}
@@ -14,11 +14,13 @@ package org.eclipse.equinox.internal.p2.touchpoint.natives;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.Map.Entry;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -39,6 +41,8 @@ import org.eclipse.osgi.util.NLS;
  * Use {@link #backupCopy(File)} to
  * move the file out of harms way, but keep a copy of it in the original location.
  * The methods {@link #backupAll(File)} and {@link #backupCopyAll(File)} backs up an entire structure.
+ * When nothing under a directory has been backed up yet, {@link #backupAll(File)} moves the directory
+ * to the store with a single rename instead of moving its files one by one.
  * 
  * When backup is finished - the user should either call {@link #restore()} to put all 
  * of the files back, or call {@link #discard()} to remove all of the backed up "copies".
@@ -66,6 +70,10 @@ import org.eclipse.osgi.util.NLS;
  * will be created with permissions in a platform specific way (on UN*IX they will inherit the permissions 
  * of the parent directory).
  * 
+ * The number of renames and the number of bytes copied are available from {@link #getRenameCount()}
+ * and {@link #getCopiedBytes()}, and are traced when the store is restored or discarded if the
+ * <code>org.eclipse.equinox.p2.core/engine/backupstore</code> debug option is set.
+ * 
  * <h3>Checkpointing</h3> 
  * Checkpointing (i.e. to be able to rollback to a particular point) can be implemented by using
  * multiple instances of BackupStore. The client code will need to remember the individual order
@@ -83,6 +91,12 @@ import org.eclipse.osgi.util.NLS;
  * "wrong use" can not be differentiated from I/O errors (like a "file not found" as this could
  * be caused by an entire disk disappearing - in these case an {@link IOException} is thrown.
  * 
+ * <h3>Manifest</h3>
+ * Every backup is recorded in a manifest kept by the store. {@link #restore()} puts the recorded files and
+ * directories back in the reverse order of their backup and does not walk the backup directory, except to
+ * merge a directory that was moved as a whole with a directory that has been created since in its place.
+ * Files added to the backup directory by others are not restored.
+ * 
  * <h3>Implementation Note</h3>
  * The backup root directory will contain folders that reflects file system roots. These are encoded using 
  * "_" for the UNI*X root directory, "__" for a Windows network mounted directory, and single "drive letter" folders
@@ -125,13 +139,13 @@ public class BackupStore implements IBackupStore {
 	private ServerSocket socket = null;
 
 	/**
-	 * Counter of how many files where backed up. Used as a simple check mechanism if
+	 * Counter of how many files and directories where backed up. Used as a simple check mechanism if
 	 * everything was restored (a guard against manual/external tampering with the backup directories).
 	 */
 	private long backupCounter;
 
 	/**
-	 * Counter of how many files where restored. See {@link #backupCounter}.
+	 * Counter of how many files and directories where restored. See {@link #backupCounter}.
 	 */
 	private long restoreCounter;
 
@@ -142,6 +156,39 @@ public class BackupStore implements IBackupStore {
 
 	private Map<String, String> renamedInPlace = new HashMap<String, String>();
 
+	/**
+	 * The backups in the order they were made.
+	 */
+	private List<ManifestEntry> manifest = new ArrayList<ManifestEntry>();
+
+	/**
+	 * Number of files and directories moved to or from the store by renaming them.
+	 */
+	private long renameCount;
+
+	/**
+	 * Number of bytes copied to or from the store when a file could not be renamed.
+	 */
+	private long copiedBytes;
+
+	/**
+	 * A file or directory in the backup store and the location it is restored to.
+	 */
+	private static class ManifestEntry {
+		final File file;
+		final File buFile;
+		/**
+		 * True if the backup is a directory that was moved as a whole.
+		 */
+		final boolean directory;
+
+		ManifestEntry(File file, File buFile, boolean directory) {
+			this.file = file;
+			this.buFile = buFile;
+			this.directory = directory;
+		}
+	}
+
 	/**
 	 * Generates a BackupStore with a default prefix of ".p2bu" for backup directory and
 	 * probe file. 
@@ -201,6 +248,24 @@ public class BackupStore implements IBackupStore {
 		return backupRoot;
 	}
 
+	/**
+	 * Returns the number of files and directories that were moved to or from this store
+	 * by renaming them.
+	 * @return the number of renames
+	 */
+	public long getRenameCount() {
+		return renameCount;
+	}
+
+	/**
+	 * Returns the number of bytes that were copied to or from this store, either because
+	 * a copy was requested or because a file could not be renamed.
+	 * @return the number of bytes copied
+	 */
+	public long getCopiedBytes() {
+		return copiedBytes;
+	}
+
 	/**
 	 * Backup the file by moving it to the backup store (for later (optional) restore).
 	 * Calling this method with a file that represents a directory is equivalent to calling 
@@ -264,7 +329,8 @@ public class BackupStore implements IBackupStore {
 		if (buFile.getParentFile().exists() && !buFile.getParentFile().isDirectory())
 			throw new IllegalArgumentException(NLS.bind(Messages.BackupStore_file_directory_mismatch, buFile.getParentFile().getAbsolutePath()));
 		if (moveToBackupStore(file, buFile)) {
-			backupCounter++;
+			renameCount++;
+			record(file, buFile, false);
 			return;
 		}
 		// could not move - this can happen because source and target are on different volumes, or
@@ -275,8 +341,8 @@ public class BackupStore implements IBackupStore {
 		if (isEclipseExe(file))
 			renameInPlace(file);
 		else {
-			Util.copyStream(new FileInputStream(file), true, new FileOutputStream(buFile), true);
-			backupCounter++;
+			copy(file, buFile);
+			record(file, buFile, false);
 		}
 		if (file.exists() && !file.delete())
 			throw new IOException(NLS.bind(Messages.BackupStore_can_not_delete_after_copy_0, file));
@@ -307,6 +373,39 @@ public class BackupStore implements IBackupStore {
 		return false;
 	}
 
+	private void record(File file, File buFile, boolean directory) {
+		manifest.add(new ManifestEntry(file, buFile, directory));
+		backupCounter++;
+	}
+
+	/**
+	 * Copies a file through the channels of the files, which lets the operating system
+	 * transfer the content without going through the Java heap.
+	 */
+	private void copy(File source, File target) throws IOException {
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel sourceChannel = in.getChannel();
+				FileChannel targetChannel = out.getChannel();
+				long size = sourceChannel.size();
+				long position = 0;
+				while (position < size) {
+					long transferred = sourceChannel.transferTo(position, size - position, targetChannel);
+					if (transferred <= 0)
+						break; // the file was truncated while copying
+					position += transferred;
+				}
+				copiedBytes += position;
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	protected void renameInPlace(File file) {
 		String newName = file.getAbsolutePath() + getTimeStamp() + BACKUP_FILE_EXTENSION;
 		renamedInPlace.put(file.getAbsolutePath(), newName);
@@ -336,6 +435,8 @@ public class BackupStore implements IBackupStore {
 			return;
 		file = makeParentCanonical(file);
 		if (file.isDirectory()) {
+			if (moveDirectoryToBackup(file))
+				return;
 			File[] files = file.listFiles();
 			if (files != null)
 				for (int i = 0; i < files.length; i++)
@@ -344,6 +445,31 @@ public class BackupStore implements IBackupStore {
 		backup(file);
 	}
 
+	/**
+	 * Moves a directory with everything under it to the backup store with a single rename.
+	 * This is only done when nothing under the directory has been backed up yet.
+	 * 
+	 * @param directory the directory to move
+	 * @return true if the directory was moved, false if it has to be backed up file by file
+	 * @throws ClosedBackupStoreException - if the BackupStore has been closed
+	 */
+	private boolean moveDirectoryToBackup(File directory) {
+		if (closed)
+			throw new ClosedBackupStoreException("Can not perform backup()"); //$NON-NLS-1$
+		File buDir = getBackupFile(directory);
+		if (buDir.exists())
+			return false;
+		buDir.getParentFile().mkdirs();
+		if (buDir.getParentFile().exists() && !buDir.getParentFile().isDirectory())
+			throw new IllegalArgumentException(NLS.bind(Messages.BackupStore_file_directory_mismatch, buDir.getParentFile().getAbsolutePath()));
+		// fails across volumes, and on windows when a file in the directory is in use
+		if (!directory.renameTo(buDir) || directory.exists())
+			return false;
+		renameCount++;
+		record(directory, buDir, true);
+		return true;
+	}
+
 	/**
 	 * Backs up a file, or everything under a directory.
 	 * A copy of the backup is left in the original place.
@@ -420,8 +546,8 @@ public class BackupStore implements IBackupStore {
 		// just make a copy - one has to be made in one direction anyway
 		// A renameTo followed by a copy is preferred as it preserves file permissions on the moved file
 		// but it is easier to just copy and keep original.
-		Util.copyStream(new FileInputStream(file), true, new FileOutputStream(buFile), true);
-		backupCounter++;
+		copy(file, buFile);
+		record(file, buFile, false);
 		return true;
 	}
 
@@ -486,13 +612,19 @@ public class BackupStore implements IBackupStore {
 		if (!backupRoot.exists()) {
 			logError(NLS.bind(Messages.BackupStore_missing_backup_directory, backupRoot.getAbsolutePath()));
 			restored = false;
-		} else
-			restoreRoots(new File(backupRoot, backupName), unrestorable);
+		} else {
+			restoreManifest(unrestorable);
+			restoreRenamedFiles(unrestorable);
+		}
 
 		logUnrestorables(unrestorable);
 		if (unrestorable.size() > 0)
 			restored = false;
-		close(restored);
+		try {
+			close(restored);
+		} finally {
+			traceCounters("restored"); //$NON-NLS-1$
+		}
 		closed = true;
 	}
 
@@ -515,6 +647,12 @@ public class BackupStore implements IBackupStore {
 		closeSocket();
 		removeBackups();
 		closed = true;
+		traceCounters("discarded"); //$NON-NLS-1$
+	}
+
+	private void traceCounters(String action) {
+		if (Tracing.DEBUG_BACKUP_STORE)
+			Tracing.debug("Backup store " + backupName + " " + action + ": " + renameCount + " renames, " + copiedBytes + " bytes copied"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 	}
 
 	private void close(boolean fullyRestored) throws IOException {
@@ -584,6 +722,113 @@ public class BackupStore implements IBackupStore {
 		return file.delete();
 	}
 
+	/**
+	 * Restores the backups recorded in the manifest, the latest backup first.
+	 * @param unrestorable collects the backup files that could not be restored
+	 */
+	private void restoreManifest(Set<File> unrestorable) {
+		for (int i = manifest.size() - 1; i >= 0; i--) {
+			ManifestEntry entry = manifest.get(i);
+			if (entry.directory ? restoreDirectory(entry, unrestorable) : restoreFile(entry.file, entry.buFile, unrestorable))
+				restoreCounter++;
+		}
+	}
+
+	private boolean restoreDirectory(ManifestEntry entry, Set<File> unrestorable) {
+		File target = entry.file;
+		if (!entry.buFile.isDirectory()) {
+			unrestorable.add(entry.buFile);
+			return false;
+		}
+		if (!target.exists()) {
+			if (!makeParent(target, entry.buFile, unrestorable))
+				return false;
+			if (entry.buFile.renameTo(target)) {
+				renameCount++;
+				return true;
+			}
+		}
+		// something was created in its place since the backup, or it can not be moved back as a whole
+		if (target.exists() && !target.isDirectory())
+			target.delete();
+		if (!target.isDirectory() && !target.mkdirs()) {
+			unrestorable.add(entry.buFile);
+			return false;
+		}
+		int failures = unrestorable.size();
+		restore(target, entry.buFile, unrestorable);
+		return unrestorable.size() == failures;
+	}
+
+	private boolean restoreFile(File target, File bu, Set<File> unrestorable) {
+		// do not restore the dummies (as they are used to trigger creation of
+		// empty directories and are not wanted in the restored location.
+		if (bu.getName().equals(dummyName)) {
+			if (!bu.isFile()) {
+				unrestorable.add(bu);
+				return false;
+			}
+			File directory = target.getParentFile();
+			if (directory.exists() && !directory.isDirectory())
+				directory.delete();
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				unrestorable.add(bu);
+				return false;
+			}
+			return true;
+		}
+		if (!bu.isFile() || !makeParent(target, bu, unrestorable)) {
+			unrestorable.add(bu);
+			return false;
+		}
+		// if the original was overwritten by something and this file was not
+		// removed, it needs to be deleted now. If it can't be deleted, the
+		// renameTo will fail, and the bu is reported as not restorable.
+		// fullyDelete will remove a directory completely - we are restoring a file so it can 
+		// not be kept.
+		if (target.exists())
+			fullyDelete(target);
+
+		// rename if possible, but must copy if not possible to just rename
+		if (bu.renameTo(target)) {
+			renameCount++;
+			return true;
+		}
+		// did not work to rename, probably because of volume boundaries. Try to copy instead,
+		try {
+			copy(bu, target);
+		} catch (IOException e) {
+			unrestorable.add(bu);
+			return false;
+		}
+		if (!bu.delete()) { // cleanup
+			// could not remove the backup after copy - log, safe to remove manually
+			logWarning(NLS.bind(Messages.BackupStore_can_not_delete_tmp_file, bu.getAbsolutePath()));
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the parent directory of a file to restore, replacing a file that is in the way.
+	 */
+	private boolean makeParent(File target, File bu, Set<File> unrestorable) {
+		File parent = target.getParentFile();
+		if (parent.isDirectory())
+			return true;
+		// ouch, there is a file where we need a directory
+		// that must be deleted.
+		if (parent.exists())
+			parent.delete();
+		if (parent.mkdirs())
+			return true;
+		unrestorable.add(bu);
+		return false;
+	}
+
+	/**
+	 * Merges a directory that was moved to the backup as a whole with the directory
+	 * that has been created in its place since.
+	 */
 	private void restore(File root, File buRoot, Set<File> unrestorable) {
 		File[] children = buRoot.listFiles();
 		if (children == null) { // error - can't read the backup directory
@@ -607,90 +852,9 @@ public class BackupStore implements IBackupStore {
 					}
 				}
 				restore(target, bu, unrestorable);
-			} else {
-				// do not restore the dummies (as they are used to trigger creation of
-				// empty directories and are not wanted in the restored location.
-				if (bu.getName().equals(dummyName)) {
-					restoreCounter++; // count of the restored directory in this case.
-					continue;
-				}
-				// if the original was overwritten by something and this file was not
-				// removed, it needs to be deleted now. If it can't be deleted, the
-				// renameTo will fail, and the bu is reported as not restorable.
-				// fullyDelete will remove a directory completely - we are restoring a file so it can 
-				// not be kept.
-				if (target.exists())
-					fullyDelete(target);
-
-				// rename if possible, but must copy if not possible to just rename
-				if (!bu.renameTo(target)) {
-					// did not work to rename, probably because of volume boundaries. Try to copy instead,
-					try {
-						Util.copyStream(new FileInputStream(bu), true, new FileOutputStream(target), true);
-						restoreCounter++; // consider it restored
-					} catch (FileNotFoundException e) {
-						unrestorable.add(bu);
-						continue;
-					} catch (IOException e) {
-						unrestorable.add(bu);
-						continue;
-					}
-					if (!bu.delete()) { // cleanup
-						// could not remove the backup after copy - log, safe to remove manually
-						logWarning(NLS.bind(Messages.BackupStore_can_not_delete_tmp_file, bu.getAbsolutePath()));
-					}
-				} else
-					restoreCounter++;
-			}
-		}
-	}
-
-	/**
-	 * Restores everything backed up in the buRoot. Responsible for decoding the specially named root
-	 * target directories (i.e. _/, __/, C/, etc.) into the real system names.
-	 * @param buRoot
-	 * @param unrestorable
-	 */
-	private void restoreRoots(File buRoot, Set<File> unrestorable) {
-		File[] children = buRoot.listFiles();
-		if (children == null) { // error - can't read the backup directory
-			unrestorable.add(buRoot);
-			return;
-		}
-		for (int i = 0; i < children.length; i++) {
-			// Names are  root-chars, or drive letters in the root bu directory 
-			String name = children[i].getName();
-			String rName = name;
-			String prefix = ""; //$NON-NLS-1$
-			while (rName.startsWith(ROOTCHAR)) {
-				prefix += File.separator;
-				rName = rName.substring(1);
-			}
-			if (prefix.length() < 1) {
-				// The name is a drive name
-				rName = rName + ":" + File.separator; //$NON-NLS-1$
 			} else
-				rName = prefix + rName;
-			// File root = new File(rName);
-			File bu = new File(buRoot, name);
-			File target = new File(rName);
-			if (!bu.isDirectory()) {
-				// the roots should all be directories - so this can only happen if someone manually
-				// stored files in the backup root - mark them as unrestorable and continue.
-				unrestorable.add(bu);
-				continue;
-			}
-			// the backup roots are system roots, and can not be created - but check root is directory and exists.
-			// (Network drives could have gone away etc).
-			//
-			if (!(target.exists() && target.isDirectory())) {
-				unrestorable.add(bu);
-				continue; // give up on this branch
-			}
-			// then perform a recursive restore
-			restore(target, bu, unrestorable);
+				restoreFile(target, bu, unrestorable);
 		}
-		restoreRenamedFiles(unrestorable);
 	}
 
 	private void restoreRenamedFiles(Set<File> unrestorable) {
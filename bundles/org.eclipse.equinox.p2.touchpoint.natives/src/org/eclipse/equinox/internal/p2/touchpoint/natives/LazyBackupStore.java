@@ -31,50 +31,50 @@ public class LazyBackupStore implements IBackupStore {
 		this.prefix = prefix;
 	}
 
-	public boolean backup(File file) throws IOException {
+	public synchronized boolean backup(File file) throws IOException {
 		loadDelegate();
 		return delegate.backup(file);
 	}
 
-	public boolean backupDirectory(File file) throws IOException {
+	public synchronized boolean backupDirectory(File file) throws IOException {
 		loadDelegate();
 		return delegate.backupDirectory(file);
 	}
 
-	public void discard() {
+	public synchronized void discard() {
 		if (delegate == null)
 			return;
 		delegate.discard();
 	}
 
-	public void restore() throws IOException {
+	public synchronized void restore() throws IOException {
 		if (delegate == null)
 			return;
 		delegate.restore();
 	}
 
-	private void loadDelegate() {
+	private synchronized void loadDelegate() {
 		if (delegate != null)
 			return;
 		delegate = new BackupStore(null, prefix);
 	}
 
-	public String getBackupName() {
+	public synchronized String getBackupName() {
 		loadDelegate();
 		return delegate.getBackupName();
 	}
 
-	public boolean backupCopy(File file) throws IOException {
+	public synchronized boolean backupCopy(File file) throws IOException {
 		loadDelegate();
 		return delegate.backupCopy(file);
 	}
 
-	public void backupCopyAll(File file) throws IOException {
+	public synchronized void backupCopyAll(File file) throws IOException {
 		loadDelegate();
 		delegate.backupCopyAll(file);
 	}
 
-	public void backupAll(File file) throws IOException {
+	public synchronized void backupAll(File file) throws IOException {
 		loadDelegate();
 		delegate.backupAll(file);
 	}
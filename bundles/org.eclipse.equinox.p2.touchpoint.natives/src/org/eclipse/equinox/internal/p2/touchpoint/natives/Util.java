@@ -17,6 +17,7 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
@@ -28,6 +29,75 @@ import org.eclipse.osgi.util.NLS;
 
 public class Util {
 
+	/**
+	 * System property with the number of threads writing the entries of a zip file, 1 to write
+	 * them on the calling thread.
+	 */
+	public static final String PROP_UNZIP_THREADS = "eclipse.p2.unzip.threads"; //$NON-NLS-1$
+
+	/**
+	 * Selects the entries of a zip file to unzip and answers where they go.
+	 */
+	static class EntryNameFilter {
+		private final Pattern pathRegex;
+		private final Collection<Pattern> includeRegexp = new ArrayList<Pattern>();
+		private final Collection<Pattern> excludeRegexp = new ArrayList<Pattern>();
+
+		EntryNameFilter(String path, String[] includePatterns, String[] excludePatterns) {
+			if (path != null && path.trim().length() == 0)
+				path = null;
+			pathRegex = path == null ? null : createAntStylePattern("(" + path + ")(*)"); //$NON-NLS-1$ //$NON-NLS-2$
+			if (includePatterns != null) {
+				for (String pattern : includePatterns) {
+					if (pattern != null) {
+						includeRegexp.add(createAntStylePattern(pattern));
+					}
+				}
+			}
+			if (excludePatterns != null) {
+				for (String pattern : excludePatterns) {
+					if (pattern != null) {
+						excludeRegexp.add(createAntStylePattern(pattern));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the name relative to the output directory of the given entry, or <code>null</code>
+		 * if the entry is not unzipped.
+		 */
+		String getOutputName(String name) {
+			if (pathRegex != null && !pathRegex.matcher(name).matches())
+				return null;
+			boolean unzip = includeRegexp.isEmpty();
+			for (Pattern pattern : includeRegexp) {
+				unzip = pattern.matcher(name).matches();
+				if (unzip)
+					break;
+			}
+			if (unzip && !excludeRegexp.isEmpty()) {
+				for (Pattern pattern : excludeRegexp) {
+					if (pattern.matcher(name).matches()) {
+						unzip = false;
+						break;
+					}
+				}
+			}
+			if (!unzip)
+				return null;
+			if (pathRegex != null) {
+				Matcher matcher = pathRegex.matcher(name);
+				if (matcher.matches()) {
+					name = matcher.group(2);
+					if (name.startsWith("/")) //$NON-NLS-1$
+						name = name.substring(1);
+				}
+			}
+			return name;
+		}
+	}
+
 	public static void log(String message) {
 		LogHelper.log(createError(message));
 	}
@@ -94,6 +164,23 @@ public class Util {
 	 * If a path is specified, the path is consider as entry point in zip, as when the to directory in zip would have been the specified path.
 	 */
 	public static File[] unzipFile(File zipFile, File outputDir, String path, String[] includePatterns, String[] excludePatterns, IBackupStore store, String taskName, IProgressMonitor monitor) throws IOException {
+		ZipFile zip = null;
+		try {
+			zip = new ZipFile(zipFile);
+		} catch (IOException e) {
+			// not readable through its central directory, the stream below reports the problem or copes with it
+		}
+		if (zip != null) {
+			try {
+				int threads = Integer.getInteger(PROP_UNZIP_THREADS, Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
+				return new ZipExtractor(zip, outputDir, path, includePatterns, excludePatterns, store, threads).extract();
+			} catch (IOException e) {
+				// add the file name to the message
+				throw new IOException(NLS.bind(Messages.Util_Error_Unzipping, zipFile, e.getMessage()));
+			} finally {
+				zip.close();
+			}
+		}
 		InputStream in = new FileInputStream(zipFile);
 		try {
 			return unzipStream(in, zipFile.length(), outputDir, path, includePatterns, excludePatterns, store, taskName, monitor);
@@ -130,74 +217,31 @@ public class Util {
 			throw new IOException(Messages.Util_Invalid_Zip_File_Format);
 		}
 
-		if (path != null && path.trim().length() == 0)
-			path = null;
-		Pattern pathRegex = path == null ? null : createAntStylePattern("(" + path + ")(*)"); //$NON-NLS-1$ //$NON-NLS-2$
-
-		Collection<Pattern> includeRegexp = new ArrayList<Pattern>();
-		Collection<Pattern> excludeRegexp = new ArrayList<Pattern>();
-		if (includePatterns != null) {
-			for (String pattern : includePatterns) {
-				if (pattern != null) {
-					includeRegexp.add(createAntStylePattern(pattern));
-				}
-			}
-		}
-		if (excludePatterns != null) {
-			for (String pattern : excludePatterns) {
-				if (pattern != null) {
-					excludeRegexp.add(createAntStylePattern(pattern));
-				}
-			}
-		}
+		EntryNameFilter filter = new EntryNameFilter(path, includePatterns, excludePatterns);
 		ArrayList<File> unzippedFiles = new ArrayList<File>();
 		do {
-			String name = ze.getName();
-			if (pathRegex == null || pathRegex.matcher(name).matches()) {
-				boolean unzip = includeRegexp.isEmpty();
-				for (Pattern pattern : includeRegexp) {
-					unzip = pattern.matcher(name).matches();
-					if (unzip)
-						break;
-				}
-				if (unzip && !excludeRegexp.isEmpty()) {
-					for (Pattern pattern : excludeRegexp) {
-						if (pattern.matcher(name).matches()) {
-							unzip = false;
-							break;
-						}
-					}
-				}
-				if (unzip) {
-					if (pathRegex != null) {
-						Matcher matcher = pathRegex.matcher(name);
-						if (matcher.matches()) {
-							name = matcher.group(2);
-							if (name.startsWith("/")) //$NON-NLS-1$
-								name = name.substring(1);
-						}
-					}
-					File outFile = new File(outputDir, name);
-					unzippedFiles.add(outFile);
-					if (ze.isDirectory()) {
-						outFile.mkdirs();
+			String name = filter.getOutputName(ze.getName());
+			if (name != null) {
+				File outFile = new File(outputDir, name);
+				unzippedFiles.add(outFile);
+				if (ze.isDirectory()) {
+					outFile.mkdirs();
+				} else {
+					if (outFile.exists()) {
+						if (store != null)
+							store.backup(outFile);
+						else
+							outFile.delete();
 					} else {
-						if (outFile.exists()) {
-							if (store != null)
-								store.backup(outFile);
-							else
-								outFile.delete();
-						} else {
-							outFile.getParentFile().mkdirs();
-						}
-						try {
-							copyStream(in, false, new FileOutputStream(outFile), true);
-						} catch (FileNotFoundException e) {
-							// TEMP: ignore this for now in case we're trying to replace
-							// a running eclipse.exe
-						}
-						outFile.setLastModified(ze.getTime());
+						outFile.getParentFile().mkdirs();
+					}
+					try {
+						copyStream(in, false, new FileOutputStream(outFile), true);
+					} catch (FileNotFoundException e) {
+						// TEMP: ignore this for now in case we're trying to replace
+						// a running eclipse.exe
 					}
+					outFile.setLastModified(ze.getTime());
 				}
 			}
 			in.closeEntry();
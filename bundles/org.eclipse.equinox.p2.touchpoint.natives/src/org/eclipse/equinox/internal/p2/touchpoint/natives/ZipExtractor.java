@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.touchpoint.natives;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Unzips a zip file through its central directory. The files that are replaced are first backed
+ * up on the calling thread, then the entries are written on several threads, each copying through
+ * its own direct buffer into the file channel of the output file. The modification times of the
+ * entries are kept.
+ * <p>
+ * The result is the same as with {@link Util#unzipStream(InputStream, long, File, String, String[], String[], IBackupStore, String, org.eclipse.core.runtime.IProgressMonitor)}:
+ * the same entries are selected and for entries with the same name the last one wins.
+ * </p>
+ */
+public class ZipExtractor {
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final ZipFile zip;
+	private final File outputDir;
+	private final Util.EntryNameFilter filter;
+	private final IBackupStore store;
+	private final int threads;
+
+	/**
+	 * @param zip the zip file to unzip, it is not closed
+	 * @param outputDir the directory to unzip into
+	 * @param path the directory in the zip to unzip the content of, or <code>null</code>
+	 * @param includePatterns the entries to unzip, or <code>null</code> for all
+	 * @param excludePatterns the entries not to unzip, or <code>null</code>
+	 * @param store the store to back up replaced files to, or <code>null</code> to delete them
+	 * @param threads the number of threads writing the entries, 1 to write them on the calling thread
+	 */
+	public ZipExtractor(ZipFile zip, File outputDir, String path, String[] includePatterns, String[] excludePatterns, IBackupStore store, int threads) {
+		this.zip = zip;
+		this.outputDir = outputDir;
+		this.filter = new Util.EntryNameFilter(path, includePatterns, excludePatterns);
+		this.store = store;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Unzips the selected entries.
+	 * @return the unzipped files and directories in the order of the entries
+	 */
+	public File[] extract() throws IOException {
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		if (!entries.hasMoreElements())
+			throw new IOException(Messages.Util_Invalid_Zip_File_Format);
+
+		ArrayList<File> unzippedFiles = new ArrayList<File>();
+		Map<File, ZipEntry> directories = new LinkedHashMap<File, ZipEntry>();
+		Map<File, ZipEntry> files = new LinkedHashMap<File, ZipEntry>();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			String name = filter.getOutputName(entry.getName());
+			if (name == null)
+				continue;
+			File outFile = new File(outputDir, name);
+			unzippedFiles.add(outFile);
+			if (entry.isDirectory()) {
+				outFile.mkdirs();
+				directories.put(outFile, entry);
+			} else if (files.put(outFile, entry) == null) {
+				// the backup store is not thread safe, it gets all the replaced files before anything is written
+				if (outFile.exists()) {
+					if (store != null)
+						store.backup(outFile);
+					else
+						outFile.delete();
+				} else {
+					outFile.getParentFile().mkdirs();
+				}
+			}
+		}
+
+		write(files);
+
+		// writing the files changes the times of their directories
+		for (Map.Entry<File, ZipEntry> directory : directories.entrySet())
+			setLastModified(directory.getKey(), directory.getValue());
+		return unzippedFiles.toArray(new File[unzippedFiles.size()]);
+	}
+
+	private void write(Map<File, ZipEntry> files) throws IOException {
+		final Queue<Map.Entry<File, ZipEntry>> queue = new ConcurrentLinkedQueue<Map.Entry<File, ZipEntry>>(files.entrySet());
+		int workers = Math.min(threads, files.size());
+		if (workers <= 1) {
+			write(queue);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(workers);
+			for (int i = 0; i < workers; i++) {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						write(queue);
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> future : futures)
+				getResult(future);
+		} finally {
+			// stop the other writers when one of them failed and wait for the entries they are writing
+			queue.clear();
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*
+	 * Writes entries taken from the queue until it is empty.
+	 */
+	void write(Queue<Map.Entry<File, ZipEntry>> queue) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		Map.Entry<File, ZipEntry> next;
+		while ((next = queue.poll()) != null)
+			write(next.getValue(), next.getKey(), buffer);
+	}
+
+	private void write(ZipEntry entry, File outFile, ByteBuffer buffer) throws IOException {
+		InputStream in = zip.getInputStream(entry);
+		try {
+			FileOutputStream out;
+			try {
+				out = new FileOutputStream(outFile);
+			} catch (FileNotFoundException e) {
+				// TEMP: ignore this for now in case we're trying to replace
+				// a running eclipse.exe
+				return;
+			}
+			try {
+				ReadableByteChannel source = Channels.newChannel(in);
+				FileChannel target = out.getChannel();
+				boolean end = false;
+				while (!end) {
+					// fill the buffer before writing, the channel over the stream reads in small chunks
+					buffer.clear();
+					while (buffer.hasRemaining()) {
+						if (source.read(buffer) == -1) {
+							end = true;
+							break;
+						}
+					}
+					buffer.flip();
+					while (buffer.hasRemaining())
+						target.write(buffer);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		setLastModified(outFile, entry);
+	}
+
+	private static void setLastModified(File file, ZipEntry entry) {
+		long time = entry.getTime();
+		if (time != -1)
+			file.setLastModified(time);
+	}
+
+	private static void getResult(Future<Object> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+}
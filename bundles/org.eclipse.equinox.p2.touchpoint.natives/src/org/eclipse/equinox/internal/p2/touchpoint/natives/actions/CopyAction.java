@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Map;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.engine.IIndependentAction;
 import org.eclipse.equinox.internal.p2.engine.Profile;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.*;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
@@ -30,7 +31,7 @@ import org.eclipse.osgi.util.NLS;
  * Copy will copy files and directories (recursively).
  *  
  */
-public class CopyAction extends ProvisioningAction {
+public class CopyAction extends ProvisioningAction implements IIndependentAction {
 	public static final String ID = "cp"; //$NON-NLS-1$
 
 	public IStatus execute(Map<String, Object> parameters) {
@@ -81,7 +82,10 @@ public class CopyAction extends ProvisioningAction {
 		for (int i = 0; i < copiedFiles.length; i++)
 			copiedFileNameBuffer.append(copiedFiles[i].getAbsolutePath()).append(ActionConstants.PIPE);
 
-		profile.setInstallableUnitProperty(iu, "copied" + ActionConstants.PIPE + originalSource + ActionConstants.PIPE + target, copiedFileNameBuffer.toString()); //$NON-NLS-1$
+		// other operands of the phase may be performed at the same time
+		synchronized (profile) {
+			profile.setInstallableUnitProperty(iu, "copied" + ActionConstants.PIPE + originalSource + ActionConstants.PIPE + target, copiedFileNameBuffer.toString()); //$NON-NLS-1$
+		}
 
 		return Status.OK_STATUS;
 	}
@@ -90,6 +94,11 @@ public class CopyAction extends ProvisioningAction {
 		return CleanupcopyAction.cleanupcopy(parameters, false);
 	}
 
+	public String[] getTargets(Map<String, Object> parameters) {
+		Object target = parameters.get(ActionConstants.PARM_COPY_TARGET);
+		return target instanceof String ? new String[] {(String) target} : null;
+	}
+
 	/**
 	 * Merge-copy file or directory.
 	 * @param source
@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.engine.IIndependentAction;
 import org.eclipse.equinox.internal.p2.engine.Profile;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.*;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
@@ -23,7 +24,7 @@ import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.osgi.util.NLS;
 
-public class UnzipAction extends ProvisioningAction {
+public class UnzipAction extends ProvisioningAction implements IIndependentAction {
 
 	public static final String ACTION_UNZIP = "unzip"; //$NON-NLS-1$
 	private Value<String[]> result;
@@ -36,6 +37,11 @@ public class UnzipAction extends ProvisioningAction {
 		return CleanupzipAction.cleanupzip(parameters, false);
 	}
 
+	public String[] getTargets(Map<String, Object> parameters) {
+		Object target = parameters.get(ActionConstants.PARM_TARGET);
+		return target instanceof String ? new String[] {(String) target} : null;
+	}
+
 	/**
 	 * Unzip as directed by parameters.
 	 * Record what was zipped in the profile.
@@ -81,7 +87,10 @@ public class UnzipAction extends ProvisioningAction {
 		for (int i = 0; i < unzippedFiles.length; i++)
 			unzippedFileNameBuffer.append(unzippedFiles[i].getAbsolutePath()).append(ActionConstants.PIPE);
 
-		profile.setInstallableUnitProperty(iu, "unzipped" + ActionConstants.PIPE + originalSource + ActionConstants.PIPE + target, unzippedFileNameBuffer.toString()); //$NON-NLS-1$
+		// other operands of the phase may be performed at the same time
+		synchronized (profile) {
+			profile.setInstallableUnitProperty(iu, "unzipped" + ActionConstants.PIPE + originalSource + ActionConstants.PIPE + target, unzippedFileNameBuffer.toString()); //$NON-NLS-1$
+		}
 
 		return Status.OK_STATUS;
 	}
@@ -352,10 +352,20 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 
 	public void readInto(URI uri, OutputStream anOutputStream, long startPos, IProgressMonitor monitor) //
 			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
+		readInto(uri, anOutputStream, startPos, -1, monitor);
+	}
+
+	/**
+	 * Reads a range of the given file.
+	 * @param startPos the position of the first byte to read, or -1 to read from the beginning
+	 * @param endPos the position of the last byte to read, or -1 to read to the end
+	 */
+	public void readInto(URI uri, OutputStream anOutputStream, long startPos, long endPos, IProgressMonitor monitor) //
+			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
 		if (monitor == null)
 			monitor = new NullProgressMonitor();
 		try {
-			sendRetrieveRequest(uri, anOutputStream, (startPos != -1 ? new DownloadRange(startPos) : null), false, monitor);
+			sendRetrieveRequest(uri, anOutputStream, (startPos != -1 || endPos != -1 ? new DownloadRange(Math.max(startPos, 0), endPos) : null), false, monitor);
 			Job.getJobManager().join(this, new SuppressBlockedMonitor(monitor, 0));
 			waitPaused(uri, anOutputStream, startPos, monitor);
 			if (monitor.isCanceled() && connectEvent != null)
@@ -529,13 +539,15 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	private static class DownloadRange implements IFileRangeSpecification {
 
 		private long startPosition;
+		private long endPosition;
 
-		public DownloadRange(long startPos) {
+		public DownloadRange(long startPos, long endPos) {
 			startPosition = startPos;
+			endPosition = endPos;
 		}
 
 		public long getEndPosition() {
-			return -1;
+			return endPosition;
 		}
 
 		public long getStartPosition() {
@@ -15,6 +15,7 @@ package org.eclipse.equinox.internal.p2.transport.ecf;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.ecf.core.identity.IDCreateException;
 import org.eclipse.ecf.core.security.ConnectContextFactory;
@@ -39,6 +40,15 @@ import org.eclipse.osgi.util.NLS;
 public class RepositoryTransport extends Transport {
 
 	public static final String TIMEOUT_RETRY = "org.eclipse.equinox.p2.transport.ecf.retry"; //$NON-NLS-1$
+	/**
+	 * System property holding the number of ranges of a large file that are fetched at the same time.
+	 */
+	public static final String RANGES = "org.eclipse.equinox.p2.transport.ecf.ranges"; //$NON-NLS-1$
+	/**
+	 * System property holding the size in bytes from which a file is fetched in several ranges.
+	 */
+	public static final String RANGE_THRESHOLD = "org.eclipse.equinox.p2.transport.ecf.rangeThreshold"; //$NON-NLS-1$
+	private static final long DEFAULT_RANGE_THRESHOLD = 32 * 1024 * 1024;
 	private static Map<URI, Integer> socketExceptionRetry = null;
 	private IProvisioningAgent agent = null;
 
@@ -66,6 +76,19 @@ public class RepositoryTransport extends Transport {
 	}
 
 	public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+		int ranges = getIntProperty(RANGES, 1);
+		if (ranges > 1 && startPos <= 0) {
+			long length = getFileLength(toDownload, monitor);
+			if (length > 0 && length >= getLongProperty(RANGE_THRESHOLD, DEFAULT_RANGE_THRESHOLD)) {
+				IStatus status = downloadRanges(toDownload, target, length, ranges, monitor);
+				if (status != null)
+					return status;
+			}
+		}
+		return download(toDownload, target, startPos, -1, monitor);
+	}
+
+	private IStatus download(URI toDownload, OutputStream target, long startPos, long endPos, IProgressMonitor monitor) {
 
 		boolean promptUser = false;
 		boolean useJREHttp = false;
@@ -98,7 +121,7 @@ public class RepositoryTransport extends Transport {
 							eventBus.addListener(listener);
 						}
 					}
-					reader.readInto(toDownload, target, startPos, monitor);
+					reader.readInto(toDownload, target, startPos, endPos, monitor);
 				} finally {
 					if (eventBus != null) {
 						eventBus.removeListener(listener);
@@ -156,6 +179,125 @@ public class RepositoryTransport extends Transport {
 		return download(toDownload, target, -1, monitor);
 	}
 
+	/**
+	 * Fetches the given file in several ranges at the same time and writes them to the target
+	 * in order.
+	 * @return the status of the download, or <code>null</code> if the ranges could not be fetched
+	 * and the file should be downloaded in one piece instead
+	 */
+	private IStatus downloadRanges(final URI toDownload, OutputStream target, long length, int ranges, final IProgressMonitor monitor) {
+		long rangeSize = (length + ranges - 1) / ranges;
+		int count = (int) ((length + rangeSize - 1) / rangeSize);
+		File[] files = new File[count];
+		List<Future<IStatus>> results = new ArrayList<Future<IStatus>>(count);
+		SubMonitor sub = SubMonitor.convert(monitor, count + 1);
+		// Ranges report their progress when they complete, they only look for cancelation
+		final IProgressMonitor rangeMonitor = new NullProgressMonitor() {
+			public boolean isCanceled() {
+				return monitor != null && monitor.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Range download"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long start = System.currentTimeMillis();
+		try {
+			for (int i = 0; i < count; i++) {
+				final long first = i * rangeSize;
+				final long last = Math.min(length, first + rangeSize) - 1;
+				final File file = File.createTempFile("p2range", ".part"); //$NON-NLS-1$ //$NON-NLS-2$
+				files[i] = file;
+				results.add(executor.submit(new Callable<IStatus>() {
+					public IStatus call() throws IOException {
+						OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+						try {
+							return download(toDownload, output, first, last, rangeMonitor);
+						} finally {
+							output.close();
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < count; i++) {
+				IStatus result;
+				try {
+					result = results.get(i).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof OperationCanceledException)
+						throw (OperationCanceledException) e.getCause();
+					return null;
+				}
+				long expected = Math.min(length, (i + 1) * rangeSize) - i * rangeSize;
+				// a server that ignores ranges sends the whole file
+				if (!result.isOK() || files[i].length() != expected)
+					return null;
+				sub.worked(1);
+			}
+			for (int i = 0; i < count; i++) {
+				InputStream input = new BufferedInputStream(new FileInputStream(files[i]));
+				try {
+					byte[] buffer = new byte[16 * 1024];
+					int read;
+					while ((read = input.read(buffer)) != -1)
+						target.write(buffer, 0, read);
+				} finally {
+					input.close();
+				}
+			}
+			sub.worked(1);
+			DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+			status.setFileSize(length);
+			status.setTransferRate(length / Math.max(System.currentTimeMillis() - start, 1) * 1000);
+			return statusOn(target, status, null);
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		} catch (IOException e) {
+			return statusOn(target, forException(e, toDownload), null);
+		} finally {
+			executor.shutdownNow();
+			for (int i = 0; i < files.length; i++) {
+				if (files[i] != null)
+					files[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns the length of the given remote file, or -1 if it is not known.
+	 */
+	private long getFileLength(URI location, IProgressMonitor monitor) {
+		try {
+			AuthenticationInfo loginDetails = Credentials.forLocation(location, false, null);
+			IConnectContext context = (loginDetails == null) ? null : ConnectContextFactory.createUsernamePasswordConnectContext(loginDetails.getUserName(), loginDetails.getPassword());
+			IRemoteFile file = new FileInfoReader(context).getRemoteFile(location, monitor);
+			return file == null ? -1 : file.getInfo().getLength();
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (Exception e) {
+			// download in one piece
+			return -1;
+		}
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		return (int) getLongProperty(key, defaultValue);
+	}
+
+	private static long getLongProperty(String key, long defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException, CoreException, AuthenticationFailedException {
 
 		boolean promptUser = false;
@@ -275,19 +417,23 @@ public class RepositoryTransport extends Transport {
 					int retry = Integer.valueOf(value).intValue();
 					if (retry > 0) {
 						Integer retryCount = null;
-						if (socketExceptionRetry == null) {
-							socketExceptionRetry = new HashMap<URI, Integer>();
-							retryCount = new Integer(1);
-						} else {
-							Integer alreadyRetryCount = socketExceptionRetry.get(toDownload);
-							if (alreadyRetryCount == null)
+						// the ranges of a download fail on several threads at once
+						synchronized (RepositoryTransport.class) {
+							if (socketExceptionRetry == null) {
+								socketExceptionRetry = new HashMap<URI, Integer>();
 								retryCount = new Integer(1);
-							else if (alreadyRetryCount.intValue() < retry) {
-								retryCount = new Integer(alreadyRetryCount.intValue() + 1);
+							} else {
+								Integer alreadyRetryCount = socketExceptionRetry.get(toDownload);
+								if (alreadyRetryCount == null)
+									retryCount = new Integer(1);
+								else if (alreadyRetryCount.intValue() < retry) {
+									retryCount = new Integer(alreadyRetryCount.intValue() + 1);
+								}
 							}
+							if (retryCount != null)
+								socketExceptionRetry.put(toDownload, retryCount);
 						}
 						if (retryCount != null) {
-							socketExceptionRetry.put(toDownload, retryCount);
 							return new DownloadStatus(IStatus.ERROR, Activator.ID, IArtifactRepository.CODE_RETRY, NLS.bind(Messages.connection_to_0_failed_on_1_retry_attempt_2, new String[] {toDownload.toString(), t.getMessage(), retryCount.toString()}), t);
 						}
 					}